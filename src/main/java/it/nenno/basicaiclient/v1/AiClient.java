@@ -16,9 +16,32 @@
 
 package it.nenno.basicaiclient.v1;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import it.nenno.basicaiclient.v1.batch.BatchIterator;
+import it.nenno.basicaiclient.v1.batch.BatchOptions;
+import it.nenno.basicaiclient.v1.batch.BatchResult;
+import it.nenno.basicaiclient.v1.cache.ResponseCache;
+import it.nenno.basicaiclient.v1.config.AiApi;
+import it.nenno.basicaiclient.v1.config.ConfigManager;
+import it.nenno.basicaiclient.v1.config.ProviderModel;
+import it.nenno.basicaiclient.v1.http.AbortSignal;
+import it.nenno.basicaiclient.v1.http.AsyncBody;
+import it.nenno.basicaiclient.v1.http.ConnectTimeoutException;
+import it.nenno.basicaiclient.v1.http.HttpTransport;
+import it.nenno.basicaiclient.v1.http.HttpTransports;
+import it.nenno.basicaiclient.v1.http.SseFramer;
+import it.nenno.basicaiclient.v1.http.TransportRequest;
+import it.nenno.basicaiclient.v1.http.TransportResponse;
 import it.nenno.basicaiclient.v1.models.*;
-import it.nenno.basicaiclient.v1.utils.MapperWithCaseStrategy;
+import it.nenno.basicaiclient.v1.resilience.ConcurrencyLimitExceededException;
+import it.nenno.basicaiclient.v1.resilience.ConcurrencyLimiter;
+import it.nenno.basicaiclient.v1.resilience.HedgePolicy;
+import it.nenno.basicaiclient.v1.resilience.RateLimiter;
+import it.nenno.basicaiclient.v1.resilience.RetryPolicy;
+import it.nenno.basicaiclient.v1.resilience.RetryReason;
+import it.nenno.basicaiclient.v1.resilience.TokenEstimator;
+import it.nenno.basicaiclient.v1.utils.JsonCodecs;
 import it.nenno.basicaiclient.v1.utils.PrettyJsonPrinter;
 import it.nenno.basicaiclient.v1.utils.StructuredOutputHelper;
 import org.slf4j.Logger;
@@ -26,10 +49,33 @@ import org.slf4j.LoggerFactory;
 
 
 import java.io.*;
+import java.net.ConnectException;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.NoRouteToHostException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static it.nenno.basicaiclient.v1.utils.JsonCodecs.Naming.SNAKE_CASE;
 
 public class AiClient {
 
@@ -40,18 +86,291 @@ public class AiClient {
     public static final String CLIENT_TYPE_ANTHROPIC= "anthropic";
 
     private static final String JSON_UTF8 = "application/json; charset=UTF-8";
-
     private static final String VERSION = Version.VERSION;
     private String apiKey;
     private String apiURL;
     private String clientType;
+    private final HttpTransport transport;
+    private final Executor asyncExecutor;
+    private final boolean chunkedRequests;
+    private final Timeouts timeouts;
+    private final RetryPolicy retryPolicy;
+    private final RateLimiter rateLimiter;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    // model and provider/model key of the first hop if the client was built from a fallback chain, else null
+    private final String model;
+    private final ProviderModel providerModel;
+    private final List<Hop> fallbacks;
+    private final HedgePolicy hedgePolicy;
+    // endpoint of the hedges, null for the client itself
+    private final AiClient hedgeClient;
+    private final RequestCoalescer coalescer;
+    private final ResponseCache responseCache;
+    private final StreamDispatch streamDispatch;
 
     public AiResponse generate(AiRequest aiRequest, boolean logDetails) {
         return generate(aiRequest, logDetails, true);
     }
 
     public AiResponse generate(AiRequest aiRequest, boolean logDetails, boolean doSend){
+        if ((responseCache != null || coalescer != null || hedgePolicy != null) && doSend && aiRequest != null) {
+            return generateShared(aiRequest, logDetails, new AbortSignal(), null);
+        }
+        return generate(aiRequest, logDetails, doSend, null, null);
+    }
+
+    /**
+     * Answer the request from the response cache, join the identical one in flight (coalescing)
+     * or send it
+     * @param permit of the rate limiter acquired by the caller, null to acquire it here
+     */
+    private AiResponse generateShared(final AiRequest aiRequest, final boolean logDetails, AbortSignal abortSignal,
+                                      final RateLimiter.Permit permit) {
+        boolean cacheable = responseCache != null && aiRequest != null && responseCache.isCacheable(aiRequest);
+        if (!cacheable && (coalescer == null || aiRequest == null)) {
+            return generateDirect(aiRequest, logDetails, abortSignal, permit);
+        }
+        String key = requestKey(aiRequest);
+        if (cacheable) {
+            AiResponse cached = responseCache.get(key);
+            if (cached != null) {
+                if (permit != null) permit.cancel();
+                if (logDetails) LOGGER.info("aiResponse from the cache = " + cached);
+                setContentObj(aiRequest, cached);
+                return cached;
+            }
+        }
+
+        AiResponse aiResponse;
+        if (coalescer != null) {
+            final AtomicBoolean sent = new AtomicBoolean();
+            aiResponse = coalescer.generate(key, abortSignal, shared -> {
+                sent.set(true);
+                return generateDirect(aiRequest, logDetails, shared, permit);
+            });
+            // served by another call
+            if (!sent.get() && permit != null) permit.cancel();
+        } else {
+            aiResponse = generateDirect(aiRequest, logDetails, abortSignal, permit);
+        }
+        if (cacheable && aiResponse != null) {
+            responseCache.put(key, aiResponse);
+        }
+        return aiResponse;
+    }
+
+    /** structured output of a cached response, parsed again so that the caller gets its own object */
+    private static void setContentObj(AiRequest aiRequest, AiResponse aiResponse) {
+        if (aiRequest.getResponseFormat() instanceof Class<?> && aiResponse.getChoices() != null
+                && !aiResponse.getChoices().isEmpty()) {
+            AiResponse.Message message = aiResponse.getChoices().get(0).getMessage();
+            message.setContentObj(StructuredOutputHelper.fromJson(message.getContent(),
+                    (Class<?>) aiRequest.getResponseFormat()));
+        }
+    }
+
+    private AiResponse generateDirect(AiRequest aiRequest, boolean logDetails, AbortSignal abortSignal,
+                                      RateLimiter.Permit permit) {
+        return hedgePolicy != null
+                ? generateHedged(aiRequest, logDetails, abortSignal, permit)
+                : generate(aiRequest, logDetails, true, abortSignal, permit);
+    }
+
+    /** key of the request body for this client's endpoint, for coalescing and caching */
+    private String requestKey(AiRequest aiRequest) {
+        // as in generateOnce(), so that the key does not change when the request is sent again
+        if (aiRequest.getResponseFormat() instanceof Class<?>) {
+            aiRequest.setRequestType(RequestType.STRUCTURED_OUTPUT);
+        }
+        RequestConverter requestConverter = new RequestConverter();
+        requestConverter.convertForClient(aiRequest.withModel(model), this, false);
+        return RequestCoalescer.keyOf(apiURL, requestConverter.getAiRequestBase());
+    }
+
+    /**
+     * Send the request and a duplicate (hedge) if it has not answered within the hedge delay,
+     * the first success wins and the other attempt is aborted.
+     * The first attempt runs on the calling thread, only the hedge goes to the async executor: the calling
+     * thread is often one of its threads (generateAsync()), which must not all wait for queued attempts.
+     * @param permit of the rate limiter for the first attempt, null to acquire it there
+     */
+    private AiResponse generateHedged(final AiRequest aiRequest, final boolean logDetails, AbortSignal abortSignal,
+                                      RateLimiter.Permit permit) {
+        hedgePolicy.onRequest();
+        final CompletableFuture<AiResponse> winner = new CompletableFuture<>();
+        final AtomicInteger failed = new AtomicInteger();
+        final AbortSignal firstSignal = new AbortSignal();
+        final CompletableFuture<AiResponse> first = newAbortableFuture(firstSignal);
+        onAttemptDone(first, winner, failed, false);
+        // a winning hedge stops the first attempt on the calling thread
+        winner.whenComplete((aiResponse, throwable) -> first.cancel(false));
+        // set by the timer under the lock of the winner, while the first attempt is running
+        final AtomicBoolean hedged = new AtomicBoolean();
+        final AtomicReference<CompletableFuture<AiResponse>> hedge = new AtomicReference<>();
+        ScheduledFuture<?> timer = null;
+        try {
+            // cancelled by the caller, e.g. generateAsync()
+            abortSignal.onAbort(() -> {
+                winner.cancel(false);
+                first.cancel(false);
+            });
+
+            final long delay = hedgePolicy.getHedgeDelayMillis();
+            if (delay >= 0) {
+                timer = HedgeTimerHolder.TIMER.schedule(() -> {
+                    synchronized (winner) {
+                        if (first.isDone() || !hedgePolicy.tryHedge()) return;
+                        hedged.set(true);
+                    }
+                    if (logDetails) LOGGER.info("No response after " + delay + " ms, sending a hedge");
+                    CompletableFuture<AiResponse> attempt = attempt(hedgeClient != null ? hedgeClient : this,
+                            aiRequest, logDetails, winner, failed);
+                    hedge.set(attempt);
+                    // the caller has already returned
+                    if (winner.isDone()) attempt.cancel(false);
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+
+            long start = System.nanoTime();
+            try {
+                AiResponse aiResponse = generate(aiRequest, logDetails, true, firstSignal, permit);
+                if (aiResponse != null) recordLatency(start);
+                first.complete(aiResponse);
+            } catch (RuntimeException e) {
+                first.completeExceptionally(e);
+            }
+            boolean withHedge;
+            synchronized (winner) {
+                withHedge = hedged.get();
+            }
+            // the hedge is running, its outcome decides
+            if (withHedge) return winner.get();
+            // no hedge: the outcome of the first attempt
+            return winner.isDone() ? winner.get() : first.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        } catch (CancellationException | InterruptedIOException e) {
+            if (logDetails) LOGGER.info("Request aborted");
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            if (timer != null) timer.cancel(false);
+            // abort the loser
+            first.cancel(false);
+            CompletableFuture<AiResponse> hedgeAttempt = hedge.get();
+            if (hedgeAttempt != null) hedgeAttempt.cancel(false);
+        }
+    }
+
+    /** The hedge of a hedged request on the async executor */
+    private CompletableFuture<AiResponse> attempt(final AiClient client, final AiRequest aiRequest, final boolean logDetails,
+                                                  final CompletableFuture<AiResponse> winner, final AtomicInteger failed) {
+        final AbortSignal attemptSignal = new AbortSignal();
+        final CompletableFuture<AiResponse> future = newAbortableFuture(attemptSignal);
+        onAttemptDone(future, winner, failed, true);
+        final long start = System.nanoTime();
+        submit(future, () -> {
+            AiResponse aiResponse = client.generate(aiRequest, logDetails, true, attemptSignal, null);
+            if (aiResponse != null) recordLatency(start);
+            future.complete(aiResponse);
+        });
+        return future;
+    }
+
+    /**
+     * A successful attempt completes the winner,
+     * the winner fails with the error of the last attempt when both attempts failed
+     */
+    private void onAttemptDone(CompletableFuture<AiResponse> attempt, final CompletableFuture<AiResponse> winner,
+                               final AtomicInteger failed, final boolean isHedge) {
+        attempt.whenComplete((aiResponse, throwable) -> {
+            if (throwable == null && aiResponse != null) {
+                // the win is counted before the caller wakes up
+                synchronized (winner) {
+                    if (!winner.isDone()) {
+                        if (isHedge) hedgePolicy.onHedgeWin();
+                        winner.complete(aiResponse);
+                    }
+                }
+            }
+            else if (failed.incrementAndGet() >= 2) {
+                if (throwable != null) winner.completeExceptionally(throwable);
+                else winner.complete(null);
+            }
+        });
+    }
+
+    private void recordLatency(long start) {
+        hedgePolicy.recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /** fires the hedges, shared by all clients */
+    private static class HedgeTimerHolder {
+        static final ScheduledExecutorService TIMER = newTimer();
+
+        private static ScheduledExecutorService newTimer() {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                    AsyncExecutors.daemonThreadFactory("basicaiclient-hedge-"));
+            timer.setRemoveOnCancelPolicy(true);
+            return timer;
+        }
+    }
+
+    /**
+     * Send the request to the first hop and on failure to the next hops of the fallback chain
+     * @param permit of the rate limiter of the first hop acquired by the caller, null to acquire it here
+     */
+    private AiResponse generate(AiRequest aiRequest, boolean logDetails, boolean doSend, AbortSignal abortSignal,
+                                RateLimiter.Permit permit) {
+        if (fallbacks.isEmpty() || aiRequest == null || !doSend) {
+            return generateOnce(aiRequest == null ? null : aiRequest.withModel(model), logDetails, doSend,
+                    abortSignal, permit);
+        }
+        if (abortSignal == null) abortSignal = new AbortSignal();
+        RuntimeException lastError = null;
+        for (int hop = 0; hop <= fallbacks.size(); hop++) {
+            Hop current = hop == 0 ? null : fallbacks.get(hop - 1);
+            AiClient client = current == null ? this : current.client;
+            try {
+                // a timeout aborts only the signal of its hop, the caller's cancel aborts all
+                AiResponse aiResponse = client.generateOnce(aiRequest.withModel(current == null ? model : current.model),
+                        logDetails, true, abortSignal.newChild(), hop == 0 ? permit : null);
+                if (aiResponse != null) {
+                    aiResponse.setServedBy(hop, current == null ? providerModel : current.providerModel);
+                    return aiResponse;
+                }
+                if (abortSignal.isAborted()) return null;
+                lastError = null;
+            } catch (RuntimeException e) {
+                if (!isFailover(e) || abortSignal.isAborted()) throw e;
+                lastError = e;
+            }
+            if (hop < fallbacks.size()) {
+                LOGGER.warn("Hop " + hop + " failed" + (lastError != null ? " (" + lastError.getMessage() + ")" : "")
+                        + ", failing over to " + fallbacks.get(hop));
+            }
+        }
+        if (lastError != null) throw lastError;
+        return null;
+    }
+
+    /** HTTP 429, 5xx, timeouts and a full concurrency limit move the request to the next hop */
+    private static boolean isFailover(RuntimeException e) {
+        if (e instanceof AiHttpException) {
+            return RetryReason.ofStatus(((AiHttpException) e).getStatusCode()) != null;
+        }
+        return e instanceof AiTimeoutException || e instanceof ConcurrencyLimitExceededException;
+    }
+
+    /**
+     * @param permit of the rate limiter acquired by the caller, null to acquire it here
+     */
+    private AiResponse generateOnce(AiRequest aiRequest, boolean logDetails, boolean doSend, AbortSignal abortSignal,
+                                    RateLimiter.Permit permit){
         AiResponse aiResponse = null;
+        if (abortSignal == null) abortSignal = new AbortSignal();
 
         // log the client
         if (logDetails) LOGGER.info("aiClient = " + this);
@@ -67,52 +386,36 @@ public class AiClient {
             // build the request
             RequestConverter requestConverter = new RequestConverter();
             requestConverter.convertForClient(aiRequest, this, logDetails);
-            String requestAsJsonStr = requestConverter.getRequestAsJsonStr();
-            if (logDetails) LOGGER.info("requestAsJsonStr = " + requestAsJsonStr);
+            // the String is only built for the log, the request is serialized into the connection
+            if (logDetails) LOGGER.info("requestAsJsonStr = " + requestConverter.getRequestAsJsonStr());
 
             if (doSend) {
-                if (requestAsJsonStr != null && !requestAsJsonStr.isEmpty()) {
+                if (requestConverter.getAiRequestBase() != null) {
                     // -----------------------------------
                     // Send and get the response from the AI API
                     // -----------------------------------
-                    String responseStr = send(requestAsJsonStr, logDetails);
-                    if (logDetails) LOGGER.info("responseStr: "+ responseStr);
-
-                    if (responseStr != null) {
-                        // ----------------------------------------------
-                        // Deserialize JSON string to AiResponseOllama object
-                        // Create an ObjectMapper instance
-                        ObjectMapper objectMapper = new ObjectMapper();
-                        MapperWithCaseStrategy.setSnakeCase(objectMapper);
-                        //objectMapper.setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE);
-
-                        try {
-                            // convert to common AiResponse
-                            if (CLIENT_TYPE_OLLAMA.equals(this.clientType)) {
-                                AiResponseOllama respObjOllama = objectMapper.readValue(responseStr, AiResponseOllama.class);
-                                aiResponse = ResponseConverter.normalizeOllama(respObjOllama);
-                            }
-                            else if (CLIENT_TYPE_ANTHROPIC.equals(this.clientType)){
-                                AiResponseAnthropic respObjAnthropic = objectMapper.readValue(responseStr, AiResponseAnthropic.class);
-                                aiResponse = ResponseConverter.normalizeAnthropic(respObjAnthropic);
-                            }
-                            else {
-                                // else OpenAI-type
-                                AiResponseOpenai respObjOpenai = objectMapper.readValue(responseStr, AiResponseOpenai.class);
-                                aiResponse = ResponseConverter.normalizeOpenai(respObjOpenai);
-                            }
-
-                        } catch (IOException ex) {
-                            throw new RuntimeException(ex);
+                    Timeouts requestTimeouts = timeouts.withOverrides(aiRequest.getTimeouts());
+                    int usedTokens = 0;
+                    try {
+                        if (permit == null) {
+                            long start = System.nanoTime();
+                            permit = acquirePermit(aiRequest, abortSignal, requestTimeouts);
+                            requestTimeouts = afterWait(start, requestTimeouts);
                         }
-                        // Print the deserialized object for debug
-                        if (logDetails){
-                            if (aiResponse != null) {
-                                LOGGER.info( PrettyJsonPrinter.print(aiResponse));
-                            } else {
-                                LOGGER.warn("aiResponse object is null!");
-                            }
+                        aiResponse = send(requestConverter.getRequestAsBody(chunkedRequests), logDetails, abortSignal,
+                                requestTimeouts);
+                        if (aiResponse != null && aiResponse.getUsage() != null) {
+                            usedTokens = aiResponse.getUsage().getTotalTokens();
                         }
+                    } catch (InterruptedIOException e) {
+                        if (logDetails) LOGGER.info("Request aborted while waiting for the rate limit");
+                    } finally {
+                        if (permit != null) permit.complete(usedTokens);
+                    }
+
+                    if (aiResponse != null) {
+                        // Print the deserialized object for debug
+                        if (logDetails) LOGGER.info( PrettyJsonPrinter.print(aiResponse));
 
                         // experimental: set 'contentObj' if request is of type structured output
                         if (RequestType.STRUCTURED_OUTPUT.equals(aiRequest.getRequestType())){
@@ -126,9 +429,9 @@ public class AiClient {
                             aiResponse.getChoices().get(0).getMessage().setContentObj( StructuredOutputHelper.fromJson(jsonString, clazz) );
                         }
                     }
-                    else LOGGER.warn("responseStr is null!");
+                    else LOGGER.warn("aiResponse is null!");
                 }
-                else LOGGER.warn("requestAsJsonStr is blank!");
+                else LOGGER.warn("aiRequestBase is null!");
             }
             else LOGGER.warn("Request not send since doSend is false.");
         }
@@ -139,87 +442,497 @@ public class AiClient {
         return aiResponse;
     }
 
+    /**
+     * Wait until the rate limiter of the client allows the request
+     * @return the permit or null if the client has no rate limiter
+     * @throws AiTimeoutException if the wait would exceed the deadline of the request
+     * @throws InterruptedIOException if the request was aborted while waiting
+     */
+    private RateLimiter.Permit acquirePermit(AiRequest aiRequest, AbortSignal abortSignal, Timeouts timeouts)
+            throws InterruptedIOException {
+        if (rateLimiter == null) return null;
+        int estimatedTokens = TokenEstimator.estimate(aiRequest);
+        long start = System.nanoTime();
+        RateLimiter.Permit permit;
+        while ((permit = rateLimiter.tryAcquire(estimatedTokens)) == null) {
+            long waitMillis = Math.max(1, rateLimiter.getWaitMillis(estimatedTokens));
+            long remainingMillis = remainingMillis(start, timeouts);
+            if (remainingMillis >= 0 && waitMillis >= remainingMillis) {
+                throw new AiTimeoutException(AiTimeoutException.Kind.DEADLINE, timeouts.getDeadlineMillis(), null);
+            }
+            LOGGER.debug("Rate limit of " + rateLimiter.getName() + " reached, waiting " + waitMillis + " ms");
+            abortSignal.sleep(waitMillis);
+        }
+        return permit;
+    }
+
+    /** @return the timeouts with the deadline reduced by the time waited since start */
+    private static Timeouts afterWait(long startNanos, Timeouts timeouts) {
+        long remainingMillis = remainingMillis(startNanos, timeouts);
+        return remainingMillis > 0 ? timeouts.withDeadlineMillis(remainingMillis) : timeouts;
+    }
+
     /** set authorization according the client type */
-    private void setAuthorization(HttpURLConnection connection, String apiKey){
+    private void setAuthorization(TransportRequest.Builder requestBuilder, String apiKey){
         if (CLIENT_TYPE_OPENAI.equals(this.clientType)) {
-            connection.setRequestProperty("Authorization", "Bearer " + apiKey);
+            requestBuilder.header("Authorization", "Bearer " + apiKey);
         }
         else if (CLIENT_TYPE_ANTHROPIC.equals(this.clientType)) {
-            connection.setRequestProperty("x-api-key", apiKey);
+            requestBuilder.header("x-api-key", apiKey);
         }
     }
 
-    private void setAnthropicVersion(HttpURLConnection connection){
-        connection.setRequestProperty("anthropic-version", "2023-06-01");
+    private void setAnthropicVersion(TransportRequest.Builder requestBuilder){
+        requestBuilder.header("anthropic-version", "2023-06-01");
     }
 
-    private String send(String json, boolean logDetails) {
-        HttpURLConnection connection = null;
-        String response = "";
+    /** build the HTTP request to the API with headers according the client type */
+    private TransportRequest buildTransportRequest(TransportRequest.RequestBody body, AbortSignal abortSignal,
+                                                   Timeouts timeouts, boolean asyncBody) {
+        TransportRequest.Builder requestBuilder = new TransportRequest.Builder()
+                .url(apiURL)
+                .method("POST")
+                .header("Content-Type", JSON_UTF8)
+                .header("Accept", "application/json")
+                .header("Accept-Charset", "UTF-8");
+        setAuthorization(requestBuilder, apiKey);
+        if (CLIENT_TYPE_ANTHROPIC.equals(this.clientType)) {
+            setAnthropicVersion(requestBuilder);
+        }
+        requestBuilder.header("User-Agent", "Application");
+        return requestBuilder.body(body).abortSignal(abortSignal)
+                .connectTimeout(timeouts.getConnectTimeoutMillis())
+                .asyncBody(asyncBody)
+                .build();
+    }
+
+    private static String readBody(InputStream body) {
+        return new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))
+                .lines().collect(Collectors.joining("\n"));
+    }
 
+    /**
+     * send the request and deserialize the response, null if the request failed
+     * @throws AiHttpException if the provider answered with an error status, after the retries
+     * @throws AiTimeoutException if a timeout expired
+     */
+    private AiResponse send(TransportRequest.RequestBody body, boolean logDetails, AbortSignal abortSignal,
+                            Timeouts timeouts) {
         if (logDetails) LOGGER.info("apiURL = " + apiURL +", apiKey = " + apiKey);
+
+        Exchange exchange = null;
         try {
-            URL url = new URL(apiURL);
-            connection = (HttpURLConnection) url.openConnection();
-
-            connection.setRequestMethod("POST");
-            connection.setRequestProperty("Content-Type", JSON_UTF8);
-            connection.setRequestProperty("Accept", "application/json");
-            connection.setRequestProperty("Accept-Charset", "UTF-8");
-            setAuthorization(connection, apiKey);
-            if (CLIENT_TYPE_ANTHROPIC.equals(this.clientType)) {
-                setAnthropicVersion(connection);
-            }
-            connection.setRequestProperty("User-Agent", "Application");
-            connection.setDoOutput(true);
-
-            try (OutputStream outputStream = connection.getOutputStream()) {
-                outputStream.write(json.getBytes(StandardCharsets.UTF_8));
-            }
-
-            if (logDetails) LOGGER.info(connection.getResponseCode()+" "+connection.getResponseMessage());
-
-            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-                StringBuilder errorMessages = new StringBuilder()
-                        .append("Unexpected HTTP response: ")
-                        .append(connection.getResponseCode())
-                        .append("\n");
-
-                String errorResponse = new BufferedReader(new InputStreamReader(
-                        connection.getErrorStream(),
-                        StandardCharsets.UTF_8
-                )).lines().collect(Collectors.joining("\n"));
-                throw new Exception(errorResponse);
-            }
-
-            InputStream inputStream = connection.getInputStream();
-            if (inputStream != null) {
-                // convert response into a single line
-                response = new BufferedReader(
-                        new InputStreamReader(inputStream, StandardCharsets.UTF_8))
-                        .lines().collect(Collectors.joining("\n"));
-                if (logDetails)  LOGGER.info("response = " + response);
-                return response;
-            } else {
-                LOGGER.warn("No input stream available");
-                //return null;
+            exchange = exchange(body, logDetails, abortSignal, timeouts);
+
+            // the String is only built for the log, otherwise the response is parsed from the stream
+            if (logDetails) {
+                String responseStr = readBody(exchange.body);
+                LOGGER.info("response = " + responseStr);
+                return readResponse(JsonCodecs.factory().createParser(responseStr));
             }
+            return readResponse(JsonCodecs.factory().createParser(exchange.body));
 
-        } catch (Exception e) {
+        } catch (AiHttpException | AiTimeoutException | ConcurrencyLimitExceededException e) {
             LOGGER.warn(e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            if (exchange != null && exchange.isExpired()) {
+                AiTimeoutException timeout = exchange.watchdog.newException(e);
+                LOGGER.warn(timeout.getMessage());
+                throw timeout;
+            }
+            else if (abortSignal.isAborted()) {
+                if (logDetails) LOGGER.info("Request aborted");
+            }
+            else if (e instanceof JsonProcessingException) {
+                // invalid response, not a connection problem
+                throw new RuntimeException(e);
+            }
+            else LOGGER.warn(e.getMessage());
+        } finally {
+            if (exchange != null) exchange.close();
         }
         return null;
     }
 
+    /**
+     * Send the request until the provider answers with status 200, failed attempts are retried
+     * according the retry policy of the client.
+     * @throws AiHttpException if the provider answered with an error status, after the retries
+     * @throws AiTimeoutException if a timeout expired
+     * @throws IOException if the connection failed, after the retries
+     */
+    private Exchange exchange(TransportRequest.RequestBody body, boolean logDetails, AbortSignal abortSignal,
+                              Timeouts timeouts) throws IOException {
+        return exchange(body, logDetails, abortSignal, timeouts, false);
+    }
+
+    /** @param asyncBody true to receive the body of a status 200 as async body if the transport supports it */
+    private Exchange exchange(TransportRequest.RequestBody body, boolean logDetails, AbortSignal abortSignal,
+                              Timeouts timeouts, boolean asyncBody) throws IOException {
+        if (concurrencyLimiter == null) {
+            return exchangeWithRetries(body, logDetails, abortSignal, timeouts, asyncBody);
+        }
+        long start = System.nanoTime();
+        ConcurrencyLimiter.Permit slot = acquireSlot(abortSignal, timeouts);
+        try {
+            Exchange exchange = exchangeWithRetries(body, logDetails, abortSignal, afterWait(start, timeouts),
+                    asyncBody);
+            // the latency until the response headers adapts the limit, the slot is held until the body is read
+            slot.onSuccess();
+            exchange.slot = slot;
+            return exchange;
+        } catch (IOException | RuntimeException e) {
+            if (isOverload(e) && !abortSignal.isAborted()) slot.onDropped();
+            slot.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for a free slot of the concurrency limiter, at most until the deadline of the request
+     * @throws ConcurrencyLimitExceededException if the queue is full or the wait too long
+     */
+    private ConcurrencyLimiter.Permit acquireSlot(AbortSignal abortSignal, Timeouts timeouts)
+            throws InterruptedIOException {
+        long remainingMillis = timeouts.getDeadlineMillis() > 0 ? timeouts.getDeadlineMillis() : Long.MAX_VALUE;
+        ConcurrencyLimiter.Permit slot = concurrencyLimiter.acquire(remainingMillis, abortSignal);
+        if (slot == null) {
+            if (remainingMillis < concurrencyLimiter.getMaxWaitMillis()) {
+                throw new AiTimeoutException(AiTimeoutException.Kind.DEADLINE, timeouts.getDeadlineMillis(), null);
+            }
+            throw new ConcurrencyLimitExceededException("No free slot for " + apiURL + " within "
+                    + concurrencyLimiter.getMaxWaitMillis() + " ms, " + concurrencyLimiter);
+        }
+        return slot;
+    }
+
+    /** HTTP 429, 5xx, timeouts and connect failures show that the endpoint is overloaded */
+    private static boolean isOverload(Exception e) {
+        if (e instanceof AiHttpException) {
+            return RetryReason.ofStatus(((AiHttpException) e).getStatusCode()) != null;
+        }
+        return e instanceof AiTimeoutException || (e instanceof IOException && isConnectFailure((IOException) e));
+    }
+
+    /** send the request, failed attempts are retried according the retry policy */
+    private Exchange exchangeWithRetries(TransportRequest.RequestBody body, boolean logDetails, AbortSignal abortSignal,
+                                         Timeouts timeouts, boolean asyncBody) throws IOException {
+        long start = System.nanoTime();
+        RetryPolicy.Attempts attempts = retryPolicy.newAttempts();
+        while (true) {
+            // the deadline is for all attempts together
+            long remainingMillis = remainingMillis(start, timeouts);
+            if (remainingMillis == 0) {
+                throw new AiTimeoutException(AiTimeoutException.Kind.DEADLINE, timeouts.getDeadlineMillis(), null);
+            }
+            Timeouts attemptTimeouts = remainingMillis > 0 ? timeouts.withDeadlineMillis(remainingMillis) : timeouts;
+            TransportRequest request = buildTransportRequest(body, abortSignal, attemptTimeouts, asyncBody);
+            RequestWatchdog watchdog = RequestWatchdog.start(attemptTimeouts, abortSignal);
+
+            TransportResponse response;
+            try {
+                response = transport.execute(request);
+            } catch (IOException e) {
+                if (watchdog != null) watchdog.finish();
+                if (watchdog != null && watchdog.isExpired()) {
+                    throw watchdog.newException(e);
+                }
+                long delay = isConnectFailure(e) && !abortSignal.isAborted()
+                        ? attempts.nextDelayMillis(RetryReason.CONNECT_FAILURE, null, remainingMillis(start, timeouts))
+                        : -1;
+                if (delay < 0) {
+                    if (e instanceof ConnectTimeoutException) {
+                        throw new AiTimeoutException(AiTimeoutException.Kind.CONNECT, timeouts.getConnectTimeoutMillis(), e);
+                    }
+                    throw e;
+                }
+                LOGGER.warn(e.getMessage() + ", retry " + attempts.getRetryCount() + " in " + delay + " ms");
+                abortSignal.sleep(delay);
+                continue;
+            }
+
+            if (logDetails) LOGGER.info(response.getStatusCode()+" "+response.getStatusMessage());
+            int statusCode = response.getStatusCode();
+            AsyncBody responseAsyncBody = asyncBody && statusCode == HttpURLConnection.HTTP_OK
+                    ? response.getAsyncBody() : null;
+            InputStream responseBody = responseAsyncBody == null ? response.getBody() : null;
+            if (watchdog != null) {
+                watchdog.onFirstByte();
+                if (responseBody != null) responseBody = watchdog.watch(responseBody);
+            }
+            Exchange exchange = new Exchange(response, responseBody, responseAsyncBody, watchdog);
+            if (statusCode == HttpURLConnection.HTTP_OK) {
+                return exchange;
+            }
+
+            // ------ error status ------
+            String errorResponse;
+            try {
+                errorResponse = readBody(responseBody);
+            } catch (UncheckedIOException e) {
+                errorResponse = "";
+            } finally {
+                exchange.close();
+            }
+            if (exchange.isExpired()) {
+                throw watchdog.newException(null);
+            }
+            abortSignal.throwIfAborted();
+
+            AiHttpException httpException = new AiHttpException(statusCode, errorResponse, response.getHeaders());
+            RetryReason reason = RetryReason.ofStatus(statusCode);
+            long delay = reason != null
+                    ? attempts.nextDelayMillis(reason, httpException::getHeader, remainingMillis(start, timeouts))
+                    : -1;
+            if (delay < 0) {
+                throw httpException;
+            }
+            LOGGER.warn("HTTP " + statusCode + " from " + apiURL + ", retry " + attempts.getRetryCount()
+                    + " in " + delay + " ms");
+            abortSignal.sleep(delay);
+        }
+    }
+
+    /** @return milliseconds left until the deadline, -1 without deadline */
+    private static long remainingMillis(long startNanos, Timeouts timeouts) {
+        if (timeouts.getDeadlineMillis() <= 0) {
+            return -1;
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return Math.max(0, timeouts.getDeadlineMillis() - elapsedMillis);
+    }
+
+    /** the request did not reach the provider, so it can be sent again */
+    private static boolean isConnectFailure(IOException e) {
+        return e instanceof ConnectException || e instanceof ConnectTimeoutException
+                || e instanceof NoRouteToHostException;
+    }
+
+    /** Next endpoint of the fallback chain */
+    private static class Hop {
+        final ProviderModel providerModel;
+        final String model;
+        final AiClient client;
+
+        Hop(ProviderModel providerModel, String model, AiClient client) {
+            this.providerModel = providerModel;
+            this.model = model;
+            this.client = client;
+        }
+
+        @Override
+        public String toString() {
+            return providerModel != null ? providerModel.toString() : client.getApiURL();
+        }
+    }
+
+    /** Response with status 200, the body is watched for the idle and deadline timeouts */
+    private static class Exchange implements Closeable {
+        final TransportResponse response;
+        // null if the body is pushed as asyncBody
+        final InputStream body;
+        final AsyncBody asyncBody;
+        final RequestWatchdog watchdog;
+        // slot of the concurrency limiter or null
+        ConcurrencyLimiter.Permit slot;
+
+        Exchange(TransportResponse response, InputStream body, AsyncBody asyncBody, RequestWatchdog watchdog) {
+            this.response = response;
+            this.body = body;
+            this.asyncBody = asyncBody;
+            this.watchdog = watchdog;
+        }
+
+        boolean isExpired() {
+            return watchdog != null && watchdog.isExpired();
+        }
+
+        @Override
+        public void close() {
+            if (watchdog != null) watchdog.finish();
+            // hand back the connection to the transport
+            response.close();
+            if (slot != null) slot.release();
+        }
+    }
+
+    /** Deserialize the response of the client type and convert to common AiResponse */
+    private AiResponse readResponse(JsonParser parser) throws IOException {
+        try {
+            if (CLIENT_TYPE_OLLAMA.equals(this.clientType)) {
+                AiResponseOllama respObjOllama = JsonCodecs.reader(AiResponseOllama.class, SNAKE_CASE).readValue(parser);
+                return ResponseConverter.normalizeOllama(respObjOllama);
+            }
+            else if (CLIENT_TYPE_ANTHROPIC.equals(this.clientType)){
+                AiResponseAnthropic respObjAnthropic = JsonCodecs.reader(AiResponseAnthropic.class, SNAKE_CASE).readValue(parser);
+                return ResponseConverter.normalizeAnthropic(respObjAnthropic);
+            }
+            else {
+                // else OpenAI-type
+                AiResponseOpenai respObjOpenai = JsonCodecs.reader(AiResponseOpenai.class, SNAKE_CASE).readValue(parser);
+                return ResponseConverter.normalizeOpenai(respObjOpenai);
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
     // ------- Streaming -------
-    public void streamChat(AiRequest aiRequest, boolean logDetails, StreamingResponseHandler handler) {
-        streamChat(aiRequest, logDetails, true, handler);
+    public StreamHandle streamChat(AiRequest aiRequest, boolean logDetails, StreamingResponseHandler handler) {
+        return streamChat(aiRequest, logDetails, true, handler);
+    }
+
+    /**
+     * Stream the answer into the handler, returns when the stream has ended.
+     * The handler gets the handle in onStart() and can cancel the stream with it; the returned handle
+     * comes too late for that, use streamChatAsync() for a stream that runs while the caller goes on.
+     * @return the ended stream, with the usage sent by the provider, else the estimated usage, also of a cancelled stream
+     */
+    public StreamHandle streamChat(AiRequest aiRequest, boolean logDetails, boolean doSend, StreamingResponseHandler handler) {
+        AbortSignal abortSignal = new AbortSignal();
+        StreamHandle handle = newStreamHandle(aiRequest, abortSignal);
+        StreamingResponseHandler handleHandler = handle.wrap(handler);
+        StreamDispatcher dispatcher = newDispatcher(handle, handleHandler, abortSignal);
+        try {
+            StreamingResponseHandler streamHandler = dispatcher != null ? dispatcher : handleHandler;
+            if (doSend && aiRequest != null) {
+                streamShared(aiRequest, logDetails, streamHandler, abortSignal, null);
+            } else {
+                streamChat(aiRequest, logDetails, doSend, streamHandler, abortSignal, null);
+            }
+        } finally {
+            // returns when the handler got all chunks, the connection is already released
+            if (dispatcher != null) dispatcher.awaitDelivered();
+            handle.markDone();
+        }
+        return handle;
+    }
+
+    private static StreamHandle newStreamHandle(AiRequest aiRequest, AbortSignal abortSignal) {
+        return new StreamHandle(abortSignal, aiRequest == null ? 0 : TokenEstimator.estimate(aiRequest));
     }
 
-    public void streamChat(AiRequest aiRequest, boolean logDetails, boolean doSend, StreamingResponseHandler handler) {
-        // set true only for debugging
-        boolean logLines = false;
+    /** @return ring buffer between the reading thread and the handler, null without dispatch mode */
+    private StreamDispatcher newDispatcher(StreamHandle handle, StreamingResponseHandler handler,
+                                           AbortSignal abortSignal) {
+        if (streamDispatch == null) {
+            return null;
+        }
+        StreamDispatcher dispatcher = new StreamDispatcher(streamDispatch, streamDispatch.getExecutor(), handler,
+                abortSignal);
+        handle.setDispatcher(dispatcher);
+        return dispatcher;
+    }
+
+    /**
+     * Stream the request or, with coalescing, join the identical stream in flight
+     * @param permit of the rate limiter acquired by the caller, null to acquire it here
+     */
+    private void streamShared(final AiRequest aiRequest, final boolean logDetails, StreamingResponseHandler handler,
+                              AbortSignal abortSignal, final RateLimiter.Permit permit) {
+        if (coalescer == null || aiRequest == null) {
+            streamChat(aiRequest, logDetails, true, handler, abortSignal, permit);
+            return;
+        }
+        final AtomicBoolean sent = new AtomicBoolean();
+        coalescer.stream(requestKey(aiRequest), abortSignal, handler, (shared, broadcast) -> {
+            sent.set(true);
+            streamChat(aiRequest, logDetails, true, broadcast, shared, permit);
+        });
+        if (!sent.get() && permit != null) permit.cancel();
+    }
+
+    /**
+     * Stream from the first hop and on failure from the next hops of the fallback chain.
+     * A stream fails over only until its first chunk, later errors go to the handler.
+     * @param permit of the rate limiter of the first hop acquired by the caller, null to acquire it here
+     */
+    private void streamChat(AiRequest aiRequest, boolean logDetails, boolean doSend, StreamingResponseHandler handler,
+                            AbortSignal abortSignal, RateLimiter.Permit permit) {
+        if (fallbacks.isEmpty() || aiRequest == null || !doSend) {
+            streamChatOnce(aiRequest == null ? null : aiRequest.withModel(model), logDetails, doSend, handler,
+                    abortSignal, permit);
+            return;
+        }
+        if (abortSignal == null) abortSignal = new AbortSignal();
+        for (int hop = 0; hop <= fallbacks.size(); hop++) {
+            Hop current = hop == 0 ? null : fallbacks.get(hop - 1);
+            AiClient client = current == null ? this : current.client;
+            boolean last = hop == fallbacks.size();
+            HopHandler hopHandler = new HopHandler(handler, hop, current == null ? providerModel : current.providerModel,
+                    last);
+            // a timeout aborts only the signal of its hop, the caller's cancel aborts all
+            client.streamChatOnce(aiRequest.withModel(current == null ? model : current.model), logDetails, true,
+                    hopHandler, abortSignal.newChild(), hop == 0 ? permit : null);
+            if (hopHandler.heldError == null) {
+                return;
+            }
+            if (abortSignal.isAborted()) {
+                handler.onError(hopHandler.heldError);
+                return;
+            }
+            LOGGER.warn("Hop " + hop + " failed (" + hopHandler.heldError.getMessage() + "), failing over to "
+                    + fallbacks.get(hop));
+        }
+    }
+
+    /** passes the stream of one hop to the handler, an error before the first chunk is held back for the failover */
+    private static class HopHandler implements StreamingResponseHandler {
+        private final StreamingResponseHandler handler;
+        private final int hop;
+        private final ProviderModel servedBy;
+        private final boolean last;
+        private boolean started;
+        Exception heldError;
+
+        HopHandler(StreamingResponseHandler handler, int hop, ProviderModel servedBy, boolean last) {
+            this.handler = handler;
+            this.hop = hop;
+            this.servedBy = servedBy;
+            this.last = last;
+        }
+
+        private void start() {
+            if (!started) {
+                started = true;
+                handler.onServedBy(hop, servedBy);
+            }
+        }
 
+        @Override
+        public void onMessage(String chunk) {
+            start();
+            handler.onMessage(chunk);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            if (!started && !last && e instanceof RuntimeException && isFailover((RuntimeException) e)) {
+                heldError = e;
+                return;
+            }
+            handler.onError(e);
+        }
+
+        @Override
+        public void onComplete(String accumulatedChunks) {
+            start();
+            handler.onComplete(accumulatedChunks);
+        }
+
+        @Override
+        public void onUsage(AiResponse.Usage usage) {
+            start();
+            handler.onUsage(usage);
+        }
+    }
+
+    /**
+     * @param permit of the rate limiter acquired by the caller, null to acquire it here
+     */
+    private void streamChatOnce(AiRequest aiRequest, boolean logDetails, boolean doSend, StreamingResponseHandler handler,
+                                AbortSignal abortSignal, RateLimiter.Permit permit) {
         // log the client
         if (logDetails) LOGGER.info("aiClient = " + this);
 
@@ -230,153 +943,472 @@ public class AiClient {
             // ------ build the request  ------
             RequestConverter requestConverter = new RequestConverter();
             requestConverter.convertForClient(aiRequest, this, logDetails);
-            String requestAsJsonStr = requestConverter.getRequestAsJsonStr();
-            if (logDetails) LOGGER.info("requestAsJsonStr = " + requestAsJsonStr);
+            // the String is only built for the log, the request is serialized into the connection
+            if (logDetails) LOGGER.info("requestAsJsonStr = " + requestConverter.getRequestAsJsonStr());
 
-            if (requestAsJsonStr != null && !requestAsJsonStr.isEmpty()){
+            if (requestConverter.getAiRequestBase() != null){
                 if (doSend) {
-                    HttpURLConnection connection = null;
-                    AnthropicSSELineParser.ParsingResult anthropicSSEparsingResult = null;
+                    Timeouts requestTimeouts = timeouts.withOverrides(aiRequest.getTimeouts());
+                    if (abortSignal == null) abortSignal = new AbortSignal();
+                    Exchange exchange = null;
+                    int usedTokens = 0;
                     try {
-                        // Instantiate an SSE-parser for Anthropic client if needed
-                        AnthropicSSELineParser anthropicSSEparser = null;
-                        if (CLIENT_TYPE_ANTHROPIC.equals(this.clientType)) {
-                            anthropicSSEparser = new AnthropicSSELineParser();
+                        if (permit == null) {
+                            long start = System.nanoTime();
+                            permit = acquirePermit(aiRequest, abortSignal, requestTimeouts);
+                            requestTimeouts = afterWait(start, requestTimeouts);
                         }
 
-                        // Setup connection
-                        URL url = new URL(apiURL);
-                        connection = (HttpURLConnection) url.openConnection();
-                        connection.setRequestMethod("POST");
-                        connection.setRequestProperty("Content-Type", JSON_UTF8);
-                        connection.setRequestProperty("Accept", "application/json");
-                        connection.setRequestProperty("Accept-Charset", "UTF-8");
-                        setAuthorization(connection, apiKey);
-                        if (CLIENT_TYPE_ANTHROPIC.equals(this.clientType)) {
-                            setAnthropicVersion(connection);
-                        }
-                        connection.setRequestProperty("User-Agent", "Application");
-                        connection.setDoOutput(true);
+                        // ------ Send the request, retried until the status is 200 ---
+                        exchange = exchange(requestConverter.getRequestAsBody(chunkedRequests), logDetails,
+                                abortSignal, requestTimeouts);
 
-                        // ------ Send the request ---
-                        try (OutputStream os = connection.getOutputStream()) {
-                            os.write(requestAsJsonStr.getBytes("UTF-8"));
-                            os.flush();
-                        }
-
-                        // Check response code
-                        int responseCode = connection.getResponseCode();
-                        if (responseCode != HttpURLConnection.HTTP_OK) {
-                            try (BufferedReader errorReader = new BufferedReader(
-                                    new InputStreamReader(connection.getErrorStream()))) {
-                                StringBuilder errorResponse = new StringBuilder();
-                                String errorLine;
-                                while ((errorLine = errorReader.readLine()) != null) {
-                                    errorResponse.append(errorLine).append("\n");
+                        // Read response stream, framed into events on the bytes
+                        try (InputStream body = exchange.body) {
+                            StreamEventReader reader = new StreamEventReader(this.clientType, body);
+                            StreamEvent event;
+                            while ((event = reader.next()) != null) {
+                                if (event.isComplete()) {
+                                    if (logDetails) LOGGER.info("[Streaming Complete] " + event.getFinishReason());
+                                    if (event.getUsage() != null) {
+                                        usedTokens = event.getUsage().getTotalTokens();
+                                        handler.onUsage(event.getUsage());
+                                    }
+                                    handler.onComplete(event.getContent());
+                                } else {
+                                    handler.onMessage(event.getContent());
                                 }
-                                String message = "HTTP error code: " + responseCode +
-                                        "\nError response: " + errorResponse.toString();
-                                LOGGER.warn(message);
-                                throw new RuntimeException(message);
                             }
                         }
-
-                        // Get the response
-                        ObjectMapper objectMapper = new ObjectMapper();
-                        // Read response stream
-                        try (BufferedReader reader = new BufferedReader(
-                                new InputStreamReader(connection.getInputStream(),  StandardCharsets.UTF_8))) {
-                            String line;
-                            AiResponseOpenai response;
-                            // TEST
-                            StringBuilder chunksBuilder = new StringBuilder();
-
-                            while ((line = reader.readLine()) != null) {
-                                if (!line.isEmpty()) {
-                                    // For debug (but comment the normal output to see just the response)
-                                    if (logLines) LOGGER.info("line:\n"+line);
-
-                                    if (!CLIENT_TYPE_ANTHROPIC.equals(this.clientType)) {
-                                        // -------- For OpenAi-like responses (JSONL format)
-
-                                        // stop anyway if response is [DONE] due to strange responses of Gemini
-                                        int positionOfDone = line.indexOf("[DONE]");
-                                        if (positionOfDone != -1 && positionOfDone < 10) {
-                                            if (logDetails) LOGGER.info(" DONE reached");
-                                            handler.onComplete(chunksBuilder.toString());
-                                            break;
-                                        }
-
-                                        response = ResponseConverter.getOpenAIResponseFromStreaming(line, objectMapper, this.clientType);
-                                        if (response != null) {
-                                            String chunk = response.getChoices().get(0).getDelta().getContent();
-                                            handler.onMessage(chunk);
-                                            // accumulate the chunks
-                                            chunksBuilder.append(chunk);
-
-                                            // check if was the last response
-                                            if (AiResponseOpenai.FINISH_REASON_STOP.equals(response.getChoices().get(0).getFinishReason())) {
-                                                if (logDetails) LOGGER.info("[Streaming Complete]");
-                                                handler.onComplete(chunksBuilder.toString());
-                                                break;
-                                            }
-                                        }
-                                        else {
-                                            if (logDetails) LOGGER.info("[Streaming Complete response null]");
-                                            handler.onComplete(chunksBuilder.toString());
-                                            break;
-                                        } // else-if response not null
-                                    }
-                                    else {
-                                        // ------ Anthropic-type responses (mix of text and JSON lines)
-                                        // get the parsing result object of the line from the streaming SSE response
-                                        anthropicSSEparser.parseLine(line);
-                                        anthropicSSEparsingResult = anthropicSSEparser.getResult();
-
-                                        // convert the parsing result object to an Openai-type response
-                                        response = ResponseConverter.toOpenaiResponseForStreaming(anthropicSSEparsingResult);
-                                        if (response != null) {
-                                            String chunk = response.getChoices().get(0).getDelta().getContent();
-                                            handler.onMessage(chunk);
-                                            // accumulate the chunks
-                                            chunksBuilder.append(chunk);
-
-                                            // check if was the last response
-                                            if (AiResponseOpenai.FINISH_REASON_STOP.equals(response.getChoices().get(0).getFinishReason())) {
-                                                if (logDetails) LOGGER.info("[Streaming Complete]");
-                                                handler.onComplete(chunksBuilder.toString());
-                                                break;
-                                            }
-                                        } // if response is not null
-                                    } // else-if Anthropic client
-                                } // if line is not empty
-                            } // while
-                        }
                     }
-                    catch (Exception e) {
-                        LOGGER.error(e.getMessage());
+                    catch (AiTimeoutException e) {
+                        LOGGER.warn(e.getMessage());
                         handler.onError(e);
                     }
-                    finally {
-                        if (connection != null) {
-                            connection.disconnect();
+                    catch (Exception e) {
+                        if (exchange != null && exchange.isExpired()) {
+                            AiTimeoutException timeout = exchange.watchdog.newException(e);
+                            LOGGER.warn(timeout.getMessage());
+                            handler.onError(timeout);
+                        }
+                        else if (abortSignal.isAborted()) {
+                            // cancelled by the caller, not an error
+                            if (logDetails) LOGGER.info("[Streaming aborted]");
                         }
+                        else {
+                            LOGGER.error(e.getMessage());
+                            handler.onError(e);
+                        }
+                    }
+                    finally {
+                        if (exchange != null) exchange.close();
+                        // 0 keeps the estimate if the provider sent no usage
+                        if (permit != null) permit.complete(usedTokens);
                     }
                 } // if doSend
-            } // if requestAsJsonStr is not blank
+            } // if aiRequestBase is not null
         }
         else LOGGER.warn("aiRequest is null!");
     }
 
+    // ------- Pull-based streaming -------
+
+    /** {@link #streamIterator(AiRequest, boolean)} as a Stream, closing the Stream aborts the connection */
+    public Stream<StreamEvent> stream(AiRequest aiRequest) {
+        final StreamEventIterator iterator = streamIterator(aiRequest, false);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                        Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Iterator over the events of the streamed answer, read from the connection only as they are pulled.
+     * The request is sent by the first hasNext(), it fails over to the next hops until the response headers.
+     * Coalescing and the response cache do not apply.
+     * @throws IllegalArgumentException if the request is null or not a streaming request
+     */
+    public StreamEventIterator streamIterator(final AiRequest aiRequest, final boolean logDetails) {
+        if (aiRequest == null || !aiRequest.isStream()) {
+            throw new IllegalArgumentException("A request with stream(true) is required.");
+        }
+        return new StreamEventIterator(new AbortSignal(),
+                abortSignal -> openStream(aiRequest, logDetails, abortSignal, false));
+    }
+
+    /** {@link #publisher(AiRequest, boolean)} without detailed logging */
+    public StreamEventPublisher publisher(AiRequest aiRequest) {
+        return publisher(aiRequest, false);
+    }
+
+    /**
+     * Reactive Streams publisher of the events of the streamed answer, on Java 9 or later
+     * FlowAdapters.toFlowPublisher() of reactive-streams turns it into a java.util.concurrent.Flow.Publisher.
+     * Each subscriber sends its own request, on the async executor of the client when it requests the first event.
+     * Requires the optional dependency org.reactivestreams:reactive-streams.
+     * @throws IllegalArgumentException if the request is null or not a streaming request
+     * @see StreamEventPublisher
+     */
+    public StreamEventPublisher publisher(final AiRequest aiRequest, final boolean logDetails) {
+        if (aiRequest == null || !aiRequest.isStream()) {
+            throw new IllegalArgumentException("A request with stream(true) is required.");
+        }
+        return new StreamEventPublisher(asyncExecutor,
+                abortSignal -> openStream(aiRequest, logDetails, abortSignal, true));
+    }
+
+    /**
+     * Send the stream request to the first hop and on failure to the next hops of the fallback chain
+     * @param asyncBody true to receive the body as async body if the transport supports it
+     */
+    private StreamSource openStream(AiRequest aiRequest, boolean logDetails, AbortSignal abortSignal,
+                                    boolean asyncBody) throws IOException {
+        for (int hop = 0; ; hop++) {
+            Hop current = hop == 0 ? null : fallbacks.get(hop - 1);
+            AiClient client = current == null ? this : current.client;
+            try {
+                return client.openStreamOnce(aiRequest.withModel(current == null ? model : current.model),
+                        logDetails, abortSignal.newChild(), asyncBody);
+            } catch (RuntimeException e) {
+                if (hop == fallbacks.size() || !isFailover(e) || abortSignal.isAborted()) throw e;
+                LOGGER.warn("Hop " + hop + " failed (" + e.getMessage() + "), failing over to " + fallbacks.get(hop));
+            }
+        }
+    }
+
+    private StreamSource openStreamOnce(AiRequest aiRequest, boolean logDetails, AbortSignal abortSignal,
+                                        boolean asyncBody) throws IOException {
+        RequestConverter requestConverter = new RequestConverter();
+        requestConverter.convertForClient(aiRequest, this, logDetails);
+        if (requestConverter.getAiRequestBase() == null) {
+            throw new IllegalArgumentException("The request could not be converted for " + apiURL);
+        }
+        if (logDetails) LOGGER.info("requestAsJsonStr = " + requestConverter.getRequestAsJsonStr());
+
+        Timeouts requestTimeouts = timeouts.withOverrides(aiRequest.getTimeouts());
+        long start = System.nanoTime();
+        final RateLimiter.Permit permit = acquirePermit(aiRequest, abortSignal, requestTimeouts);
+        final Exchange exchange;
+        try {
+            exchange = exchange(requestConverter.getRequestAsBody(chunkedRequests), logDetails, abortSignal,
+                    afterWait(start, requestTimeouts), asyncBody);
+        } catch (IOException | RuntimeException e) {
+            if (permit != null) permit.complete(0);
+            throw e;
+        }
+        return new StreamSource(new StreamEventReader(this.clientType, exchange.body), exchange.asyncBody,
+                exchange.watchdog, usedTokens -> {
+                    exchange.close();
+                    // 0 keeps the estimate if the provider sent no usage
+                    if (permit != null) permit.complete(usedTokens);
+                });
+    }
+
+    // ------- Asynchronous -------
+
+    /** Non-blocking {@link #generate(AiRequest, boolean)} without detailed logging */
+    public CompletableFuture<AiResponse> generateAsync(AiRequest aiRequest) {
+        return generateAsync(aiRequest, false);
+    }
+
+    /**
+     * Run {@link #generate(AiRequest, boolean)} on the async executor of the client.
+     * Cancelling the returned future aborts the connection of the request.
+     */
+    public CompletableFuture<AiResponse> generateAsync(AiRequest aiRequest, boolean logDetails) {
+        final AbortSignal abortSignal = new AbortSignal();
+        final CompletableFuture<AiResponse> future = newAbortableFuture(abortSignal);
+        submitWithPermit(future, aiRequest, permit -> {
+            future.complete(generateShared(aiRequest, logDetails, abortSignal, permit));
+        });
+        return future;
+    }
+
+    /** Non-blocking {@link #streamChat(AiRequest, boolean, StreamingResponseHandler)} without detailed logging */
+    public CompletableFuture<String> streamChatAsync(AiRequest aiRequest, StreamingResponseHandler handler) {
+        return streamChatAsync(aiRequest, false, handler);
+    }
+
+    /**
+     * Run {@link #streamChat(AiRequest, boolean, StreamingResponseHandler)} on the async executor of the client.
+     * The future completes with the accumulated chunks, or exceptionally if the handler receives an error.
+     * Cancelling the returned future aborts the connection, the handler is not called anymore.
+     */
+    public CompletableFuture<String> streamChatAsync(AiRequest aiRequest, boolean logDetails, StreamingResponseHandler handler) {
+        final AbortSignal abortSignal = new AbortSignal();
+        final CompletableFuture<String> future = newAbortableFuture(abortSignal);
+        final StreamHandle handle = newStreamHandle(aiRequest, abortSignal);
+        final StreamingResponseHandler handleHandler = handle.wrap(handler);
+        future.whenComplete((result, throwable) -> handle.markDone());
+        final StringBuilder accumulated = new StringBuilder();
+        final StreamingResponseHandler futureHandler = new StreamingResponseHandler() {
+            @Override
+            public void onMessage(String chunk) {
+                if (future.isDone()) return;
+                accumulated.append(chunk);
+                handleHandler.onMessage(chunk);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (future.isDone()) return;
+                handleHandler.onError(e);
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onComplete(String accumulatedChunks) {
+                if (future.isDone()) return;
+                handleHandler.onComplete(accumulatedChunks);
+                future.complete(accumulatedChunks);
+            }
+
+            @Override
+            public void onServedBy(int hop, ProviderModel servedBy) {
+                if (future.isDone()) return;
+                handleHandler.onServedBy(hop, servedBy);
+            }
+
+            @Override
+            public void onUsage(AiResponse.Usage usage) {
+                if (future.isDone()) return;
+                handleHandler.onUsage(usage);
+            }
+        };
+        // the future completes after the handler got all chunks
+        final StreamDispatcher dispatcher = newDispatcher(handle, futureHandler, abortSignal);
+        submitWithPermit(future, aiRequest, permit -> {
+            streamShared(aiRequest, logDetails, dispatcher != null ? dispatcher : futureHandler, abortSignal, permit);
+            // the stream can end without a final message
+            if (dispatcher != null) {
+                dispatcher.end(() -> future.complete(accumulated.toString()));
+            } else {
+                future.complete(accumulated.toString());
+            }
+        });
+        return future;
+    }
+
+    // ------- Batch -------
+
+    /** {@link #generateAll(List, BatchOptions)} with the default options */
+    public List<BatchResult> generateAll(List<AiRequest> aiRequests) {
+        return generateAll(aiRequests, BatchOptions.DEFAULT);
+    }
+
+    /**
+     * Generate the responses of all requests with at most options.getParallelism() requests in flight.
+     * The results are in the order of the requests; a failed request does not stop the others,
+     * its error is returned in the result.
+     */
+    public List<BatchResult> generateAll(List<AiRequest> aiRequests, BatchOptions options) {
+        List<BatchResult> results = new ArrayList<>(aiRequests.size());
+        try (BatchIterator iterator = new BatchIterator(aiRequests.iterator(), aiRequests.size(),
+                request -> generateAsync(request, options.isLogDetails()), options)) {
+            iterator.forEachRemaining(results::add);
+        }
+        return results;
+    }
+
+    /**
+     * Lazy variant of {@link #generateAll(List, BatchOptions)} for large inputs: the requests are read
+     * as the results are consumed, so only a few of them are in memory. Closing the stream cancels
+     * the requests in flight.
+     */
+    public Stream<BatchResult> generateAll(Stream<AiRequest> aiRequests, BatchOptions options) {
+        final BatchIterator iterator = new BatchIterator(aiRequests.iterator(), -1,
+                request -> generateAsync(request, options.isLogDetails()), options);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(iterator::close)
+                .onClose(aiRequests::close);
+    }
+
+    /** future that aborts the request when it is cancelled */
+    private static <T> CompletableFuture<T> newAbortableFuture(final AbortSignal abortSignal) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.whenComplete((result, throwable) -> {
+            if (throwable instanceof CancellationException) {
+                abortSignal.abort();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Submit the task when the rate limiter allows the request, no thread of the executor waits for it.
+     * Without rate limiter the task is submitted at once with a null permit.
+     */
+    private void submitWithPermit(final CompletableFuture<?> future, final AiRequest aiRequest,
+                                  final Consumer<RateLimiter.Permit> task) {
+        if (rateLimiter == null || aiRequest == null) {
+            submit(future, () -> task.accept(null));
+            return;
+        }
+        final CompletableFuture<RateLimiter.Permit> permitFuture =
+                rateLimiter.acquireAsync(TokenEstimator.estimate(aiRequest));
+        // cancelling the request gives up the waiting
+        future.whenComplete((result, throwable) -> permitFuture.cancel(false));
+        permitFuture.thenAccept(permit -> {
+            final AtomicBoolean started = new AtomicBoolean();
+            submit(future, () -> {
+                started.set(true);
+                task.accept(permit);
+            });
+            // not run: cancelled in the queue or rejected
+            if (future.isDone() && !started.get()) permit.cancel();
+        });
+    }
+
+    private void submit(final CompletableFuture<?> future, final Runnable task) {
+        try {
+            asyncExecutor.execute(() -> {
+                // cancelled while waiting in the queue
+                if (future.isDone()) return;
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
     public String getApiURL() { return apiURL;}
 
     public String getClientType() {return clientType;}
 
+    public HttpTransport getTransport() {return transport;}
+
+    public Executor getAsyncExecutor() {return asyncExecutor;}
+
+    public boolean isChunkedRequests() {return chunkedRequests;}
+
+    public Timeouts getTimeouts() {return timeouts;}
+
+    /** @return retry policy of the client, with the retry metrics in getStats() */
+    public RetryPolicy getRetryPolicy() {return retryPolicy;}
+
+    /** @return rate limiter of the client or null */
+    public RateLimiter getRateLimiter() {return rateLimiter;}
+
+    /** @return concurrency limiter of the client with its current limit, in-flight and queued requests, or null */
+    public ConcurrencyLimiter getConcurrencyLimiter() {return concurrencyLimiter;}
+
+    /** @return hedge policy of the client with the hedge metrics in getStats(), or null */
+    public HedgePolicy getHedgePolicy() {return hedgePolicy;}
+
+    /** @return coalescer of identical requests in flight with its counters, or null */
+    public RequestCoalescer getCoalescer() {return coalescer;}
+
+    /** @return response cache of the client or null */
+    public ResponseCache getResponseCache() {return responseCache;}
+
+    /** @return dispatch mode of the streams with its counters, or null if the handlers run on the reading thread */
+    public StreamDispatch getStreamDispatch() {return streamDispatch;}
+
+    /** @return provider/model keys of the hops after the first one, null for hops added as client */
+    public List<ProviderModel> getFallbacks() {
+        List<ProviderModel> providerModels = new ArrayList<>();
+        for (Hop hop : fallbacks) {
+            providerModels.add(hop.providerModel);
+        }
+        return providerModels;
+    }
+
     // build a client
     private AiClient(Builder builder) {
-        this.apiKey = builder.apiKey;
-        this.apiURL = builder.apiURL;
-        this.clientType = builder.clientType;
+        // without apiURL the first entry of the fallback chain is the endpoint of the client
+        List<ProviderModel> chain = builder.fallbackChain != null ? builder.fallbackChain : Collections.emptyList();
+        RateLimiter firstRateLimiter = builder.rateLimiter;
+        if (builder.apiURL == null && !chain.isEmpty()) {
+            AiApi api = resolveApi(chain.get(0));
+            this.apiURL = api.getApiUrl();
+            this.apiKey = builder.apiKey != null ? builder.apiKey : api.getApiKeyValue();
+            this.clientType = clientTypeOf(apiURL);
+            if (firstRateLimiter == null) firstRateLimiter = RateLimiter.forApi(api);
+            this.model = api.getModel(chain.get(0).getModelName());
+            this.providerModel = chain.get(0);
+            chain = chain.subList(1, chain.size());
+        } else {
+            this.apiKey = builder.apiKey;
+            this.apiURL = builder.apiURL;
+            this.clientType = builder.clientType;
+            this.model = null;
+            this.providerModel = null;
+        }
+        this.transport = builder.transport != null ? builder.transport : HttpTransports.getDefault();
+        this.asyncExecutor = selectAsyncExecutor(builder);
+        this.chunkedRequests = builder.chunkedRequests;
+        this.timeouts = Timeouts.DEFAULT.withOverrides(builder.timeouts);
+        this.retryPolicy = builder.retryPolicy != null ? builder.retryPolicy : new RetryPolicy.Builder().build();
+        this.rateLimiter = firstRateLimiter;
+        this.concurrencyLimiter = builder.concurrencyLimiter != null ? builder.concurrencyLimiter
+                : builder.adaptiveConcurrency && apiURL != null ? ConcurrencyLimiter.forUrl(apiURL)
+                : null;
+
+        // the hops share the settings of the client, with URL, key, model and rate limit of their provider
+        List<Hop> hops = new ArrayList<>();
+        for (ProviderModel next : chain) {
+            AiApi api = resolveApi(next);
+            AiClient hopClient = new Builder()
+                    .apiURL(api.getApiUrl())
+                    .apiKey(api.getApiKeyValue())
+                    .transport(transport)
+                    .asyncExecutor(asyncExecutor)
+                    .chunkedRequests(chunkedRequests)
+                    .timeouts(timeouts)
+                    .retryPolicy(retryPolicy)
+                    .rateLimiter(RateLimiter.forApi(api))
+                    .adaptiveConcurrency(builder.adaptiveConcurrency)
+                    .build();
+            hops.add(new Hop(next, api.getModel(next.getModelName()), hopClient));
+        }
+        for (int i = 0; i < builder.fallbackClients.size(); i++) {
+            hops.add(new Hop(null, builder.fallbackModels.get(i), builder.fallbackClients.get(i)));
+        }
+        this.fallbacks = Collections.unmodifiableList(hops);
+        this.hedgePolicy = builder.hedgePolicy;
+        this.hedgeClient = builder.hedgeClient;
+        this.coalescer = builder.coalescing ? new RequestCoalescer() : null;
+        this.responseCache = builder.responseCache;
+        this.streamDispatch = builder.streamDispatch;
+    }
+
+    /** set client type by URL */
+    private static String clientTypeOf(String apiURL) {
+        if (apiURL.contains(":11434/")) {
+            return CLIENT_TYPE_OLLAMA;
+        }
+        else if (apiURL.contains("anthropic.com/")) {
+            return CLIENT_TYPE_ANTHROPIC;
+        }
+        return CLIENT_TYPE_OPENAI;
+    }
+
+    /** @return the API of the provider in aiapis.json, the model key must exist */
+    private static AiApi resolveApi(ProviderModel providerModel) {
+        AiApi api = ConfigManager.getApiByProvider(providerModel.getProvider());
+        if (api == null) {
+            throw new IllegalArgumentException("Provider not found in aiapis.json: " + providerModel.getProvider());
+        }
+        if (api.getModel(providerModel.getModelName()) == null) {
+            throw new IllegalArgumentException("Model not found in aiapis.json: " + providerModel);
+        }
+        return api;
+    }
+
+    private static Executor selectAsyncExecutor(Builder builder) {
+        if (builder.asyncExecutor != null) {
+            return builder.asyncExecutor;
+        }
+        if (builder.virtualThreads) {
+            if (VirtualThreads.isSupported()) {
+                return AsyncExecutors.getVirtualThreadExecutor();
+            }
+            LOGGER.warn("Virtual threads require Java 21 or later and the multi-release jar, using platform threads.");
+        }
+        return AsyncExecutors.getDefault();
     }
 
     // The builder class
@@ -386,6 +1418,23 @@ public class AiClient {
         private String apiKey;
         private String apiURL;
         private String clientType;
+        private HttpTransport transport;
+        private Executor asyncExecutor;
+        private boolean virtualThreads;
+        private boolean chunkedRequests;
+        private Timeouts timeouts;
+        private RetryPolicy retryPolicy;
+        private RateLimiter rateLimiter;
+        private boolean adaptiveConcurrency;
+        private ConcurrencyLimiter concurrencyLimiter;
+        private List<ProviderModel> fallbackChain;
+        private final List<AiClient> fallbackClients = new ArrayList<>();
+        private final List<String> fallbackModels = new ArrayList<>();
+        private HedgePolicy hedgePolicy;
+        private AiClient hedgeClient;
+        private boolean coalescing;
+        private ResponseCache responseCache;
+        private StreamDispatch streamDispatch;
 
 
         public Builder apiKey(String apiKey) {
@@ -395,21 +1444,167 @@ public class AiClient {
 
         public Builder apiURL(String apiURL) {
             this.apiURL = apiURL;
-            
-            // set client type by URL
-            if (apiURL.contains(":11434/")) {
-                this.clientType = CLIENT_TYPE_OLLAMA;
-            }
-            else if (apiURL.contains("anthropic.com/")) {
-                this.clientType = CLIENT_TYPE_ANTHROPIC;
+            this.clientType = clientTypeOf(apiURL);
+            return this;
+        }
+
+        /**
+         * Set the HTTP transport, e.g. a PooledHttpTransport with own limits or an UrlConnectionTransport.
+         * If not set, the transport shared by all clients is used (see HttpTransports.getDefault()).
+         */
+        public Builder transport(HttpTransport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * Set the executor of generateAsync() and streamChatAsync(), it should be bounded
+         * (see AsyncExecutors.newBoundedExecutor()). If not set, a shared bounded executor is used.
+         */
+        public Builder asyncExecutor(Executor asyncExecutor) {
+            this.asyncExecutor = asyncExecutor;
+            return this;
+        }
+
+        /**
+         * Run the requests of generateAsync() and streamChatAsync() each on a new virtual thread.
+         * Needs Java 21 or later, otherwise the shared bounded executor is used.
+         */
+        public Builder virtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * Send the request bodies with chunked transfer encoding instead of a Content-Length.
+         * This saves the serialization pass that computes the length, but some servers and proxies
+         * reject chunked requests.
+         */
+        public Builder chunkedRequests(boolean chunkedRequests) {
+            this.chunkedRequests = chunkedRequests;
+            return this;
+        }
+
+        /**
+         * Set the default timeouts of the requests, the ones not set are taken from Timeouts.DEFAULT
+         * (10 s to connect, 5 min idle). They can be overridden per request with AiRequest.Builder.timeouts().
+         */
+        public Builder timeouts(Timeouts timeouts) {
+            this.timeouts = timeouts;
+            return this;
+        }
+
+        /**
+         * Set the retries on HTTP 429, 5xx and connect failures. If not set, the client has an own
+         * policy with the defaults of RetryPolicy.Builder, RetryPolicy.none() disables retries.
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Limit the requests and tokens per minute before they are sent, e.g. with
+         * RateLimiter.forApi(api) for the rate_limit of the provider in aiapis.json.
+         */
+        public Builder rateLimiter(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * Adapt the number of concurrent requests to the latency and errors of the endpoint,
+         * with a ConcurrencyLimiter of default settings shared by all clients of the apiURL.
+         */
+        public Builder adaptiveConcurrency(boolean adaptiveConcurrency) {
+            this.adaptiveConcurrency = adaptiveConcurrency;
+            return this;
+        }
+
+        /** Set an own concurrency limiter, e.g. with the AIMD algorithm or other limits */
+        public Builder concurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+            this.concurrencyLimiter = concurrencyLimiter;
+            return this;
+        }
+
+        /**
+         * Fail over to the next provider/model keys of aiapis.json on HTTP 429, 5xx and timeouts.
+         * If apiURL is set the client itself is the first hop, otherwise the first entry of the chain.
+         * The model and the authorization are set for each hop.
+         */
+        public Builder fallbackChain(List<ProviderModel> fallbackChain) {
+            this.fallbackChain = fallbackChain;
+            return this;
+        }
+
+        /** Fail over along the chain with the given name in the "fallback_chains" of aiapis.json */
+        public Builder fallbackChain(String name) {
+            List<ProviderModel> chain = ConfigManager.getFallbackChain(name);
+            if (chain == null || chain.isEmpty()) {
+                throw new IllegalArgumentException("Fallback chain not found in aiapis.json: " + name);
             }
-            else {
-                this.clientType = CLIENT_TYPE_OPENAI;
+            return fallbackChain(chain);
+        }
+
+        /**
+         * Add a hop after the ones of the fallback chain, e.g. an endpoint not in aiapis.json
+         * @param model name of the model at that endpoint, null to keep the model of the request
+         */
+        public Builder fallback(AiClient client, String model) {
+            if (client == null) {
+                throw new IllegalArgumentException("client is required.");
             }
+            this.fallbackClients.add(client);
+            this.fallbackModels.add(model);
+            return this;
+        }
+
+        /** Send a duplicate of a slow generate() request to the same endpoint, see HedgePolicy */
+        public Builder hedging(HedgePolicy hedgePolicy) {
+            return hedging(hedgePolicy, null);
+        }
+
+        /**
+         * Send a duplicate of a slow generate() request to the given client, e.g. another endpoint
+         * of the same model. The model of the request is kept.
+         */
+        public Builder hedging(HedgePolicy hedgePolicy, AiClient hedgeClient) {
+            this.hedgePolicy = hedgePolicy;
+            this.hedgeClient = hedgeClient;
+            return this;
+        }
+
+        /**
+         * Let identical requests in flight share one call (default false): same URL and body,
+         * see RequestCoalescer. Only for requests whose answer may be shared between the callers.
+         */
+        public Builder coalescing(boolean coalescing) {
+            this.coalescing = coalescing;
+            return this;
+        }
+
+        /**
+         * Pass the streamed chunks to the handler on an executor, decoupled from the socket reads
+         * by a bounded ring buffer per stream, see StreamDispatch (default null: on the reading thread)
+         */
+        public Builder streamDispatch(StreamDispatch streamDispatch) {
+            this.streamDispatch = streamDispatch;
+            return this;
+        }
+
+        /**
+         * Answer repeated generate() requests from the cache, e.g. an InMemoryResponseCache.
+         * By default only requests with temperature 0 are cached, see ResponseCache.isCacheable().
+         */
+        public Builder responseCache(ResponseCache responseCache) {
+            this.responseCache = responseCache;
             return this;
         }
 
         public AiClient build() {
+            if (virtualThreads && asyncExecutor != null) {
+                throw new IllegalArgumentException("Cannot set both virtualThreads and asyncExecutor.");
+            }
             return new AiClient(this);
         }
     }
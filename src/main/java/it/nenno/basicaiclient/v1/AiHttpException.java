@@ -0,0 +1,67 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The provider answered with a status other than 200, thrown after the retries of the
+ * {@link it.nenno.basicaiclient.v1.resilience.RetryPolicy} are used up
+ */
+public class AiHttpException extends RuntimeException {
+
+    private final int statusCode;
+    private final String responseBody;
+    private final Map<String, List<String>> headers;
+
+    /**
+     * @param headers response headers with lower-case names
+     */
+    public AiHttpException(int statusCode, String responseBody, Map<String, List<String>> headers) {
+        super("Unexpected HTTP response: " + statusCode + "\n" + responseBody);
+        this.statusCode = statusCode;
+        this.responseBody = responseBody;
+        this.headers = headers != null ? headers : Collections.<String, List<String>>emptyMap();
+    }
+
+    public int getStatusCode() {return statusCode;}
+
+    /** @return body of the error response, the provider's error message */
+    public String getResponseBody() {return responseBody;}
+
+    public Map<String, List<String>> getHeaders() {return headers;}
+
+    /** @return first value of the response header or null */
+    public String getHeader(String name) {
+        List<String> values = headers.get(name.toLowerCase(Locale.ROOT));
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /** @return true for HTTP 429 */
+    public boolean isRateLimited() {
+        return statusCode == 429;
+    }
+
+    /** @return true for HTTP 5xx */
+    public boolean isServerError() {
+        return statusCode >= 500 && statusCode < 600;
+    }
+}
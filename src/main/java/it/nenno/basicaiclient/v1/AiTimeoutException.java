@@ -0,0 +1,48 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.nenno.basicaiclient.v1;
+
+/**
+ * A timeout of a request expired, see {@link Timeouts}. The connection of the request was aborted.
+ */
+public class AiTimeoutException extends RuntimeException {
+
+    public enum Kind {
+        CONNECT("Connect timeout"),
+        FIRST_BYTE("First byte timeout"),
+        IDLE("Idle timeout"),
+        DEADLINE("Deadline");
+
+        private final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+    }
+
+    private final Kind kind;
+    private final long timeoutMillis;
+
+    public AiTimeoutException(Kind kind, long timeoutMillis, Throwable cause) {
+        super(kind.label + " of " + timeoutMillis + " ms expired", cause);
+        this.kind = kind;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public Kind getKind() {return kind;}
+
+    public long getTimeoutMillis() {return timeoutMillis;}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for the asynchronous methods of the {@link AiClient}
+ */
+public final class AsyncExecutors {
+
+    public static final int DEFAULT_MAX_THREADS = 128;
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+    public static final int DEFAULT_DISPATCH_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private AsyncExecutors() {}
+
+    private static class DefaultHolder {
+        static final ExecutorService DEFAULT = newBoundedExecutor(DEFAULT_MAX_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    private static class DispatchHolder {
+        static final ExecutorService DISPATCH = newBoundedExecutor(DEFAULT_DISPATCH_THREADS, DEFAULT_QUEUE_CAPACITY,
+                "basicaiclient-dispatch-");
+    }
+
+    private static class VirtualHolder {
+        static final ExecutorService VIRTUAL = VirtualThreads.newVirtualThreadPerTaskExecutor("basicaiclient-virtual-");
+    }
+
+    /** Shared executor of all clients without an own executor */
+    public static ExecutorService getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    /**
+     * Shared executor of the handler calls in the dispatch mode of streams without an own executor,
+     * separate from the threads that read the sockets
+     */
+    public static ExecutorService getDispatchExecutor() {
+        return DispatchHolder.DISPATCH;
+    }
+
+    /**
+     * Shared executor that runs each request on a new virtual thread (Java 21 or later)
+     * @throws UnsupportedOperationException if virtual threads are not supported
+     */
+    public static ExecutorService getVirtualThreadExecutor() {
+        if (!VirtualThreads.isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+        }
+        return VirtualHolder.VIRTUAL;
+    }
+
+    /**
+     * Executor with at most maxThreads daemon threads, which end after one minute without work.
+     * Further requests wait in a queue of the given capacity, beyond that they are rejected
+     * and the returned future completes with a RejectedExecutionException.
+     */
+    public static ExecutorService newBoundedExecutor(int maxThreads, int queueCapacity) {
+        return newBoundedExecutor(maxThreads, queueCapacity, "basicaiclient-async-");
+    }
+
+    private static ExecutorService newBoundedExecutor(int maxThreads, int queueCapacity, String threadPrefix) {
+        if (maxThreads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("maxThreads and queueCapacity must be at least 1.");
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                daemonThreadFactory(threadPrefix));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    static ThreadFactory daemonThreadFactory(final String prefix) {
+        final AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1;
+
+import it.nenno.basicaiclient.v1.config.AiApi;
+import it.nenno.basicaiclient.v1.config.ConfigManager;
+import it.nenno.basicaiclient.v1.config.ProviderModel;
+import it.nenno.basicaiclient.v1.models.AiRequest;
+import it.nenno.basicaiclient.v1.models.AiResponse;
+import it.nenno.basicaiclient.v1.models.StreamingResponseHandler;
+import it.nenno.basicaiclient.v1.resilience.RateLimiter;
+import it.nenno.basicaiclient.v1.resilience.RetryReason;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads the requests over several endpoints serving the same model, e.g. some Ollama hosts
+ * or LM Studio and Groq. Each endpoint is an {@link AiClient} with the name of the model at
+ * that endpoint, the model of the request is rewritten to it.
+ * <p>
+ * The endpoint is chosen by the power of two choices: two random endpoints are compared
+ * and the one with the lower cost gets the request.
+ * <ul>
+ *     <li>LEAST_OUTSTANDING: cost is the number of requests in flight</li>
+ *     <li>PEAK_EWMA: cost is the moving average of the latency, which jumps to peaks at once,
+ *     times the requests in flight</li>
+ * </ul>
+ * An endpoint is ejected after consecutive failures (HTTP 429, 5xx, timeouts, connection errors)
+ * for a time that doubles with each ejection. When it comes back its weight grows
+ * linearly during the slow start, so it is not flooded with requests at once.
+ */
+public class BalancedAiClient {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BalancedAiClient.class);
+
+    public enum Strategy {LEAST_OUTSTANDING, PEAK_EWMA}
+
+    private static final double MIN_WEIGHT = 0.1;
+    private static final long MAX_EJECTION_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final List<Endpoint> endpoints;
+    private final Strategy strategy;
+    private final int maxFailures;
+    private final long ejectionMillis;
+    private final long slowStartMillis;
+    private final long decayMillis;
+
+    private BalancedAiClient(Builder builder) {
+        List<Endpoint> list = new ArrayList<>();
+        for (int i = 0; i < builder.clients.size(); i++) {
+            list.add(new Endpoint(builder.clients.get(i), builder.models.get(i)));
+        }
+        this.endpoints = Collections.unmodifiableList(list);
+        this.strategy = builder.strategy;
+        this.maxFailures = builder.maxFailures;
+        this.ejectionMillis = builder.ejectionMillis;
+        this.slowStartMillis = builder.slowStartMillis;
+        this.decayMillis = builder.decayMillis;
+    }
+
+    // ------ requests ------
+
+    /** {@link AiClient#generate(AiRequest, boolean)} on the endpoint with the lowest cost */
+    public AiResponse generate(AiRequest aiRequest, boolean logDetails) {
+        Endpoint endpoint = select();
+        long start = endpoint.onStart();
+        boolean success = false;
+        try {
+            AiResponse aiResponse = endpoint.client.generate(aiRequest.withModel(endpoint.model), logDetails);
+            // null if the connection failed
+            success = aiResponse != null;
+            return aiResponse;
+        } catch (RuntimeException e) {
+            success = !isFailure(e);
+            throw e;
+        } finally {
+            endpoint.onEnd(start, success);
+        }
+    }
+
+    /** {@link AiClient#generateAsync(AiRequest, boolean)} on the endpoint with the lowest cost */
+    public CompletableFuture<AiResponse> generateAsync(AiRequest aiRequest, boolean logDetails) {
+        final Endpoint endpoint = select();
+        final long start = endpoint.onStart();
+        CompletableFuture<AiResponse> future = endpoint.client.generateAsync(aiRequest.withModel(endpoint.model), logDetails);
+        future.whenComplete((aiResponse, throwable) ->
+                endpoint.onEnd(start, throwable == null ? aiResponse != null : !isFailure(throwable)));
+        return future;
+    }
+
+    /**
+     * {@link AiClient#streamChat(AiRequest, boolean, StreamingResponseHandler)} on the endpoint with the lowest cost,
+     * the latency is measured until the first chunk
+     */
+    public StreamHandle streamChat(AiRequest aiRequest, boolean logDetails, StreamingResponseHandler handler) {
+        Endpoint endpoint = select();
+        StreamTracker tracker = new StreamTracker(endpoint, handler);
+        try {
+            return endpoint.client.streamChat(aiRequest.withModel(endpoint.model), logDetails, tracker);
+        } finally {
+            tracker.end(null);
+        }
+    }
+
+    /** {@link AiClient#streamChatAsync(AiRequest, boolean, StreamingResponseHandler)} on the endpoint with the lowest cost */
+    public CompletableFuture<String> streamChatAsync(AiRequest aiRequest, boolean logDetails, StreamingResponseHandler handler) {
+        Endpoint endpoint = select();
+        final StreamTracker tracker = new StreamTracker(endpoint, handler);
+        CompletableFuture<String> future = endpoint.client.streamChatAsync(aiRequest.withModel(endpoint.model),
+                logDetails, tracker);
+        future.whenComplete((result, throwable) -> tracker.end(throwable));
+        return future;
+    }
+
+    /** overload or unreachable endpoint, client errors like HTTP 400 do not count */
+    private static boolean isFailure(Throwable t) {
+        Throwable cause = t.getCause() != null && !(t instanceof AiHttpException) ? t.getCause() : t;
+        if (cause instanceof AiHttpException) {
+            return RetryReason.ofStatus(((AiHttpException) cause).getStatusCode()) != null;
+        }
+        return !(cause instanceof CancellationException);
+    }
+
+    /** records the latency until the first chunk and the outcome of a stream */
+    private static class StreamTracker implements StreamingResponseHandler {
+        private final Endpoint endpoint;
+        private final StreamingResponseHandler handler;
+        private final long start;
+        private final AtomicBoolean firstChunk = new AtomicBoolean();
+        private final AtomicBoolean ended = new AtomicBoolean();
+        private volatile Exception error;
+
+        StreamTracker(Endpoint endpoint, StreamingResponseHandler handler) {
+            this.endpoint = endpoint;
+            this.handler = handler;
+            this.start = endpoint.onStart();
+        }
+
+        @Override
+        public void onMessage(String chunk) {
+            if (firstChunk.compareAndSet(false, true)) {
+                endpoint.onLatency(System.nanoTime() - start);
+            }
+            handler.onMessage(chunk);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            error = e;
+            handler.onError(e);
+        }
+
+        @Override
+        public void onComplete(String accumulatedChunks) {
+            handler.onComplete(accumulatedChunks);
+        }
+
+        @Override
+        public void onServedBy(int hop, ProviderModel servedBy) {
+            handler.onServedBy(hop, servedBy);
+        }
+
+        @Override
+        public void onUsage(AiResponse.Usage usage) {
+            handler.onUsage(usage);
+        }
+
+        @Override
+        public void onStart(StreamHandle handle) {
+            handler.onStart(handle);
+        }
+
+        void end(Throwable throwable) {
+            if (!ended.compareAndSet(false, true)) return;
+            Throwable failure = error != null ? error : throwable;
+            boolean success = failure == null || !isFailure(failure);
+            endpoint.onEnd(firstChunk.get() ? -1 : start, success);
+        }
+    }
+
+    // ------ selection ------
+
+    /** power of two choices among the endpoints that are not ejected */
+    Endpoint select() {
+        long now = System.currentTimeMillis();
+        List<Endpoint> available = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.isEjected(now)) available.add(endpoint);
+        }
+        if (available.isEmpty()) {
+            // all ejected: the one that comes back first, better than failing all requests
+            Endpoint first = endpoints.get(0);
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint.getEjectedUntil() < first.getEjectedUntil()) first = endpoint;
+            }
+            LOGGER.warn("All endpoints are ejected, using " + first);
+            return first;
+        }
+        if (available.size() == 1) {
+            return available.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(available.size());
+        int j = random.nextInt(available.size() - 1);
+        if (j >= i) j++;
+        Endpoint a = available.get(i);
+        Endpoint b = available.get(j);
+        return a.cost(now) <= b.cost(now) ? a : b;
+    }
+
+    // ------ endpoint ------
+
+    /** An endpoint of the pool with its load, latency and health */
+    public class Endpoint {
+        private final AiClient client;
+        private final String model;
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        // ------ guarded by this ------
+        private double ewmaNanos;
+        private long lastSampleMillis;
+        private int consecutiveFailures;
+        private int ejections;
+        private long ejectedUntil;
+        private long recoveredAt;
+        private long requests;
+        private long failures;
+
+        private Endpoint(AiClient client, String model) {
+            this.client = client;
+            this.model = model;
+        }
+
+        long onStart() {
+            outstanding.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        /** @param startNanos start to take the latency from, -1 if it was already recorded */
+        void onEnd(long startNanos, boolean success) {
+            outstanding.decrementAndGet();
+            if (success && startNanos >= 0) {
+                onLatency(System.nanoTime() - startNanos);
+            }
+            synchronized (this) {
+                requests++;
+                if (success) {
+                    consecutiveFailures = 0;
+                    ejections = 0;
+                    return;
+                }
+                failures++;
+                consecutiveFailures++;
+                if (consecutiveFailures >= maxFailures) {
+                    eject();
+                }
+            }
+        }
+
+        private void eject() {
+            long now = System.currentTimeMillis();
+            if (ejectedUntil > now) return;
+            long millis = Math.min(MAX_EJECTION_MILLIS, ejectionMillis << Math.min(ejections, 20));
+            ejections++;
+            consecutiveFailures = 0;
+            ejectedUntil = now + millis;
+            recoveredAt = ejectedUntil;
+            LOGGER.warn("Endpoint " + this + " ejected for " + millis + " ms");
+        }
+
+        /** peak EWMA: a higher latency is taken at once, a lower one decays in */
+        synchronized void onLatency(long nanos) {
+            long now = System.currentTimeMillis();
+            if (ewmaNanos == 0 || nanos > ewmaNanos) {
+                ewmaNanos = nanos;
+            } else {
+                double w = Math.exp(-(double) (now - lastSampleMillis) / decayMillis);
+                ewmaNanos = ewmaNanos * w + nanos * (1 - w);
+            }
+            lastSampleMillis = now;
+        }
+
+        synchronized boolean isEjected(long now) {
+            return ejectedUntil > now;
+        }
+
+        synchronized long getEjectedUntil() {return ejectedUntil;}
+
+        /** @return weight between 0.1 and 1, growing during the slow start after an ejection */
+        synchronized double getWeight(long now) {
+            if (recoveredAt == 0 || slowStartMillis <= 0 || now >= recoveredAt + slowStartMillis) {
+                return 1.0;
+            }
+            return Math.max(MIN_WEIGHT, (double) (now - recoveredAt) / slowStartMillis);
+        }
+
+        double cost(long now) {
+            double load = outstanding.get() + 1;
+            if (strategy == Strategy.PEAK_EWMA) {
+                // an endpoint without samples looks like 1 ms, so it gets probed
+                load *= Math.max(getEwmaNanos(), TimeUnit.MILLISECONDS.toNanos(1));
+            }
+            return load / getWeight(now);
+        }
+
+        synchronized double getEwmaNanos() {return ewmaNanos;}
+
+        public AiClient getClient() {return client;}
+
+        /** @return model name at this endpoint, null to keep the model of the request */
+        public String getModel() {return model;}
+
+        /** @return requests in flight */
+        public int getOutstanding() {return outstanding.get();}
+
+        /** @return moving average of the latency in milliseconds */
+        public double getEwmaLatencyMillis() {return getEwmaNanos() / 1e6;}
+
+        public boolean isEjected() {return isEjected(System.currentTimeMillis());}
+
+        public double getWeight() {return getWeight(System.currentTimeMillis());}
+
+        public synchronized long getRequests() {return requests;}
+
+        public synchronized long getFailures() {return failures;}
+
+        @Override
+        public String toString() {
+            return client.getApiURL() + (model != null ? " (" + model + ")" : "");
+        }
+    }
+
+    public List<Endpoint> getEndpoints() {return endpoints;}
+
+    public Strategy getStrategy() {return strategy;}
+
+    // The builder class
+    public static class Builder {
+        private final List<AiClient> clients = new ArrayList<>();
+        private final List<String> models = new ArrayList<>();
+        private Strategy strategy = Strategy.PEAK_EWMA;
+        private int maxFailures = 3;
+        private long ejectionMillis = 30_000;
+        private long slowStartMillis = 30_000;
+        private long decayMillis = 10_000;
+
+        /** endpoint that serves the model of the request under the same name */
+        public Builder endpoint(AiClient client) {
+            return endpoint(client, null);
+        }
+
+        /** endpoint that serves the model under the given name */
+        public Builder endpoint(AiClient client, String model) {
+            if (client == null) {
+                throw new IllegalArgumentException("client is required.");
+            }
+            clients.add(client);
+            models.add(model);
+            return this;
+        }
+
+        /** endpoint of a provider/model key of aiapis.json, with the rate_limit of the provider */
+        public Builder endpoint(ProviderModel providerModel) {
+            AiApi api = ConfigManager.getApiByProvider(providerModel.getProvider());
+            if (api == null) {
+                throw new IllegalArgumentException("Provider not found in aiapis.json: " + providerModel.getProvider());
+            }
+            String model = api.getModel(providerModel.getModelName());
+            if (model == null) {
+                throw new IllegalArgumentException("Model not found in aiapis.json: " + providerModel);
+            }
+            AiClient client = new AiClient.Builder()
+                    .apiURL(api.getApiUrl())
+                    .apiKey(api.getApiKeyValue())
+                    .rateLimiter(RateLimiter.forApi(api))
+                    .build();
+            return endpoint(client, model);
+        }
+
+        /** default PEAK_EWMA */
+        public Builder strategy(Strategy strategy) {
+            this.strategy = strategy;
+            return this;
+        }
+
+        /** eject an endpoint after maxFailures consecutive failures (default 3) for the given time (default 30 s) */
+        public Builder ejection(int maxFailures, long ejectionTime, TimeUnit unit) {
+            this.maxFailures = maxFailures;
+            this.ejectionMillis = unit.toMillis(ejectionTime);
+            return this;
+        }
+
+        /** time in which the weight of a returning endpoint grows from 10 % to 100 % (default 30 s), 0 for none */
+        public Builder slowStart(long slowStart, TimeUnit unit) {
+            this.slowStartMillis = unit.toMillis(slowStart);
+            return this;
+        }
+
+        /** PEAK_EWMA: time constant in which lower latencies decay in (default 10 s) */
+        public Builder decay(long decay, TimeUnit unit) {
+            this.decayMillis = Math.max(1, unit.toMillis(decay));
+            return this;
+        }
+
+        public BalancedAiClient build() {
+            if (clients.isEmpty()) {
+                throw new IllegalArgumentException("At least one endpoint is required.");
+            }
+            if (maxFailures < 1 || ejectionMillis < 0 || slowStartMillis < 0) {
+                throw new IllegalArgumentException("Invalid ejection or slow start settings.");
+            }
+            return new BalancedAiClient(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BalancedAiClient{" +
+                "strategy=" + strategy +
+                ", endpoints=" + endpoints +
+                '}';
+    }
+}
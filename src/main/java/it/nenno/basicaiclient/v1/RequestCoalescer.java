@@ -0,0 +1,337 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import it.nenno.basicaiclient.v1.config.ProviderModel;
+import it.nenno.basicaiclient.v1.http.AbortSignal;
+import it.nenno.basicaiclient.v1.models.AiRequestBase;
+import it.nenno.basicaiclient.v1.models.AiResponse;
+import it.nenno.basicaiclient.v1.models.StreamingResponseHandler;
+import it.nenno.basicaiclient.v1.utils.JsonCodecs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Single-flight coalescing of identical requests, enabled with AiClient.Builder.coalescing().
+ * <p>
+ * Requests with the same URL and the same serialized body share one call while it is in flight:
+ * the first caller sends the request, the others wait for its response and get the same
+ * AiResponse instance (or the same exception). A caller joining a stream first gets the chunks
+ * received so far and then the live ones, on its own thread: the thread reading the stream only records
+ * the events and passes them to the handler of its caller, so a slow joiner does not hold up the others.
+ * <p>
+ * The shared call is aborted only when all its callers have cancelled. A cancelled caller gets no more
+ * events, but if its thread reads the shared stream it keeps reading it for the callers still joined
+ * and returns only when the stream has ended or all of them have cancelled too.
+ */
+public class RequestCoalescer {
+
+    // the map entries are sorted, so equal requests give equal bytes
+    private static final ObjectWriter CANONICAL_WRITER =
+            JsonCodecs.requestWriter().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /** @return SHA-256 (hex) of the URL and the canonical JSON of the request body */
+    public static String keyOf(String apiURL, AiRequestBase body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(apiURL.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            try (OutputStream out = new DigestOutputStream(NULL_STREAM, digest)) {
+                CANONICAL_WRITER.writeValue(out, body);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final OutputStream NULL_STREAM = new OutputStream() {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+    };
+
+    /**
+     * Run the call or join the one in flight with the same key
+     * @param abortSignal of the caller
+     * @param call gets the signal of the shared call
+     * @return the response or null if the caller was aborted
+     */
+    AiResponse generate(String key, AbortSignal abortSignal, Function<AbortSignal, AiResponse> call) {
+        while (true) {
+            Flight flight = new Flight();
+            Flight existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                calls.incrementAndGet();
+                leaveOnAbort(flight, abortSignal, null);
+                try {
+                    AiResponse aiResponse = call.apply(flight.abortSignal);
+                    finish(key, flight);
+                    flight.result.complete(aiResponse);
+                    return aiResponse;
+                } catch (RuntimeException | Error e) {
+                    finish(key, flight);
+                    flight.result.completeExceptionally(e);
+                    throw e;
+                }
+            }
+            if (existing.join()) {
+                coalesced.incrementAndGet();
+                return await(existing, abortSignal);
+            }
+            // completed in the meantime
+            flights.remove(key, existing);
+        }
+    }
+
+    /**
+     * Stream or join the stream in flight with the same key, returns when the stream has ended
+     * @param abortSignal of the caller
+     * @param call streams with the signal of the shared call into the handler
+     */
+    void stream(String key, AbortSignal abortSignal, StreamingResponseHandler handler,
+                BiConsumer<AbortSignal, StreamingResponseHandler> call) {
+        while (true) {
+            Flight flight = new Flight();
+            Flight existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                calls.incrementAndGet();
+                flight.leader = handler;
+                leaveOnAbort(flight, abortSignal, handler);
+                try {
+                    call.accept(flight.abortSignal, new Broadcast(flight));
+                } finally {
+                    finish(key, flight);
+                    flight.result.complete(null);
+                }
+                return;
+            }
+            if (existing.join()) {
+                coalesced.incrementAndGet();
+                follow(existing, abortSignal, handler);
+                return;
+            }
+            flights.remove(key, existing);
+        }
+    }
+
+    private void finish(String key, Flight flight) {
+        synchronized (flight) {
+            flight.done = true;
+            // the joiners of a stream return
+            flight.notifyAll();
+        }
+        flights.remove(key, flight);
+    }
+
+    /** wait for the outcome of the flight or the abort of the caller */
+    private static AiResponse await(final Flight flight, AbortSignal abortSignal) {
+        final CompletableFuture<AiResponse> outcome = new CompletableFuture<>();
+        flight.result.whenComplete((aiResponse, throwable) -> {
+            if (throwable != null) outcome.completeExceptionally(throwable);
+            else outcome.complete(aiResponse);
+        });
+        try {
+            abortSignal.onAbort(() -> {
+                flight.leave(null);
+                outcome.complete(null);
+            });
+        } catch (InterruptedIOException e) {
+            // aborted before, the action has been run
+        }
+        try {
+            return outcome.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            flight.leave(null);
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Pass the events of the stream in flight to the handler of a joiner, on the thread of the joiner,
+     * until the stream has ended or the joiner is aborted
+     */
+    private static void follow(Flight flight, AbortSignal abortSignal, StreamingResponseHandler handler) {
+        leaveOnAbort(flight, abortSignal, null);
+        int next = 0;
+        try {
+            while (true) {
+                List<Consumer<StreamingResponseHandler>> pending;
+                synchronized (flight) {
+                    while (next == flight.events.size() && !flight.done && !abortSignal.isAborted()) {
+                        flight.wait();
+                    }
+                    if (abortSignal.isAborted() || next == flight.events.size()) return;
+                    // copied under the lock, passed on outside of it
+                    pending = new ArrayList<>(flight.events.subList(next, flight.events.size()));
+                    next = flight.events.size();
+                }
+                for (Consumer<StreamingResponseHandler> event : pending) {
+                    event.accept(handler);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            flight.leave(null);
+        }
+    }
+
+    /** the caller of the shared call leaves it when aborted */
+    private static void leaveOnAbort(final Flight flight, AbortSignal abortSignal,
+                                     final StreamingResponseHandler handler) {
+        try {
+            abortSignal.onAbort(() -> flight.leave(handler));
+        } catch (InterruptedIOException e) {
+            // aborted before, the action has been run
+        }
+    }
+
+    /** @return calls sent to the provider */
+    public long getCalls() {return calls.get();}
+
+    /** @return requests served by the call of another caller */
+    public long getCoalesced() {return coalesced.get();}
+
+    /** @return calls in flight */
+    public int getInFlight() {return flights.size();}
+
+    // ------ flight ------
+
+    private static class Flight {
+        final AbortSignal abortSignal = new AbortSignal();
+        final CompletableFuture<AiResponse> result = new CompletableFuture<>();
+        // stream: the events so far, followed by the joiners, and the handler of the caller reading it
+        final List<Consumer<StreamingResponseHandler>> events = new ArrayList<>();
+        StreamingResponseHandler leader;
+        int participants = 1;
+        boolean done;
+
+        /** @return false if the flight has already ended */
+        synchronized boolean join() {
+            if (done) return false;
+            participants++;
+            return true;
+        }
+
+        /** @param handler of the caller reading the stream, null for the others */
+        void leave(StreamingResponseHandler handler) {
+            boolean abort;
+            synchronized (this) {
+                if (handler != null && handler == leader) leader = null;
+                abort = --participants == 0 && !done;
+                // a waiting joiner sees the abort of its caller
+                notifyAll();
+            }
+            if (abort) abortSignal.abort();
+        }
+
+        /**
+         * Record the event for the joiners
+         * @return handler of the caller reading the stream, null if it has cancelled
+         */
+        synchronized StreamingResponseHandler add(Consumer<StreamingResponseHandler> event, boolean last) {
+            events.add(event);
+            if (last) done = true;
+            notifyAll();
+            return leader;
+        }
+    }
+
+    /**
+     * Passes the stream of the shared call to the handler of its caller and records it for the joiners,
+     * the handlers are called outside of the lock of the flight
+     */
+    private static class Broadcast implements StreamingResponseHandler {
+        private final Flight flight;
+
+        Broadcast(Flight flight) {
+            this.flight = flight;
+        }
+
+        @Override
+        public void onServedBy(int hop, ProviderModel servedBy) {
+            StreamingResponseHandler leader = flight.add(handler -> handler.onServedBy(hop, servedBy), false);
+            if (leader != null) leader.onServedBy(hop, servedBy);
+        }
+
+        @Override
+        public void onMessage(String chunk) {
+            StreamingResponseHandler leader = flight.add(handler -> handler.onMessage(chunk), false);
+            if (leader != null) leader.onMessage(chunk);
+        }
+
+        @Override
+        public void onUsage(AiResponse.Usage usage) {
+            StreamingResponseHandler leader = flight.add(handler -> handler.onUsage(usage), false);
+            if (leader != null) leader.onUsage(usage);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            StreamingResponseHandler leader = flight.add(handler -> handler.onError(e), true);
+            if (leader != null) leader.onError(e);
+        }
+
+        @Override
+        public void onComplete(String accumulatedChunks) {
+            StreamingResponseHandler leader = flight.add(handler -> handler.onComplete(accumulatedChunks), true);
+            if (leader != null) leader.onComplete(accumulatedChunks);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RequestCoalescer{" +
+                "calls=" + calls +
+                ", coalesced=" + coalesced +
+                ", inFlight=" + flights.size() +
+                '}';
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.nenno.basicaiclient.v1;
+
+import it.nenno.basicaiclient.v1.http.AbortSignal;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the first byte, idle and deadline timeouts of one request and aborts it when one expires.
+ * <p>
+ * One shared timer thread serves all requests. The idle timeout does not reschedule per read:
+ * a read only records the time, the check reschedules itself to the end of the current idle period.
+ */
+final class RequestWatchdog {
+
+    private static class TimerHolder {
+        static final ScheduledThreadPoolExecutor TIMER = newTimer();
+
+        private static ScheduledThreadPoolExecutor newTimer() {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                    AsyncExecutors.daemonThreadFactory("basicaiclient-timeouts-"));
+            timer.setRemoveOnCancelPolicy(true);
+            return timer;
+        }
+    }
+
+    private final Timeouts timeouts;
+    private final AbortSignal abortSignal;
+    private volatile long lastActivityNanos;
+    private volatile AiTimeoutException.Kind expired;
+
+    // guarded by this
+    private ScheduledFuture<?> firstByteTask;
+    private ScheduledFuture<?> idleTask;
+    private ScheduledFuture<?> deadlineTask;
+    private boolean finished;
+
+    private RequestWatchdog(Timeouts timeouts, AbortSignal abortSignal) {
+        this.timeouts = timeouts;
+        this.abortSignal = abortSignal;
+        this.lastActivityNanos = System.nanoTime();
+    }
+
+    /** Start watching, @return null if none of the timeouts is set */
+    static RequestWatchdog start(Timeouts timeouts, AbortSignal abortSignal) {
+        if (!timeouts.isWatched()) {
+            return null;
+        }
+        RequestWatchdog watchdog = new RequestWatchdog(timeouts, abortSignal);
+        synchronized (watchdog) {
+            if (timeouts.getDeadlineMillis() > 0) {
+                watchdog.deadlineTask = schedule(() -> watchdog.expire(AiTimeoutException.Kind.DEADLINE),
+                        timeouts.getDeadlineMillis());
+            }
+            if (timeouts.getFirstByteTimeoutMillis() > 0) {
+                watchdog.firstByteTask = schedule(() -> watchdog.expire(AiTimeoutException.Kind.FIRST_BYTE),
+                        timeouts.getFirstByteTimeoutMillis());
+            }
+        }
+        return watchdog;
+    }
+
+    private static ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return TimerHolder.TIMER.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** The response headers arrived, from now on the idle timeout applies */
+    synchronized void onFirstByte() {
+        if (finished) return;
+        cancel(firstByteTask);
+        firstByteTask = null;
+        lastActivityNanos = System.nanoTime();
+        if (timeouts.getIdleTimeoutMillis() > 0) {
+            idleTask = schedule(this::checkIdle, timeouts.getIdleTimeoutMillis());
+        }
+    }
+
+    /** @return the body that records each read for the idle timeout */
+    InputStream watch(InputStream body) {
+        if (timeouts.getIdleTimeoutMillis() <= 0) {
+            return body;
+        }
+        return new FilterInputStream(body) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                lastActivityNanos = System.nanoTime();
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                lastActivityNanos = System.nanoTime();
+                return n;
+            }
+        };
+    }
+
+    /** Bytes of an async body arrived, for the idle timeout */
+    void onActivity() {
+        lastActivityNanos = System.nanoTime();
+    }
+
+    private void checkIdle() {
+        long idleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActivityNanos);
+        long remaining = timeouts.getIdleTimeoutMillis() - idleMillis;
+        if (remaining <= 0) {
+            expire(AiTimeoutException.Kind.IDLE);
+            return;
+        }
+        synchronized (this) {
+            if (!finished) {
+                idleTask = schedule(this::checkIdle, remaining);
+            }
+        }
+    }
+
+    private void expire(AiTimeoutException.Kind kind) {
+        synchronized (this) {
+            if (finished || expired != null) return;
+            expired = kind;
+        }
+        abortSignal.abort();
+    }
+
+    /** The request is done, stop all timers */
+    synchronized void finish() {
+        finished = true;
+        cancel(firstByteTask);
+        cancel(idleTask);
+        cancel(deadlineTask);
+    }
+
+    private static void cancel(ScheduledFuture<?> task) {
+        if (task != null) task.cancel(false);
+    }
+
+    /** @return true if a timeout expired and the request was aborted */
+    boolean isExpired() {return expired != null;}
+
+    /** @return exception of the expired timeout */
+    AiTimeoutException newException(Throwable cause) {
+        AiTimeoutException.Kind kind = expired;
+        long timeoutMillis;
+        if (kind == AiTimeoutException.Kind.DEADLINE) {
+            timeoutMillis = timeouts.getDeadlineMillis();
+        } else if (kind == AiTimeoutException.Kind.FIRST_BYTE) {
+            timeoutMillis = timeouts.getFirstByteTimeoutMillis();
+        } else {
+            timeoutMillis = timeouts.getIdleTimeoutMillis();
+        }
+        return new AiTimeoutException(kind, timeoutMillis, cause);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dispatch mode of streamChat() and streamChatAsync(), set with AiClient.Builder.streamDispatch().
+ * <p>
+ * The thread that reads the socket puts the chunks into a bounded ring buffer of each stream, which is
+ * preallocated with the capacity; a task on the executor drains it into the StreamingResponseHandler.
+ * The default executor is AsyncExecutors.getDispatchExecutor(), not the async executor of the client,
+ * whose threads may all be reading sockets while the drain tasks wait behind them.
+ * A slow handler (websocket write, database insert) then no longer stalls the socket reads. When the
+ * buffer is full the overflow policy decides. The counters are shared by all streams of the client.
+ */
+public class StreamDispatch {
+
+    /** What the reading thread does with a chunk when the ring buffer of the stream is full */
+    public enum OverflowPolicy {
+        /** wait for a free slot, the reads stall as without dispatch mode */
+        BLOCK,
+        /** overwrite the oldest buffered chunk, the handler misses it */
+        DROP_OLDEST,
+        /** append the chunk to the newest buffered one, the handler gets fewer and longer chunks */
+        COALESCE
+    }
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final Executor executor;
+
+    // ------ metrics ------
+    private final AtomicInteger buffered = new AtomicInteger();
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+
+    private StreamDispatch(Builder builder) {
+        this.capacity = builder.capacity;
+        this.overflowPolicy = builder.overflowPolicy;
+        this.executor = builder.executor != null ? builder.executor : AsyncExecutors.getDispatchExecutor();
+    }
+
+    public int getCapacity() {return capacity;}
+
+    public OverflowPolicy getOverflowPolicy() {return overflowPolicy;}
+
+    /** @return executor of the handler calls */
+    public Executor getExecutor() {return executor;}
+
+    public StreamDispatchStats getStats() {
+        return new StreamDispatchStats(buffered.get(), dispatched.get(), dropped.get(), coalesced.get(),
+                blocked.get());
+    }
+
+    // ------ counted by the StreamDispatcher of each stream ------
+
+    void onBuffered(int delta) {
+        buffered.addAndGet(delta);
+    }
+
+    void onDispatched() {
+        dispatched.incrementAndGet();
+    }
+
+    void onDropped() {
+        dropped.incrementAndGet();
+    }
+
+    void onCoalesced() {
+        coalesced.incrementAndGet();
+    }
+
+    void onBlocked() {
+        blocked.incrementAndGet();
+    }
+
+    // The builder class
+    public static class Builder {
+        private int capacity = 256;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        private Executor executor;
+
+        /** chunks buffered per stream (default 256) */
+        public Builder capacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /** default BLOCK */
+        public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /** executor that calls the handlers (default AsyncExecutors.getDispatchExecutor()) */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public StreamDispatch build() {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("capacity must be at least 1.");
+            }
+            if (overflowPolicy == null) {
+                throw new IllegalArgumentException("overflowPolicy is required.");
+            }
+            return new StreamDispatch(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StreamDispatch{" +
+                "capacity=" + capacity +
+                ", overflowPolicy=" + overflowPolicy +
+                '}';
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1;
+
+/**
+ * Snapshot of the metrics of a {@link StreamDispatch}
+ */
+public class StreamDispatchStats {
+    private final int buffered;
+    private final long dispatched;
+    private final long dropped;
+    private final long coalesced;
+    private final long blocked;
+
+    StreamDispatchStats(int buffered, long dispatched, long dropped, long coalesced, long blocked) {
+        this.buffered = buffered;
+        this.dispatched = dispatched;
+        this.dropped = dropped;
+        this.coalesced = coalesced;
+        this.blocked = blocked;
+    }
+
+    /** chunks in the ring buffers of all streams, not yet passed to the handler */
+    public int getBuffered() {return buffered;}
+
+    /** chunks passed to the handlers */
+    public long getDispatched() {return dispatched;}
+
+    /** chunks overwritten with DROP_OLDEST */
+    public long getDropped() {return dropped;}
+
+    /** chunks appended to a buffered one with COALESCE */
+    public long getCoalesced() {return coalesced;}
+
+    /** times a reading thread waited for a free slot with BLOCK */
+    public long getBlocked() {return blocked;}
+
+    @Override
+    public String toString() {
+        return "StreamDispatchStats{" +
+                "buffered=" + buffered +
+                ", dispatched=" + dispatched +
+                ", dropped=" + dropped +
+                ", coalesced=" + coalesced +
+                ", blocked=" + blocked +
+                '}';
+    }
+}
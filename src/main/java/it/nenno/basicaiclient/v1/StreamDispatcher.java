@@ -0,0 +1,306 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1;
+
+import it.nenno.basicaiclient.v1.config.ProviderModel;
+import it.nenno.basicaiclient.v1.http.AbortSignal;
+import it.nenno.basicaiclient.v1.models.AiResponse;
+import it.nenno.basicaiclient.v1.models.StreamingResponseHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Ring buffer of one stream in the dispatch mode, see {@link StreamDispatch}.
+ * <p>
+ * The reading thread calls the handler methods of the dispatcher, which only buffer the signal; one task
+ * on the executor at a time passes them in order to the handler. onServedBy() comes first, onUsage(),
+ * onComplete() and onError() are never dropped and come after the buffered chunks.
+ */
+final class StreamDispatcher implements StreamingResponseHandler, Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamDispatcher.class);
+
+    /** how often a blocked reading thread checks the abort signal */
+    private static final long BLOCK_CHECK_MILLIS = 50;
+
+    // ------ signals in the order they are passed on ------
+    private static final int SERVED_BY = 1;
+    private static final int CHUNK = 2;
+    private static final int USAGE = 3;
+    private static final int COMPLETE = 4;
+    private static final int ERROR = 5;
+    private static final int END = 6;
+
+    private final StreamDispatch dispatch;
+    private final Executor executor;
+    private final StreamingResponseHandler handler;
+    private final AbortSignal abortSignal;
+
+    // ------ guarded by this ------
+    private final String[] ring;
+    private int head;
+    private int size;
+    private boolean servedByPending;
+    private int hop;
+    private ProviderModel servedBy;
+    private AiResponse.Usage usage;
+    private boolean completePending;
+    private String accumulatedChunks;
+    private Exception error;
+    private Runnable endAction;
+    // a drain task is submitted, and it runs
+    private boolean scheduled;
+    private boolean running;
+
+    StreamDispatcher(StreamDispatch dispatch, Executor executor, StreamingResponseHandler handler,
+                     AbortSignal abortSignal) {
+        this.dispatch = dispatch;
+        this.executor = executor;
+        this.handler = handler;
+        this.abortSignal = abortSignal;
+        this.ring = new String[dispatch.getCapacity()];
+    }
+
+    /** @return chunks buffered and not yet passed to the handler */
+    synchronized int getBuffered() {return size;}
+
+    // ------ reading thread ------
+
+    @Override
+    public void onMessage(String chunk) {
+        boolean counted = false;
+        while (true) {
+            boolean drainHere = false;
+            synchronized (this) {
+                if (size == ring.length) {
+                    StreamDispatch.OverflowPolicy policy = dispatch.getOverflowPolicy();
+                    if (policy == StreamDispatch.OverflowPolicy.DROP_OLDEST) {
+                        take();
+                        dispatch.onDropped();
+                    } else if (policy == StreamDispatch.OverflowPolicy.COALESCE) {
+                        int newest = (head + size - 1) % ring.length;
+                        ring[newest] = ring[newest] == null ? chunk : chunk == null ? ring[newest] : ring[newest] + chunk;
+                        dispatch.onCoalesced();
+                        break;
+                    } else {
+                        if (!counted) dispatch.onBlocked();
+                        counted = true;
+                        // the handler would discard the chunk of a cancelled stream anyway
+                        if (abortSignal.isAborted()) return;
+                        // without running drain task it may wait in the queue of the executor behind this thread
+                        drainHere = !running;
+                        if (!drainHere) {
+                            try {
+                                wait(BLOCK_CHECK_MILLIS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                return;
+                            }
+                        }
+                    }
+                }
+                if (size < ring.length) {
+                    ring[(head + size) % ring.length] = chunk;
+                    size++;
+                    dispatch.onBuffered(1);
+                    break;
+                }
+            }
+            if (drainHere) run();
+        }
+        schedule();
+    }
+
+    /** remove the oldest chunk, called with the lock held */
+    private String take() {
+        String chunk = ring[head];
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        size--;
+        dispatch.onBuffered(-1);
+        return chunk;
+    }
+
+    @Override
+    public void onServedBy(int hop, ProviderModel servedBy) {
+        synchronized (this) {
+            this.hop = hop;
+            this.servedBy = servedBy;
+            this.servedByPending = true;
+        }
+        schedule();
+    }
+
+    @Override
+    public void onUsage(AiResponse.Usage usage) {
+        synchronized (this) {
+            this.usage = usage;
+        }
+        schedule();
+    }
+
+    @Override
+    public void onComplete(String accumulatedChunks) {
+        synchronized (this) {
+            this.accumulatedChunks = accumulatedChunks;
+            this.completePending = true;
+        }
+        schedule();
+    }
+
+    @Override
+    public void onError(Exception e) {
+        synchronized (this) {
+            this.error = e;
+        }
+        schedule();
+    }
+
+    /**
+     * The stream has ended, no more signals follow
+     * @param action run after the last signal was passed to the handler, or null
+     */
+    void end(Runnable action) {
+        synchronized (this) {
+            endAction = action;
+        }
+        schedule();
+    }
+
+    /** Wait until all signals were passed to the handler, called after end() */
+    synchronized void awaitDelivered() {
+        while (running || scheduled || hasSignals()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void schedule() {
+        synchronized (this) {
+            if (scheduled) return;
+            scheduled = true;
+        }
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            // no thread free, the reading thread passes the signals itself
+            run();
+        }
+    }
+
+    // ------ drain task ------
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            if (running) return;
+            running = true;
+        }
+        while (true) {
+            String chunk = null;
+            int signal;
+            synchronized (this) {
+                if (servedByPending) {
+                    servedByPending = false;
+                    signal = SERVED_BY;
+                } else if (size > 0) {
+                    chunk = take();
+                    // a blocked reading thread can continue
+                    notifyAll();
+                    signal = CHUNK;
+                } else if (usage != null) {
+                    signal = USAGE;
+                } else if (completePending) {
+                    completePending = false;
+                    signal = COMPLETE;
+                } else if (error != null) {
+                    signal = ERROR;
+                } else if (endAction != null) {
+                    signal = END;
+                } else {
+                    running = false;
+                    scheduled = false;
+                    notifyAll();
+                    return;
+                }
+            }
+            deliver(signal, chunk);
+        }
+    }
+
+    private void deliver(int signal, String chunk) {
+        try {
+            switch (signal) {
+                case SERVED_BY:
+                    handler.onServedBy(hop, servedBy);
+                    break;
+                case CHUNK:
+                    dispatch.onDispatched();
+                    handler.onMessage(chunk);
+                    break;
+                case USAGE:
+                    AiResponse.Usage reported;
+                    synchronized (this) {
+                        reported = usage;
+                        usage = null;
+                    }
+                    handler.onUsage(reported);
+                    break;
+                case COMPLETE:
+                    handler.onComplete(accumulatedChunks);
+                    break;
+                case ERROR:
+                    Exception e;
+                    synchronized (this) {
+                        e = error;
+                        error = null;
+                    }
+                    handler.onError(e);
+                    break;
+                default:
+                    Runnable action;
+                    synchronized (this) {
+                        action = endAction;
+                        endAction = null;
+                    }
+                    action.run();
+            }
+        } catch (RuntimeException e) {
+            // the reading thread is not affected
+            LOGGER.warn("Stream handler failed: " + e.getMessage(), e);
+        }
+    }
+
+    private boolean hasSignals() {
+        return servedByPending || size > 0 || usage != null || completePending || error != null || endAction != null;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamDispatcher{" +
+                "buffered=" + getBuffered() +
+                ", capacity=" + ring.length +
+                '}';
+    }
+}
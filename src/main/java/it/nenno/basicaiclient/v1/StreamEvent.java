@@ -0,0 +1,87 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1;
+
+import it.nenno.basicaiclient.v1.models.AiResponse;
+import it.nenno.basicaiclient.v1.models.StreamDeltaParser;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One event of a streamed answer: a chunk of text or, as last event, the completion
+ * with the whole text, the finish reason, the tool calls and the usage if the provider sent it.
+ */
+public class StreamEvent {
+
+    public enum Type {
+        /** a chunk of the answer */
+        CONTENT,
+        /** the end of the answer */
+        COMPLETE
+    }
+
+    private final Type type;
+    private final String content;
+    private final String finishReason;
+    private final List<StreamDeltaParser.ToolCall> toolCalls;
+    private final AiResponse.Usage usage;
+
+    private StreamEvent(Type type, String content, String finishReason, List<StreamDeltaParser.ToolCall> toolCalls,
+                        AiResponse.Usage usage) {
+        this.type = type;
+        this.content = content;
+        this.finishReason = finishReason;
+        this.toolCalls = toolCalls;
+        this.usage = usage;
+    }
+
+    static StreamEvent content(String chunk) {
+        return new StreamEvent(Type.CONTENT, chunk, null, Collections.<StreamDeltaParser.ToolCall>emptyList(), null);
+    }
+
+    static StreamEvent complete(String accumulated, String finishReason, List<StreamDeltaParser.ToolCall> toolCalls,
+                                AiResponse.Usage usage) {
+        return new StreamEvent(Type.COMPLETE, accumulated, finishReason, toolCalls, usage);
+    }
+
+    public Type getType() {return type;}
+
+    public boolean isComplete() {return type == Type.COMPLETE;}
+
+    /** @return the chunk of a CONTENT event, the whole answer of the COMPLETE event */
+    public String getContent() {return content;}
+
+    /** @return finish reason of the COMPLETE event, null if the stream ended with "[DONE]" only */
+    public String getFinishReason() {return finishReason;}
+
+    /** @return tool calls of the COMPLETE event, empty for CONTENT events */
+    public List<StreamDeltaParser.ToolCall> getToolCalls() {return toolCalls;}
+
+    /** @return usage of the COMPLETE event if sent by the provider, else null */
+    public AiResponse.Usage getUsage() {return usage;}
+
+    @Override
+    public String toString() {
+        return "StreamEvent{" +
+                "type=" + type +
+                ", content='" + content + '\'' +
+                (finishReason != null ? ", finishReason='" + finishReason + '\'' : "") +
+                '}';
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1;
+
+import it.nenno.basicaiclient.v1.http.AbortSignal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Pull-based iterator over the events of a streamed answer, returned by AiClient.streamIterator().
+ * <p>
+ * The request is sent by the first hasNext() and the response is read only as far as the events are
+ * pulled, so a slow consumer slows down the socket reads instead of filling a queue. The last event
+ * is the COMPLETE event. close() aborts the connection of a stream that has not ended, also from
+ * another thread; an iterator that is not read to the end must be closed. Errors are thrown by
+ * hasNext() as AiHttpException, AiTimeoutException or UncheckedIOException.
+ * <p>
+ * The idle timeout of the request also covers the time between two pulls.
+ */
+public class StreamEventIterator implements Iterator<StreamEvent>, AutoCloseable {
+
+    private final AbortSignal abortSignal;
+    private final StreamSource.Opener opener;
+    private StreamSource source;
+    private StreamEvent next;
+    private volatile boolean ended;
+    private boolean closed;
+
+    StreamEventIterator(AbortSignal abortSignal, StreamSource.Opener opener) {
+        this.abortSignal = abortSignal;
+        this.opener = opener;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) return true;
+        if (ended) return false;
+        try {
+            StreamSource opened = source();
+            next = opened == null ? null : opened.next();
+        } catch (IOException e) {
+            end();
+            if (abortSignal.isAborted()) return false;
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            end();
+            throw e;
+        }
+        if (next == null || next.isComplete()) {
+            // the connection is given back as soon as the answer is complete
+            end();
+        }
+        return next != null;
+    }
+
+    @Override
+    public StreamEvent next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        StreamEvent event = next;
+        next = null;
+        return event;
+    }
+
+    /** @return true if the stream was closed before its end */
+    public boolean isAborted() {return abortSignal.isAborted();}
+
+    @Override
+    public void close() {
+        if (!ended) {
+            // unblocks a reading thread, which then ends the stream
+            abortSignal.abort();
+        }
+        end();
+    }
+
+    private synchronized StreamSource source() throws IOException {
+        if (source == null && !closed) {
+            source = opener.open(abortSignal);
+        }
+        return closed ? null : source;
+    }
+
+    private synchronized void end() {
+        ended = true;
+        if (!closed) {
+            closed = true;
+            if (source != null) source.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StreamEventIterator{" +
+                "ended=" + ended +
+                ", aborted=" + abortSignal.isAborted() +
+                '}';
+    }
+}
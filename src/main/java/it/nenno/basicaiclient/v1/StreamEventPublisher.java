@@ -0,0 +1,239 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1;
+
+import it.nenno.basicaiclient.v1.http.AbortSignal;
+import it.nenno.basicaiclient.v1.http.AsyncBody;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reactive Streams publisher of the events of a streamed answer, returned by AiClient.publisher().
+ * <p>
+ * Each subscriber sends its own request when it requests the first event. The events are emitted by a
+ * task on the async executor of the client that only runs while the subscriber has demand: without demand
+ * no thread is held and no more bytes are read from the connection. If the transport offers an async body
+ * (Http2Transport on Java 11 or later) no thread waits for the bytes either, so many streams share a small
+ * executor; with the other transports the task reads the body with blocking reads while there is demand.
+ * Sending the request until the response headers takes a thread of the executor in both cases.
+ * <p>
+ * The last event is the COMPLETE event, followed by onComplete. cancel() aborts the connection.
+ * Errors are signalled to onError as AiHttpException, AiTimeoutException or IOException.
+ */
+public class StreamEventPublisher implements Publisher<StreamEvent> {
+
+    private final Executor executor;
+    private final StreamSource.Opener opener;
+
+    StreamEventPublisher(Executor executor, StreamSource.Opener opener) {
+        this.executor = executor;
+        this.opener = opener;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super StreamEvent> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("The subscriber must not be null.");
+        }
+        subscriber.onSubscribe(new StreamSubscription(subscriber));
+    }
+
+    /**
+     * All work on the stream is done by one drain task at a time, which is submitted to the executor
+     * by request(), cancel() and the arrival of bytes, and runs until nothing is left to do.
+     */
+    private final class StreamSubscription implements Subscription, AsyncBody.Receiver, Runnable {
+        private final Subscriber<? super StreamEvent> subscriber;
+        private final AbortSignal abortSignal = new AbortSignal();
+        private final AtomicLong requested = new AtomicLong();
+        // number of wake-ups of the drain task
+        private final AtomicInteger pendingWork = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+
+        // ------ bytes of the async body, from the transport ------
+        private final Queue<ByteBuffer> received = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean awaitingBytes = new AtomicBoolean();
+        private volatile boolean bodyEnded;
+        private volatile Throwable bodyError;
+
+        // ------ only used by the drain task ------
+        private StreamSource source;
+        private AsyncBody asyncBody;
+        private boolean done;
+
+        StreamSubscription(Subscriber<? super StreamEvent> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Rule 3.9: request(n) requires n > 0, not " + n);
+            } else {
+                // at most Long.MAX_VALUE, which means unbounded
+                requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            // unblocks a blocking read and stops the async body
+            abortSignal.abort();
+            schedule();
+        }
+
+        @Override
+        public void onData(ByteBuffer bytes) {
+            received.add(bytes);
+            awaitingBytes.set(false);
+            schedule();
+        }
+
+        @Override
+        public void onEnd() {
+            bodyEnded = true;
+            schedule();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            bodyError = error;
+            bodyEnded = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (pendingWork.getAndIncrement() != 0) return;
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // no drain task runs, it is safe to signal from here
+                if (!done) {
+                    finish();
+                    if (!cancelled) subscriber.onError(e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int work = 1;
+            do {
+                drain();
+                work = pendingWork.addAndGet(-work);
+            } while (work != 0);
+        }
+
+        private void drain() {
+            if (done) return;
+            if (cancelled) {
+                finish();
+                return;
+            }
+            Throwable invalid = invalidRequest;
+            if (invalid != null) {
+                abortSignal.abort();
+                finish();
+                subscriber.onError(invalid);
+                return;
+            }
+            try {
+                if (source == null) {
+                    // the request is sent on the first demand
+                    if (requested.get() == 0) return;
+                    source = opener.open(abortSignal);
+                    asyncBody = source.getAsyncBody();
+                    if (asyncBody != null) asyncBody.start(this);
+                }
+                while (requested.get() > 0 && !cancelled) {
+                    StreamEvent event = asyncBody == null ? source.next() : nextReceived();
+                    if (event == null) {
+                        // otherwise wait for more bytes
+                        if (source.isEnded()) complete();
+                        return;
+                    }
+                    if (requested.get() != Long.MAX_VALUE) requested.decrementAndGet();
+                    subscriber.onNext(event);
+                    if (event.isComplete()) {
+                        complete();
+                        return;
+                    }
+                }
+                if (cancelled) finish();
+            } catch (Exception e) {
+                boolean aborted = cancelled;
+                finish();
+                if (!aborted) subscriber.onError(source != null ? source.failure(e) : e);
+            }
+        }
+
+        /** @return next event of the received bytes, null at the end or if more bytes are needed */
+        private StreamEvent nextReceived() throws IOException {
+            while (true) {
+                StreamEvent event = source.next();
+                if (event != null || source.isEnded()) return event;
+                // the end is checked before the queue, so no bytes in front of it are missed
+                boolean ended = bodyEnded;
+                ByteBuffer bytes = received.poll();
+                if (bytes != null) {
+                    source.feed(bytes);
+                } else if (ended) {
+                    Throwable error = bodyError;
+                    if (error instanceof IOException) throw (IOException) error;
+                    if (error != null) throw new IOException(error);
+                    source.endOfInput();
+                } else {
+                    // the transport reads the next bytes only now
+                    if (awaitingBytes.compareAndSet(false, true)) asyncBody.request(1);
+                    return null;
+                }
+            }
+        }
+
+        private void complete() {
+            finish();
+            subscriber.onComplete();
+        }
+
+        private void finish() {
+            done = true;
+            received.clear();
+            if (source != null) source.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StreamEventPublisher{" +
+                "executor=" + executor +
+                '}';
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1;
+
+import it.nenno.basicaiclient.v1.http.SseFramer;
+import it.nenno.basicaiclient.v1.models.AiResponse;
+import it.nenno.basicaiclient.v1.models.AnthropicSSELineParser;
+import it.nenno.basicaiclient.v1.models.StreamDeltaParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static it.nenno.basicaiclient.v1.AiClient.CLIENT_TYPE_ANTHROPIC;
+import static it.nenno.basicaiclient.v1.AiClient.CLIENT_TYPE_OLLAMA;
+
+/**
+ * Reads the events of a streamed answer from the response body for all client types.
+ * The body is only read in next(), so the caller sets the pace. Not thread-safe.
+ * <p>
+ * Without InputStream the bytes of an async body are given with feed(), then next() returns
+ * null also when it needs more bytes, isEnded() tells the end.
+ */
+final class StreamEventReader {
+
+    private final SseFramer framer;
+    private final boolean push;
+    // OpenAI-compatible and Ollama
+    private final StreamDeltaParser deltaParser;
+    // Anthropic
+    private final AnthropicSSELineParser anthropicParser;
+
+    private final StringBuilder accumulated = new StringBuilder();
+    // COMPLETE event of a chunk that also had content
+    private StreamEvent pending;
+    private boolean ended;
+    // push mode
+    private boolean inputEnded;
+    private boolean starved;
+
+    /** @param body body to read or null to feed the bytes */
+    StreamEventReader(String clientType, InputStream body) {
+        boolean lines = CLIENT_TYPE_OLLAMA.equals(clientType);
+        this.push = body == null;
+        if (push) {
+            this.framer = SseFramer.forPush(lines);
+        } else {
+            this.framer = lines ? SseFramer.forLines(body) : new SseFramer(body);
+        }
+        if (CLIENT_TYPE_ANTHROPIC.equals(clientType)) {
+            this.deltaParser = null;
+            this.anthropicParser = new AnthropicSSELineParser();
+        } else {
+            // the push mode parses event by event
+            this.deltaParser = push ? new StreamDeltaParser(clientType) : new StreamDeltaParser(clientType, framer);
+            this.anthropicParser = null;
+        }
+    }
+
+    /** Push mode: the next bytes of the body */
+    void feed(ByteBuffer bytes) throws IOException {
+        framer.feed(bytes);
+    }
+
+    /** Push mode: the body ended */
+    void endOfInput() {
+        inputEnded = true;
+        framer.endOfInput();
+    }
+
+    /** @return true after the last event */
+    boolean isEnded() {return ended && pending == null;}
+
+    /**
+     * @return the next event, null after the COMPLETE event or if the body ended without one;
+     * in push mode also null if more bytes are needed
+     */
+    StreamEvent next() throws IOException {
+        if (pending != null) {
+            StreamEvent event = pending;
+            pending = null;
+            ended = true;
+            return event;
+        }
+        starved = false;
+        while (!ended && !starved) {
+            StreamEvent event = deltaParser != null ? nextDelta() : nextAnthropic();
+            if (event != null) return event;
+        }
+        return null;
+    }
+
+    /** @return event of the next chunk or null to continue with the following one */
+    private StreamEvent nextDelta() throws IOException {
+        if (push) return nextPushedDelta();
+        StreamDeltaParser.Delta delta = deltaParser.next();
+        if (delta == null) {
+            ended = true;
+            // stop anyway if response is [DONE] due to strange responses of Gemini
+            return deltaParser.isDoneReceived() ? complete(null, null) : null;
+        }
+        return event(delta);
+    }
+
+    private StreamEvent nextPushedDelta() throws IOException {
+        SseFramer.Event event = nextFrame();
+        if (event == null || isBlank(event)) {
+            return null;
+        }
+        if (event.isDone()) {
+            ended = true;
+            return complete(null, null);
+        }
+        return event(deltaParser.parse(event.getData(), 0, event.getDataLength()));
+    }
+
+    private StreamEvent event(StreamDeltaParser.Delta delta) {
+        AiResponse.Usage usage = null;
+        if (delta.hasUsage()) {
+            usage = usage(delta.getPromptTokens(), delta.getCompletionTokens());
+        }
+        return event(delta.getContent(), delta.getFinishReason(), usage);
+    }
+
+    private StreamEvent nextAnthropic() throws IOException {
+        SseFramer.Event event = nextFrame();
+        if (event == null) {
+            return null;
+        }
+        anthropicParser.parseData(event.getData(), 0, event.getDataLength());
+        AnthropicSSELineParser.ParsingResult result = anthropicParser.getResult();
+        String content = result.getContent();
+        // the events without text (message_start, ping, ...) are not passed on
+        return event(content == null || content.isEmpty() ? null : content, result.getStopReason(),
+                usage(result.getInputTokens(), result.getOutputTokens()));
+    }
+
+    /** @return next event of the framer, null at the end or if the fed bytes have no complete event */
+    private SseFramer.Event nextFrame() throws IOException {
+        SseFramer.Event event = framer.next();
+        if (event == null) {
+            if (push && !inputEnded) {
+                starved = true;
+            } else {
+                ended = true;
+            }
+        }
+        return event;
+    }
+
+    private static boolean isBlank(SseFramer.Event event) {
+        byte[] data = event.getData();
+        for (int i = 0; i < event.getDataLength(); i++) {
+            if (data[i] != ' ' && data[i] != '\t' && data[i] != '\n' && data[i] != '\r') return false;
+        }
+        return true;
+    }
+
+    private StreamEvent event(String chunk, String finishReason, AiResponse.Usage usage) {
+        if (chunk != null) {
+            accumulated.append(chunk);
+            if (finishReason != null) pending = complete(finishReason, usage);
+            return StreamEvent.content(chunk);
+        }
+        if (finishReason != null) {
+            ended = true;
+            return complete(finishReason, usage);
+        }
+        return null;
+    }
+
+    private StreamEvent complete(String finishReason, AiResponse.Usage usage) {
+        return StreamEvent.complete(accumulated.toString(), finishReason,
+                deltaParser != null ? new ArrayList<>(deltaParser.getDelta().getToolCalls())
+                        : Collections.<StreamDeltaParser.ToolCall>emptyList(),
+                usage);
+    }
+
+    private static AiResponse.Usage usage(int promptTokens, int completionTokens) {
+        AiResponse.Usage usage = new AiResponse.Usage();
+        usage.setPromptTokens(promptTokens);
+        usage.setCompletionTokens(completionTokens);
+        usage.setTotalTokens(promptTokens + completionTokens);
+        return usage;
+    }
+}
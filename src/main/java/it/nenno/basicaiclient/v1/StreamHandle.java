@@ -0,0 +1,151 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1;
+
+import it.nenno.basicaiclient.v1.config.ProviderModel;
+import it.nenno.basicaiclient.v1.http.AbortSignal;
+import it.nenno.basicaiclient.v1.models.AiResponse;
+import it.nenno.basicaiclient.v1.models.StreamingResponseHandler;
+import it.nenno.basicaiclient.v1.resilience.TokenEstimator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Handle of a stream, returned by AiClient.streamChat() and passed to StreamingResponseHandler.onStart().
+ * <p>
+ * streamChat() blocks until the stream has ended, so the handle it returns only tells the usage and the
+ * outcome; to cancel, keep the handle from onStart() (any thread may call cancel() on it) or use
+ * streamChatAsync() and cancel its future.
+ * <p>
+ * cancel() closes the connection at once, so the provider stops generating (and billing) the answer;
+ * the handler gets neither onComplete() nor onError() afterwards. The usage of a stream is the one sent
+ * by the provider with the final message; many providers send none, then it is estimated from the request
+ * and the received chunks.
+ */
+public class StreamHandle {
+
+    private final AbortSignal abortSignal;
+    private final int promptTokens;
+    private final AtomicInteger chunks = new AtomicInteger();
+    private final AtomicLong chars = new AtomicLong();
+    private volatile boolean cancelled;
+    private volatile boolean done;
+    // sent by the provider or null
+    private volatile AiResponse.Usage reportedUsage;
+    // ring buffer of the dispatch mode or null
+    private volatile StreamDispatcher dispatcher;
+
+    StreamHandle(AbortSignal abortSignal, int promptTokens) {
+        this.abortSignal = abortSignal;
+        this.promptTokens = promptTokens;
+    }
+
+    /** Stop the stream and close its connection, may be called from any thread and more than once */
+    public void cancel() {
+        cancelled = true;
+        abortSignal.abort();
+    }
+
+    /** @return true if the stream was cancelled, by cancel() or by cancelling the future of streamChatAsync() */
+    public boolean isCancelled() {
+        return cancelled || abortSignal.isAborted();
+    }
+
+    /** @return true when the stream has ended: completed, failed or cancelled */
+    public boolean isDone() {return done;}
+
+    /** @return true if the provider sent the usage, false if getUsage() is estimated */
+    public boolean isUsageReported() {return reportedUsage != null;}
+
+    /** @return chunks received so far */
+    public int getChunks() {return chunks.get();}
+
+    /** @return chunks in the ring buffer of the dispatch mode, not yet passed to the handler */
+    public int getBuffered() {
+        StreamDispatcher current = dispatcher;
+        return current == null ? 0 : current.getBuffered();
+    }
+
+    /** @return usage sent by the provider, else the estimated usage up to now (the partial usage of a cancelled stream) */
+    public AiResponse.Usage getUsage() {
+        AiResponse.Usage reported = reportedUsage;
+        if (reported != null) return reported;
+        AiResponse.Usage usage = new AiResponse.Usage();
+        int completionTokens = TokenEstimator.estimate(chars.get());
+        usage.setPromptTokens(promptTokens);
+        usage.setCompletionTokens(completionTokens);
+        usage.setTotalTokens(promptTokens + completionTokens);
+        return usage;
+    }
+
+    void markDone() {
+        done = true;
+    }
+
+    void setDispatcher(StreamDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /** handler that counts the chunks for this handle, onStart() is called here */
+    StreamingResponseHandler wrap(final StreamingResponseHandler handler) {
+        handler.onStart(this);
+        return new StreamingResponseHandler() {
+            @Override
+            public void onMessage(String chunk) {
+                if (cancelled) return;
+                chunks.incrementAndGet();
+                if (chunk != null) chars.addAndGet(chunk.length());
+                handler.onMessage(chunk);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (cancelled) return;
+                handler.onError(e);
+            }
+
+            @Override
+            public void onComplete(String accumulatedChunks) {
+                if (cancelled) return;
+                handler.onComplete(accumulatedChunks);
+            }
+
+            @Override
+            public void onServedBy(int hop, ProviderModel servedBy) {
+                handler.onServedBy(hop, servedBy);
+            }
+
+            @Override
+            public void onUsage(AiResponse.Usage usage) {
+                reportedUsage = usage;
+                if (cancelled) return;
+                handler.onUsage(usage);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "StreamHandle{" +
+                "chunks=" + chunks +
+                ", cancelled=" + isCancelled() +
+                ", done=" + done +
+                '}';
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1;
+
+import it.nenno.basicaiclient.v1.http.AbortSignal;
+import it.nenno.basicaiclient.v1.http.AsyncBody;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.IntConsumer;
+
+/**
+ * The events of an open stream response, read by {@link StreamEventIterator} and {@link StreamEventPublisher}.
+ * With an async body the bytes are fed by the caller, otherwise next() reads them from the connection.
+ */
+final class StreamSource {
+
+    /** Sends the request and returns its events */
+    interface Opener {
+        StreamSource open(AbortSignal abortSignal) throws IOException;
+    }
+
+    private final StreamEventReader reader;
+    private final AsyncBody asyncBody;
+    private final RequestWatchdog watchdog;
+    private final IntConsumer onClose;
+    // total tokens of the usage sent by the provider, 0 if none
+    private volatile int usedTokens;
+
+    /** @param onClose gets the total tokens of the reported usage, 0 if the provider sent none */
+    StreamSource(StreamEventReader reader, AsyncBody asyncBody, RequestWatchdog watchdog, IntConsumer onClose) {
+        this.reader = reader;
+        this.asyncBody = asyncBody;
+        this.watchdog = watchdog;
+        this.onClose = onClose;
+    }
+
+    /** @return body pushed by the transport or null if next() reads from the connection */
+    AsyncBody getAsyncBody() {return asyncBody;}
+
+    /**
+     * @return next event or null at the end, with an async body also null if more bytes are needed
+     * @throws AiTimeoutException if a timeout of the request expired
+     */
+    StreamEvent next() throws IOException {
+        try {
+            StreamEvent event = reader.next();
+            if (event != null && event.getUsage() != null) usedTokens = event.getUsage().getTotalTokens();
+            return event;
+        } catch (IOException | RuntimeException e) {
+            if (isExpired()) throw watchdog.newException(e);
+            throw e;
+        }
+    }
+
+    /** @return true after the last event */
+    boolean isEnded() {return reader.isEnded();}
+
+    /** Next bytes of the async body */
+    void feed(ByteBuffer bytes) throws IOException {
+        if (watchdog != null) watchdog.onActivity();
+        reader.feed(bytes);
+    }
+
+    /** The async body ended */
+    void endOfInput() {
+        reader.endOfInput();
+    }
+
+    /** @return the error of the async body, as AiTimeoutException if a timeout expired */
+    Throwable failure(Throwable error) {
+        return isExpired() ? watchdog.newException(error) : error;
+    }
+
+    private boolean isExpired() {
+        return watchdog != null && watchdog.isExpired();
+    }
+
+    /** Release the connection, also before the end */
+    void close() {
+        onClose.accept(usedTokens);
+    }
+}
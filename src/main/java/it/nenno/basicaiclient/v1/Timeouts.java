@@ -0,0 +1,146 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.nenno.basicaiclient.v1;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timeouts of a request, set as defaults of the {@link AiClient} and overridden per AiRequest.
+ * <ul>
+ *     <li>connect: establishing the connection including the TLS handshake</li>
+ *     <li>first byte: from the start of the request until the response headers arrive</li>
+ *     <li>idle: maximum silence between two reads of the response body, e.g. between streamed chunks</li>
+ *     <li>deadline: the whole request from start to the last chunk</li>
+ * </ul>
+ * A value of 0 disables the timeout, timeouts that are not set are taken from the client defaults.
+ * When a timeout expires the connection is aborted and an {@link AiTimeoutException} is thrown by generate()
+ * or passed to StreamingResponseHandler.onError().
+ */
+public final class Timeouts {
+
+    private static final long NOT_SET = -1;
+
+    /** no timeouts at all */
+    public static final Timeouts NONE = new Builder()
+            .connectTimeout(0, TimeUnit.MILLISECONDS)
+            .firstByteTimeout(0, TimeUnit.MILLISECONDS)
+            .idleTimeout(0, TimeUnit.MILLISECONDS)
+            .deadline(0, TimeUnit.MILLISECONDS)
+            .build();
+
+    /** defaults of a client: 10 s to connect and 5 min of silence in a response */
+    public static final Timeouts DEFAULT = new Builder()
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .firstByteTimeout(0, TimeUnit.MILLISECONDS)
+            .idleTimeout(5, TimeUnit.MINUTES)
+            .deadline(0, TimeUnit.MILLISECONDS)
+            .build();
+
+    private final long connectTimeoutMillis;
+    private final long firstByteTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long deadlineMillis;
+
+    private Timeouts(long connectTimeoutMillis, long firstByteTimeoutMillis, long idleTimeoutMillis, long deadlineMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.firstByteTimeoutMillis = firstByteTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /** @return milliseconds, 0 if disabled */
+    public long getConnectTimeoutMillis() {return Math.max(0, connectTimeoutMillis);}
+
+    /** @return milliseconds, 0 if disabled */
+    public long getFirstByteTimeoutMillis() {return Math.max(0, firstByteTimeoutMillis);}
+
+    /** @return milliseconds, 0 if disabled */
+    public long getIdleTimeoutMillis() {return Math.max(0, idleTimeoutMillis);}
+
+    /** @return milliseconds, 0 if disabled */
+    public long getDeadlineMillis() {return Math.max(0, deadlineMillis);}
+
+    /** @return true if one of first byte, idle or deadline has to be watched while the request runs */
+    public boolean isWatched() {
+        return getFirstByteTimeoutMillis() > 0 || getIdleTimeoutMillis() > 0 || getDeadlineMillis() > 0;
+    }
+
+    /** @return these timeouts with the ones that are set in overrides, this if overrides is null */
+    public Timeouts withOverrides(Timeouts overrides) {
+        if (overrides == null) {
+            return this;
+        }
+        return new Timeouts(
+                overrides.connectTimeoutMillis != NOT_SET ? overrides.connectTimeoutMillis : connectTimeoutMillis,
+                overrides.firstByteTimeoutMillis != NOT_SET ? overrides.firstByteTimeoutMillis : firstByteTimeoutMillis,
+                overrides.idleTimeoutMillis != NOT_SET ? overrides.idleTimeoutMillis : idleTimeoutMillis,
+                overrides.deadlineMillis != NOT_SET ? overrides.deadlineMillis : deadlineMillis);
+    }
+
+    /** @return these timeouts with the given deadline, used for the remaining time of a retried request */
+    Timeouts withDeadlineMillis(long deadlineMillis) {
+        return new Timeouts(connectTimeoutMillis, firstByteTimeoutMillis, idleTimeoutMillis, deadlineMillis);
+    }
+
+    // The builder class
+    public static class Builder {
+        private long connectTimeoutMillis = NOT_SET;
+        private long firstByteTimeoutMillis = NOT_SET;
+        private long idleTimeoutMillis = NOT_SET;
+        private long deadlineMillis = NOT_SET;
+
+        public Builder connectTimeout(long timeout, TimeUnit unit) {
+            this.connectTimeoutMillis = toMillis(timeout, unit);
+            return this;
+        }
+
+        public Builder firstByteTimeout(long timeout, TimeUnit unit) {
+            this.firstByteTimeoutMillis = toMillis(timeout, unit);
+            return this;
+        }
+
+        public Builder idleTimeout(long timeout, TimeUnit unit) {
+            this.idleTimeoutMillis = toMillis(timeout, unit);
+            return this;
+        }
+
+        public Builder deadline(long timeout, TimeUnit unit) {
+            this.deadlineMillis = toMillis(timeout, unit);
+            return this;
+        }
+
+        private static long toMillis(long timeout, TimeUnit unit) {
+            if (timeout < 0) {
+                throw new IllegalArgumentException("Timeout must not be negative.");
+            }
+            return unit.toMillis(timeout);
+        }
+
+        public Timeouts build() {
+            return new Timeouts(connectTimeoutMillis, firstByteTimeoutMillis, idleTimeoutMillis, deadlineMillis);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Timeouts{" +
+                "connect=" + connectTimeoutMillis +
+                ", firstByte=" + firstByteTimeoutMillis +
+                ", idle=" + idleTimeoutMillis +
+                ", deadline=" + deadlineMillis +
+                '}';
+    }
+}
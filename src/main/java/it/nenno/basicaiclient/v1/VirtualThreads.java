@@ -0,0 +1,43 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Access to virtual threads.
+ * <p>
+ * This is the Java 8 version without virtual threads. On Java 21 or later the version
+ * in META-INF/versions/21 of the multi-release jar is loaded instead.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {}
+
+    /** @return true if the running JVM and this jar support virtual threads */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Executor that starts a new virtual thread for each task
+     * @throws UnsupportedOperationException if virtual threads are not supported, see {@link #isSupported()}
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+    }
+}
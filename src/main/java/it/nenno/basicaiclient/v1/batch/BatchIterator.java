@@ -0,0 +1,186 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1.batch;
+
+import it.nenno.basicaiclient.v1.models.AiRequest;
+import it.nenno.basicaiclient.v1.models.AiResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs the requests of an iterator with bounded parallelism and returns the results in input order.
+ * <p>
+ * The input is read only as far as needed: at most parallelism requests are in flight and
+ * at most 4 * parallelism results wait for an earlier slow one, so the memory stays constant
+ * for inputs of any size. The requests are started from the thread that consumes the results.
+ */
+public class BatchIterator implements Iterator<BatchResult>, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchIterator.class);
+
+    private final Iterator<AiRequest> input;
+    private final Function<AiRequest, CompletableFuture<AiResponse>> call;
+    private final int parallelism;
+    private final int bufferSize;
+    private final Consumer<BatchStats> progressListener;
+    private final int progressEvery;
+
+    // results in input order, guarded by lock
+    private final Object lock = new Object();
+    private final ArrayDeque<CompletableFuture<BatchResult>> window = new ArrayDeque<>();
+    private int inFlight;
+    private long nextIndex;
+    private boolean closed;
+    private boolean finalProgress;
+
+    // ------ progress ------
+    private final long total;
+    private final long startMillis = System.currentTimeMillis();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+
+    /**
+     * @param total number of requests or -1 if unknown
+     * @param call sends a request, e.g. AiClient::generateAsync
+     */
+    public BatchIterator(Iterator<AiRequest> input, long total,
+                         Function<AiRequest, CompletableFuture<AiResponse>> call, BatchOptions options) {
+        this.input = input;
+        this.total = total;
+        this.call = call;
+        this.parallelism = options.getParallelism();
+        this.bufferSize = options.getParallelism() * 4;
+        this.progressListener = options.getProgressListener();
+        this.progressEvery = options.getProgressEvery();
+    }
+
+    @Override
+    public boolean hasNext() {
+        synchronized (lock) {
+            fill();
+            if (window.isEmpty() && !finalProgress) {
+                finalProgress = true;
+                notifyProgress();
+            }
+            return !window.isEmpty();
+        }
+    }
+
+    @Override
+    public BatchResult next() {
+        synchronized (lock) {
+            while (true) {
+                fill();
+                CompletableFuture<BatchResult> head = window.peek();
+                if (head == null) {
+                    throw new NoSuchElementException();
+                }
+                if (head.isDone()) {
+                    window.poll();
+                    return head.join();
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(e);
+                }
+            }
+        }
+    }
+
+    /** start requests while the parallelism and the buffer allow */
+    private void fill() {
+        while (!closed && inFlight < parallelism && window.size() < bufferSize && input.hasNext()) {
+            start(input.next(), nextIndex++);
+        }
+    }
+
+    private void start(final AiRequest request, final long index) {
+        final long start = System.currentTimeMillis();
+        CompletableFuture<AiResponse> future;
+        try {
+            future = call.apply(request);
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        inFlight++;
+        final CompletableFuture<AiResponse> source = future;
+        CompletableFuture<BatchResult> result = future.handle((response, throwable) -> {
+            Throwable error = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+            BatchResult batchResult = new BatchResult(index, request, response, error, System.currentTimeMillis() - start);
+            // counted before the result is visible to the consumer
+            count(batchResult);
+            return batchResult;
+        });
+        window.add(result);
+        result.whenComplete((r, throwable) -> {
+            if (throwable != null) source.cancel(true);
+            synchronized (lock) {
+                inFlight--;
+                lock.notifyAll();
+            }
+        });
+    }
+
+    private void count(BatchResult result) {
+        long done = completed.incrementAndGet();
+        if (result.isSuccess()) succeeded.incrementAndGet();
+        totalLatencyMillis.addAndGet(result.getLatencyMillis());
+        if (done % progressEvery == 0) {
+            notifyProgress();
+        }
+    }
+
+    private void notifyProgress() {
+        if (progressListener == null) return;
+        try {
+            progressListener.accept(getStats());
+        } catch (RuntimeException e) {
+            LOGGER.warn("Progress listener failed: " + e.getMessage());
+        }
+    }
+
+    public BatchStats getStats() {
+        return new BatchStats(total, completed.get(), succeeded.get(),
+                System.currentTimeMillis() - startMillis, totalLatencyMillis.get());
+    }
+
+    /** Stop reading the input and cancel the requests in flight */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            for (CompletableFuture<BatchResult> result : window) {
+                result.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import it.nenno.basicaiclient.v1.AiClient;
+import it.nenno.basicaiclient.v1.models.AiMessage;
+import it.nenno.basicaiclient.v1.models.AiRequest;
+import it.nenno.basicaiclient.v1.utils.JsonCodecs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Runs the requests of a JSONL file and appends the results to an output JSONL file.
+ * <p>
+ * Each input line is a chat or generate request:
+ * <pre>{"id":"q1","model":"llama3.1","messages":[{"role":"user","content":"Hello?"}],"temperature":0.2}</pre>
+ * "id" is optional and copied to the output, "model" may be left out if the job has a default model.
+ * Each output line has the index of the request, its id, the response or the error and the latency.
+ * <p>
+ * The input is read line by line while the results are written in input order, so the memory stays
+ * constant. After every n results the output is synced and the number of done requests is saved in
+ * a checkpoint file, with the indexes of the failed ones. A new run of the same job truncates the output
+ * to the last checkpoint, sends the failed requests again and continues with the next request, so the
+ * succeeded ones are not sent again. A request sent again gets a new line with the same index: the last
+ * line of an index is its result.
+ */
+public class BatchJob {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchJob.class);
+
+    private final AiClient client;
+    private final Path input;
+    private final Path output;
+    private final Path checkpoint;
+    private final BatchOptions options;
+    private final int checkpointEvery;
+    private final String model;
+    private final boolean retryFailed;
+
+    private BatchJob(Builder builder) {
+        this.client = builder.client;
+        this.input = builder.input;
+        this.output = builder.output;
+        this.checkpoint = builder.checkpoint != null
+                ? builder.checkpoint : Paths.get(builder.output.toString() + ".checkpoint");
+        this.options = builder.options;
+        this.checkpointEvery = builder.checkpointEvery;
+        this.model = builder.model;
+        this.retryFailed = builder.retryFailed;
+    }
+
+    /**
+     * Run the failed requests and the ones after the last checkpoint, a job without them does nothing.
+     * @return statistics of this run
+     * @throws IllegalArgumentException if a line of the input is not a valid request; the results
+     * before it are kept, so the job can be resumed after the line is fixed
+     */
+    public BatchStats run() throws IOException {
+        Checkpoint start = readCheckpoint();
+        if (start.index > 0) {
+            LOGGER.info("Resuming " + input + " after " + start.index + " requests, "
+                    + start.failed.size() + " failed");
+        }
+        // failed before the checkpoint and not yet sent again in this run
+        TreeSet<Long> retries = retryFailed ? new TreeSet<>(start.failed) : new TreeSet<Long>();
+        TreeSet<Long> failed = new TreeSet<>(start.failed);
+        failed.removeAll(retries);
+
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+            // drop the results written after the last checkpoint
+            if (channel.size() > start.outputBytes) {
+                channel.truncate(start.outputBytes);
+            }
+            channel.position(start.outputBytes);
+
+            InputLines lines = new InputLines(reader, start.index, new TreeSet<>(retries));
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            long index = start.index;
+            long outputBytes = start.outputBytes;
+            int sinceCheckpoint = 0;
+
+            try (BatchIterator results = new BatchIterator(lines, -1,
+                    request -> client.generateAsync(request, options.isLogDetails()), options)) {
+                while (results.hasNext()) {
+                    BatchResult result = results.next();
+                    Line sent = lines.sent.poll();
+                    byte[] line = toLine(sent.index, sent.id, result);
+                    out.write(line);
+                    outputBytes += line.length;
+                    retries.remove(sent.index);
+                    if (!result.isSuccess()) failed.add(sent.index);
+                    index = Math.max(index, sent.index + 1);
+                    if (++sinceCheckpoint >= checkpointEvery) {
+                        out.flush();
+                        channel.force(false);
+                        writeCheckpoint(new Checkpoint(index, outputBytes, failed, retries));
+                        sinceCheckpoint = 0;
+                    }
+                }
+                return results.getStats();
+            } finally {
+                // the results of a failed run up to here are kept as well
+                out.flush();
+                channel.force(false);
+                writeCheckpoint(new Checkpoint(index, outputBytes, failed, retries));
+            }
+        }
+    }
+
+    private byte[] toLine(long index, String id, BatchResult result) throws IOException {
+        ObjectNode node = JsonCodecs.createObjectNode();
+        node.put("index", index);
+        if (!id.isEmpty()) node.put("id", id);
+        if (result.getResponse() != null) {
+            node.set("response", JsonCodecs.valueToTree(result.getResponse()));
+        }
+        if (!result.isSuccess()) {
+            Throwable error = result.getError();
+            node.put("error", error == null ? "no response" : error.getClass().getSimpleName() + ": " + error.getMessage());
+        }
+        node.put("latency_ms", result.getLatencyMillis());
+        byte[] json = JsonCodecs.writer().writeValueAsBytes(node);
+        byte[] line = new byte[json.length + 1];
+        System.arraycopy(json, 0, line, 0, json.length);
+        line[json.length] = '\n';
+        return line;
+    }
+
+    // ------ checkpoint ------
+
+    private static class Checkpoint {
+        final long index;
+        final long outputBytes;
+        // indexes of the failed requests before index
+        final TreeSet<Long> failed = new TreeSet<>();
+
+        Checkpoint(long index, long outputBytes) {
+            this.index = index;
+            this.outputBytes = outputBytes;
+        }
+
+        /** @param retries failed in an earlier run, not yet sent again */
+        Checkpoint(long index, long outputBytes, TreeSet<Long> failed, TreeSet<Long> retries) {
+            this(index, outputBytes);
+            this.failed.addAll(failed);
+            this.failed.addAll(retries);
+        }
+    }
+
+    private Checkpoint readCheckpoint() throws IOException {
+        if (!Files.exists(checkpoint)) {
+            if (Files.exists(output) && Files.size(output) > 0) {
+                throw new IllegalStateException("Output " + output + " exists without checkpoint " + checkpoint);
+            }
+            return new Checkpoint(0, 0);
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(checkpoint)) {
+            properties.load(in);
+        }
+        Checkpoint value = new Checkpoint(Long.parseLong(properties.getProperty("index", "0")),
+                Long.parseLong(properties.getProperty("outputBytes", "0")));
+        for (String failed : properties.getProperty("failed", "").split(",")) {
+            if (!failed.isEmpty()) value.failed.add(Long.parseLong(failed));
+        }
+        return value;
+    }
+
+    /** replaces the checkpoint at once, so a crash leaves the old or the new one */
+    private void writeCheckpoint(Checkpoint value) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("index", Long.toString(value.index));
+        properties.setProperty("outputBytes", Long.toString(value.outputBytes));
+        StringBuilder failed = new StringBuilder();
+        for (Long index : value.failed) {
+            if (failed.length() > 0) failed.append(',');
+            failed.append(index);
+        }
+        properties.setProperty("failed", failed.toString());
+        Path temp = Paths.get(checkpoint.toString() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, "BatchJob " + input);
+        }
+        try {
+            Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // ------ input ------
+
+    /** index and id ("" if none) of a sent request */
+    private static class Line {
+        final long index;
+        final String id;
+
+        Line(long index, String id) {
+            this.index = index;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Requests of the input lines to send again and after the start, read on demand in input order;
+     * the sent lines wait here until their result is written
+     */
+    private class InputLines implements Iterator<AiRequest> {
+        private final BufferedReader reader;
+        private final long start;
+        private final TreeSet<Long> retries;
+        private final ArrayDeque<Line> sent = new ArrayDeque<>();
+        private long lineNumber;
+        // index of the next non-blank line
+        private long index;
+        private String next;
+
+        InputLines(BufferedReader reader, long start, TreeSet<Long> retries) {
+            this.reader = reader;
+            this.start = start;
+            this.retries = retries;
+        }
+
+        /** @return next non-blank line or null at the end */
+        private String nextLine() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                lineNumber++;
+            } while (line != null && line.trim().isEmpty());
+            return line;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (next == null) {
+                    String line = nextLine();
+                    if (line == null) {
+                        if (index < start) {
+                            throw new IllegalStateException("Checkpoint " + checkpoint + " is beyond the end of " + input);
+                        }
+                        return false;
+                    }
+                    // the lines before the start are skipped unless they failed
+                    if (index >= start || retries.remove(index)) {
+                        next = line;
+                    } else {
+                        index++;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public AiRequest next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            String line = next;
+            next = null;
+            try {
+                JsonNode node = JsonCodecs.readTree(line);
+                AiRequest request = toRequest(node);
+                sent.add(new Line(index++, node.path("id").asText("")));
+                return request;
+            } catch (IOException | RuntimeException e) {
+                throw new IllegalArgumentException("Invalid request in line " + lineNumber + " of " + input
+                        + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private AiRequest toRequest(JsonNode node) {
+        AiRequest.Builder builder = new AiRequest.Builder()
+                .model(node.hasNonNull("model") ? node.get("model").asText() : model);
+        if (node.hasNonNull("prompt")) {
+            builder.prompt(node.get("prompt").asText());
+        } else {
+            List<AiMessage> messages = new ArrayList<>();
+            for (JsonNode message : node.path("messages")) {
+                messages.add(new AiMessage(message.path("role").asText("user"), message.path("content").asText()));
+            }
+            builder.messages(messages);
+        }
+        if (node.hasNonNull("temperature")) {
+            builder.temperature(node.get("temperature").asDouble());
+        }
+        if (node.hasNonNull("response_format")) {
+            builder.responseFormat(JsonCodecs.convertValue(node.get("response_format"), Object.class));
+        }
+        return builder.build();
+    }
+
+    // The builder class
+    public static class Builder {
+        private AiClient client;
+        private Path input;
+        private Path output;
+        private Path checkpoint;
+        private BatchOptions options = BatchOptions.DEFAULT;
+        private int checkpointEvery = 10;
+        private String model;
+        private boolean retryFailed = true;
+
+        public Builder client(AiClient client) {
+            this.client = client;
+            return this;
+        }
+
+        public Builder input(Path input) {
+            this.input = input;
+            return this;
+        }
+
+        public Builder output(Path output) {
+            this.output = output;
+            return this;
+        }
+
+        /** file of the progress (default output + ".checkpoint") */
+        public Builder checkpoint(Path checkpoint) {
+            this.checkpoint = checkpoint;
+            return this;
+        }
+
+        public Builder options(BatchOptions options) {
+            this.options = options;
+            return this;
+        }
+
+        /** save the progress after every n results (default 10) */
+        public Builder checkpointEvery(int checkpointEvery) {
+            this.checkpointEvery = checkpointEvery;
+            return this;
+        }
+
+        /** model of the input lines without one */
+        public Builder model(String model) {
+            this.model = model;
+            return this;
+        }
+
+        /**
+         * Send the requests that failed in an earlier run again (default true),
+         * false to keep their errors, e.g. of requests that the provider rejects
+         */
+        public Builder retryFailed(boolean retryFailed) {
+            this.retryFailed = retryFailed;
+            return this;
+        }
+
+        public BatchJob build() {
+            if (client == null || input == null || output == null) {
+                throw new IllegalArgumentException("client, input and output are required.");
+            }
+            if (checkpointEvery < 1) {
+                throw new IllegalArgumentException("checkpointEvery must be at least 1.");
+            }
+            return new BatchJob(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BatchJob{" +
+                "input=" + input +
+                ", output=" + output +
+                ", options=" + options +
+                ", retryFailed=" + retryFailed +
+                '}';
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1.batch;
+
+import java.util.function.Consumer;
+
+/**
+ * Settings of AiClient.generateAll()
+ */
+public class BatchOptions {
+
+    public static final BatchOptions DEFAULT = new Builder().build();
+
+    private final int parallelism;
+    private final boolean logDetails;
+    private final Consumer<BatchStats> progressListener;
+    private final int progressEvery;
+
+    private BatchOptions(Builder builder) {
+        this.parallelism = builder.parallelism;
+        this.logDetails = builder.logDetails;
+        this.progressListener = builder.progressListener;
+        this.progressEvery = builder.progressEvery;
+    }
+
+    public int getParallelism() {return parallelism;}
+
+    public boolean isLogDetails() {return logDetails;}
+
+    /** @return listener of the progress or null */
+    public Consumer<BatchStats> getProgressListener() {return progressListener;}
+
+    public int getProgressEvery() {return progressEvery;}
+
+    // The builder class
+    public static class Builder {
+        private int parallelism = 8;
+        private boolean logDetails;
+        private Consumer<BatchStats> progressListener;
+        private int progressEvery = 1;
+
+        /** requests in flight at the same time (default 8) */
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Builder logDetails(boolean logDetails) {
+            this.logDetails = logDetails;
+            return this;
+        }
+
+        /**
+         * Called with the progress after every n-th completed request (default every one) and at the end.
+         * It runs on the threads of the requests, so it should be quick.
+         */
+        public Builder progressListener(Consumer<BatchStats> progressListener, int every) {
+            this.progressListener = progressListener;
+            this.progressEvery = every;
+            return this;
+        }
+
+        public BatchOptions build() {
+            if (parallelism < 1 || progressEvery < 1) {
+                throw new IllegalArgumentException("parallelism and progress interval must be at least 1.");
+            }
+            return new BatchOptions(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BatchOptions{" +
+                "parallelism=" + parallelism +
+                ", logDetails=" + logDetails +
+                '}';
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1.batch;
+
+import it.nenno.basicaiclient.v1.models.AiRequest;
+import it.nenno.basicaiclient.v1.models.AiResponse;
+
+/**
+ * Outcome of one request of a batch, a failure is kept here instead of aborting the batch
+ */
+public class BatchResult {
+    private final long index;
+    private final AiRequest request;
+    private final AiResponse response;
+    private final Throwable error;
+    private final long latencyMillis;
+
+    public BatchResult(long index, AiRequest request, AiResponse response, Throwable error, long latencyMillis) {
+        this.index = index;
+        this.request = request;
+        this.response = response;
+        this.error = error;
+        this.latencyMillis = latencyMillis;
+    }
+
+    /** @return position of the request in the input, starting at 0 */
+    public long getIndex() {return index;}
+
+    public AiRequest getRequest() {return request;}
+
+    /** @return the response or null if the request failed */
+    public AiResponse getResponse() {return response;}
+
+    /** @return the error or null; null as well if the connection failed without an exception */
+    public Throwable getError() {return error;}
+
+    public long getLatencyMillis() {return latencyMillis;}
+
+    public boolean isSuccess() {
+        return error == null && response != null;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{" +
+                "index=" + index +
+                ", success=" + isSuccess() +
+                (error != null ? ", error=" + error : "") +
+                ", latencyMillis=" + latencyMillis +
+                '}';
+    }
+}
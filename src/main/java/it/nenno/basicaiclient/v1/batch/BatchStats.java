@@ -0,0 +1,71 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1.batch;
+
+/**
+ * Snapshot of the progress of a batch
+ */
+public class BatchStats {
+    private final long total;
+    private final long completed;
+    private final long succeeded;
+    private final long elapsedMillis;
+    private final long totalLatencyMillis;
+
+    BatchStats(long total, long completed, long succeeded, long elapsedMillis, long totalLatencyMillis) {
+        this.total = total;
+        this.completed = completed;
+        this.succeeded = succeeded;
+        this.elapsedMillis = elapsedMillis;
+        this.totalLatencyMillis = totalLatencyMillis;
+    }
+
+    /** number of requests, -1 if unknown (stream input) */
+    public long getTotal() {return total;}
+
+    /** requests finished, successful or not */
+    public long getCompleted() {return completed;}
+
+    public long getSucceeded() {return succeeded;}
+
+    public long getFailed() {return completed - succeeded;}
+
+    /** time since the start of the batch */
+    public long getElapsedMillis() {return elapsedMillis;}
+
+    /** completed requests per second */
+    public double getThroughputPerSecond() {
+        return elapsedMillis == 0 ? 0 : completed * 1000.0 / elapsedMillis;
+    }
+
+    /** average latency of the completed requests */
+    public double getAvgLatencyMillis() {
+        return completed == 0 ? 0 : (double) totalLatencyMillis / completed;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchStats{" +
+                "completed=" + completed + (total >= 0 ? "/" + total : "") +
+                ", failed=" + getFailed() +
+                ", elapsedMillis=" + elapsedMillis +
+                ", throughputPerSecond=" + String.format("%.2f", getThroughputPerSecond()) +
+                ", avgLatencyMillis=" + String.format("%.0f", getAvgLatencyMillis()) +
+                '}';
+    }
+}
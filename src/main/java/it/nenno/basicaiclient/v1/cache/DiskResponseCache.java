@@ -0,0 +1,754 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1.cache;
+
+import it.nenno.basicaiclient.v1.models.AiResponse;
+import it.nenno.basicaiclient.v1.utils.JsonCodecs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * {@link ResponseCache} in a directory, so that the cached responses survive a restart and
+ * can be shared by several JVMs on the same host.
+ * <p>
+ * The responses are appended as JSON records to segment files. A hash table in a memory-mapped
+ * index file points to the latest record of each key, so a lookup reads one slot and one record,
+ * and opening the cache only maps the index. The records are checked with a CRC and their key,
+ * a damaged or replaced record is a miss.
+ * <p>
+ * Writers of all JVMs are serialized by a lock file. When the index is nearly full or the
+ * segments contain mostly replaced records, a background thread copies the live records into
+ * new segments with a new index (the oldest entries are evicted if there are too many) and
+ * deletes the old files; the other JVMs notice the stale index and map the new one.
+ */
+public class DiskResponseCache implements ResponseCache, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskResponseCache.class);
+
+    // ------ index layout ------
+    private static final int MAGIC = 0x41494349;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_STALE = 8;
+    private static final int H_CAPACITY = 12;
+    private static final int H_LIVE = 16;
+    private static final int H_USED = 20;
+    private static final int H_LIVE_BYTES = 24;
+    private static final int H_GARBAGE_BYTES = 32;
+    private static final int H_ACTIVE_SEGMENT = 40;
+    private static final int H_GENERATION = 44;
+
+    private static final int SLOT_SIZE = 32;
+    private static final int S_HASH = 0;
+    private static final int S_OFFSET = 8;
+    private static final int S_STORED = 16;
+    private static final int S_SEGMENT = 24;
+    private static final int S_LENGTH = 28;
+    private static final long EMPTY = 0;
+    private static final long TOMBSTONE = 1;
+
+    // record: length, crc of the rest, stored millis, key length, key, value
+    private static final int RECORD_HEADER = 4 + 4 + 8 + 2;
+
+    private final Path directory;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final long segmentSize;
+
+    // FileLock is held per JVM, so the instances of one directory in this JVM share a lock
+    private static final ConcurrentHashMap<Path, ReentrantLock> WRITE_LOCKS = new ConcurrentHashMap<>();
+
+    private final ReentrantLock writeLock;
+    private final FileChannel lockChannel;
+    private final ConcurrentHashMap<Integer, FileChannel> segments = new ConcurrentHashMap<>();
+    private volatile Index index;
+
+    private final ExecutorService compactor;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    private DiskResponseCache(Builder builder) throws IOException {
+        this.directory = builder.directory;
+        this.writeLock = WRITE_LOCKS.computeIfAbsent(directory.toAbsolutePath().normalize(), path -> new ReentrantLock());
+        this.maxEntries = builder.maxEntries;
+        this.ttlMillis = builder.ttlMillis;
+        this.segmentSize = builder.segmentSize;
+        Files.createDirectories(directory);
+        this.lockChannel = FileChannel.open(directory.resolve("cache.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "basicaiclient-cache-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lockAll();
+        try {
+            this.index = openLatestIndex(true);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // ------ ResponseCache ------
+
+    @Override
+    public AiResponse get(String key) {
+        long hash = hashOf(key);
+        try {
+            Index current = current();
+            int slot = current.find(hash);
+            if (slot < 0) {
+                misses.incrementAndGet();
+                return null;
+            }
+            long stored = current.slotLong(slot, S_STORED);
+            if (isExpired(stored, System.currentTimeMillis())) {
+                // removed by the next compaction
+                expirations.incrementAndGet();
+                misses.incrementAndGet();
+                return null;
+            }
+            byte[] value = readRecord(current.slotInt(slot, S_SEGMENT), current.slotLong(slot, S_OFFSET),
+                    current.slotInt(slot, S_LENGTH), key);
+            if (value == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            AiResponse response = JsonCodecs.reader(AiResponse.class).readValue(value);
+            hits.incrementAndGet();
+            return response;
+        } catch (IOException e) {
+            // e.g. a segment deleted by the compaction of another JVM
+            LOGGER.debug("Cache lookup failed: " + e.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String key, AiResponse response) {
+        byte[] record;
+        try {
+            record = encode(key, System.currentTimeMillis(), JsonCodecs.requestWriter().writeValueAsBytes(response));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        boolean compact;
+        lockAll();
+        try {
+            Index current = refresh();
+            long hash = hashOf(key);
+            int slot = current.find(hash);
+            if (slot < 0 && current.getUsed() >= maxUsed(current)) {
+                // full until the compaction has made room
+                compact = true;
+            } else {
+                int segment = current.getActiveSegment();
+                FileChannel channel = segment(segment);
+                long offset = channel.size();
+                if (offset > 0 && offset + record.length > segmentSize) {
+                    segment++;
+                    current.putInt(H_ACTIVE_SEGMENT, segment);
+                    channel = segment(segment);
+                    offset = channel.size();
+                }
+                writeFully(channel, ByteBuffer.wrap(record), offset);
+                current.store(slot, hash, segment, offset, record.length, readStored(record));
+                compact = needsCompaction(current);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            unlockAll();
+        }
+        if (compact) scheduleCompaction();
+    }
+
+    @Override
+    public void invalidate(String key) {
+        lockAll();
+        try {
+            Index current = refresh();
+            int slot = current.find(hashOf(key));
+            if (slot >= 0) current.remove(slot);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    @Override
+    public void clear() {
+        rewrite(0);
+    }
+
+    @Override
+    public CacheStats getStats() {
+        Index current = index;
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), expirations.get(),
+                current == null ? 0 : current.getLive());
+    }
+
+    /** Copy the live records into new segments now, evicting expired and the oldest entries */
+    public void compact() {
+        rewrite(maxEntries * 3 / 4);
+    }
+
+    /** Stop the background compaction and close the files, the cache must not be used afterwards */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdownNow();
+        writeLock.lock();
+        try {
+            for (FileChannel channel : segments.values()) {
+                channel.close();
+            }
+            segments.clear();
+            if (index != null) index.channel.close();
+            lockChannel.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public Path getDirectory() {return directory;}
+
+    public int getMaxEntries() {return maxEntries;}
+
+    // ------ compaction ------
+
+    private int maxUsed(Index current) {
+        // live entries and tombstones, the table stays at most 3/4 full
+        return Math.min(maxEntries, current.capacity * 3 / 4);
+    }
+
+    private boolean needsCompaction(Index current) {
+        long garbage = current.getLong(H_GARBAGE_BYTES);
+        return current.getUsed() >= maxUsed(current)
+                || garbage > segmentSize && garbage > current.getLong(H_LIVE_BYTES);
+    }
+
+    private void scheduleCompaction() {
+        if (!compactionScheduled.compareAndSet(false, true)) return;
+        try {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Cache compaction failed: " + e.getMessage());
+                } finally {
+                    compactionScheduled.set(false);
+                }
+            });
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            // closed
+            compactionScheduled.set(false);
+        }
+    }
+
+    /** copy the newest live records, at most keep, into new segments with a new index */
+    private void rewrite(int keep) {
+        lockAll();
+        try {
+            Index old = refresh();
+            long now = System.currentTimeMillis();
+            List<long[]> live = new ArrayList<>();
+            for (int slot = 0; slot < old.capacity; slot++) {
+                long hash = old.slotLong(slot, S_HASH);
+                if (hash == EMPTY || hash == TOMBSTONE) continue;
+                long stored = old.slotLong(slot, S_STORED);
+                if (isExpired(stored, now)) {
+                    expirations.incrementAndGet();
+                    continue;
+                }
+                live.add(new long[]{hash, old.slotInt(slot, S_SEGMENT), old.slotLong(slot, S_OFFSET),
+                        old.slotInt(slot, S_LENGTH), stored});
+            }
+            // newest first
+            live.sort((a, b) -> Long.compare(b[4], a[4]));
+            if (live.size() > keep) {
+                if (keep > 0) evictions.addAndGet(live.size() - keep);
+                live = live.subList(0, keep);
+            }
+
+            int generation = old.getInt(H_GENERATION) + 1;
+            int firstSegment = old.getActiveSegment() + 1;
+            Path temp = directory.resolve(indexName(generation) + ".tmp");
+            Files.deleteIfExists(temp);
+            Index next = Index.create(temp, generation, capacityFor(maxEntries), firstSegment);
+            int segment = firstSegment;
+            FileChannel target = segment(segment);
+            long offset = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            for (long[] entry : live) {
+                int length = (int) entry[3];
+                if (offset > 0 && offset + length > segmentSize) {
+                    segment++;
+                    target = segment(segment);
+                    offset = 0;
+                }
+                if (buffer.capacity() < length) buffer = ByteBuffer.allocate(length);
+                ((Buffer) buffer).clear().limit(length);
+                readFully(segment((int) entry[1]), buffer, entry[2]);
+                ((Buffer) buffer).flip();
+                writeFully(target, buffer, offset);
+                next.store(next.find(entry[0]), entry[0], segment, offset, length, entry[4]);
+                offset += length;
+            }
+            next.putInt(H_ACTIVE_SEGMENT, segment);
+            for (int s = firstSegment; s <= segment; s++) {
+                segment(s).force(false);
+            }
+            next.buffer.force();
+            next.channel.close();
+            Files.move(temp, directory.resolve(indexName(generation)), StandardCopyOption.ATOMIC_MOVE);
+
+            // the other JVMs map the new index on their next access
+            index = openLatestIndex(false);
+            old.putInt(H_STALE, 1);
+            old.buffer.force();
+            closeSegmentsBefore(old);
+            old.channel.close();
+            Files.deleteIfExists(old.path);
+            deleteSegmentsBefore(firstSegment);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private void deleteSegmentsBefore(int firstSegment) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (Path file : files) {
+                int id = segmentId(file);
+                if (id >= 0 && id < firstSegment) {
+                    FileChannel channel = segments.remove(id);
+                    if (channel != null) channel.close();
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /** the compaction has copied the records of the segments up to the active one of the old index */
+    private void closeSegmentsBefore(Index old) {
+        int last = old.getActiveSegment();
+        for (Integer id : new ArrayList<>(segments.keySet())) {
+            if (id <= last) {
+                FileChannel channel = segments.remove(id);
+                try {
+                    if (channel != null) channel.close();
+                } catch (IOException e) {
+                    // already unusable
+                }
+            }
+        }
+    }
+
+    // ------ files ------
+
+    private void lockAll() {
+        writeLock.lock();
+        try {
+            // the file lock orders the JVMs, the ReentrantLock the threads of this JVM
+            if (writeLock.getHoldCount() == 1) {
+                fileLock = lockChannel.lock();
+            }
+        } catch (IOException e) {
+            writeLock.unlock();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // guarded by writeLock
+    private FileLock fileLock;
+
+    private void unlockAll() {
+        try {
+            if (writeLock.getHoldCount() == 1 && fileLock != null) {
+                fileLock.release();
+                fileLock = null;
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Releasing the cache lock failed: " + e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** index for a lookup, the new one if another JVM has compacted the cache */
+    private Index current() throws IOException {
+        Index current = index;
+        if (current.getInt(H_STALE) == 0) return current;
+        synchronized (this) {
+            if (index == current) {
+                index = openLatestIndex(false);
+                closeSegmentsBefore(current);
+                current.channel.close();
+            }
+            return index;
+        }
+    }
+
+    /** index for a write, called with the locks held */
+    private Index refresh() throws IOException {
+        Index current = index;
+        if (current.getInt(H_STALE) == 0) return current;
+        synchronized (this) {
+            if (index == current) {
+                index = openLatestIndex(false);
+                closeSegmentsBefore(current);
+                current.channel.close();
+            }
+            return index;
+        }
+    }
+
+    /** map the index with the highest generation, create the first one if requested */
+    private Index openLatestIndex(boolean create) throws IOException {
+        int latest = 0;
+        List<Integer> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "index-*.idx")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Integer.parseInt(name.substring(6, name.length() - 4)));
+                } catch (NumberFormatException e) {
+                    // not an index of this cache
+                }
+            }
+        }
+        for (int generation : generations) {
+            latest = Math.max(latest, generation);
+        }
+        if (create) {
+            // left by a compaction that did not finish
+            for (int generation : generations) {
+                if (generation < latest) Files.deleteIfExists(directory.resolve(indexName(generation)));
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.tmp")) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        if (latest == 0) {
+            if (!create) throw new NoSuchFileException(directory.resolve(indexName(1)).toString());
+            Path temp = directory.resolve(indexName(1) + ".tmp");
+            Index created = Index.create(temp, 1, capacityFor(maxEntries), 1);
+            created.buffer.force();
+            created.channel.close();
+            Files.move(temp, directory.resolve(indexName(1)), StandardCopyOption.ATOMIC_MOVE);
+            latest = 1;
+        }
+        return Index.open(directory.resolve(indexName(latest)));
+    }
+
+    private FileChannel segment(int id) {
+        // a channel is closed if a thread is interrupted while reading it
+        return segments.compute(id, (key, channel) -> {
+            if (channel != null && channel.isOpen()) return channel;
+            try {
+                return FileChannel.open(directory.resolve(String.format("segment-%08d.log", key)),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static int segmentId(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(8, name.length() - 4));
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    private static String indexName(int generation) {
+        return "index-" + generation + ".idx";
+    }
+
+    private static int capacityFor(int maxEntries) {
+        int capacity = Integer.highestOneBit(Math.max(16, maxEntries * 2 - 1)) << 1;
+        return Math.max(capacity, 16);
+    }
+
+    private boolean isExpired(long storedMillis, long now) {
+        return ttlMillis > 0 && now - storedMillis >= ttlMillis;
+    }
+
+    // ------ records ------
+
+    private static byte[] encode(String key, long storedMillis, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Key too long for the cache: " + keyBytes.length + " bytes");
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + keyBytes.length + value.length);
+        record.putInt(record.capacity()).putInt(0).putLong(storedMillis)
+                .putShort((short) keyBytes.length).put(keyBytes).put(value);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, record.capacity() - 8);
+        record.putInt(4, (int) crc.getValue());
+        return record.array();
+    }
+
+    private static long readStored(byte[] record) {
+        return ByteBuffer.wrap(record).getLong(8);
+    }
+
+    /** @return the value of the record or null if it is damaged or has another key */
+    private byte[] readRecord(int segment, long offset, int length, String key) throws IOException {
+        if (length < RECORD_HEADER) return null;
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(segment(segment), buffer, offset);
+        byte[] record = buffer.array();
+        if (buffer.getInt(0) != length) return null;
+        CRC32 crc = new CRC32();
+        crc.update(record, 8, length - 8);
+        if (buffer.getInt(4) != (int) crc.getValue()) return null;
+        int keyLength = buffer.getShort(16);
+        if (RECORD_HEADER + keyLength > length
+                || !key.equals(new String(record, RECORD_HEADER, keyLength, StandardCharsets.UTF_8))) {
+            return null;
+        }
+        int valueStart = RECORD_HEADER + keyLength;
+        byte[] value = new byte[length - valueStart];
+        System.arraycopy(record, valueStart, value, 0, value.length);
+        return value;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, offset);
+            if (n < 0) throw new IOException("Unexpected end of the cache segment");
+            offset += n;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    /** 64-bit FNV-1a of the key, 0 and 1 mark empty and removed slots */
+    private static long hashOf(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash == EMPTY || hash == TOMBSTONE ? hash + 2 : hash;
+    }
+
+    // ------ index ------
+
+    /** open addressing hash table with linear probing in a mapped file */
+    private static class Index {
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int capacity;
+
+        private Index(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = buffer.getInt(H_CAPACITY);
+        }
+
+        static Index create(Path path, int generation, int capacity, int activeSegment) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) capacity * SLOT_SIZE);
+            buffer.putInt(H_MAGIC, MAGIC);
+            buffer.putInt(H_VERSION, VERSION);
+            buffer.putInt(H_CAPACITY, capacity);
+            buffer.putInt(H_ACTIVE_SEGMENT, activeSegment);
+            buffer.putInt(H_GENERATION, generation);
+            return new Index(path, channel, buffer);
+        }
+
+        static Index open(Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (channel.size() < HEADER_SIZE || buffer.getInt(H_MAGIC) != MAGIC || buffer.getInt(H_VERSION) != VERSION
+                    || channel.size() != HEADER_SIZE + (long) buffer.getInt(H_CAPACITY) * SLOT_SIZE) {
+                channel.close();
+                throw new IOException("Not a cache index: " + path);
+            }
+            return new Index(path, channel, buffer);
+        }
+
+        int getInt(int position) {return buffer.getInt(position);}
+
+        long getLong(int position) {return buffer.getLong(position);}
+
+        void putInt(int position, int value) {buffer.putInt(position, value);}
+
+        int getLive() {return getInt(H_LIVE);}
+
+        int getUsed() {return getInt(H_USED);}
+
+        int getActiveSegment() {return getInt(H_ACTIVE_SEGMENT);}
+
+        long slotLong(int slot, int field) {return buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE + field);}
+
+        int slotInt(int slot, int field) {return buffer.getInt(HEADER_SIZE + slot * SLOT_SIZE + field);}
+
+        /** @return slot of the hash, or -(free slot + 1) if it is not in the table */
+        int find(long hash) {
+            int mask = capacity - 1;
+            int slot = (int) (hash ^ (hash >>> 32)) & mask;
+            int free = -1;
+            for (int i = 0; i < capacity; i++) {
+                long current = slotLong(slot, S_HASH);
+                if (current == hash) return slot;
+                if (current == EMPTY) return -((free >= 0 ? free : slot) + 1);
+                if (current == TOMBSTONE && free < 0) free = slot;
+                slot = (slot + 1) & mask;
+            }
+            return -((free >= 0 ? free : 0) + 1);
+        }
+
+        /** @param slot result of find() */
+        void store(int slot, long hash, int segment, long offset, int length, long storedMillis) {
+            int position;
+            if (slot >= 0) {
+                position = HEADER_SIZE + slot * SLOT_SIZE;
+                addLong(H_GARBAGE_BYTES, buffer.getInt(position + S_LENGTH));
+                addLong(H_LIVE_BYTES, -buffer.getInt(position + S_LENGTH));
+            } else {
+                position = HEADER_SIZE + (-slot - 1) * SLOT_SIZE;
+                if (buffer.getLong(position + S_HASH) == EMPTY) {
+                    buffer.putInt(H_USED, getUsed() + 1);
+                }
+                buffer.putInt(H_LIVE, getLive() + 1);
+            }
+            buffer.putLong(position + S_OFFSET, offset);
+            buffer.putLong(position + S_STORED, storedMillis);
+            buffer.putInt(position + S_SEGMENT, segment);
+            buffer.putInt(position + S_LENGTH, length);
+            // the hash last: a reader sees the slot when it is complete
+            buffer.putLong(position + S_HASH, hash);
+            addLong(H_LIVE_BYTES, length);
+        }
+
+        void remove(int slot) {
+            int position = HEADER_SIZE + slot * SLOT_SIZE;
+            buffer.putLong(position + S_HASH, TOMBSTONE);
+            buffer.putInt(H_LIVE, getLive() - 1);
+            addLong(H_GARBAGE_BYTES, buffer.getInt(position + S_LENGTH));
+            addLong(H_LIVE_BYTES, -buffer.getInt(position + S_LENGTH));
+        }
+
+        private void addLong(int position, long delta) {
+            buffer.putLong(position, buffer.getLong(position) + delta);
+        }
+    }
+
+    // The builder class
+    public static class Builder {
+        private Path directory;
+        private int maxEntries = 100_000;
+        private long ttlMillis = TimeUnit.DAYS.toMillis(7);
+        private long segmentSize = 64L * 1024 * 1024;
+
+        public Builder directory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /** entries kept by the compaction, the oldest are evicted (default 100000) */
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /** time to live of an entry (default 7 days), 0 to keep the entries until they are evicted */
+        public Builder ttl(long ttl, TimeUnit unit) {
+            this.ttlMillis = unit.toMillis(ttl);
+            return this;
+        }
+
+        /** size in bytes after which a new segment file is started (default 64 MB) */
+        public Builder segmentSize(long segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /** Open the cache in the directory, creating it if needed */
+        public DiskResponseCache build() throws IOException {
+            if (directory == null) {
+                throw new IllegalArgumentException("directory is required.");
+            }
+            if (maxEntries < 4 || ttlMillis < 0 || segmentSize < 1024) {
+                throw new IllegalArgumentException("maxEntries must be at least 4, ttl not negative and segmentSize at least 1024.");
+            }
+            return new DiskResponseCache(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DiskResponseCache{" +
+                "directory=" + directory +
+                ", maxEntries=" + maxEntries +
+                ", ttlMillis=" + ttlMillis +
+                ", stats=" + getStats() +
+                '}';
+    }
+}
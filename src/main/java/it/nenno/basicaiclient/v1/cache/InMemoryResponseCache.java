@@ -0,0 +1,142 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1.cache;
+
+import it.nenno.basicaiclient.v1.models.AiResponse;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ResponseCache} in the heap with a maximum number of entries, the least recently used
+ * entry is evicted first. An entry expires after the time to live since it was stored; it is removed
+ * when it is read or when it is the least recently used one, so a put() never scans the entries.
+ */
+public class InMemoryResponseCache implements ResponseCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    // access order: the eldest entry is the least recently used, guarded by this
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    private static class Entry {
+        final AiResponse response;
+        final long storedNanos;
+
+        Entry(AiResponse response, long storedNanos) {
+            this.response = response;
+            this.storedNanos = storedNanos;
+        }
+    }
+
+    private InMemoryResponseCache(Builder builder) {
+        this.maxEntries = builder.maxEntries;
+        this.ttlNanos = builder.ttlNanos;
+    }
+
+    @Override
+    public synchronized AiResponse get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && isExpired(entry, System.nanoTime())) {
+            entries.remove(key);
+            expirations++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.response.copy();
+    }
+
+    @Override
+    public synchronized void put(String key, AiResponse response) {
+        long now = System.nanoTime();
+        entries.put(key, new Entry(response.copy(), now));
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries) {
+            // an expired entry is usually the least recently used one anyway
+            if (isExpired(eldest.next(), now)) expirations++;
+            else evictions++;
+            eldest.remove();
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return ttlNanos > 0 && now - entry.storedNanos >= ttlNanos;
+    }
+
+    @Override
+    public synchronized void invalidate(String key) {
+        entries.remove(key);
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, expirations, entries.size());
+    }
+
+    public int getMaxEntries() {return maxEntries;}
+
+    public long getTtlMillis() {return TimeUnit.NANOSECONDS.toMillis(ttlNanos);}
+
+    // The builder class
+    public static class Builder {
+        private int maxEntries = 1000;
+        private long ttlNanos = TimeUnit.HOURS.toNanos(1);
+
+        /** entries before the least recently used is evicted (default 1000) */
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /** time to live of an entry (default 1 hour), 0 to keep the entries until they are evicted */
+        public Builder ttl(long ttl, TimeUnit unit) {
+            this.ttlNanos = unit.toNanos(ttl);
+            return this;
+        }
+
+        public InMemoryResponseCache build() {
+            if (maxEntries < 1 || ttlNanos < 0) {
+                throw new IllegalArgumentException("maxEntries must be at least 1 and ttl not negative.");
+            }
+            return new InMemoryResponseCache(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "InMemoryResponseCache{" +
+                "maxEntries=" + maxEntries +
+                ", ttlMillis=" + getTtlMillis() +
+                ", stats=" + getStats() +
+                '}';
+    }
+}
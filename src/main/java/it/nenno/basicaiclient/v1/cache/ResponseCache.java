@@ -0,0 +1,50 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1.cache;
+
+import it.nenno.basicaiclient.v1.models.AiRequest;
+import it.nenno.basicaiclient.v1.models.AiResponse;
+
+/**
+ * Cache of responses consulted by AiClient.generate(), set with AiClient.Builder.responseCache().
+ * <p>
+ * The key is a hash of the client URL and the request as sent to the provider. Implementations must
+ * be thread-safe and must not share the stored responses with the callers: put() and get() work
+ * with copies (see AiResponse.copy()), so a caller changing its response does not change the cache.
+ */
+public interface ResponseCache {
+
+    /** @return copy of the cached response or null */
+    AiResponse get(String key);
+
+    /** store a copy of the response */
+    void put(String key, AiResponse response);
+
+    void invalidate(String key);
+
+    void clear();
+
+    CacheStats getStats();
+
+    /**
+     * Only deterministic requests are cached by default: temperature 0 and not marked with bypassCache.
+     * Streaming requests are never cached.
+     */
+    default boolean isCacheable(AiRequest request) {
+        return !request.isBypassCache() && request.getTemperature() != null && request.getTemperature() == 0.0;
+    }
+}
@@ -35,6 +35,9 @@ public class AiApi {
     @JsonProperty("models")
     private List<Map<String, String>> models;
 
+    @JsonProperty("rate_limit")
+    private RateLimit rateLimit;
+
     // Getters
     public String getProviderName() {
         return providerName;
@@ -48,6 +51,11 @@ public class AiApi {
         return apiKey;
     }
 
+    /** @return limits of the provider or null if not configured */
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
 
     // Helper method to get the actual API key
     public String getApiKeyValue() {
@@ -24,8 +24,16 @@ public class AiApis {
     @JsonProperty("ai_apis")
     private List<AiApi> aiApis;
 
+    @JsonProperty("fallback_chains")
+    private List<FallbackChain> fallbackChains;
+
     // Getters
     public List<AiApi> getAiApis() {
         return aiApis;
     }
+
+    /** @return fallback chains or null if none are configured */
+    public List<FallbackChain> getFallbackChains() {
+        return fallbackChains;
+    }
 }
\ No newline at end of file
@@ -16,7 +16,7 @@
 
 package it.nenno.basicaiclient.v1.config;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import it.nenno.basicaiclient.v1.utils.JsonCodecs;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.LinkedHashMap;
@@ -48,6 +48,16 @@ public final class ConfigManager {
                 .orElse(null);
     }
 
+    /** @return provider/model keys of the fallback chain with the given name, null if not configured */
+    public static synchronized List<ProviderModel> getFallbackChain(String name) {
+        if (aiApis == null || aiApis.getFallbackChains() == null) return null;
+        return aiApis.getFallbackChains().stream()
+                .filter(chain -> chain.getName().equals(name))
+                .map(FallbackChain::getChain)
+                .findFirst()
+                .orElse(null);
+    }
+
     /** Get a map of all provider/model key entries */
     public static LinkedHashMap<Integer, ProviderModel> getProviderModels() {
         return providerModels;
@@ -78,7 +88,7 @@ public final class ConfigManager {
     private static void loadConfig() {
         try {
             String json = readConfigFile(CONFIG_FILE);
-            aiApis = new ObjectMapper().readValue(json, AiApis.class);
+            aiApis = JsonCodecs.reader(AiApis.class).readValue(json);
         } catch (Exception e) {
             LOGGER.error("Configuration load failed", e);
             throw new RuntimeException("Config load error", e);
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Ordered list of provider/model keys that serve a request one after the other on failure,
+ * as configured in aiapis.json:
+ * <pre>
+ * "fallback_chains": [
+ *   {"name": "llama-70b", "chain": [
+ *     {"provider": "Groq", "model": "llama3.3-70b"},
+ *     {"provider": "Togetherai", "model": "llama3.3-70b"}]}
+ * ]
+ * </pre>
+ */
+public class FallbackChain {
+
+    @JsonProperty("name")
+    private String name;
+
+    @JsonProperty("chain")
+    private List<ProviderModel> chain;
+
+    // Getters
+    public String getName() {
+        return name;
+    }
+
+    public List<ProviderModel> getChain() {
+        return chain;
+    }
+
+    @Override
+    public String toString() {
+        return name + chain;
+    }
+}
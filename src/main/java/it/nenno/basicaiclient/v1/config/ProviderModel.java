@@ -1,10 +1,14 @@
 package it.nenno.basicaiclient.v1.config;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 public class ProviderModel {
     private String provider;
     private String modelName;
 
-    public ProviderModel(String provider, String modelName) {
+    @JsonCreator
+    public ProviderModel(@JsonProperty("provider") String provider, @JsonProperty("model") String modelName) {
         this.provider = provider;
         this.modelName = modelName;
     }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Limits of a provider as configured in aiapis.json, 0 for no limit:
+ * <pre>"rate_limit": {"requests_per_minute": 30, "tokens_per_minute": 6000}</pre>
+ */
+public class RateLimit {
+
+    @JsonProperty("requests_per_minute")
+    private int requestsPerMinute;
+
+    @JsonProperty("tokens_per_minute")
+    private int tokensPerMinute;
+
+    // Constructors
+    public RateLimit() {}
+
+    public RateLimit(int requestsPerMinute, int tokensPerMinute) {
+        this.requestsPerMinute = requestsPerMinute;
+        this.tokensPerMinute = tokensPerMinute;
+    }
+
+    // Getters
+    public int getRequestsPerMinute() {
+        return requestsPerMinute;
+    }
+
+    public int getTokensPerMinute() {
+        return tokensPerMinute;
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimit{" +
+                "requestsPerMinute=" + requestsPerMinute +
+                ", tokensPerMinute=" + tokensPerMinute +
+                '}';
+    }
+}
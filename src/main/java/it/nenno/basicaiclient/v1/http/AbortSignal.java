@@ -0,0 +1,115 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1.http;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lets another thread abort a request in flight. The transport registers an action
+ * that closes the connection of the request, it is run at once if the signal is already aborted.
+ * A child signal is aborted with its parent but can also be aborted alone, e.g. by a timeout of one hop.
+ */
+public class AbortSignal {
+
+    private boolean aborted;
+    private Runnable action;
+    private List<AbortSignal> children;
+
+    /**
+     * Register the action that closes the connection, replacing the previous one
+     * @throws InterruptedIOException if the signal was already aborted (the action has been run)
+     */
+    public void onAbort(Runnable action) throws InterruptedIOException {
+        synchronized (this) {
+            if (!aborted) {
+                this.action = action;
+                return;
+            }
+        }
+        action.run();
+        throw new InterruptedIOException("Request aborted");
+    }
+
+    /** @return new signal that is aborted when this one is aborted, aborting it does not abort this one */
+    public AbortSignal newChild() {
+        AbortSignal child = new AbortSignal();
+        synchronized (this) {
+            if (!aborted) {
+                if (children == null) children = new ArrayList<>();
+                children.add(child);
+                return child;
+            }
+        }
+        child.abort();
+        return child;
+    }
+
+    /** Abort the request and the children, calling it more than once has no effect */
+    public void abort() {
+        Runnable toRun;
+        List<AbortSignal> toAbort;
+        synchronized (this) {
+            if (aborted) return;
+            aborted = true;
+            toRun = action;
+            action = null;
+            toAbort = children;
+            children = null;
+            // wake up a sleep() between two attempts
+            notifyAll();
+        }
+        if (toRun != null) {
+            toRun.run();
+        }
+        if (toAbort != null) {
+            for (AbortSignal child : toAbort) child.abort();
+        }
+    }
+
+    public synchronized boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Wait the given time, for example before a retry, returning early if aborted
+     * @throws InterruptedIOException if aborted or the thread was interrupted
+     */
+    public void sleep(long millis) throws InterruptedIOException {
+        long end = System.nanoTime() + millis * 1_000_000L;
+        synchronized (this) {
+            try {
+                long remaining;
+                while (!aborted && (remaining = end - System.nanoTime()) > 0) {
+                    wait(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Request interrupted");
+            }
+        }
+        throwIfAborted();
+    }
+
+    /** @throws InterruptedIOException if aborted */
+    public void throwIfAborted() throws InterruptedIOException {
+        if (isAborted()) {
+            throw new InterruptedIOException("Request aborted");
+        }
+    }
+}
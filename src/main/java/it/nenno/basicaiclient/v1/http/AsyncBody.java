@@ -0,0 +1,48 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1.http;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Body of a response pushed by a non-blocking transport, see {@link TransportResponse#getAsyncBody()}.
+ * <p>
+ * No thread waits for the bytes: the receiver is called by a thread of the transport for each
+ * requested buffer. Without demand the transport stops reading from the connection.
+ */
+public interface AsyncBody {
+
+    /** Callbacks of the transport, called one after the other */
+    interface Receiver {
+        /** next bytes of the body, the transport does not use the buffer anymore */
+        void onData(ByteBuffer bytes);
+
+        /** the body was read completely */
+        void onEnd();
+
+        void onError(Throwable error);
+    }
+
+    /** Start delivering the body to the receiver, nothing is delivered before the first request */
+    void start(Receiver receiver);
+
+    /** Allow the transport to deliver n more buffers */
+    void request(long n);
+
+    /** Stop reading, the connection or stream is discarded */
+    void cancel();
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Body of a HTTP/1.1 response read from a pooled connection, framed by
+ * content length, chunked transfer encoding or the end of the connection.
+ */
+abstract class BodyInputStream extends InputStream {
+
+    protected final InputStream in;
+    private Runnable closeAction;
+
+    BodyInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    /** @return true if the whole body was read and the connection is positioned at the next response */
+    abstract boolean isComplete();
+
+    /** called once on close, used to hand back the connection */
+    void onClose(Runnable closeAction) {
+        this.closeAction = closeAction;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public void close() {
+        Runnable action = closeAction;
+        closeAction = null;
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    /** Body with a Content-Length header */
+    static class FixedLength extends BodyInputStream {
+        private long remaining;
+
+        FixedLength(InputStream in, long contentLength) {
+            super(in);
+            this.remaining = contentLength;
+        }
+
+        @Override
+        boolean isComplete() {return remaining == 0;}
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) return -1;
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n == -1) {
+                throw new EOFException("Connection closed with " + remaining + " bytes of the body outstanding");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+    }
+
+    /** Body with Transfer-Encoding: chunked */
+    static class Chunked extends BodyInputStream {
+        private long chunkRemaining;
+        private boolean complete;
+
+        Chunked(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        boolean isComplete() {return complete;}
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (complete) return -1;
+            if (chunkRemaining == 0) {
+                chunkRemaining = readChunkSize();
+                if (chunkRemaining == 0) {
+                    // skip the trailer section
+                    while (!HttpWire.readLine(in).isEmpty()) {
+                        // trailer headers are ignored
+                    }
+                    complete = true;
+                    return -1;
+                }
+            }
+            int n = in.read(b, off, (int) Math.min(len, chunkRemaining));
+            if (n == -1) {
+                throw new EOFException("Connection closed inside a chunk");
+            }
+            chunkRemaining -= n;
+            if (chunkRemaining == 0) {
+                // CRLF after the chunk data
+                HttpWire.readLine(in);
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return complete ? 0 : (int) Math.min(in.available(), chunkRemaining);
+        }
+
+        private long readChunkSize() throws IOException {
+            String line = HttpWire.readLine(in);
+            int extension = line.indexOf(';');
+            if (extension != -1) {
+                line = line.substring(0, extension);
+            }
+            try {
+                return Long.parseLong(line.trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid chunk size: " + line);
+            }
+        }
+    }
+
+    /** Body without framing, delimited by closing the connection */
+    static class UntilClose extends BodyInputStream {
+        private boolean complete;
+
+        UntilClose(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        boolean isComplete() {return complete;}
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (complete) return -1;
+            int n = in.read(b, off, len);
+            if (n == -1) complete = true;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return complete ? 0 : in.available();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1.http;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP/2 transport based on java.net.http.HttpClient, which multiplexes concurrent
+ * requests to the same provider over one connection.
+ * <p>
+ * This is the Java 8 version that cannot be built, check {@link #isSupported()}.
+ * On Java 11 or later the version in META-INF/versions/11 of the multi-release jar is loaded instead.
+ */
+public class Http2Transport implements HttpTransport {
+
+    private Http2Transport() {
+        throw new UnsupportedOperationException("HTTP/2 transport requires Java 11 or later");
+    }
+
+    /** @return true if the running JVM and this jar support the HTTP/2 transport */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        throw new UnsupportedOperationException("HTTP/2 transport requires Java 11 or later");
+    }
+
+    // The builder class
+    public static class Builder {
+
+        /** executor of the HttpClient for its internal tasks */
+        public Builder executor(Executor executor) {
+            return this;
+        }
+
+        public Builder connectTimeout(long timeout, TimeUnit unit) {
+            return this;
+        }
+
+        /** @throws UnsupportedOperationException on Java 8 to 10 */
+        public Http2Transport build() {
+            return new Http2Transport();
+        }
+    }
+}
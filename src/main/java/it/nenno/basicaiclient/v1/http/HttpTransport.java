@@ -0,0 +1,42 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sends a single HTTP request and hands back the response with an open body stream.
+ * <p>
+ * The caller owns the returned {@link TransportResponse} and must close it, which allows
+ * pooling implementations to reuse the underlying connection.
+ */
+public interface HttpTransport extends Closeable {
+
+    /**
+     * Execute the request and return as soon as the status line and the headers are read
+     * @param request to send
+     * @return response with the body not yet consumed
+     * @throws IOException if the connection fails or the request cannot be written
+     */
+    TransportResponse execute(TransportRequest request) throws IOException;
+
+    /** Release all resources held by the transport (default: nothing to release) */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1.http;
+
+/**
+ * Provides the transport shared by all clients that do not set their own
+ */
+public final class HttpTransports {
+
+    private HttpTransports() {}
+
+    private static class DefaultHolder {
+        static final HttpTransport DEFAULT = createDefault();
+    }
+
+    /**
+     * Shared transport: a {@link PooledHttpTransport}, or the {@link UrlConnectionTransport}
+     * if a proxy is configured by the system properties
+     */
+    public static HttpTransport getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    private static HttpTransport createDefault() {
+        if (System.getProperty("http.proxyHost") != null || System.getProperty("https.proxyHost") != null
+                || Boolean.getBoolean("java.net.useSystemProxies")) {
+            return new UrlConnectionTransport();
+        }
+        return new PooledHttpTransport.Builder().build();
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1.http;
+
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reading and writing of the HTTP/1.1 wire format used by {@link PooledHttpTransport}
+ */
+final class HttpWire {
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private HttpWire() {}
+
+    /** Status line and headers of a response */
+    static class ResponseHead {
+        final String version;
+        final int statusCode;
+        final String statusMessage;
+        final Map<String, List<String>> headers;
+
+        ResponseHead(String version, int statusCode, String statusMessage, Map<String, List<String>> headers) {
+            this.version = version;
+            this.statusCode = statusCode;
+            this.statusMessage = statusMessage;
+            this.headers = headers;
+        }
+
+        String header(String name) {
+            List<String> values = headers.get(name);
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+    }
+
+    /** Read a line terminated by CRLF (or LF) without the terminator */
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("HTTP header line too long");
+            }
+            line.append((char) b);
+        }
+        throw new EOFException("Connection closed by peer");
+    }
+
+    static void writeRequestHead(OutputStream out, TransportRequest request, long contentLength) throws IOException {
+        URL url = request.getUrl();
+        String path = url.getPath().isEmpty() ? "/" : url.getPath();
+        if (url.getQuery() != null) {
+            path += "?" + url.getQuery();
+        }
+
+        StringBuilder head = new StringBuilder(256);
+        head.append(request.getMethod()).append(' ').append(path).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(url.getHost());
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+            head.append(':').append(url.getPort());
+        }
+        head.append("\r\n");
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            String name = header.getKey();
+            if ("host".equalsIgnoreCase(name) || "content-length".equalsIgnoreCase(name)
+                    || "transfer-encoding".equalsIgnoreCase(name) || "connection".equalsIgnoreCase(name)) {
+                continue;
+            }
+            head.append(name).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (request.getBody() != null) {
+            if (contentLength >= 0) {
+                head.append("Content-Length: ").append(contentLength).append("\r\n");
+            } else {
+                head.append("Transfer-Encoding: chunked\r\n");
+            }
+        }
+        head.append("\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /** Read status line and headers, informational (1xx) responses are skipped */
+    static ResponseHead readResponseHead(InputStream in) throws IOException {
+        while (true) {
+            String statusLine = readLine(in);
+            String[] parts = statusLine.split(" ", 3);
+            if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+                throw new IOException("Invalid HTTP status line: " + statusLine);
+            }
+            int statusCode;
+            try {
+                statusCode = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid HTTP status line: " + statusLine);
+            }
+
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            String line;
+            while (!(line = readLine(in)).isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                    headers.computeIfAbsent(name, k -> new ArrayList<>()).add(line.substring(colon + 1).trim());
+                }
+            }
+
+            if (statusCode >= 100 && statusCode < 200) {
+                continue;
+            }
+            return new ResponseHead(parts[0], statusCode, parts.length > 2 ? parts[2] : "",
+                    Collections.unmodifiableMap(headers));
+        }
+    }
+
+    /** Writes the data in chunks, {@link #finish()} writes the last chunk */
+    static class ChunkedOutputStream extends FilterOutputStream {
+        private final byte[] buffer;
+        private int count;
+
+        ChunkedOutputStream(OutputStream out, int chunkSize) {
+            super(out);
+            this.buffer = new byte[chunkSize];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) writeChunk();
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) writeChunk();
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeChunk();
+            out.flush();
+        }
+
+        void finish() throws IOException {
+            writeChunk();
+            out.write('0');
+            out.write(CRLF);
+            out.write(CRLF);
+        }
+
+        /** the connection stays open, see {@link #finish()} */
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        private void writeChunk() throws IOException {
+            if (count == 0) return;
+            out.write(Integer.toHexString(count).getBytes(StandardCharsets.ISO_8859_1));
+            out.write(CRLF);
+            out.write(buffer, 0, count);
+            out.write(CRLF);
+            count = 0;
+        }
+    }
+
+    /** Protects the connection from bodies closing the stream they are written to */
+    static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
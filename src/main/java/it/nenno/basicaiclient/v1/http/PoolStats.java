@@ -0,0 +1,80 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1.http;
+
+/**
+ * Snapshot of the statistics of a {@link PooledHttpTransport}, for all hosts or a single host
+ */
+public class PoolStats {
+    private final int leased;
+    private final int idle;
+    private final int pending;
+    private final int max;
+    private final long created;
+    private final long reused;
+    private final long evicted;
+    private final long discarded;
+
+    PoolStats(int leased, int idle, int pending, int max, long created, long reused, long evicted, long discarded) {
+        this.leased = leased;
+        this.idle = idle;
+        this.pending = pending;
+        this.max = max;
+        this.created = created;
+        this.reused = reused;
+        this.evicted = evicted;
+        this.discarded = discarded;
+    }
+
+    /** connections currently in use */
+    public int getLeased() {return leased;}
+
+    /** open connections waiting in the pool */
+    public int getIdle() {return idle;}
+
+    /** requests waiting for a free connection */
+    public int getPending() {return pending;}
+
+    /** maximum number of leased connections (per host) */
+    public int getMax() {return max;}
+
+    /** connections opened since start */
+    public long getCreated() {return created;}
+
+    /** requests served by an already open connection */
+    public long getReused() {return reused;}
+
+    /** idle connections closed because they were expired or stale */
+    public long getEvicted() {return evicted;}
+
+    /** connections closed after use because they could not be reused */
+    public long getDiscarded() {return discarded;}
+
+    @Override
+    public String toString() {
+        return "PoolStats{" +
+                "leased=" + leased +
+                ", idle=" + idle +
+                ", pending=" + pending +
+                ", max=" + max +
+                ", created=" + created +
+                ", reused=" + reused +
+                ", evicted=" + evicted +
+                ", discarded=" + discarded +
+                '}';
+    }
+}
@@ -0,0 +1,615 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP/1.1 transport that keeps connections alive and reuses them for further requests
+ * to the same host, so that a completion does not pay a new TCP and TLS handshake.
+ * <ul>
+ *     <li>the number of connections in use per host is limited, further requests wait for a free one</li>
+ *     <li>idle connections are closed after the idle timeout (or the keep-alive timeout sent by the server)</li>
+ *     <li>statistics are available for all hosts and per host</li>
+ * </ul>
+ * Proxies are not supported, use the {@link UrlConnectionTransport} in that case.
+ */
+public class PooledHttpTransport implements HttpTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledHttpTransport.class);
+
+    /** time to wait for the rest of an unread body on close before the connection is discarded */
+    private static final int DRAIN_TIMEOUT_MILLIS = 100;
+    private static final int DRAIN_MAX_BYTES = 64 * 1024;
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private final int maxConnectionsPerHost;
+    private final long idleTimeoutMillis;
+    private final long leaseTimeoutMillis;
+    private final long validateAfterInactivityMillis;
+    private final SSLSocketFactory sslSocketFactory;
+
+    private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    private PooledHttpTransport(Builder builder) {
+        this.maxConnectionsPerHost = builder.maxConnectionsPerHost;
+        this.idleTimeoutMillis = builder.idleTimeoutMillis;
+        this.leaseTimeoutMillis = builder.leaseTimeoutMillis;
+        this.validateAfterInactivityMillis = builder.validateAfterInactivityMillis;
+        this.sslSocketFactory = builder.sslSocketFactory != null
+                ? builder.sslSocketFactory : (SSLSocketFactory) SSLSocketFactory.getDefault();
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "basicaiclient-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000, Math.min(idleTimeoutMillis, builder.evictionIntervalMillis));
+        this.evictor.scheduleWithFixedDelay(this::evictExpired, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        if (closed) {
+            throw new IOException("Transport is closed");
+        }
+        AbortSignal abortSignal = request.getAbortSignal();
+        if (abortSignal != null) abortSignal.throwIfAborted();
+
+        Route route = routeFor(request.getUrl());
+        route.acquirePermit();
+
+        boolean allowIdle = true;
+        while (true) {
+            PooledConnection connection;
+            try {
+                connection = allowIdle ? pollIdle(route) : null;
+                if (connection == null) {
+                    connection = connect(route, request.getUrl(), request.getConnectTimeoutMillis());
+                }
+            } catch (IOException | RuntimeException e) {
+                route.releasePermit();
+                throw e;
+            }
+
+            try {
+                if (abortSignal != null) {
+                    final PooledConnection toClose = connection;
+                    abortSignal.onAbort(() -> closeQuietly(toClose));
+                }
+                TransportResponse response = exchange(route, connection, request);
+                if (abortSignal != null) abortSignal.onAbort(response::abort);
+                return response;
+            } catch (IOException e) {
+                closeQuietly(connection);
+                route.discarded.incrementAndGet();
+                // a kept-alive connection can be closed by the server at any time,
+                // then the request is repeated once on a new connection
+                if (connection.reused && !(e instanceof SocketTimeoutException) && !connection.responseStarted
+                        && (abortSignal == null || !abortSignal.isAborted())) {
+                    LOGGER.debug("Stale connection to " + route.key + ", retry on a new connection: " + e.getMessage());
+                    allowIdle = false;
+                    continue;
+                }
+                route.releasePermit();
+                throw e;
+            } catch (RuntimeException e) {
+                closeQuietly(connection);
+                route.discarded.incrementAndGet();
+                route.releasePermit();
+                throw e;
+            }
+        }
+    }
+
+    /** Statistics over all hosts */
+    public PoolStats getStats() {
+        int leased = 0, idle = 0, pending = 0;
+        long created = 0, reused = 0, evicted = 0, discarded = 0;
+        for (Route route : routes.values()) {
+            PoolStats stats = route.stats(maxConnectionsPerHost);
+            leased += stats.getLeased();
+            idle += stats.getIdle();
+            pending += stats.getPending();
+            created += stats.getCreated();
+            reused += stats.getReused();
+            evicted += stats.getEvicted();
+            discarded += stats.getDiscarded();
+        }
+        return new PoolStats(leased, idle, pending, maxConnectionsPerHost * Math.max(1, routes.size()),
+                created, reused, evicted, discarded);
+    }
+
+    /** Statistics per host, key like "https://api.groq.com:443" */
+    public Map<String, PoolStats> getRouteStats() {
+        Map<String, PoolStats> stats = new LinkedHashMap<>();
+        for (Route route : routes.values()) {
+            stats.put(route.key, route.stats(maxConnectionsPerHost));
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /** Close connections that are idle longer than the idle timeout or beyond their keep-alive time */
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (Route route : routes.values()) {
+            synchronized (route) {
+                for (Iterator<PooledConnection> it = route.idle.iterator(); it.hasNext(); ) {
+                    PooledConnection connection = it.next();
+                    if (connection.isExpired(now, idleTimeoutMillis)) {
+                        it.remove();
+                        closeQuietly(connection);
+                        route.evicted.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    /** Close all idle connections, connections in use are not affected */
+    public void closeIdleConnections() {
+        for (Route route : routes.values()) {
+            synchronized (route) {
+                for (PooledConnection connection : route.idle) {
+                    closeQuietly(connection);
+                    route.evicted.incrementAndGet();
+                }
+                route.idle.clear();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        closeIdleConnections();
+    }
+
+    // ------- Connections -------
+
+    private Route routeFor(URL url) {
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        String key = url.getProtocol() + "://" + url.getHost().toLowerCase(Locale.ROOT) + ":" + port;
+        return routes.computeIfAbsent(key, k -> new Route(k, maxConnectionsPerHost, leaseTimeoutMillis));
+    }
+
+    private PooledConnection pollIdle(Route route) {
+        long now = System.currentTimeMillis();
+        while (true) {
+            PooledConnection connection;
+            synchronized (route) {
+                // most recently used first, the others can expire
+                connection = route.idle.pollFirst();
+            }
+            if (connection == null) {
+                return null;
+            }
+            if (connection.isExpired(now, idleTimeoutMillis)
+                    || (now - connection.lastUsed > validateAfterInactivityMillis && connection.isStale())) {
+                closeQuietly(connection);
+                route.evicted.incrementAndGet();
+                continue;
+            }
+            connection.reused = true;
+            connection.responseStarted = false;
+            route.reused.incrementAndGet();
+            return connection;
+        }
+    }
+
+    private PooledConnection connect(Route route, URL url, long connectTimeoutMillis) throws IOException {
+        String host = url.getHost();
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            int timeout = (int) Math.min(Integer.MAX_VALUE, connectTimeoutMillis);
+            try {
+                socket.connect(new InetSocketAddress(host, port), timeout);
+            } catch (SocketTimeoutException e) {
+                throw new ConnectTimeoutException("Connect to " + route.key + " timed out after " + timeout + " ms");
+            }
+
+            if ("https".equals(url.getProtocol())) {
+                SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(socket, host, port, true);
+                SSLParameters parameters = sslSocket.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                parameters.setServerNames(Collections.singletonList(new SNIHostName(host)));
+                sslSocket.setSSLParameters(parameters);
+                // the handshake is part of the connect timeout
+                sslSocket.setSoTimeout(timeout);
+                try {
+                    sslSocket.startHandshake();
+                } catch (SocketTimeoutException e) {
+                    throw new ConnectTimeoutException("TLS handshake with " + route.key + " timed out after " + timeout + " ms");
+                }
+                sslSocket.setSoTimeout(0);
+                socket = sslSocket;
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // already failing
+            }
+            throw e;
+        }
+        route.created.incrementAndGet();
+        return new PooledConnection(socket);
+    }
+
+    private TransportResponse exchange(Route route, PooledConnection connection, TransportRequest request) throws IOException {
+        TransportRequest.RequestBody body = request.getBody();
+        long contentLength = body != null ? body.getContentLength() : 0;
+
+        // ------ send the request ------
+        HttpWire.writeRequestHead(connection.out, request, contentLength);
+        if (body != null) {
+            if (contentLength >= 0) {
+                body.writeTo(new HttpWire.NonClosingOutputStream(connection.out));
+            } else {
+                HttpWire.ChunkedOutputStream chunked = new HttpWire.ChunkedOutputStream(connection.out, CHUNK_SIZE);
+                body.writeTo(chunked);
+                chunked.finish();
+            }
+        }
+        connection.out.flush();
+
+        // ------ read status line and headers ------
+        connection.in.mark(1);
+        if (connection.in.read() != -1) {
+            connection.responseStarted = true;
+        }
+        connection.in.reset();
+        HttpWire.ResponseHead head = HttpWire.readResponseHead(connection.in);
+
+        BodyInputStream responseBody;
+        String transferEncoding = head.header("transfer-encoding");
+        String contentLengthHeader = head.header("content-length");
+        if ("HEAD".equals(request.getMethod()) || head.statusCode == 204 || head.statusCode == 304) {
+            responseBody = new BodyInputStream.FixedLength(connection.in, 0);
+        } else if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ROOT).contains("chunked")) {
+            responseBody = new BodyInputStream.Chunked(connection.in);
+        } else if (contentLengthHeader != null) {
+            try {
+                responseBody = new BodyInputStream.FixedLength(connection.in, Long.parseLong(contentLengthHeader));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length: " + contentLengthHeader);
+            }
+        } else {
+            responseBody = new BodyInputStream.UntilClose(connection.in);
+        }
+
+        connection.keepAliveUntil = keepAliveUntil(head);
+        boolean reusable = isReusable(head) && !(responseBody instanceof BodyInputStream.UntilClose);
+        return new PooledResponse(route, connection, head, responseBody, reusable);
+    }
+
+    private static boolean isReusable(HttpWire.ResponseHead head) {
+        String connectionHeader = head.header("connection");
+        if ("HTTP/1.0".equals(head.version)) {
+            return connectionHeader != null && "keep-alive".equalsIgnoreCase(connectionHeader);
+        }
+        return connectionHeader == null || !"close".equalsIgnoreCase(connectionHeader);
+    }
+
+    /** Keep-Alive: timeout=5, max=100 */
+    private static long keepAliveUntil(HttpWire.ResponseHead head) {
+        String keepAlive = head.header("keep-alive");
+        if (keepAlive != null) {
+            for (String parameter : keepAlive.split(",")) {
+                String[] pair = parameter.trim().split("=", 2);
+                if (pair.length == 2 && "timeout".equalsIgnoreCase(pair[0].trim())) {
+                    try {
+                        // one second of safety margin against the server closing first
+                        long seconds = Long.parseLong(pair[1].trim());
+                        return System.currentTimeMillis() + Math.max(0, seconds - 1) * 1000;
+                    } catch (NumberFormatException ignored) {
+                        // keep the idle timeout of the pool
+                    }
+                }
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private void release(Route route, PooledConnection connection, boolean reusable) {
+        if (reusable && !closed && !connection.socket.isClosed()) {
+            connection.lastUsed = System.currentTimeMillis();
+            synchronized (route) {
+                route.idle.addFirst(connection);
+            }
+        } else {
+            closeQuietly(connection);
+            route.discarded.incrementAndGet();
+        }
+        route.releasePermit();
+    }
+
+    private static void closeQuietly(PooledConnection connection) {
+        try {
+            connection.socket.close();
+        } catch (IOException e) {
+            LOGGER.debug("Error closing connection: " + e.getMessage());
+        }
+    }
+
+    /** Connections and counters of one scheme/host/port */
+    private static class Route {
+        final String key;
+        final Semaphore permits;
+        final long leaseTimeoutMillis;
+        final Deque<PooledConnection> idle = new ArrayDeque<>();
+        final AtomicInteger leased = new AtomicInteger();
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicLong created = new AtomicLong();
+        final AtomicLong reused = new AtomicLong();
+        final AtomicLong evicted = new AtomicLong();
+        final AtomicLong discarded = new AtomicLong();
+
+        Route(String key, int maxConnections, long leaseTimeoutMillis) {
+            this.key = key;
+            this.permits = new Semaphore(maxConnections, true);
+            this.leaseTimeoutMillis = leaseTimeoutMillis;
+        }
+
+        void acquirePermit() throws IOException {
+            pending.incrementAndGet();
+            try {
+                if (!permits.tryAcquire(leaseTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Timeout waiting for a connection to " + key
+                            + " after " + leaseTimeoutMillis + " ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a connection to " + key);
+            } finally {
+                pending.decrementAndGet();
+            }
+            leased.incrementAndGet();
+        }
+
+        void releasePermit() {
+            leased.decrementAndGet();
+            permits.release();
+        }
+
+        PoolStats stats(int max) {
+            int idleCount;
+            synchronized (this) {
+                idleCount = idle.size();
+            }
+            return new PoolStats(leased.get(), idleCount, pending.get(), max,
+                    created.get(), reused.get(), evicted.get(), discarded.get());
+        }
+    }
+
+    /** Socket with its buffered streams */
+    private static class PooledConnection {
+        final Socket socket;
+        final BufferedInputStream in;
+        final OutputStream out;
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile long keepAliveUntil = Long.MAX_VALUE;
+        boolean reused;
+        boolean responseStarted;
+
+        PooledConnection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), 16 * 1024);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 16 * 1024);
+        }
+
+        boolean isExpired(long now, long idleTimeoutMillis) {
+            return now - lastUsed > idleTimeoutMillis || now > keepAliveUntil || socket.isClosed();
+        }
+
+        /** An idle connection is stale if the peer closed it or sent unexpected data */
+        boolean isStale() {
+            int soTimeout = 0;
+            try {
+                soTimeout = socket.getSoTimeout();
+                if (in.available() > 0) return true;
+                socket.setSoTimeout(1);
+                // data or the end of the stream on an idle connection, both make it unusable
+                in.read();
+                return true;
+            } catch (SocketTimeoutException e) {
+                return false;
+            } catch (IOException e) {
+                return true;
+            } finally {
+                try {
+                    socket.setSoTimeout(soTimeout);
+                } catch (IOException ignored) {
+                    // the connection is closed
+                }
+            }
+        }
+    }
+
+    /** Response bound to a leased connection */
+    private class PooledResponse implements TransportResponse {
+        private final Route route;
+        private final PooledConnection connection;
+        private final HttpWire.ResponseHead head;
+        private final BodyInputStream body;
+        private final boolean reusable;
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        PooledResponse(Route route, PooledConnection connection, HttpWire.ResponseHead head,
+                       BodyInputStream body, boolean reusable) {
+            this.route = route;
+            this.connection = connection;
+            this.head = head;
+            this.body = body;
+            this.reusable = reusable;
+            body.onClose(this::close);
+        }
+
+        @Override
+        public int getStatusCode() {return head.statusCode;}
+
+        @Override
+        public String getStatusMessage() {return head.statusMessage;}
+
+        @Override
+        public String getHeader(String name) {return head.header(name.toLowerCase(Locale.ROOT));}
+
+        @Override
+        public Map<String, List<String>> getHeaders() {return head.headers;}
+
+        @Override
+        public InputStream getBody() {return body;}
+
+        @Override
+        public void close() {
+            if (!finished.compareAndSet(false, true)) return;
+            release(route, connection, reusable && drain());
+        }
+
+        @Override
+        public void abort() {
+            if (!finished.compareAndSet(false, true)) {
+                // already handed back, but a reader may still block on the socket
+                if (!reusable) closeQuietly(connection);
+                return;
+            }
+            closeQuietly(connection);
+            route.discarded.incrementAndGet();
+            route.releasePermit();
+        }
+
+        /** read what is left of the body for a short time, @return true if the body is complete */
+        private boolean drain() {
+            if (body.isComplete()) return true;
+            int soTimeout = 0;
+            try {
+                soTimeout = connection.socket.getSoTimeout();
+                connection.socket.setSoTimeout(DRAIN_TIMEOUT_MILLIS);
+                byte[] buffer = new byte[4096];
+                int total = 0;
+                int n;
+                while (total < DRAIN_MAX_BYTES && (n = body.read(buffer, 0, buffer.length)) != -1) {
+                    total += n;
+                }
+                connection.socket.setSoTimeout(soTimeout);
+                return body.isComplete();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    // The builder class
+    public static class Builder {
+        private int maxConnectionsPerHost = 20;
+        private long idleTimeoutMillis = 30_000;
+        private long evictionIntervalMillis = 5_000;
+        private long leaseTimeoutMillis = 60_000;
+        private long validateAfterInactivityMillis = 2_000;
+        private SSLSocketFactory sslSocketFactory;
+
+        /** maximum number of connections in use per host (default 20) */
+        public Builder maxConnectionsPerHost(int maxConnectionsPerHost) {
+            if (maxConnectionsPerHost < 1) {
+                throw new IllegalArgumentException("maxConnectionsPerHost must be at least 1.");
+            }
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            return this;
+        }
+
+        /** idle connections are closed after this time (default 30 s) */
+        public Builder idleTimeout(long timeout, TimeUnit unit) {
+            this.idleTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /** how often idle connections are checked for expiry (default 5 s) */
+        public Builder evictionInterval(long interval, TimeUnit unit) {
+            this.evictionIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        /** maximum wait for a free connection if the host limit is reached (default 60 s) */
+        public Builder leaseTimeout(long timeout, TimeUnit unit) {
+            this.leaseTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /** idle connections older than this are checked before reuse (default 2 s) */
+        public Builder validateAfterInactivity(long time, TimeUnit unit) {
+            this.validateAfterInactivityMillis = unit.toMillis(time);
+            return this;
+        }
+
+        public Builder sslSocketFactory(SSLSocketFactory sslSocketFactory) {
+            this.sslSocketFactory = sslSocketFactory;
+            return this;
+        }
+
+        public PooledHttpTransport build() {
+            return new PooledHttpTransport(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PooledHttpTransport{" +
+                "maxConnectionsPerHost=" + maxConnectionsPerHost +
+                ", idleTimeoutMillis=" + idleTimeoutMillis +
+                ", stats=" + getStats() +
+                '}';
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits a server-sent event stream into events on the bytes, without decoding them to chars.
+ * <p>
+ * Follows the event stream format of the HTML standard: lines end with CRLF, LF or CR, a blank line
+ * dispatches the event, lines starting with ":" are comments, "data" lines are joined with LF,
+ * "event", "id" and "retry" are kept, other fields are ignored, a leading UTF-8 BOM is skipped and an
+ * event not terminated by a blank line at the end of the stream is discarded.
+ * <p>
+ * The bytes are read into one reusable buffer and the data of an event is collected in a second one,
+ * which {@link Event} exposes as a slice for a JSON parser (e.g. ObjectReader.readValue(bytes, offset, length)).
+ * Both buffers grow for long lines up to the maximum event size. Not thread-safe.
+ * <p>
+ * Without InputStream (see {@link #forPush(boolean)}) the bytes are handed over with {@link #feed(ByteBuffer)}
+ * as they arrive from a non-blocking transport, next() then returns null until an event is complete.
+ */
+public class SseFramer {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    public static final int DEFAULT_MAX_EVENT_SIZE = 16 * 1024 * 1024;
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte[] DATA = {'d', 'a', 't', 'a'};
+    private static final byte[] EVENT = {'e', 'v', 'e', 'n', 't'};
+    private static final byte[] ID = {'i', 'd'};
+    private static final byte[] RETRY = {'r', 'e', 't', 'r', 'y'};
+    private static final byte[] DONE = "[DONE]".getBytes(StandardCharsets.US_ASCII);
+    // push mode: no line end in the bytes fed so far
+    private static final int NEED_MORE = -2;
+
+    private final InputStream in;
+    private final boolean lines;
+    private final int maxEventSize;
+    // bytes read but not yet framed are between position and limit
+    private ByteBuffer buffer;
+    private boolean skipLf;
+    private boolean firstLine = true;
+    private boolean eof;
+    // the event was returned, it is reset by the next call
+    private boolean dispatched;
+
+    private final Event event = new Event();
+
+    /** Framer of a text/event-stream */
+    public SseFramer(InputStream in) {
+        this(in, false, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_EVENT_SIZE);
+    }
+
+    /**
+     * @param in stream to read from, null for the push mode
+     * @param lines true for newline-delimited JSON (e.g. Ollama): every non-blank line is the data of an event
+     */
+    public SseFramer(InputStream in, boolean lines, int bufferSize, int maxEventSize) {
+        if (bufferSize < 16 || maxEventSize < bufferSize) {
+            throw new IllegalArgumentException("bufferSize must be at least 16 and not above maxEventSize.");
+        }
+        this.in = in;
+        this.lines = lines;
+        this.maxEventSize = maxEventSize;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        ((Buffer) this.buffer).flip();
+    }
+
+    /** Framer of newline-delimited JSON, every non-blank line is one event */
+    public static SseFramer forLines(InputStream in) {
+        return new SseFramer(in, true, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_EVENT_SIZE);
+    }
+
+    /** Framer in push mode, the bytes are given with {@link #feed(ByteBuffer)} and {@link #endOfInput()} */
+    public static SseFramer forPush(boolean lines) {
+        return new SseFramer(null, lines, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_EVENT_SIZE);
+    }
+
+    /**
+     * Push mode: append the remaining bytes of the buffer
+     * @throws IOException if a line is longer than the maximum event size
+     */
+    public void feed(ByteBuffer bytes) throws IOException {
+        if (in != null) {
+            throw new IllegalStateException("The framer reads from an InputStream");
+        }
+        while (bytes.hasRemaining()) {
+            makeRoom();
+            int limit = buffer.limit();
+            int n = Math.min(bytes.remaining(), buffer.capacity() - limit);
+            bytes.get(buffer.array(), limit, n);
+            ((Buffer) buffer).limit(limit + n);
+        }
+    }
+
+    /** Push mode: no more bytes will follow */
+    public void endOfInput() {
+        eof = true;
+    }
+
+    /**
+     * Read the next event
+     * @return the event, valid until the next call, or null at the end of the stream;
+     * in push mode also null if more bytes are needed
+     */
+    public Event next() throws IOException {
+        if (dispatched) {
+            event.reset();
+            dispatched = false;
+        }
+        while (true) {
+            int lineEnd = findLineEnd();
+            if (lineEnd == NEED_MORE) {
+                return null;
+            }
+            if (lineEnd < 0) {
+                // the rest of an unterminated event is discarded, a last line of JSON is kept
+                if (lines && buffer.hasRemaining()) {
+                    int start = buffer.position();
+                    int length = buffer.limit() - start;
+                    ((Buffer) buffer).position(buffer.limit());
+                    if (!isBlank(start, length)) {
+                        event.appendData(buffer.array(), start, length);
+                        return event.finish();
+                    }
+                }
+                return null;
+            }
+            int start = buffer.position();
+            int length = lineEnd - start;
+            consumeLineEnd(lineEnd);
+            if (firstLine) {
+                firstLine = false;
+                if (length >= 3 && (buffer.get(start) & 0xff) == 0xef && (buffer.get(start + 1) & 0xff) == 0xbb
+                        && (buffer.get(start + 2) & 0xff) == 0xbf) {
+                    start += 3;
+                    length -= 3;
+                }
+            }
+            if (lines) {
+                if (!isBlank(start, length)) {
+                    event.appendData(buffer.array(), start, length);
+                    return event.finish();
+                }
+            } else if (length == 0) {
+                if (event.hasData) {
+                    return event.finish();
+                }
+                // an event without data is not dispatched
+                event.reset();
+            } else {
+                processField(start, length);
+            }
+        }
+    }
+
+    private void processField(int start, int length) {
+        byte[] bytes = buffer.array();
+        if (bytes[start] == ':') {
+            return; // comment
+        }
+        int colon = -1;
+        for (int i = start; i < start + length; i++) {
+            if (bytes[i] == ':') {
+                colon = i;
+                break;
+            }
+        }
+        int nameLength = colon < 0 ? length : colon - start;
+        int valueStart = colon < 0 ? start + length : colon + 1;
+        if (colon >= 0 && valueStart < start + length && bytes[valueStart] == ' ') {
+            valueStart++;
+        }
+        int valueLength = start + length - valueStart;
+
+        if (matches(bytes, start, nameLength, DATA)) {
+            event.appendData(bytes, valueStart, valueLength);
+        } else if (matches(bytes, start, nameLength, EVENT)) {
+            event.type = new String(bytes, valueStart, valueLength, StandardCharsets.UTF_8);
+        } else if (matches(bytes, start, nameLength, ID)) {
+            boolean hasNull = false;
+            for (int i = valueStart; i < valueStart + valueLength; i++) {
+                if (bytes[i] == 0) hasNull = true;
+            }
+            if (!hasNull) event.lastEventId = new String(bytes, valueStart, valueLength, StandardCharsets.UTF_8);
+        } else if (matches(bytes, start, nameLength, RETRY)) {
+            long retry = 0;
+            boolean digits = valueLength > 0 && valueLength < 19;
+            for (int i = valueStart; i < valueStart + valueLength && digits; i++) {
+                if (bytes[i] < '0' || bytes[i] > '9') digits = false;
+                else retry = retry * 10 + (bytes[i] - '0');
+            }
+            if (digits) event.retryMillis = retry;
+        }
+    }
+
+    /** @return index of the CR or LF that ends the next line, -1 at the end of the stream, NEED_MORE in push mode */
+    private int findLineEnd() throws IOException {
+        int scanned = buffer.position();
+        while (true) {
+            byte[] bytes = buffer.array();
+            int limit = buffer.limit();
+            for (int i = scanned; i < limit; i++) {
+                byte b = bytes[i];
+                if (b == LF || b == CR) {
+                    if (skipLf && i == buffer.position() && b == LF) {
+                        // LF of a CRLF split by a refill
+                        skipLf = false;
+                        ((Buffer) buffer).position(i + 1);
+                        continue;
+                    }
+                    skipLf = false;
+                    return i;
+                }
+                skipLf = false;
+            }
+            scanned = limit;
+            if (eof) return -1;
+            if (in == null) return NEED_MORE;
+            int read = fill();
+            if (read < 0) {
+                eof = true;
+                return -1;
+            }
+            // fill() may have moved the unread bytes to the start of the buffer
+            scanned = buffer.limit() - read;
+        }
+    }
+
+    private void consumeLineEnd(int lineEnd) {
+        byte[] bytes = buffer.array();
+        if (bytes[lineEnd] == CR) {
+            if (lineEnd + 1 < buffer.limit()) {
+                ((Buffer) buffer).position(bytes[lineEnd + 1] == LF ? lineEnd + 2 : lineEnd + 1);
+            } else {
+                // the LF may follow in the next read
+                ((Buffer) buffer).position(lineEnd + 1);
+                skipLf = true;
+            }
+        } else {
+            ((Buffer) buffer).position(lineEnd + 1);
+        }
+    }
+
+    /** read more bytes after the unread ones, growing the buffer for a long line */
+    private int fill() throws IOException {
+        makeRoom();
+        int limit = buffer.limit();
+        int read = in.read(buffer.array(), limit, buffer.capacity() - limit);
+        if (read > 0) ((Buffer) buffer).limit(limit + read);
+        return read;
+    }
+
+    /** move the unread bytes to the start of the buffer, grow it if they fill it */
+    private void makeRoom() throws IOException {
+        if (buffer.position() > 0) {
+            buffer.compact();
+            ((Buffer) buffer).flip();
+        }
+        if (buffer.limit() == buffer.capacity()) {
+            if (buffer.capacity() >= maxEventSize) {
+                throw new IOException("Line of the event stream longer than " + maxEventSize + " bytes");
+            }
+            ByteBuffer larger = ByteBuffer.allocate((int) Math.min(maxEventSize, buffer.capacity() * 2L));
+            larger.put(buffer);
+            ((Buffer) larger).flip();
+            buffer = larger;
+        }
+    }
+
+    private boolean isBlank(int start, int length) {
+        byte[] bytes = buffer.array();
+        for (int i = start; i < start + length; i++) {
+            if (bytes[i] != ' ' && bytes[i] != '\t') return false;
+        }
+        return true;
+    }
+
+    private static boolean matches(byte[] bytes, int start, int length, byte[] name) {
+        if (length != name.length) return false;
+        for (int i = 0; i < length; i++) {
+            if (bytes[start + i] != name[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * One event of the stream, reused by the framer: the data is only valid until the next call of next().
+     */
+    public class Event {
+        private byte[] data = new byte[1024];
+        private int dataLength;
+        private boolean hasData;
+        private String type;
+        // kept across events as in the standard
+        private String lastEventId;
+        private long retryMillis = -1;
+
+        private void reset() {
+            dataLength = 0;
+            hasData = false;
+            type = null;
+        }
+
+        private void appendData(byte[] bytes, int offset, int length) {
+            // the lines of the data are joined with LF
+            int needed = dataLength + length + 1;
+            if (needed > maxEventSize) {
+                throw new IllegalStateException("Event of the event stream longer than " + maxEventSize + " bytes");
+            }
+            if (needed > data.length) {
+                byte[] larger = new byte[(int) Math.min(maxEventSize, Math.max(needed, data.length * 2L))];
+                System.arraycopy(data, 0, larger, 0, dataLength);
+                data = larger;
+            }
+            System.arraycopy(bytes, offset, data, dataLength, length);
+            dataLength += length;
+            data[dataLength++] = LF;
+            hasData = true;
+        }
+
+        private Event finish() {
+            dispatched = true;
+            // the last LF is removed
+            dataLength--;
+            return this;
+        }
+
+        /** @return the buffer of the data, which starts at offset 0 */
+        public byte[] getData() {return data;}
+
+        public int getDataLength() {return dataLength;}
+
+        /** @return the data decoded as UTF-8, e.g. for logging */
+        public String getDataAsString() {
+            return new String(data, 0, dataLength, StandardCharsets.UTF_8);
+        }
+
+        /** @return the name in the "event" field or null for the default "message" */
+        public String getType() {return type;}
+
+        /** @return last "id" of the stream or null */
+        public String getLastEventId() {return lastEventId;}
+
+        /** @return last "retry" of the stream in milliseconds or -1 */
+        public long getRetryMillis() {return retryMillis;}
+
+        /** @return true if the data is the "[DONE]" marker of OpenAI-compatible streams, leading blanks ignored */
+        public boolean isDone() {
+            int i = 0;
+            while (i < dataLength && (data[i] == ' ' || data[i] == '\t')) i++;
+            if (dataLength - i < DONE.length) return false;
+            for (int j = 0; j < DONE.length; j++) {
+                if (data[i + j] != DONE[j]) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "Event{" +
+                    "type='" + type + '\'' +
+                    ", data='" + getDataAsString() + '\'' +
+                    '}';
+        }
+    }
+}
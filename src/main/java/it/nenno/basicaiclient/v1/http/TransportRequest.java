@@ -0,0 +1,169 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable description of a HTTP request for a {@link HttpTransport}
+ */
+public class TransportRequest {
+
+    private final URL url;
+    private final String method;
+    private final Map<String, String> headers;
+    private final RequestBody body;
+    private final AbortSignal abortSignal;
+    private final long connectTimeoutMillis;
+    private final boolean asyncBody;
+
+    private TransportRequest(Builder builder) {
+        this.url = builder.url;
+        this.method = builder.method;
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(builder.headers));
+        this.body = builder.body;
+        this.abortSignal = builder.abortSignal;
+        this.connectTimeoutMillis = builder.connectTimeoutMillis;
+        this.asyncBody = builder.asyncBody;
+    }
+
+    public URL getUrl() {return url;}
+
+    public String getMethod() {return method;}
+
+    public Map<String, String> getHeaders() {return headers;}
+
+    /** @return body or null for requests without body */
+    public RequestBody getBody() {return body;}
+
+    /** @return signal to abort the request from another thread or null */
+    public AbortSignal getAbortSignal() {return abortSignal;}
+
+    /** @return timeout to establish a new connection in milliseconds, 0 for none */
+    public long getConnectTimeoutMillis() {return connectTimeoutMillis;}
+
+    /** @return true if the response body should be offered as {@link TransportResponse#getAsyncBody()} */
+    public boolean isAsyncBody() {return asyncBody;}
+
+    /**
+     * Body of a request written directly to the connection. Implementations must be
+     * repeatable because a transport may resend the request on a fresh connection.
+     */
+    public interface RequestBody {
+        /** @return number of bytes or -1 if unknown (chunked transfer encoding) */
+        long getContentLength();
+
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    /** Body of the given bytes */
+    public static RequestBody bodyOf(final byte[] bytes) {
+        return new RequestBody() {
+            @Override
+            public long getContentLength() {return bytes.length;}
+
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                outputStream.write(bytes);
+            }
+        };
+    }
+
+    // The builder class
+    public static class Builder {
+        private URL url;
+        private String method = "POST";
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private RequestBody body;
+        private AbortSignal abortSignal;
+        private long connectTimeoutMillis;
+        private boolean asyncBody;
+
+        public Builder url(String url) {
+            try {
+                this.url = new URL(url);
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException("Invalid URL: " + url, e);
+            }
+            return this;
+        }
+
+        public Builder url(URL url) {
+            this.url = url;
+            return this;
+        }
+
+        public Builder method(String method) {
+            this.method = method;
+            return this;
+        }
+
+        public Builder header(String name, String value) {
+            if (value != null) {
+                this.headers.put(name, value);
+            }
+            return this;
+        }
+
+        public Builder body(RequestBody body) {
+            this.body = body;
+            return this;
+        }
+
+        public Builder abortSignal(AbortSignal abortSignal) {
+            this.abortSignal = abortSignal;
+            return this;
+        }
+
+        /** timeout to establish a new connection including the TLS handshake, 0 for none */
+        public Builder connectTimeout(long connectTimeoutMillis) {
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            return this;
+        }
+
+        /** push the response body without blocking a thread, ignored by transports that cannot */
+        public Builder asyncBody(boolean asyncBody) {
+            this.asyncBody = asyncBody;
+            return this;
+        }
+
+        public TransportRequest build() {
+            if (url == null) {
+                throw new IllegalArgumentException("URL is required.");
+            }
+            String protocol = url.getProtocol();
+            if (!"http".equals(protocol) && !"https".equals(protocol)) {
+                throw new IllegalArgumentException("Unsupported protocol: " + protocol);
+            }
+            return new TransportRequest(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TransportRequest{" +
+                "method='" + method + '\'' +
+                ", url=" + url +
+                '}';
+    }
+}
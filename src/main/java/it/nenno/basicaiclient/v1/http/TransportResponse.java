@@ -0,0 +1,62 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1.http;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response of a {@link HttpTransport}, the body is read lazily from the connection.
+ */
+public interface TransportResponse extends Closeable {
+
+    int getStatusCode();
+
+    String getStatusMessage();
+
+    /** @return first value of the header (case-insensitive) or null */
+    String getHeader(String name);
+
+    /** @return all headers, names in lower case */
+    Map<String, List<String>> getHeaders();
+
+    /** @return body of the response, also for error status codes (never null) */
+    InputStream getBody();
+
+    /**
+     * Body pushed without blocking a thread, offered if the request asked for it with
+     * {@link TransportRequest.Builder#asyncBody(boolean)} and the transport supports it.
+     * Either the async body or {@link #getBody()} is read, not both.
+     * @return the async body or null to read getBody()
+     */
+    default AsyncBody getAsyncBody() {return null;}
+
+    /**
+     * Finish the exchange. If the body was read completely the connection can be reused,
+     * otherwise it is discarded. Calling close more than once has no effect.
+     */
+    @Override
+    void close();
+
+    /**
+     * Close the underlying connection immediately, also from another thread,
+     * so that a blocked read of the body returns with an exception.
+     */
+    void abort();
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Transport based on {@link HttpURLConnection}.
+ * <p>
+ * It honors the proxy settings of the JVM and relies on the keep-alive cache of the JDK,
+ * which has no per-host limits and no statistics. Used as fallback of {@link PooledHttpTransport}.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        AbortSignal abortSignal = request.getAbortSignal();
+        if (abortSignal != null) abortSignal.throwIfAborted();
+
+        HttpURLConnection connection = (HttpURLConnection) request.getUrl().openConnection();
+        try {
+            if (abortSignal != null) abortSignal.onAbort(connection::disconnect);
+            connection.setConnectTimeout((int) Math.min(Integer.MAX_VALUE, request.getConnectTimeoutMillis()));
+            connection.setRequestMethod(request.getMethod());
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            TransportRequest.RequestBody body = request.getBody();
+            if (body != null) {
+                connection.setDoOutput(true);
+                long contentLength = body.getContentLength();
+                if (contentLength >= 0) {
+                    connection.setFixedLengthStreamingMode(contentLength);
+                } else {
+                    connection.setChunkedStreamingMode(0);
+                }
+            }
+            try {
+                connection.connect();
+            } catch (SocketTimeoutException e) {
+                throw new ConnectTimeoutException("Connect to " + request.getUrl().getHost()
+                        + " timed out after " + request.getConnectTimeoutMillis() + " ms");
+            }
+
+            if (body != null) {
+                try (OutputStream outputStream = connection.getOutputStream()) {
+                    body.writeTo(outputStream);
+                }
+            }
+
+            int statusCode = connection.getResponseCode();
+            InputStream inputStream = statusCode >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (inputStream == null) {
+                inputStream = new ByteArrayInputStream(new byte[0]);
+            }
+            return new UrlConnectionResponse(connection, statusCode, inputStream);
+        }
+        catch (IOException | RuntimeException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    private static class UrlConnectionResponse implements TransportResponse {
+        private final HttpURLConnection connection;
+        private final int statusCode;
+        private final InputStream body;
+        private final Map<String, List<String>> headers;
+
+        UrlConnectionResponse(HttpURLConnection connection, int statusCode, InputStream body) throws IOException {
+            this.connection = connection;
+            this.statusCode = statusCode;
+            this.body = body;
+
+            // the status line is returned with a null key
+            Map<String, List<String>> lowerCase = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> entry : connection.getHeaderFields().entrySet()) {
+                if (entry.getKey() != null) {
+                    lowerCase.computeIfAbsent(entry.getKey().toLowerCase(Locale.ROOT), k -> new ArrayList<>())
+                            .addAll(entry.getValue());
+                }
+            }
+            this.headers = Collections.unmodifiableMap(lowerCase);
+        }
+
+        @Override
+        public int getStatusCode() {return statusCode;}
+
+        @Override
+        public String getStatusMessage() {
+            try {
+                return connection.getResponseMessage();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String getHeader(String name) {
+            List<String> values = headers.get(name.toLowerCase(Locale.ROOT));
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {return headers;}
+
+        @Override
+        public InputStream getBody() {return body;}
+
+        @Override
+        public void close() {
+            // closing (instead of disconnecting) lets the JDK keep the connection alive
+            try {
+                body.close();
+            } catch (IOException e) {
+                connection.disconnect();
+            }
+        }
+
+        @Override
+        public void abort() {
+            connection.disconnect();
+        }
+    }
+}
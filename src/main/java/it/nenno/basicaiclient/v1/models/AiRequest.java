@@ -22,6 +22,7 @@ import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import it.nenno.basicaiclient.v1.Timeouts;
 
 public class AiRequest {
 
@@ -45,6 +46,12 @@ public class AiRequest {
     @JsonIgnore
     private RequestType requestType = RequestType.CHAT; // default
 
+    @JsonIgnore
+    private final Timeouts timeouts;
+
+    @JsonIgnore
+    private final boolean bypassCache;
+
 
     // Private constructor
     private AiRequest(Builder builder) {
@@ -55,6 +62,31 @@ public class AiRequest {
         this.responseFormat = builder.responseFormat;
         this.tools = builder.tools;
         this.stream = builder.stream;
+        this.timeouts = builder.timeouts;
+        this.bypassCache = builder.bypassCache;
+    }
+
+    // copy for another model
+    private AiRequest(AiRequest other, String model) {
+        this.model = model;
+        this.prompt = other.prompt;
+        this.aiMessages = other.aiMessages;
+        this.temperature = other.temperature;
+        this.responseFormat = other.responseFormat;
+        this.tools = other.tools;
+        this.stream = other.stream;
+        this.timeouts = other.timeouts;
+        this.bypassCache = other.bypassCache;
+        this.format = other.format;
+        this.requestType = other.requestType;
+    }
+
+    /** @return copy of this request for another model, e.g. the same model under its name at another provider */
+    public AiRequest withModel(String model) {
+        if (model == null || model.equals(this.model)) {
+            return this;
+        }
+        return new AiRequest(this, model);
     }
 
     // Public getters
@@ -87,6 +119,14 @@ public class AiRequest {
 
     public List<Function> getTools() {return tools;}
 
+    /** @return timeouts that override the ones of the client or null */
+    @JsonIgnore
+    public Timeouts getTimeouts() {return timeouts;}
+
+    /** @return true if the response cache of the client is neither read nor written for this request */
+    @JsonIgnore
+    public boolean isBypassCache() {return bypassCache;}
+
     public RequestType getRequestType() {return requestType;}
     public void setRequestType(RequestType requestType) {this.requestType = requestType;}
 
@@ -99,6 +139,8 @@ public class AiRequest {
         private Double temperature = 0.7; // Default temperature
         private boolean stream = false;
         private Object responseFormat;
+        private Timeouts timeouts;
+        private boolean bypassCache;
 
         // Set model name
         public Builder model(String model) {
@@ -158,6 +200,18 @@ public class AiRequest {
             return this;
         }
 
+        // Set timeouts of this request (optional), the ones not set are taken from the client
+        public Builder timeouts(Timeouts timeouts) {
+            this.timeouts = timeouts;
+            return this;
+        }
+
+        // Skip the response cache of the client for this request (optional), e.g. to refresh an answer
+        public Builder bypassCache(boolean bypassCache) {
+            this.bypassCache = bypassCache;
+            return this;
+        }
+
         // Build method
         public AiRequest build() {
 
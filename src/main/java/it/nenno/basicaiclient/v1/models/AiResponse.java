@@ -18,8 +18,10 @@ package it.nenno.basicaiclient.v1.models;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import it.nenno.basicaiclient.v1.config.ProviderModel;
 
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -32,6 +34,11 @@ public class AiResponse {
     private List<Choice> choices; // Array of Choice objects
     private Usage usage; // Nested Usage object
 
+    // set by the client if it has a fallback chain
+    @JsonIgnore
+    private int hop;
+    @JsonIgnore
+    private ProviderModel servedBy;
 
     // Getters and Setters
     public String getId() {
@@ -78,6 +85,41 @@ public class AiResponse {
         this.usage = usage;
     }
 
+    /** @return position in the fallback chain that served the request, 0 for the first */
+    @JsonIgnore
+    public int getHop() {return hop;}
+
+    /** @return provider/model key that served the request, null if not from a fallback chain */
+    @JsonIgnore
+    public ProviderModel getServedBy() {return servedBy;}
+
+    public void setServedBy(int hop, ProviderModel servedBy) {
+        this.hop = hop;
+        this.servedBy = servedBy;
+    }
+
+    /**
+     * Copy of the response whose lists, messages, tool calls and usage can be changed without affecting
+     * this one. The argument values of the tool calls and the structured output object are shared.
+     */
+    public AiResponse copy() {
+        AiResponse copy = new AiResponse();
+        copy.id = id;
+        copy.object = object;
+        copy.created = created;
+        copy.model = model;
+        if (choices != null) {
+            copy.choices = new ArrayList<>(choices.size());
+            for (Choice choice : choices) {
+                copy.choices.add(choice == null ? null : choice.copy());
+            }
+        }
+        copy.usage = usage == null ? null : usage.copy();
+        copy.hop = hop;
+        copy.servedBy = servedBy;
+        return copy;
+    }
+
     // Nested class for Choice
     public static class Choice {
         private int index;
@@ -117,6 +159,15 @@ public class AiResponse {
             this.finishReason = finishReason;
         }
 
+        Choice copy() {
+            Choice copy = new Choice();
+            copy.index = index;
+            copy.message = message == null ? null : message.copy();
+            copy.logprobs = logprobs;
+            copy.finishReason = finishReason;
+            return copy;
+        }
+
         @Override
         public String toString() {
             return "Choice{" +
@@ -161,6 +212,21 @@ public class AiResponse {
         public List<ToolCall> getToolCalls() {return toolCalls;}
         public void setToolCalls(List<ToolCall> toolCalls) {this.toolCalls = toolCalls;}
 
+        Message copy() {
+            Message copy = new Message();
+            copy.role = role;
+            copy.content = content;
+            copy.refusal = refusal;
+            if (toolCalls != null) {
+                copy.toolCalls = new ArrayList<>(toolCalls.size());
+                for (ToolCall toolCall : toolCalls) {
+                    copy.toolCalls.add(toolCall == null ? null : toolCall.copy());
+                }
+            }
+            copy.contentObj = contentObj;
+            return copy;
+        }
+
         @Override
         public String toString() {
             return "Message{" +
@@ -202,6 +268,14 @@ public class AiResponse {
 
 
 
+        Usage copy() {
+            Usage copy = new Usage();
+            copy.promptTokens = promptTokens;
+            copy.completionTokens = completionTokens;
+            copy.totalTokens = totalTokens;
+            return copy;
+        }
+
         @Override
         public String toString() {
             return "Usage{" +
@@ -228,6 +302,18 @@ public class AiResponse {
         public Function getFunction() {return function;}
         public void setFunction(Function function) {this.function = function;}
 
+        ToolCall copy() {
+            ToolCall copy = new ToolCall();
+            copy.id = id;
+            copy.type = type;
+            if (function != null) {
+                copy.function = new Function();
+                copy.function.name = function.name;
+                copy.function.arguments = function.arguments == null ? null : new LinkedHashMap<>(function.arguments);
+            }
+            return copy;
+        }
+
         @Override
         public String toString() {
             return "ToolCall{" +
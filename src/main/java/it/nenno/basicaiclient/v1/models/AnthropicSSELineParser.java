@@ -16,14 +16,13 @@
 
 package it.nenno.basicaiclient.v1.models;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.PropertyNamingStrategy;
-import it.nenno.basicaiclient.v1.utils.MapperWithCaseStrategy;
+import com.fasterxml.jackson.databind.ObjectReader;
+import it.nenno.basicaiclient.v1.utils.JsonCodecs;
 
 import java.io.IOException;
 
 public class AnthropicSSELineParser {
-    private final ObjectMapper mapper;
+    private final ObjectReader reader;
     private ParsingResult result;
 
     // Object to be returned
@@ -60,9 +59,7 @@ public class AnthropicSSELineParser {
 
     // constructor
     public AnthropicSSELineParser() {
-        this.mapper = new ObjectMapper();
-        MapperWithCaseStrategy.setSnakeCase(this.mapper);
-        //this.mapper.setPropertyNamingStrategy(PropertyNamingStrategy.SNAKE_CASE);
+        this.reader = JsonCodecs.reader(AnthroipcStreamingResponses.StreamingResponse.class, JsonCodecs.Naming.SNAKE_CASE);
         this.result = new ParsingResult();
     }
 
@@ -85,12 +82,17 @@ public class AnthropicSSELineParser {
         }
 
         String data = line.substring(6);
-        AnthroipcStreamingResponses.StreamingResponse response =
-                mapper.readValue(data, AnthroipcStreamingResponses.StreamingResponse.class);
+        AnthroipcStreamingResponses.StreamingResponse response = reader.readValue(data);
 
         processResponse(response);
     }
 
+    /** Parse the data of one event (JSON without "data:" prefix) directly from the bytes */
+    public void parseData(byte[] data, int offset, int length) throws IOException {
+        result.resetContent();
+        processResponse(reader.readValue(data, offset, length));
+    }
+
     private void processResponse(AnthroipcStreamingResponses.StreamingResponse response) {
         if (response instanceof AnthroipcStreamingResponses.MessageStart) {
             AnthroipcStreamingResponses.MessageStart messageStart = (AnthroipcStreamingResponses.MessageStart) response;
@@ -16,12 +16,14 @@
 
 package it.nenno.basicaiclient.v1.models;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
-import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import it.nenno.basicaiclient.v1.AiClient;
+import it.nenno.basicaiclient.v1.http.TransportRequest;
+import it.nenno.basicaiclient.v1.utils.JsonCodecs;
 import it.nenno.basicaiclient.v1.utils.PrettyJsonPrinter;
 import it.nenno.basicaiclient.v1.utils.StructuredOutputHelper;
 import org.slf4j.Logger;
@@ -34,10 +36,8 @@ import static it.nenno.basicaiclient.v1.AiClient.*;
 public class RequestConverter {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RequestConverter.class);
-
     private boolean logDetails;
     private AiRequestBase aiRequestBase; // base class
-    private ObjectMapper objectMapper = null;
 
     public void convertForClient(AiRequest aiRequest, AiClient aiClient, boolean logDetails){
         this.logDetails = logDetails;
@@ -75,16 +75,15 @@ public class RequestConverter {
         if (logDetails) { LOGGER.info(aiRequestBase.toString()); }
     }
 
+    /** @return provider-specific request or null before convertForClient() */
+    public AiRequestBase getAiRequestBase() {return aiRequestBase;}
+
+    /** The whole request as String, only for logging since the request is serialized into the connection */
     public String getRequestAsJsonStr()  {
         String asString = "";
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-
-            // Exclude null values from the JSON output
-            objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
-
             // Serialize the OpenAIRequest object into a JSON string
-            asString = objectMapper.writeValueAsString(aiRequestBase);
+            asString = JsonCodecs.requestWriter().writeValueAsString(aiRequestBase);
 
             // for debug
             if (logDetails) {
@@ -97,6 +96,56 @@ public class RequestConverter {
         return asString;
     }
 
+    /** Serialize the request with a JsonGenerator directly into the stream, without an intermediate String */
+    public void writeRequestAsJson(OutputStream outputStream) throws IOException {
+        JsonCodecs.requestWriter().writeValue(outputStream, aiRequestBase);
+    }
+
+    /**
+     * Body of the request that is serialized into the connection when the transport sends it.
+     * Chunked bodies are sent with chunked transfer encoding, otherwise the Content-Length
+     * is computed by serializing the request once into a counting stream.
+     */
+    public TransportRequest.RequestBody getRequestAsBody(boolean chunked) {
+        final long contentLength;
+        if (chunked) {
+            contentLength = -1;
+        }
+        else {
+            CountingOutputStream counter = new CountingOutputStream();
+            try {
+                writeRequestAsJson(counter);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            contentLength = counter.count;
+        }
+
+        return new TransportRequest.RequestBody() {
+            @Override
+            public long getContentLength() {return contentLength;}
+
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                writeRequestAsJson(outputStream);
+            }
+        };
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
     AiRequestOpenai convertToOpenai (AiRequest aiRequest){
         AiRequestOpenai aiRequestOpenai = null;
         if (aiRequest != null) {
@@ -107,10 +156,9 @@ public class RequestConverter {
             if(aiRequest.getTools() != null){
                 //convert POJO to nested map-structure for easy manipulation
                 List<Map<String, Object>> listOfFunctionObj = new ArrayList<>();
-                objectMapper = new ObjectMapper();
                 for (int i = 0; i < aiRequest.getTools().size(); i++) {
                     Function function =  aiRequest.getTools().get(i);
-                    Map<String, Object> functionRoot = objectMapper.convertValue(function, Map.class);
+                    Map<String, Object> functionRoot = JsonCodecs.convertValue(function, Map.class);
                     //LOGGER.debug(">>> original function map: "+ functionRoot);
 
                     // ------ OpenAI-specific modifications ------
@@ -158,10 +206,9 @@ public class RequestConverter {
             if(aiRequest.getTools() != null){
                 // new: convert POJO to nested map-structure
                 List<Map<String, Object>> listOfFunctionObj = new ArrayList<>();
-                objectMapper = new ObjectMapper();
                 for (int i = 0; i < aiRequest.getTools().size(); i++) {
                     Function function =  aiRequest.getTools().get(i);
-                    Map<String, Object> mapOfFunction = objectMapper.convertValue(function, Map.class);
+                    Map<String, Object> mapOfFunction = JsonCodecs.convertValue(function, Map.class);
                     listOfFunctionObj.add(mapOfFunction);
                 }
                 aiRequestOllama.setListOfFunctionObj(listOfFunctionObj);
@@ -228,12 +275,11 @@ public class RequestConverter {
             if(aiRequest.getTools() != null){
                 //convert POJO to nested map-structure for easy manipulation
                 List<Map<String, Object>> listOfFunctionObj = new ArrayList<>();
-                objectMapper = new ObjectMapper();
                 for (int i = 0; i < aiRequest.getTools().size(); i++) {
                     Function function =  aiRequest.getTools().get(i);
 
                     // --- 1) Use structure starting with function properties ------
-                    Map<String, Object> functionRoot = objectMapper.convertValue(function, Map.class);
+                    Map<String, Object> functionRoot = JsonCodecs.convertValue(function, Map.class);
                     Map<String, Object> functionProperties = (Map)functionRoot.get("function");
 
                     // -- 2) change function property name from "parameters" to "input_schema"
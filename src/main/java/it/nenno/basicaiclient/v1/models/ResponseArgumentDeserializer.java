@@ -4,7 +4,7 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import it.nenno.basicaiclient.v1.utils.JsonCodecs;
 
 import java.io.IOException;
 import java.util.Map;
@@ -17,7 +17,6 @@ public class ResponseArgumentDeserializer extends JsonDeserializer<Map<String, O
         String argumentsJson = jsonParser.getText();
 
         // Parse the JSON string into a Map
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.readValue(argumentsJson, Map.class);
+        return JsonCodecs.reader(Map.class).readValue(argumentsJson);
     }
 }
@@ -18,6 +18,8 @@ package it.nenno.basicaiclient.v1.models;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import it.nenno.basicaiclient.v1.utils.JsonCodecs;
 import static it.nenno.basicaiclient.v1.AiClient.*;
 
 import java.io.IOException;
@@ -327,13 +329,27 @@ public class ResponseConverter {
      * @param line
      * @return
      */
+    public static AiResponseOpenai getOpenAIResponseFromStreaming(String line, String clientType){
+        return getOpenAIResponseFromStreaming(line, JsonCodecs.reader(AiResponseOllama.class),
+                JsonCodecs.reader(AiResponseOpenai.class), clientType);
+    }
+
+    /**
+     * Same as {@link #getOpenAIResponseFromStreaming(String, String)} with own readers of the mapper
+     */
     public static AiResponseOpenai getOpenAIResponseFromStreaming(String line, ObjectMapper objectMapper, String clientType){
+        return getOpenAIResponseFromStreaming(line, objectMapper.readerFor(AiResponseOllama.class),
+                objectMapper.readerFor(AiResponseOpenai.class), clientType);
+    }
+
+    private static AiResponseOpenai getOpenAIResponseFromStreaming(String line, ObjectReader ollamaReader,
+                                                                  ObjectReader openaiReader, String clientType){
         AiResponseOpenai aiResponseOpenai = null;
 
         if (CLIENT_TYPE_OLLAMA.equals(clientType)){
             try {
                 // Deserialize Ollama JSON string to a OllamaResponse object
-                AiResponseOllama ollamaResponse = objectMapper.readValue(line, AiResponseOllama.class);
+                AiResponseOllama ollamaResponse = ollamaReader.readValue(line);
                 // convert the OllamaResponse to a OpenAIResponse
                 aiResponseOpenai = toOpenaiResponseForStreaming(ollamaResponse);
             }
@@ -347,7 +363,7 @@ public class ResponseConverter {
                 // Remove "data:" prefix
                 String json = line.substring(5).trim();
                 try {
-                    aiResponseOpenai = objectMapper.readValue(json, AiResponseOpenai.class);
+                    aiResponseOpenai = openaiReader.readValue(json);
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
@@ -363,6 +379,31 @@ public class ResponseConverter {
         return aiResponseOpenai;
     }
 
+    /**
+     * Same as {@link #getOpenAIResponseFromStreaming(String, String)} for the data of one event
+     * (JSON without "data:" prefix), parsed directly from the bytes
+     */
+    public static AiResponseOpenai getOpenAIResponseFromStreaming(byte[] data, int offset, int length, String clientType){
+        AiResponseOpenai aiResponseOpenai = null;
+        try {
+            if (CLIENT_TYPE_OLLAMA.equals(clientType)) {
+                AiResponseOllama ollamaResponse = JsonCodecs.reader(AiResponseOllama.class).readValue(data, offset, length);
+                aiResponseOpenai = toOpenaiResponseForStreaming(ollamaResponse);
+            }
+            else if (CLIENT_TYPE_OPENAI.equals(clientType)) {
+                aiResponseOpenai = JsonCodecs.reader(AiResponseOpenai.class).readValue(data, offset, length);
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        // avoid null output
+        if (aiResponseOpenai != null && aiResponseOpenai.getChoices().get(0).getDelta().getContent() == null) {
+            aiResponseOpenai = null;
+        }
+        return aiResponseOpenai;
+    }
+
     /**
      * Given a Ollama-type response object the content data is copied into a OpenAI-type response object
      * @param ol
@@ -0,0 +1,472 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1.models;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import it.nenno.basicaiclient.v1.http.SseFramer;
+import it.nenno.basicaiclient.v1.utils.JsonCodecs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static it.nenno.basicaiclient.v1.AiClient.CLIENT_TYPE_OLLAMA;
+
+/**
+ * Reads the delta of a streamed chunk (OpenAI-compatible or Ollama) token by token, without binding
+ * an AiResponseOpenai per chunk.
+ * <p>
+ * Only delta.content, finish_reason, the tool call deltas, the model and the usage are read, everything
+ * else is skipped. The result is one Delta per stream, reset for each chunk.
+ * <p>
+ * Bound to a {@link SseFramer}, one JsonParser reads the data of all events of the stream as a sequence of
+ * root values, so the content String is the only allocation of a plain text chunk. One parser per stream,
+ * not thread-safe.
+ */
+public class StreamDeltaParser {
+
+    // finish reasons returned as constants instead of a new String per stream
+    private static final String[] FINISH_REASONS = {
+            AiResponseOpenai.FINISH_REASON_STOP, "length", "tool_calls", "content_filter"};
+
+    private final JsonFactory factory = JsonCodecs.factory();
+    private final boolean ollama;
+    private final Delta delta = new Delta();
+    private final EventData eventData;
+    private JsonParser streamParser;
+
+    // Object to be returned
+    public static class Delta {
+        private String content;
+        private String finishReason;
+        private boolean toolCallDelta;
+        private String model;
+        private boolean hasUsage;
+        private int promptTokens;
+        private int completionTokens;
+        private int totalTokens;
+        private final List<ToolCall> toolCalls = new ArrayList<>();
+
+        private void resetChunk() {
+            content = null;
+            finishReason = null;
+            toolCallDelta = false;
+        }
+
+        /** @return text of the current chunk or null if it has none */
+        public String getContent() {return content;}
+
+        /** @return finish reason of the current chunk or null */
+        public String getFinishReason() {return finishReason;}
+
+        /** @return true if the current chunk carried a part of a tool call */
+        public boolean hasToolCallDelta() {return toolCallDelta;}
+
+        /** @return model of the stream, as sent in the first chunk */
+        public String getModel() {return model;}
+
+        /** @return true if the provider sent the usage (usually with the last chunk) */
+        public boolean hasUsage() {return hasUsage;}
+
+        public int getPromptTokens() {return promptTokens;}
+
+        public int getCompletionTokens() {return completionTokens;}
+
+        public int getTotalTokens() {return totalTokens;}
+
+        /** @return tool calls of the stream so far, the arguments are completed by the following chunks */
+        public List<ToolCall> getToolCalls() {return Collections.unmodifiableList(toolCalls);}
+
+        private ToolCall toolCall(int index) {
+            while (toolCalls.size() <= index) {
+                toolCalls.add(new ToolCall(toolCalls.size()));
+            }
+            return toolCalls.get(index);
+        }
+
+        @Override
+        public String toString() {
+            return "Delta{" +
+                    "content='" + content + '\'' +
+                    ", finishReason='" + finishReason + '\'' +
+                    ", toolCalls=" + toolCalls +
+                    '}';
+        }
+    }
+
+    /** Tool call assembled from the deltas of the stream */
+    public static class ToolCall {
+        private final int index;
+        private String id;
+        private String name;
+        private final StringBuilder arguments = new StringBuilder();
+
+        ToolCall(int index) {
+            this.index = index;
+        }
+
+        public int getIndex() {return index;}
+
+        public String getId() {return id;}
+
+        public String getName() {return name;}
+
+        /** @return arguments as JSON, complete when the stream has finished */
+        public String getArguments() {return arguments.toString();}
+
+        @Override
+        public String toString() {
+            return "ToolCall{" +
+                    "index=" + index +
+                    ", id='" + id + '\'' +
+                    ", name='" + name + '\'' +
+                    ", arguments=" + arguments +
+                    '}';
+        }
+    }
+
+    /** Parser of single chunks, see {@link #parse(byte[], int, int)} */
+    public StreamDeltaParser(String clientType) {
+        this(clientType, null);
+    }
+
+    /** Parser of the events of the framer, see {@link #next()} */
+    public StreamDeltaParser(String clientType, SseFramer framer) {
+        this.ollama = CLIENT_TYPE_OLLAMA.equals(clientType);
+        this.eventData = framer == null ? null : new EventData(framer);
+    }
+
+    public Delta getDelta() {return delta;}
+
+    /** @return true if the stream ended with the "[DONE]" event of OpenAI-compatible providers */
+    public boolean isDoneReceived() {return eventData != null && eventData.doneReceived;}
+
+    /**
+     * Parse the next chunk of the framer
+     * @return the delta of the stream, updated with this chunk, or null at the end of the stream or at "[DONE]"
+     */
+    public Delta next() throws IOException {
+        if (eventData == null) {
+            throw new IllegalStateException("No SseFramer to read from");
+        }
+        if (streamParser == null) {
+            streamParser = factory.createParser(eventData);
+        }
+        JsonToken token = streamParser.nextToken();
+        if (token == null) {
+            streamParser.close();
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("Chunk is not a JSON object");
+        }
+        delta.resetChunk();
+        if (ollama) {
+            parseOllamaChunk(streamParser);
+        } else {
+            parseOpenaiChunk(streamParser);
+        }
+        return delta;
+    }
+
+    /**
+     * Parse the data of one chunk (JSON without "data:" prefix)
+     * @return the delta of the stream, updated with this chunk
+     */
+    public Delta parse(byte[] data, int offset, int length) throws IOException {
+        delta.resetChunk();
+        try (JsonParser parser = factory.createParser(data, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Chunk is not a JSON object");
+            }
+            if (ollama) {
+                parseOllamaChunk(parser);
+            } else {
+                parseOpenaiChunk(parser);
+            }
+        }
+        return delta;
+    }
+
+    // ------ OpenAI-compatible: {"model":..,"choices":[{"delta":{..},"finish_reason":..}],"usage":{..}} ------
+
+    private void parseOpenaiChunk(JsonParser parser) throws IOException {
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken token = parser.nextToken();
+            if ("choices".equals(field) && token == JsonToken.START_ARRAY) {
+                // only the first choice is streamed to the handler
+                boolean first = true;
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    if (first) parseChoice(parser);
+                    else parser.skipChildren();
+                    first = false;
+                }
+            } else if ("usage".equals(field) && token == JsonToken.START_OBJECT) {
+                parseUsage(parser);
+            } else if ("model".equals(field)) {
+                readModel(parser);
+            } else if ("error".equals(field)) {
+                throw new IOException("Error in stream: " + JsonCodecs.readTree(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseChoice(JsonParser parser) throws IOException {
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken token = parser.nextToken();
+            if ("delta".equals(field) && token == JsonToken.START_OBJECT) {
+                parseDelta(parser);
+            } else if ("finish_reason".equals(field)) {
+                delta.finishReason = readFinishReason(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseDelta(JsonParser parser) throws IOException {
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken token = parser.nextToken();
+            if ("content".equals(field)) {
+                delta.content = token == JsonToken.VALUE_STRING ? parser.getText() : null;
+            } else if ("tool_calls".equals(field) && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    parseToolCallDelta(parser);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /** {"index":0,"id":"call_1","type":"function","function":{"name":"f","arguments":"{\"a\":"}} */
+    private void parseToolCallDelta(JsonParser parser) throws IOException {
+        delta.toolCallDelta = true;
+        ToolCall toolCall = null;
+        String id = null;
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken token = parser.nextToken();
+            if ("index".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                toolCall = delta.toolCall(parser.getIntValue());
+            } else if ("id".equals(field) && token == JsonToken.VALUE_STRING) {
+                id = parser.getText();
+            } else if ("function".equals(field) && token == JsonToken.START_OBJECT) {
+                // the index comes first in all known providers, else the call is the last one
+                if (toolCall == null) toolCall = delta.toolCall(Math.max(0, delta.toolCalls.size() - 1));
+                parseFunction(parser, toolCall);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (id != null) {
+            if (toolCall == null) toolCall = delta.toolCall(Math.max(0, delta.toolCalls.size() - 1));
+            toolCall.id = id;
+        }
+    }
+
+    private void parseFunction(JsonParser parser, ToolCall toolCall) throws IOException {
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken token = parser.nextToken();
+            if ("name".equals(field) && token == JsonToken.VALUE_STRING) {
+                toolCall.name = parser.getText();
+            } else if ("arguments".equals(field) && token == JsonToken.VALUE_STRING) {
+                // a fragment of the JSON arguments
+                toolCall.arguments.append(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            } else if ("arguments".equals(field) && token == JsonToken.START_OBJECT) {
+                // complete arguments as object (Ollama)
+                toolCall.arguments.append(JsonCodecs.readTree(parser).toString());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseUsage(JsonParser parser) throws IOException {
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken token = parser.nextToken();
+            if (token != JsonToken.VALUE_NUMBER_INT) {
+                parser.skipChildren();
+            } else if ("prompt_tokens".equals(field)) {
+                delta.promptTokens = parser.getIntValue();
+                delta.hasUsage = true;
+            } else if ("completion_tokens".equals(field)) {
+                delta.completionTokens = parser.getIntValue();
+                delta.hasUsage = true;
+            } else if ("total_tokens".equals(field)) {
+                delta.totalTokens = parser.getIntValue();
+            }
+        }
+    }
+
+    // ------ Ollama: {"model":..,"message":{"content":..,"tool_calls":[..]},"done":..,"eval_count":..} ------
+
+    private void parseOllamaChunk(JsonParser parser) throws IOException {
+        boolean done = false;
+        String doneReason = null;
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken token = parser.nextToken();
+            if ("message".equals(field) && token == JsonToken.START_OBJECT) {
+                parseOllamaMessage(parser);
+            } else if ("done".equals(field)) {
+                done = token == JsonToken.VALUE_TRUE;
+            } else if ("done_reason".equals(field)) {
+                doneReason = readFinishReason(parser);
+            } else if ("prompt_eval_count".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                delta.promptTokens = parser.getIntValue();
+                delta.hasUsage = true;
+            } else if ("eval_count".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                delta.completionTokens = parser.getIntValue();
+                delta.hasUsage = true;
+            } else if ("model".equals(field)) {
+                readModel(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (done) {
+            delta.finishReason = doneReason != null ? doneReason : AiResponseOpenai.FINISH_REASON_STOP;
+            delta.totalTokens = delta.promptTokens + delta.completionTokens;
+        }
+    }
+
+    private void parseOllamaMessage(JsonParser parser) throws IOException {
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken token = parser.nextToken();
+            if ("content".equals(field)) {
+                delta.content = token == JsonToken.VALUE_STRING ? parser.getText() : null;
+            } else if ("tool_calls".equals(field) && token == JsonToken.START_ARRAY) {
+                // Ollama sends complete tool calls without index
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    delta.toolCallDelta = true;
+                    ToolCall toolCall = delta.toolCall(delta.toolCalls.size());
+                    String callField;
+                    while ((callField = parser.nextFieldName()) != null) {
+                        if (parser.nextToken() == JsonToken.START_OBJECT && "function".equals(callField)) {
+                            parseFunction(parser, toolCall);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    // ------ values ------
+
+    private void readModel(JsonParser parser) throws IOException {
+        // the model is the same in every chunk
+        if (delta.model == null && parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+            delta.model = parser.getText();
+        }
+    }
+
+    private static String readFinishReason(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+            parser.skipChildren();
+            return null;
+        }
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        for (String reason : FINISH_REASONS) {
+            if (equals(reason, chars, offset, length)) return reason;
+        }
+        return parser.getText();
+    }
+
+    private static boolean equals(String text, char[] chars, int offset, int length) {
+        if (text.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) != chars[offset + i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The data of the events as one stream, each event followed by a LF. Events are read from the framer
+     * only when the JsonParser needs more input, it ends at the end of the stream or at "[DONE]".
+     */
+    private static class EventData extends InputStream {
+        private final SseFramer framer;
+        private SseFramer.Event event;
+        private int position;
+        private boolean ended;
+        private boolean doneReceived;
+
+        EventData(SseFramer framer) {
+            this.framer = framer;
+        }
+
+        /** @return false at the end */
+        private boolean hasData() throws IOException {
+            while (!ended && (event == null || position > event.getDataLength())) {
+                event = framer.next();
+                position = 0;
+                if (event == null) {
+                    ended = true;
+                } else if (event.isDone()) {
+                    doneReceived = true;
+                    ended = true;
+                }
+            }
+            return !ended;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!hasData()) return -1;
+            return position < event.getDataLength() ? event.getData()[position++] & 0xff : nextLine();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!hasData()) return -1;
+            int n = Math.min(len, event.getDataLength() - position);
+            if (n <= 0) {
+                b[off] = (byte) nextLine();
+                return 1;
+            }
+            System.arraycopy(event.getData(), position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private int nextLine() {
+            position++;
+            return '\n';
+        }
+    }
+}
@@ -16,8 +16,30 @@
 
 package it.nenno.basicaiclient.v1.models;
 
+import it.nenno.basicaiclient.v1.StreamHandle;
+import it.nenno.basicaiclient.v1.config.ProviderModel;
+
 public interface StreamingResponseHandler {
+
+    /**
+     * Called before the request is sent. Calling handle.cancel(), e.g. in onMessage(),
+     * stops the stream and closes the connection at once.
+     */
+    default void onStart(StreamHandle handle) {}
+
     void onMessage(String chunk);
     void onError(Exception e);
     void onComplete(String accumulatedChunks);
+
+    /**
+     * Called before the first chunk if the client has a fallback chain
+     * @param hop position in the chain that serves the stream, 0 for the first
+     * @param servedBy provider/model key or null for the endpoint of the client itself
+     */
+    default void onServedBy(int hop, ProviderModel servedBy) {}
+
+    /**
+     * Called before onComplete() with the usage sent by the provider, not called if it sent none
+     */
+    default void onUsage(AiResponse.Usage usage) {}
 }
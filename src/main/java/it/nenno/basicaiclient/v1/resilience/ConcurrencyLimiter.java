@@ -0,0 +1,384 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1.resilience;
+
+import it.nenno.basicaiclient.v1.http.AbortSignal;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limit of the concurrent requests to an endpoint that adapts to the observed latency and errors.
+ * <ul>
+ *     <li>GRADIENT: the limit follows the ratio of the long-term average latency to the latency
+ *     of the current request, so it shrinks as soon as requests start to queue at the server
+ *     (e.g. the GPU queue of an Ollama box) and grows again while the latency stays flat.</li>
+ *     <li>AIMD: the limit grows by one with each successful request and is multiplied by the
+ *     backoff ratio on each error or timeout.</li>
+ * </ul>
+ * Both decrease the limit on errors (HTTP 429, 5xx, timeouts). Requests beyond the limit wait
+ * in a bounded queue, if it is full they are rejected with a {@link ConcurrencyLimitExceededException}.
+ */
+public class ConcurrencyLimiter {
+
+    public enum Algorithm {GRADIENT, AIMD}
+
+    private static final ConcurrentMap<String, ConcurrencyLimiter> SHARED = new ConcurrentHashMap<>();
+
+    /** waiting requests look for an abort at least this often */
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final Algorithm algorithm;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long maxWaitMillis;
+    private final double backoffRatio;
+    private final double tolerance;
+    private final double smoothing;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition released = lock.newCondition();
+
+    // ------ state, guarded by lock ------
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private double longRttNanos;
+    private long rejected;
+    private long dropped;
+
+    private ConcurrencyLimiter(Builder builder) {
+        this.algorithm = builder.algorithm;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.maxQueue = builder.maxQueue;
+        this.maxWaitMillis = builder.maxWaitMillis;
+        this.backoffRatio = builder.backoffRatio;
+        this.tolerance = builder.tolerance;
+        this.smoothing = builder.smoothing;
+        this.limit = builder.initialLimit;
+    }
+
+    /** @return limiter with the default settings shared by all clients of the URL */
+    public static ConcurrencyLimiter forUrl(String apiURL) {
+        return SHARED.computeIfAbsent(apiURL, url -> new Builder().build());
+    }
+
+    // ------ acquire ------
+
+    /** @return permit if a slot is free and nobody waits, null otherwise */
+    public Permit tryAcquire() {
+        lock.lock();
+        try {
+            if (queued == 0 && inFlight < getLimitLocked()) {
+                inFlight++;
+                return new Permit();
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for a free slot
+     * @param timeoutMillis longest wait, the configured maxWait is applied as well
+     * @param abortSignal ends the wait when the request is aborted, may be null
+     * @return the permit or null if no slot got free within the timeout
+     * @throws ConcurrencyLimitExceededException if the queue is full
+     * @throws InterruptedIOException if aborted or interrupted while waiting
+     */
+    public Permit acquire(long timeoutMillis, AbortSignal abortSignal) throws InterruptedIOException {
+        long waitNanos = TimeUnit.MILLISECONDS.toNanos(Math.min(timeoutMillis, maxWaitMillis));
+        long end = System.nanoTime() + waitNanos;
+        lock.lock();
+        try {
+            if (queued == 0 && inFlight < getLimitLocked()) {
+                inFlight++;
+                return new Permit();
+            }
+            if (queued >= maxQueue) {
+                rejected++;
+                throw new ConcurrencyLimitExceededException("Queue of " + maxQueue + " requests is full, "
+                        + inFlight + " in flight of a limit of " + getLimitLocked());
+            }
+            queued++;
+            try {
+                while (inFlight >= getLimitLocked()) {
+                    if (abortSignal != null) abortSignal.throwIfAborted();
+                    long remaining = end - System.nanoTime();
+                    if (remaining <= 0) {
+                        rejected++;
+                        return null;
+                    }
+                    released.awaitNanos(Math.min(remaining, POLL_NANOS));
+                }
+                inFlight++;
+                return new Permit();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a slot");
+            } finally {
+                queued--;
+                // the next waiter may fit as well
+                released.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ------ limit ------
+
+    private int getLimitLocked() {
+        return (int) limit;
+    }
+
+    private void onSample(long rttNanos, int inFlightAtStart) {
+        lock.lock();
+        try {
+            if (algorithm == Algorithm.AIMD) {
+                // do not grow while the limit is not used
+                if (inFlightAtStart * 2 >= limit) {
+                    setLimit(limit + 1);
+                }
+                return;
+            }
+
+            // gradient of the long-term latency to the current sample
+            if (longRttNanos == 0) {
+                longRttNanos = rttNanos;
+            } else {
+                longRttNanos = longRttNanos * 0.99 + rttNanos * 0.01;
+                // recover faster when the latency dropped to a new level
+                if (longRttNanos > 2.0 * rttNanos) longRttNanos *= 0.95;
+            }
+            if (inFlightAtStart * 2 < limit) {
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / rttNanos));
+            double newLimit = limit * gradient + Math.sqrt(limit);
+            setLimit(limit * (1 - smoothing) + newLimit * smoothing);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onDrop() {
+        lock.lock();
+        try {
+            dropped++;
+            setLimit(limit * backoffRatio);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void setLimit(double newLimit) {
+        double previous = limit;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        if ((int) limit > (int) previous) {
+            released.signalAll();
+        }
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Slot of one request. The caller reports the outcome with onSuccess() when the response
+     * arrived or onDropped() on an overload signal, and frees the slot with release() at the end.
+     */
+    public class Permit {
+        private final long startNanos = System.nanoTime();
+        private final int inFlightAtStart;
+        private final AtomicBoolean sampled = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {
+            this.inFlightAtStart = inFlight;
+        }
+
+        /** the response arrived, its latency adjusts the limit */
+        public void onSuccess() {
+            if (sampled.compareAndSet(false, true)) {
+                onSample(System.nanoTime() - startNanos, inFlightAtStart);
+            }
+        }
+
+        /** the request failed with an overload signal (HTTP 429, 5xx, timeout), the limit decreases */
+        public void onDropped() {
+            if (sampled.compareAndSet(false, true)) {
+                onDrop();
+            }
+        }
+
+        /** free the slot, calling it more than once has no effect */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                ConcurrencyLimiter.this.release();
+            }
+        }
+    }
+
+    // ------ getters ------
+
+    /** @return current number of concurrent requests allowed */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return getLimitLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return requests waiting for a slot */
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return requests rejected because the queue was full or the wait too long */
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return requests that decreased the limit */
+    public long getDropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Algorithm getAlgorithm() {return algorithm;}
+
+    public long getMaxWaitMillis() {return maxWaitMillis;}
+
+    // The builder class
+    public static class Builder {
+        private Algorithm algorithm = Algorithm.GRADIENT;
+        private int initialLimit = 4;
+        private int minLimit = 1;
+        private int maxLimit = 64;
+        private int maxQueue = 256;
+        private long maxWaitMillis = 60_000;
+        private double backoffRatio = 0.9;
+        private double tolerance = 1.5;
+        private double smoothing = 0.2;
+
+        public Builder algorithm(Algorithm algorithm) {
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        /** limit at the start (default 4), between minLimit (default 1) and maxLimit (default 64) */
+        public Builder limits(int initialLimit, int minLimit, int maxLimit) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /** number of requests that can wait for a slot (default 256) */
+        public Builder maxQueue(int maxQueue) {
+            this.maxQueue = maxQueue;
+            return this;
+        }
+
+        /** longest wait for a slot (default 60 s) */
+        public Builder maxWait(long maxWait, TimeUnit unit) {
+            this.maxWaitMillis = unit.toMillis(maxWait);
+            return this;
+        }
+
+        /** factor of the limit on an error (default 0.9) */
+        public Builder backoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /** GRADIENT: latency increase that is tolerated before the limit shrinks (default 1.5) */
+        public Builder tolerance(double tolerance) {
+            this.tolerance = tolerance;
+            return this;
+        }
+
+        public ConcurrencyLimiter build() {
+            if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+                throw new IllegalArgumentException("Limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit.");
+            }
+            if (maxQueue < 0 || maxWaitMillis < 0) {
+                throw new IllegalArgumentException("maxQueue and maxWait must not be negative.");
+            }
+            if (backoffRatio <= 0 || backoffRatio >= 1 || tolerance < 1) {
+                throw new IllegalArgumentException("backoffRatio must be in (0, 1) and tolerance at least 1.");
+            }
+            return new ConcurrencyLimiter(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return "ConcurrencyLimiter{" +
+                    "algorithm=" + algorithm +
+                    ", limit=" + getLimitLocked() +
+                    ", inFlight=" + inFlight +
+                    ", queued=" + queued +
+                    '}';
+        } finally {
+            lock.unlock();
+        }
+    }
+}
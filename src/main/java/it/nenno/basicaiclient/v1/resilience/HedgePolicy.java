@@ -0,0 +1,164 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1.resilience;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when a slow request gets a duplicate (hedge). The hedge is sent when the first attempt
+ * has not answered within a percentile of the recent latencies (default p95), the first success
+ * wins and the other attempt is cancelled. The hedges are limited by a budget (default 5 % of the requests).
+ */
+public class HedgePolicy {
+
+    /** new samples before the percentile is computed again */
+    private static final int RECOMPUTE_EVERY = 16;
+
+    private final double percentile;
+    private final long minDelayMillis;
+    private final int minSamples;
+    private final RetryBudget budget;
+
+    // ------ latency window, guarded by this ------
+    private final long[] samples;
+    private int count;
+    private int next;
+    private int sinceRecompute;
+    private long delayMillis = -1;
+
+    // ------ metrics ------
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    private HedgePolicy(Builder builder) {
+        this.percentile = builder.percentile;
+        this.minDelayMillis = builder.minDelayMillis;
+        this.minSamples = builder.minSamples;
+        this.budget = new RetryBudget(builder.budgetRatio, 0);
+        this.samples = new long[builder.windowSize];
+    }
+
+    /** count a request, the base of the hedge budget */
+    public void onRequest() {
+        requests.incrementAndGet();
+        budget.onRequest();
+    }
+
+    /** @return milliseconds to wait before a hedge, -1 while there are too few samples */
+    public synchronized long getHedgeDelayMillis() {
+        if (count < minSamples) {
+            return -1;
+        }
+        if (delayMillis < 0 || sinceRecompute >= RECOMPUTE_EVERY) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.min(count - 1, Math.ceil(percentile * count) - 1);
+            delayMillis = Math.max(minDelayMillis, sorted[Math.max(0, index)]);
+            sinceRecompute = 0;
+        }
+        return delayMillis;
+    }
+
+    /** add the latency of a successful attempt to the window */
+    public synchronized void recordLatency(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) count++;
+        sinceRecompute++;
+    }
+
+    /** @return true and count the hedge if the budget allows one more */
+    public boolean tryHedge() {
+        if (!budget.tryRetry()) {
+            budgetExhausted.incrementAndGet();
+            return false;
+        }
+        hedges.incrementAndGet();
+        return true;
+    }
+
+    /** the hedge answered first */
+    public void onHedgeWin() {
+        hedgeWins.incrementAndGet();
+    }
+
+    public HedgeStats getStats() {
+        return new HedgeStats(requests.get(), hedges.get(), hedgeWins.get(), budgetExhausted.get(),
+                getHedgeDelayMillis());
+    }
+
+    // The builder class
+    public static class Builder {
+        private double percentile = 0.95;
+        private long minDelayMillis = 50;
+        private int minSamples = 20;
+        private int windowSize = 1000;
+        private double budgetRatio = 0.05;
+
+        /** percentile of the recent latencies after which the hedge is sent (default 0.95) */
+        public Builder percentile(double percentile) {
+            this.percentile = percentile;
+            return this;
+        }
+
+        /** shortest wait before a hedge (default 50 ms) */
+        public Builder minDelay(long minDelay, TimeUnit unit) {
+            this.minDelayMillis = unit.toMillis(minDelay);
+            return this;
+        }
+
+        /** latencies kept (default the last 1000) and needed before the first hedge (default 20) */
+        public Builder window(int windowSize, int minSamples) {
+            this.windowSize = windowSize;
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /** hedges as share of the requests (default 0.05) */
+        public Builder budget(double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+            return this;
+        }
+
+        public HedgePolicy build() {
+            if (percentile <= 0 || percentile > 1) {
+                throw new IllegalArgumentException("percentile must be in (0, 1].");
+            }
+            if (windowSize < 1 || minSamples < 1 || minSamples > windowSize) {
+                throw new IllegalArgumentException("Window must satisfy 1 <= minSamples <= windowSize.");
+            }
+            if (minDelayMillis < 0 || budgetRatio < 0) {
+                throw new IllegalArgumentException("minDelay and budget must not be negative.");
+            }
+            return new HedgePolicy(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HedgePolicy{" +
+                "percentile=" + percentile +
+                ", minDelayMillis=" + minDelayMillis +
+                ", budgetRatio=" + budget.getRatio() +
+                '}';
+    }
+}
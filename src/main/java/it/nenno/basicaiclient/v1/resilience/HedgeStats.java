@@ -0,0 +1,68 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1.resilience;
+
+/**
+ * Snapshot of the hedging metrics of a {@link HedgePolicy}
+ */
+public class HedgeStats {
+    private final long requests;
+    private final long hedges;
+    private final long hedgeWins;
+    private final long budgetExhausted;
+    private final long hedgeDelayMillis;
+
+    HedgeStats(long requests, long hedges, long hedgeWins, long budgetExhausted, long hedgeDelayMillis) {
+        this.requests = requests;
+        this.hedges = hedges;
+        this.hedgeWins = hedgeWins;
+        this.budgetExhausted = budgetExhausted;
+        this.hedgeDelayMillis = hedgeDelayMillis;
+    }
+
+    /** requests sent, without their hedges */
+    public long getRequests() {return requests;}
+
+    /** duplicates sent because the first attempt was slow */
+    public long getHedges() {return hedges;}
+
+    /** hedges that answered before the first attempt */
+    public long getHedgeWins() {return hedgeWins;}
+
+    /** share of the hedges that won, 0 without hedges */
+    public double getWinRate() {
+        return hedges == 0 ? 0 : (double) hedgeWins / hedges;
+    }
+
+    /** hedges refused by the budget */
+    public long getBudgetExhausted() {return budgetExhausted;}
+
+    /** current wait before a hedge, -1 while there are too few latency samples */
+    public long getHedgeDelayMillis() {return hedgeDelayMillis;}
+
+    @Override
+    public String toString() {
+        return "HedgeStats{" +
+                "requests=" + requests +
+                ", hedges=" + hedges +
+                ", hedgeWins=" + hedgeWins +
+                ", budgetExhausted=" + budgetExhausted +
+                ", hedgeDelayMillis=" + hedgeDelayMillis +
+                '}';
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1.resilience;
+
+import it.nenno.basicaiclient.v1.config.AiApi;
+import it.nenno.basicaiclient.v1.config.RateLimit;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client-side limit of the requests and tokens per minute of a provider, so that the requests
+ * wait before they are sent instead of failing with HTTP 429.
+ * <p>
+ * Two token buckets hold up to one minute of requests and tokens and refill continuously.
+ * A request takes one request and its estimated tokens, scaled by a correction factor that
+ * follows the ratio of the actual tokens (from the usage of the responses) to the estimates.
+ * When the response arrives the difference between the taken and the actual tokens is
+ * given back or taken in addition.
+ */
+public class RateLimiter {
+
+    private static final ConcurrentMap<String, RateLimiter> SHARED = new ConcurrentHashMap<>();
+
+    private static final double MIN_CORRECTION = 0.1;
+    private static final double MAX_CORRECTION = 10.0;
+    private static final double CORRECTION_WEIGHT = 0.2;
+
+    private final String name;
+    private final int requestsPerMinute;
+    private final int tokensPerMinute;
+
+    // ------ state, guarded by this ------
+    private double availableRequests;
+    private double availableTokens;
+    private long lastRefillNanos;
+    private double correction = 1.0;
+    private long acquired;
+    private long rejected;
+
+    /**
+     * @param requestsPerMinute 0 for no limit of the requests
+     * @param tokensPerMinute 0 for no limit of the tokens
+     */
+    public RateLimiter(String name, int requestsPerMinute, int tokensPerMinute) {
+        if (requestsPerMinute < 0 || tokensPerMinute < 0) {
+            throw new IllegalArgumentException("Rate limits must not be negative.");
+        }
+        this.name = name;
+        this.requestsPerMinute = requestsPerMinute;
+        this.tokensPerMinute = tokensPerMinute;
+        this.availableRequests = requestsPerMinute;
+        this.availableTokens = tokensPerMinute;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Limiter of the provider with the rate_limit of its entry in aiapis.json, shared by all clients
+     * of the provider so that they stay together within the limits.
+     * @return the limiter or null if the entry has no rate_limit
+     */
+    public static RateLimiter forApi(AiApi api) {
+        RateLimit rateLimit = api.getRateLimit();
+        if (rateLimit == null || (rateLimit.getRequestsPerMinute() <= 0 && rateLimit.getTokensPerMinute() <= 0)) {
+            return null;
+        }
+        return SHARED.computeIfAbsent(api.getProviderName() + "|" + api.getApiUrl(),
+                key -> new RateLimiter(api.getProviderName(),
+                        rateLimit.getRequestsPerMinute(), rateLimit.getTokensPerMinute()));
+    }
+
+    // ------ acquire ------
+
+    /** @return permit for a request with the estimated tokens or null if the limits are reached */
+    public synchronized Permit tryAcquire(int estimatedTokens) {
+        refill();
+        int tokens = chargedTokens(estimatedTokens);
+        if ((requestsPerMinute > 0 && availableRequests < 1)
+                || (tokensPerMinute > 0 && availableTokens < tokens)) {
+            rejected++;
+            return null;
+        }
+        if (requestsPerMinute > 0) availableRequests -= 1;
+        if (tokensPerMinute > 0) availableTokens -= tokens;
+        acquired++;
+        return new Permit(estimatedTokens, tokens);
+    }
+
+    /** @return milliseconds until tryAcquire() can succeed, 0 if it can now */
+    public synchronized long getWaitMillis(int estimatedTokens) {
+        refill();
+        double waitMillis = 0;
+        if (requestsPerMinute > 0 && availableRequests < 1) {
+            waitMillis = (1 - availableRequests) * 60_000 / requestsPerMinute;
+        }
+        int tokens = chargedTokens(estimatedTokens);
+        if (tokensPerMinute > 0 && availableTokens < tokens) {
+            waitMillis = Math.max(waitMillis, (tokens - availableTokens) * 60_000 / tokensPerMinute);
+        }
+        return (long) Math.ceil(waitMillis);
+    }
+
+    /** Wait until the limits allow the request */
+    public Permit acquire(int estimatedTokens) throws InterruptedException {
+        Permit permit;
+        while ((permit = tryAcquire(estimatedTokens)) == null) {
+            TimeUnit.MILLISECONDS.sleep(Math.max(1, getWaitMillis(estimatedTokens)));
+        }
+        return permit;
+    }
+
+    /**
+     * @return future that completes with the permit when the limits allow the request, no thread waits meanwhile.
+     * Cancelling the future gives up the waiting.
+     */
+    public CompletableFuture<Permit> acquireAsync(int estimatedTokens) {
+        CompletableFuture<Permit> future = new CompletableFuture<>();
+        tryComplete(future, estimatedTokens);
+        return future;
+    }
+
+    private void tryComplete(final CompletableFuture<Permit> future, final int estimatedTokens) {
+        if (future.isDone()) return;
+        Permit permit = tryAcquire(estimatedTokens);
+        if (permit != null) {
+            // cancelled meanwhile: give the permit back
+            if (!future.complete(permit)) permit.cancel();
+            return;
+        }
+        SchedulerHolder.SCHEDULER.schedule(() -> tryComplete(future, estimatedTokens),
+                Math.max(1, getWaitMillis(estimatedTokens)), TimeUnit.MILLISECONDS);
+    }
+
+    // ------ buckets ------
+
+    private void refill() {
+        long now = System.nanoTime();
+        double minutes = (now - lastRefillNanos) / 60e9;
+        lastRefillNanos = now;
+        availableRequests = Math.min(requestsPerMinute, availableRequests + minutes * requestsPerMinute);
+        availableTokens = Math.min(tokensPerMinute, availableTokens + minutes * tokensPerMinute);
+    }
+
+    /** tokens taken for the estimate, at most one minute of tokens, otherwise it would never fit */
+    private int chargedTokens(int estimatedTokens) {
+        long tokens = (long) Math.ceil(Math.max(0, estimatedTokens) * correction);
+        return (int) Math.min(tokens, tokensPerMinute > 0 ? tokensPerMinute : Integer.MAX_VALUE);
+    }
+
+    private synchronized void complete(Permit permit, int actualTokens) {
+        refill();
+        if (actualTokens > 0) {
+            if (tokensPerMinute > 0) {
+                // the balance can become negative, the next requests wait for it
+                availableTokens = Math.min(tokensPerMinute, availableTokens + permit.chargedTokens - actualTokens);
+            }
+            if (permit.estimatedTokens > 0) {
+                double ratio = (double) actualTokens / permit.estimatedTokens;
+                correction = Math.max(MIN_CORRECTION, Math.min(MAX_CORRECTION,
+                        (1 - CORRECTION_WEIGHT) * correction + CORRECTION_WEIGHT * ratio));
+            }
+        }
+    }
+
+    private synchronized void cancel(Permit permit) {
+        refill();
+        if (requestsPerMinute > 0) availableRequests = Math.min(requestsPerMinute, availableRequests + 1);
+        if (tokensPerMinute > 0) availableTokens = Math.min(tokensPerMinute, availableTokens + permit.chargedTokens);
+        acquired--;
+    }
+
+    /** Permit of one request, to be completed with the actual tokens when the response arrived */
+    public class Permit {
+        private final int estimatedTokens;
+        private final int chargedTokens;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Permit(int estimatedTokens, int chargedTokens) {
+            this.estimatedTokens = estimatedTokens;
+            this.chargedTokens = chargedTokens;
+        }
+
+        /** @return tokens taken from the limit for this request */
+        public int getChargedTokens() {return chargedTokens;}
+
+        /**
+         * Correct the limiter with the total tokens of the response, calling it more than once has no effect
+         * @param actualTokens total tokens from the usage of the response, 0 if unknown (keeps the estimate)
+         */
+        public void complete(int actualTokens) {
+            if (done.compareAndSet(false, true)) {
+                RateLimiter.this.complete(this, actualTokens);
+            }
+        }
+
+        /** Give back the permit of a request that was not sent */
+        public void cancel() {
+            if (done.compareAndSet(false, true)) {
+                RateLimiter.this.cancel(this);
+            }
+        }
+    }
+
+    // ------ getters ------
+
+    public String getName() {return name;}
+
+    public int getRequestsPerMinute() {return requestsPerMinute;}
+
+    public int getTokensPerMinute() {return tokensPerMinute;}
+
+    public synchronized double getAvailableRequests() {
+        refill();
+        return availableRequests;
+    }
+
+    public synchronized double getAvailableTokens() {
+        refill();
+        return availableTokens;
+    }
+
+    /** @return factor of the estimates learned from the usage of the responses */
+    public synchronized double getCorrection() {return correction;}
+
+    /** @return requests that got a permit */
+    public synchronized long getAcquired() {return acquired;}
+
+    /** @return tryAcquire() calls that found the limits reached */
+    public synchronized long getRejected() {return rejected;}
+
+    private static class SchedulerHolder {
+        static final ScheduledExecutorService SCHEDULER = newScheduler();
+
+        private static ScheduledExecutorService newScheduler() {
+            final AtomicInteger counter = new AtomicInteger();
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "basicaiclient-ratelimit-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiter{" +
+                "name='" + name + '\'' +
+                ", requestsPerMinute=" + requestsPerMinute +
+                ", tokensPerMinute=" + tokensPerMinute +
+                '}';
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.nenno.basicaiclient.v1.resilience;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the time to wait before the next request from the headers of a response.
+ * <ul>
+ *     <li>retry-after-ms: milliseconds (OpenAI)</li>
+ *     <li>retry-after: seconds or a HTTP date</li>
+ *     <li>x-ratelimit-reset-requests / x-ratelimit-reset-tokens: durations like "1s", "6m0s" or "20ms"
+ *     (OpenAI, Groq, Together, ...), used if the remaining requests or tokens are 0 or unknown</li>
+ *     <li>anthropic-ratelimit-requests-reset / anthropic-ratelimit-tokens-reset: RFC 3339 timestamps</li>
+ * </ul>
+ */
+public final class RetryAfter {
+
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private RetryAfter() {}
+
+    /**
+     * @param headers lookup of a header by its lower-case name
+     * @return milliseconds to wait or -1 if the headers tell nothing
+     */
+    public static long parseMillis(Function<String, String> headers) {
+        long millis = parseNumber(headers.apply("retry-after-ms"), 1);
+        if (millis >= 0) return millis;
+
+        String retryAfter = headers.apply("retry-after");
+        if (retryAfter != null) {
+            millis = parseNumber(retryAfter, 1000);
+            if (millis < 0) millis = untilHttpDate(retryAfter);
+            if (millis >= 0) return millis;
+        }
+
+        long reset = -1;
+        for (String kind : new String[]{"requests", "tokens"}) {
+            String remaining = headers.apply("x-ratelimit-remaining-" + kind);
+            if (remaining == null || "0".equals(remaining.trim())) {
+                reset = Math.max(reset, parseDuration(headers.apply("x-ratelimit-reset-" + kind)));
+            }
+            remaining = headers.apply("anthropic-ratelimit-" + kind + "-remaining");
+            if (remaining == null || "0".equals(remaining.trim())) {
+                reset = Math.max(reset, untilTimestamp(headers.apply("anthropic-ratelimit-" + kind + "-reset")));
+            }
+        }
+        return reset;
+    }
+
+    private static long parseNumber(String value, long factor) {
+        if (value == null) return -1;
+        try {
+            double number = Double.parseDouble(value.trim());
+            return number < 0 ? -1 : (long) Math.ceil(number * factor);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** "1s", "6m0s", "1h2m3.5s", "20ms", @return milliseconds or -1 */
+    static long parseDuration(String value) {
+        if (value == null) return -1;
+        String trimmed = value.trim().toLowerCase(Locale.ROOT);
+        // plain numbers are seconds
+        long seconds = parseNumber(trimmed, 1000);
+        if (seconds >= 0) return seconds;
+
+        Matcher matcher = DURATION_PART.matcher(trimmed);
+        double millis = 0;
+        int end = 0;
+        while (matcher.find()) {
+            if (matcher.start() != end) return -1;
+            double number = Double.parseDouble(matcher.group(1));
+            switch (matcher.group(2)) {
+                case "h": millis += number * 3_600_000; break;
+                case "m": millis += number * 60_000; break;
+                case "s": millis += number * 1000; break;
+                default: millis += number; break;
+            }
+            end = matcher.end();
+        }
+        return end > 0 && end == trimmed.length() ? (long) Math.ceil(millis) : -1;
+    }
+
+    private static long untilHttpDate(String value) {
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static long untilTimestamp(String value) {
+        if (value == null) return -1;
+        try {
+            return Math.max(0, Instant.parse(value.trim()).toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
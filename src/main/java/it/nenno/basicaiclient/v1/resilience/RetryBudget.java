@@ -0,0 +1,96 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.nenno.basicaiclient.v1.resilience;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the retries to a share of the requests of the last seconds, so that retries
+ * cannot multiply the load on a provider that is already failing.
+ * <p>
+ * Retries are allowed while they are below ratio * requests or minPerSecond * window seconds.
+ * The counts are kept in one-second buckets of a ring over the window.
+ */
+public class RetryBudget {
+
+    private static final int WINDOW_SECONDS = 10;
+
+    private final double ratio;
+    private final int minRetriesPerWindow;
+    private final long[] requests = new long[WINDOW_SECONDS];
+    private final long[] retries = new long[WINDOW_SECONDS];
+    private final long[] bucketSecond = new long[WINDOW_SECONDS];
+    private final LongSupplier nanoTime;
+
+    /**
+     * @param ratio share of retries in relation to the requests, e.g. 0.2 for 20 %
+     * @param minRetriesPerSecond retries that are always allowed, for clients with few requests
+     */
+    public RetryBudget(double ratio, int minRetriesPerSecond) {
+        this(ratio, minRetriesPerSecond, System::nanoTime);
+    }
+
+    /** @param nanoTime source of the time, for the tests */
+    RetryBudget(double ratio, int minRetriesPerSecond, LongSupplier nanoTime) {
+        if (ratio < 0 || minRetriesPerSecond < 0) {
+            throw new IllegalArgumentException("ratio and minRetriesPerSecond must not be negative.");
+        }
+        this.ratio = ratio;
+        this.minRetriesPerWindow = minRetriesPerSecond * WINDOW_SECONDS;
+        this.nanoTime = nanoTime;
+    }
+
+    /** count a first attempt */
+    public synchronized void onRequest() {
+        requests[bucket(currentSecond())]++;
+    }
+
+    /** @return true and count the retry if the budget allows one more */
+    public synchronized boolean tryRetry() {
+        long second = currentSecond();
+        int current = bucket(second);
+        long requestSum = 0, retrySum = 0;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            // a bucket is cleared only when its index comes again, skip the ones of earlier windows
+            if (second - bucketSecond[i] >= WINDOW_SECONDS) continue;
+            requestSum += requests[i];
+            retrySum += retries[i];
+        }
+        if (retrySum >= Math.max(minRetriesPerWindow, (long) (ratio * requestSum))) {
+            return false;
+        }
+        retries[current]++;
+        return true;
+    }
+
+    private long currentSecond() {
+        // nanoTime() may be negative, floor keeps the index positive and the seconds distinct
+        return Math.floorDiv(nanoTime.getAsLong(), 1_000_000_000L);
+    }
+
+    /** index of the second, the bucket is cleared if it belonged to an earlier second */
+    private int bucket(long second) {
+        int index = (int) Math.floorMod(second, (long) WINDOW_SECONDS);
+        if (bucketSecond[index] != second) {
+            bucketSecond[index] = second;
+            requests[index] = 0;
+            retries[index] = 0;
+        }
+        return index;
+    }
+
+    public double getRatio() {return ratio;}
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.nenno.basicaiclient.v1.resilience;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * When and how long to wait before a failed request is sent again.
+ * <ul>
+ *     <li>each {@link RetryReason} has its own number of retries and delays</li>
+ *     <li>the delays grow with decorrelated jitter: a random value between the base delay
+ *     and three times the previous delay, capped by the maximum delay</li>
+ *     <li>Retry-After and rate limit reset headers of the provider extend the delay,
+ *     if they ask for more than maxRetryAfter the request fails at once</li>
+ *     <li>a {@link RetryBudget} limits the retries to a share of the requests</li>
+ * </ul>
+ * A policy is shared by the requests of a client and collects their metrics, see {@link #getStats()}.
+ */
+public class RetryPolicy {
+
+    private final Map<RetryReason, Rule> rules;
+    private final long maxRetryAfterMillis;
+    private final RetryBudget budget;
+
+    // ------ metrics ------
+    private final AtomicLong requests = new AtomicLong();
+    private final Map<RetryReason, AtomicLong> retries = new EnumMap<>(RetryReason.class);
+    private final AtomicLong exhausted = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+    private final AtomicLong totalDelayMillis = new AtomicLong();
+    private final AtomicLong maxDelayMillis = new AtomicLong();
+
+    private RetryPolicy(Builder builder) {
+        this.rules = new EnumMap<>(builder.rules);
+        this.maxRetryAfterMillis = builder.maxRetryAfterMillis;
+        this.budget = builder.budget;
+        for (RetryReason reason : RetryReason.values()) {
+            retries.put(reason, new AtomicLong());
+        }
+    }
+
+    /** @return policy that never retries */
+    public static RetryPolicy none() {
+        Builder builder = new Builder();
+        for (RetryReason reason : RetryReason.values()) {
+            builder.retry(reason, 0, 0, 0, TimeUnit.MILLISECONDS);
+        }
+        return builder.build();
+    }
+
+    /** Start a request, the returned attempts decide about its retries */
+    public Attempts newAttempts() {
+        requests.incrementAndGet();
+        budget.onRequest();
+        return new Attempts();
+    }
+
+    public RetryStats getStats() {
+        Map<RetryReason, Long> retryCounts = new EnumMap<>(RetryReason.class);
+        for (Map.Entry<RetryReason, AtomicLong> entry : retries.entrySet()) {
+            retryCounts.put(entry.getKey(), entry.getValue().get());
+        }
+        return new RetryStats(requests.get(), retryCounts, exhausted.get(), budgetExhausted.get(),
+                totalDelayMillis.get(), maxDelayMillis.get());
+    }
+
+    /** @return maximum number of retries for the reason */
+    public int getMaxRetries(RetryReason reason) {
+        return rules.get(reason).maxRetries;
+    }
+
+    /** Retries of one request, not thread-safe */
+    public class Attempts {
+        private final Map<RetryReason, Integer> counts = new EnumMap<>(RetryReason.class);
+        private final Map<RetryReason, Long> previousDelays = new EnumMap<>(RetryReason.class);
+        private int retryCount;
+
+        private Attempts() {}
+
+        /**
+         * Decide about the retry of a failed attempt
+         * @param headers lookup of the response headers by lower-case name, null without response
+         * @param remainingMillis time left until the deadline of the request, -1 without deadline
+         * @return delay in milliseconds before the next attempt, -1 if the failure is final
+         */
+        public long nextDelayMillis(RetryReason reason, Function<String, String> headers, long remainingMillis) {
+            Rule rule = rules.get(reason);
+            int count = counts.getOrDefault(reason, 0);
+            if (count >= rule.maxRetries) {
+                exhausted.incrementAndGet();
+                return -1;
+            }
+
+            // decorrelated jitter
+            long previous = previousDelays.getOrDefault(reason, rule.baseDelayMillis);
+            long upper = Math.max(rule.baseDelayMillis, Math.min(rule.maxDelayMillis, previous * 3));
+            long delay = upper > rule.baseDelayMillis
+                    ? ThreadLocalRandom.current().nextLong(rule.baseDelayMillis, upper + 1)
+                    : rule.baseDelayMillis;
+
+            long hinted = headers != null ? RetryAfter.parseMillis(headers) : -1;
+            if (hinted > maxRetryAfterMillis || (remainingMillis >= 0 && Math.max(delay, hinted) >= remainingMillis)) {
+                exhausted.incrementAndGet();
+                return -1;
+            }
+            if (!budget.tryRetry()) {
+                budgetExhausted.incrementAndGet();
+                return -1;
+            }
+
+            previousDelays.put(reason, delay);
+            delay = Math.max(delay, hinted);
+            counts.put(reason, count + 1);
+            retryCount++;
+            retries.get(reason).incrementAndGet();
+            totalDelayMillis.addAndGet(delay);
+            maxDelayMillis.accumulateAndGet(delay, Math::max);
+            return delay;
+        }
+
+        /** @return retries of this request so far */
+        public int getRetryCount() {return retryCount;}
+    }
+
+    private static class Rule {
+        final int maxRetries;
+        final long baseDelayMillis;
+        final long maxDelayMillis;
+
+        Rule(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+            this.maxRetries = maxRetries;
+            this.baseDelayMillis = baseDelayMillis;
+            this.maxDelayMillis = maxDelayMillis;
+        }
+    }
+
+    // The builder class
+    public static class Builder {
+        private final Map<RetryReason, Rule> rules = new EnumMap<>(RetryReason.class);
+        private long maxRetryAfterMillis = 60_000;
+        private RetryBudget budget;
+
+        public Builder() {
+            rules.put(RetryReason.RATE_LIMITED, new Rule(3, 1_000, 30_000));
+            rules.put(RetryReason.SERVER_ERROR, new Rule(2, 500, 10_000));
+            rules.put(RetryReason.CONNECT_FAILURE, new Rule(2, 100, 2_000));
+        }
+
+        /**
+         * Set the policy of a reason. Defaults: 429 three retries after 1 s up to 30 s,
+         * 5xx two retries after 0.5 s up to 10 s, connect failures two retries after 0.1 s up to 2 s.
+         */
+        public Builder retry(RetryReason reason, int maxRetries, long baseDelay, long maxDelay, TimeUnit unit) {
+            if (maxRetries < 0 || baseDelay < 0 || maxDelay < baseDelay) {
+                throw new IllegalArgumentException("Invalid retry policy for " + reason + ".");
+            }
+            rules.put(reason, new Rule(maxRetries, unit.toMillis(baseDelay), unit.toMillis(maxDelay)));
+            return this;
+        }
+
+        /** longest wait asked by Retry-After headers that is accepted (default 60 s) */
+        public Builder maxRetryAfter(long maxRetryAfter, TimeUnit unit) {
+            this.maxRetryAfterMillis = unit.toMillis(maxRetryAfter);
+            return this;
+        }
+
+        /** retries as share of the requests, default 20 % and at least one retry per second */
+        public Builder budget(RetryBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            if (budget == null) {
+                budget = new RetryBudget(0.2, 1);
+            }
+            return new RetryPolicy(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{" +
+                "maxRetries=" + rules.get(RetryReason.RATE_LIMITED).maxRetries
+                + "/" + rules.get(RetryReason.SERVER_ERROR).maxRetries
+                + "/" + rules.get(RetryReason.CONNECT_FAILURE).maxRetries +
+                ", maxRetryAfterMillis=" + maxRetryAfterMillis +
+                '}';
+    }
+}
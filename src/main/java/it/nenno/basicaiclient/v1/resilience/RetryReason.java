@@ -0,0 +1,44 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.nenno.basicaiclient.v1.resilience;
+
+/**
+ * Failures that can be retried, each with its own policy in {@link RetryPolicy}
+ */
+public enum RetryReason {
+    /** HTTP 429 Too Many Requests */
+    RATE_LIMITED,
+    /** HTTP 500, 502, 503, 504 and 529 (overloaded) */
+    SERVER_ERROR,
+    /** the connection could not be established, the request did not reach the provider */
+    CONNECT_FAILURE;
+
+    /** @return reason of the HTTP status or null if the status is not retried */
+    public static RetryReason ofStatus(int statusCode) {
+        switch (statusCode) {
+            case 429:
+                return RATE_LIMITED;
+            case 500:
+            case 502:
+            case 503:
+            case 504:
+            case 529:
+                return SERVER_ERROR;
+            default:
+                return null;
+        }
+    }
+}
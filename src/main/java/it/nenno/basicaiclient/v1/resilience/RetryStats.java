@@ -0,0 +1,79 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.nenno.basicaiclient.v1.resilience;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Snapshot of the retry metrics of a {@link RetryPolicy}
+ */
+public class RetryStats {
+    private final long requests;
+    private final Map<RetryReason, Long> retries;
+    private final long exhausted;
+    private final long budgetExhausted;
+    private final long totalDelayMillis;
+    private final long maxDelayMillis;
+
+    RetryStats(long requests, Map<RetryReason, Long> retries, long exhausted, long budgetExhausted,
+               long totalDelayMillis, long maxDelayMillis) {
+        this.requests = requests;
+        this.retries = Collections.unmodifiableMap(new EnumMap<>(retries));
+        this.exhausted = exhausted;
+        this.budgetExhausted = budgetExhausted;
+        this.totalDelayMillis = totalDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /** requests sent, without their retries */
+    public long getRequests() {return requests;}
+
+    /** retries of all reasons */
+    public long getRetries() {
+        long sum = 0;
+        for (long count : retries.values()) sum += count;
+        return sum;
+    }
+
+    /** retries per reason */
+    public Map<RetryReason, Long> getRetriesByReason() {return retries;}
+
+    /** requests that failed after their last allowed retry */
+    public long getExhausted() {return exhausted;}
+
+    /** retries refused by the retry budget */
+    public long getBudgetExhausted() {return budgetExhausted;}
+
+    /** sum of the delays before the retries */
+    public long getTotalDelayMillis() {return totalDelayMillis;}
+
+    /** longest delay before a retry */
+    public long getMaxDelayMillis() {return maxDelayMillis;}
+
+    @Override
+    public String toString() {
+        return "RetryStats{" +
+                "requests=" + requests +
+                ", retries=" + retries +
+                ", exhausted=" + exhausted +
+                ", budgetExhausted=" + budgetExhausted +
+                ", totalDelayMillis=" + totalDelayMillis +
+                ", maxDelayMillis=" + maxDelayMillis +
+                '}';
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.nenno.basicaiclient.v1.resilience;
+
+import it.nenno.basicaiclient.v1.models.AiMessage;
+import it.nenno.basicaiclient.v1.models.AiRequest;
+
+/**
+ * Rough estimate of the tokens of a request before it is sent, about 4 characters per token
+ * and a few tokens per message. The {@link RateLimiter} corrects it from the usage of the responses.
+ */
+public final class TokenEstimator {
+
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final int TOKENS_PER_MESSAGE = 4;
+
+    private TokenEstimator() {}
+
+    /** @return estimated prompt tokens of the request, at least 1 */
+    public static int estimate(AiRequest aiRequest) {
+        long chars = 0;
+        int messages = 0;
+        if (aiRequest.getMessages() != null) {
+            for (AiMessage message : aiRequest.getMessages()) {
+                if (message.getContent() != null) {
+                    chars += message.getContent().length();
+                }
+                messages++;
+            }
+        }
+        long tokens = (chars + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN + (long) messages * TOKENS_PER_MESSAGE;
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, tokens));
+    }
+
+    /** @return estimated tokens of a text, e.g. the chunks of a stream without usage */
+    public static int estimate(long chars) {
+        return (int) Math.min(Integer.MAX_VALUE, (chars + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1.utils;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shared registry of the Jackson codecs used by the client.
+ * <p>
+ * The mappers are configured once and never changed afterwards, so they and the immutable
+ * ObjectReader/ObjectWriter instances can be used by many threads. Jackson keeps its
+ * (de)serializer caches in the mappers, which are lost when a new ObjectMapper is created per call.
+ */
+public final class JsonCodecs {
+
+    /** Naming strategy of the properties on the wire */
+    public enum Naming {
+        /** Java property names or @JsonProperty */
+        DEFAULT,
+        /** snake_case, as used by the providers */
+        SNAKE_CASE
+    }
+
+    private static final ObjectMapper DEFAULT_MAPPER = new ObjectMapper();
+    private static final ObjectMapper SNAKE_CASE_MAPPER = newSnakeCaseMapper();
+    private static final ObjectMapper REQUEST_MAPPER = newRequestMapper();
+
+    private static final ObjectWriter REQUEST_WRITER = REQUEST_MAPPER.writer();
+    private static final ObjectWriter DEFAULT_WRITER = DEFAULT_MAPPER.writer();
+    private static final ObjectWriter PRETTY_WRITER = DEFAULT_MAPPER.writerWithDefaultPrettyPrinter();
+
+    private static final ConcurrentMap<Class<?>, ObjectReader> DEFAULT_READERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, ObjectReader> SNAKE_CASE_READERS = new ConcurrentHashMap<>();
+
+    private JsonCodecs() {}
+
+    private static ObjectMapper newSnakeCaseMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        MapperWithCaseStrategy.setSnakeCase(objectMapper);
+        return objectMapper;
+    }
+
+    private static ObjectMapper newRequestMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        // Exclude null values from the JSON output
+        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+        // the stream of the connection is closed by the transport
+        objectMapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        return objectMapper;
+    }
+
+    /** Reader of the type with the default naming */
+    public static ObjectReader reader(Class<?> type) {
+        return reader(type, Naming.DEFAULT);
+    }
+
+    /** Reader of the type with the given naming, created once per type */
+    public static ObjectReader reader(Class<?> type, Naming naming) {
+        if (naming == Naming.SNAKE_CASE) {
+            return SNAKE_CASE_READERS.computeIfAbsent(type, SNAKE_CASE_MAPPER::readerFor);
+        }
+        return DEFAULT_READERS.computeIfAbsent(type, DEFAULT_MAPPER::readerFor);
+    }
+
+    /** Writer of the provider requests, skips null values and leaves the target stream open */
+    public static ObjectWriter requestWriter() {
+        return REQUEST_WRITER;
+    }
+
+    /** Writer with indentation, for logging */
+    public static ObjectWriter prettyWriter() {
+        return PRETTY_WRITER;
+    }
+
+    /** Writer with the default naming */
+    public static ObjectWriter writer() {
+        return DEFAULT_WRITER;
+    }
+
+    /** Tree of the JSON text */
+    public static JsonNode readTree(String json) throws IOException {
+        return DEFAULT_MAPPER.readTree(json);
+    }
+
+    /** Tree of the next value of the parser */
+    public static JsonNode readTree(JsonParser parser) throws IOException {
+        return DEFAULT_MAPPER.readTree(parser);
+    }
+
+    /** Tree of the value, serialized with the default naming */
+    public static <T extends JsonNode> T valueToTree(Object value) {
+        return DEFAULT_MAPPER.valueToTree(value);
+    }
+
+    /** Value converted to the type, e.g. a bean to a Map */
+    public static <T> T convertValue(Object value, Class<T> type) {
+        return DEFAULT_MAPPER.convertValue(value, type);
+    }
+
+    /** New empty object node */
+    public static ObjectNode createObjectNode() {
+        return DEFAULT_MAPPER.createObjectNode();
+    }
+
+    /**
+     * Shared mapper with the default naming, for the helpers of this package that need the mapper
+     * itself. It is not exposed because a reconfiguration would change all the codecs of the client.
+     */
+    static ObjectMapper mapper() {
+        return DEFAULT_MAPPER;
+    }
+
+    /** Factory for parsers and generators on streams */
+    public static JsonFactory factory() {
+        return DEFAULT_MAPPER.getFactory();
+    }
+}
@@ -4,15 +4,27 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 
 /**
- * Used in AiClient and AnthropicSSELineParser
+ * Used by JsonCodecs
  */
 public class MapperWithCaseStrategy {
+
+  // looked up once, the reflection is too slow for every mapper
+  private static final PropertyNamingStrategy SNAKE_CASE = lookupSnakeCase();
+
   public  static void setSnakeCase(ObjectMapper objectMapper) {
+    objectMapper.setPropertyNamingStrategy(SNAKE_CASE);
+  }
+
+  /** snake case strategy of the Jackson version on the class path */
+  public static PropertyNamingStrategy getSnakeCase() {
+    return SNAKE_CASE;
+  }
+
+  private static PropertyNamingStrategy lookupSnakeCase() {
     try {
       // Check for PropertyNamingStrategies (newer version)
       Class<?> strategiesClass = Class.forName("com.fasterxml.jackson.databind.PropertyNamingStrategies");
-      Object snakeCaseStrategy = strategiesClass.getField("SNAKE_CASE").get(null);
-      objectMapper.setPropertyNamingStrategy((PropertyNamingStrategy) snakeCaseStrategy);
+      return (PropertyNamingStrategy) strategiesClass.getField("SNAKE_CASE").get(null);
     }
     catch (ClassNotFoundException | NoSuchFieldException | IllegalAccessException e) {
 
@@ -20,8 +32,7 @@ public class MapperWithCaseStrategy {
       Class<?> strategyClass = null;
       try {
         strategyClass = Class.forName("com.fasterxml.jackson.databind.PropertyNamingStrategy");
-        Object snakeCaseStrategy = strategyClass.getField("SNAKE_CASE").get(null);
-        objectMapper.setPropertyNamingStrategy((PropertyNamingStrategy) snakeCaseStrategy);
+        return (PropertyNamingStrategy) strategyClass.getField("SNAKE_CASE").get(null);
       }
       catch (ClassNotFoundException | IllegalAccessException | NoSuchFieldException ex) {
         throw new RuntimeException(ex);
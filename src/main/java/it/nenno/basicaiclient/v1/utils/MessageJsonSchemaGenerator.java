@@ -35,7 +35,7 @@ public class MessageJsonSchemaGenerator {
      */
     public static String generateJsonSchema(Class<?> clazz) throws JsonSchemaGenerationException {
         try {
-            ObjectMapper mapper = new ObjectMapper();
+            ObjectMapper mapper = JsonCodecs.mapper();
             JsonSchemaGenerator schemaGen = new JsonSchemaGenerator(mapper);
 
             // Generate schema for the provided class
@@ -48,7 +48,7 @@ public class MessageJsonSchemaGenerator {
             }
 
             // Convert schema to pretty JSON string
-            return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(schema);
+            return JsonCodecs.prettyWriter().writeValueAsString(schema);
 
         } catch (Exception e) {
             throw new JsonSchemaGenerationException("Failed to generate JSON schema for class: " + clazz.getName(), e);
@@ -17,15 +17,13 @@
 package it.nenno.basicaiclient.v1.utils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 public class PrettyJsonPrinter {
     public static String print(Object obj) {
         String output = "";
         if (obj != null){
-            ObjectMapper objectMapper = new ObjectMapper();
             try {
-                output = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(obj);
+                output = JsonCodecs.prettyWriter().writeValueAsString(obj);
             } catch (JsonProcessingException e) {
                 throw new RuntimeException(e);
             }
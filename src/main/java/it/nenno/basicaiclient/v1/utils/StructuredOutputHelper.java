@@ -19,7 +19,6 @@ package it.nenno.basicaiclient.v1.utils;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.Logger;
@@ -62,8 +61,7 @@ public class StructuredOutputHelper {
             //}
 
             // Parse the schema into JsonNode
-            ObjectMapper mapper = new ObjectMapper();
-            schemaNode = mapper.readTree(originalSchema);
+            schemaNode = JsonCodecs.readTree(originalSchema);
 
             // Get all property names from the schema
             List<String> propertyNames = getPropertyNames((ObjectNode) schemaNode);
@@ -81,7 +79,7 @@ public class StructuredOutputHelper {
             // }
 
             // Pretty print the modified schema
-            String modifiedSchemaPretty = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(schemaNode);
+            String modifiedSchemaPretty = JsonCodecs.prettyWriter().writeValueAsString(schemaNode);
             if (logDetails) LOGGER.info("modified schema: "+modifiedSchemaPretty);
 
         } catch (MessageJsonSchemaGenerator.JsonSchemaGenerationException e) {
@@ -118,12 +116,11 @@ public class StructuredOutputHelper {
                 //      "schema": [class-schema]
 
                 // Create the outer wrapper JSON object
-                ObjectMapper mapper = new ObjectMapper();
-                wrapper = mapper.createObjectNode();
+                wrapper = JsonCodecs.createObjectNode();
                 wrapper.put("type", "json_schema");
 
                 // build json_schema property
-                ObjectNode jsonSchema = mapper.createObjectNode();
+                ObjectNode jsonSchema = JsonCodecs.createObjectNode();
                 jsonSchema.put("name", clazz.getSimpleName()+ "_response");
 
                 // ----------------------- build object schema
@@ -139,7 +136,7 @@ public class StructuredOutputHelper {
                 //}
 
                 // Parse the schema into JsonNode
-                JsonNode schemaNode = mapper.readTree(originalSchema);
+                JsonNode schemaNode = JsonCodecs.readTree(originalSchema);
 
                 // Get all property names from the schema
                 List<String> propertyNames = getPropertyNames((ObjectNode) schemaNode);
@@ -168,7 +165,7 @@ public class StructuredOutputHelper {
 
 
                 // Pretty print the modified schema
-                String modifiedSchemaPretty = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(wrapper);
+                String modifiedSchemaPretty = JsonCodecs.prettyWriter().writeValueAsString(wrapper);
                 if (logDetails) LOGGER.info("modified schema: "+modifiedSchemaPretty);
 
             } catch (MessageJsonSchemaGenerator.JsonSchemaGenerationException e) {
@@ -203,10 +200,9 @@ public class StructuredOutputHelper {
     }
 
     public static  <T> T fromJson(String jsonString, Class<?> clazz)  {
-        ObjectMapper objectMapper = new ObjectMapper();
         try {
             // Deserialize JSON to POJO
-            return (T) objectMapper.readValue(jsonString, clazz);
+            return (T) JsonCodecs.reader(clazz).readValue(jsonString);
         } catch (Exception e) {
             throw new RuntimeException("Failed to deserialize JSON to " + clazz.getName());
         }
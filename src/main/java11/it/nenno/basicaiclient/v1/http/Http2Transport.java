@@ -0,0 +1,357 @@
+/*
+ * Copyright 2025 Mario Nenno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.nenno.basicaiclient.v1.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP/2 transport based on java.net.http.HttpClient, Java 11 version of the multi-release jar.
+ * <p>
+ * Concurrent requests to the same provider are multiplexed as streams over one connection
+ * (negotiated by ALPN for https). Servers without HTTP/2 are served with HTTP/1.1.
+ * The connect timeout is the one of the builder, the HttpClient has no connect timeout per request.
+ * If the request asks for it, the body is offered as {@link AsyncBody}, read by the HttpClient
+ * only as far as the receiver requests it.
+ */
+public class Http2Transport implements HttpTransport {
+
+    /** headers set by the HttpClient itself */
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "upgrade", "transfer-encoding"));
+
+    private final HttpClient httpClient;
+
+    private Http2Transport(Builder builder) {
+        HttpClient.Builder clientBuilder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER);
+        if (builder.executor != null) {
+            clientBuilder.executor(builder.executor);
+        }
+        if (builder.connectTimeoutMillis > 0) {
+            clientBuilder.connectTimeout(Duration.ofMillis(builder.connectTimeoutMillis));
+        }
+        this.httpClient = clientBuilder.build();
+    }
+
+    /** @return true if the running JVM and this jar support the HTTP/2 transport */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        AbortSignal abortSignal = request.getAbortSignal();
+        if (abortSignal != null) abortSignal.throwIfAborted();
+
+        HttpRequest.Builder requestBuilder;
+        try {
+            requestBuilder = HttpRequest.newBuilder(request.getUrl().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid URL: " + request.getUrl(), e);
+        }
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                requestBuilder.header(header.getKey(), header.getValue());
+            }
+        }
+        requestBuilder.method(request.getMethod(), publisherOf(request.getBody()));
+
+        // returns when the headers are received, the body is read from the stream or the publisher
+        Http2Response transportResponse;
+        if (request.isAsyncBody()) {
+            HttpResponse<Flow.Publisher<List<ByteBuffer>>> response = await(
+                    httpClient.sendAsync(requestBuilder.build(), HttpResponse.BodyHandlers.ofPublisher()), abortSignal);
+            transportResponse = new Http2Response(response, null, response.body());
+        } else {
+            HttpResponse<InputStream> response = await(
+                    httpClient.sendAsync(requestBuilder.build(), HttpResponse.BodyHandlers.ofInputStream()), abortSignal);
+            transportResponse = new Http2Response(response, response.body(), null);
+        }
+        if (abortSignal != null) {
+            abortSignal.onAbort(transportResponse::abort);
+        }
+        return transportResponse;
+    }
+
+    private static <T> HttpResponse<T> await(final CompletableFuture<HttpResponse<T>> future, AbortSignal abortSignal)
+            throws IOException {
+        if (abortSignal != null) {
+            abortSignal.onAbort(() -> future.cancel(true));
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the response");
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("Request aborted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HttpConnectTimeoutException) {
+                throw new ConnectTimeoutException(cause.getMessage());
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /** the HttpClient pulls the body from a publisher, so it is written once into a byte array */
+    private static HttpRequest.BodyPublisher publisherOf(TransportRequest.RequestBody body) throws IOException {
+        if (body == null) {
+            return HttpRequest.BodyPublishers.noBody();
+        }
+        long contentLength = body.getContentLength();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(contentLength > 0 ? (int) contentLength : 8192);
+        body.writeTo(buffer);
+        return HttpRequest.BodyPublishers.ofByteArray(buffer.toByteArray());
+    }
+
+    private static class Http2Response implements TransportResponse {
+        private final HttpResponse<?> response;
+        private final Map<String, List<String>> headers;
+        // the body of a request with async body is subscribed on the first use, otherwise it is the stream
+        private final Flow.Publisher<List<ByteBuffer>> publisher;
+        private InputStream body;
+        private PublisherBody asyncBody;
+        private boolean closed;
+
+        Http2Response(HttpResponse<?> response, InputStream body, Flow.Publisher<List<ByteBuffer>> publisher) {
+            this.response = response;
+            this.body = body;
+            this.publisher = publisher;
+            Map<String, List<String>> lowerCase = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> entry : response.headers().map().entrySet()) {
+                lowerCase.computeIfAbsent(entry.getKey().toLowerCase(Locale.ROOT), k -> new ArrayList<>())
+                        .addAll(entry.getValue());
+            }
+            this.headers = Collections.unmodifiableMap(lowerCase);
+        }
+
+        @Override
+        public int getStatusCode() {return response.statusCode();}
+
+        /** HTTP/2 has no reason phrase */
+        @Override
+        public String getStatusMessage() {return "";}
+
+        @Override
+        public String getHeader(String name) {
+            List<String> values = headers.get(name.toLowerCase(Locale.ROOT));
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {return headers;}
+
+        @Override
+        public synchronized InputStream getBody() {
+            if (body == null) {
+                if (asyncBody != null) {
+                    throw new IllegalStateException("The body is read as async body");
+                }
+                HttpResponse.BodySubscriber<InputStream> subscriber = HttpResponse.BodySubscribers.ofInputStream();
+                publisher.subscribe(subscriber);
+                // the stream is available at once and blocks until the bytes arrive
+                body = subscriber.getBody().toCompletableFuture().join();
+            }
+            return body;
+        }
+
+        @Override
+        public synchronized AsyncBody getAsyncBody() {
+            if (publisher == null || (body != null && asyncBody == null)) {
+                return null;
+            }
+            if (asyncBody == null) {
+                asyncBody = new PublisherBody(publisher);
+            }
+            return asyncBody;
+        }
+
+        @Override
+        public void close() {
+            InputStream unreadBody;
+            PublisherBody startedBody;
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                if (body == null && asyncBody == null) {
+                    // the body must be subscribed to release the stream
+                    body = InputStream.nullInputStream();
+                    new PublisherBody(publisher).cancel();
+                }
+                unreadBody = body;
+                startedBody = asyncBody;
+            }
+            if (startedBody != null) {
+                startedBody.cancel();
+                return;
+            }
+            // an unread body is cancelled, with HTTP/2 only the stream is reset, not the connection
+            try {
+                unreadBody.close();
+            } catch (IOException ignored) {
+                // nothing to release
+            }
+        }
+
+        @Override
+        public void abort() {
+            close();
+        }
+    }
+
+    /** Subscriber of the body publisher of the HttpClient, which requests the buffers on demand */
+    private static class PublisherBody implements AsyncBody, Flow.Subscriber<List<ByteBuffer>> {
+        private final Flow.Publisher<List<ByteBuffer>> publisher;
+        private final AtomicLong pending = new AtomicLong();
+        private final AtomicBoolean subscribed = new AtomicBoolean();
+        private volatile Flow.Subscription subscription;
+        private volatile boolean cancelled;
+        private Receiver receiver;
+
+        PublisherBody(Flow.Publisher<List<ByteBuffer>> publisher) {
+            this.publisher = publisher;
+        }
+
+        @Override
+        public void start(Receiver receiver) {
+            this.receiver = receiver;
+            if (subscribed.compareAndSet(false, true)) {
+                publisher.subscribe(this);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.request(n);
+                return;
+            }
+            pending.addAndGet(n);
+            // onSubscribe may have run in the meantime
+            requestPending();
+        }
+
+        private void requestPending() {
+            Flow.Subscription current = subscription;
+            if (current == null) return;
+            long n = pending.getAndSet(0);
+            if (n > 0) current.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            if (subscribed.compareAndSet(false, true)) {
+                // cancelled by onSubscribe
+                publisher.subscribe(this);
+                return;
+            }
+            Flow.Subscription current = subscription;
+            if (current != null) current.cancel();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            } else {
+                requestPending();
+            }
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            if (cancelled) return;
+            for (ByteBuffer buffer : buffers) {
+                receiver.onData(buffer);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            if (!cancelled) receiver.onError(error);
+        }
+
+        @Override
+        public void onComplete() {
+            if (!cancelled) receiver.onEnd();
+        }
+    }
+
+    // The builder class
+    public static class Builder {
+        private Executor executor;
+        private long connectTimeoutMillis;
+
+        /** executor of the HttpClient for its internal tasks */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Builder connectTimeout(long timeout, TimeUnit unit) {
+            this.connectTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        public Http2Transport build() {
+            return new Http2Transport(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Http2Transport{" +
+                "version=" + httpClient.version() +
+                '}';
+    }
+}
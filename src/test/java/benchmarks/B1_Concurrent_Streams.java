@@ -0,0 +1,120 @@
+package benchmarks;
+
+import it.nenno.basicaiclient.v1.AiClient;
+import it.nenno.basicaiclient.v1.AsyncExecutors;
+import it.nenno.basicaiclient.v1.MockAiServer;
+import it.nenno.basicaiclient.v1.VirtualThreads;
+import it.nenno.basicaiclient.v1.http.PooledHttpTransport;
+import it.nenno.basicaiclient.v1.models.AiMessage;
+import it.nenno.basicaiclient.v1.models.AiRequest;
+import it.nenno.basicaiclient.v1.models.StreamingResponseHandler;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Many concurrent streams against the local mock endpoint, each stream sends 10 chunks in 1 second.
+ * <p>
+ * Usage: B1_Concurrent_Streams [streams=10000] [virtual|platform] [platformThreads=200]
+ * <p>
+ * Virtual threads need Java 21 and the multi-release jar on the class path
+ * (mvn package on JDK 21, then run with target/BasicAIClient-1.0-SNAPSHOT.jar instead of target/classes).
+ * Both the client and the mock server run in this JVM and need two sockets per stream,
+ * so raise the limit of open files (ulimit -n) above twice the number of streams.
+ */
+public class B1_Concurrent_Streams {
+
+    public static void main(String[] args) throws Exception {
+        int streams = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        boolean virtual = args.length > 1 ? "virtual".equals(args[1]) : VirtualThreads.isSupported();
+        int platformThreads = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        if (virtual && !VirtualThreads.isSupported()) {
+            System.err.println("Virtual threads are not supported, run on Java 21 with the multi-release jar.");
+            return;
+        }
+
+        ExecutorService serverExecutor = VirtualThreads.isSupported()
+                ? VirtualThreads.newVirtualThreadPerTaskExecutor("mock-server-")
+                : Executors.newCachedThreadPool();
+
+        try (MockAiServer server = new MockAiServer(serverExecutor).chunks(10).chunkDelay(100)) {
+            PooledHttpTransport transport = new PooledHttpTransport.Builder()
+                    .maxConnectionsPerHost(streams)
+                    .build();
+            AiClient.Builder builder = new AiClient.Builder()
+                    .apiURL(server.getUrl())
+                    .transport(transport);
+            if (virtual) {
+                builder.virtualThreads(true);
+            } else {
+                builder.asyncExecutor(AsyncExecutors.newBoundedExecutor(platformThreads, streams));
+            }
+            AiClient aiClient = builder.build();
+
+            AiRequest aiRequest = new AiRequest.Builder()
+                    .model("mock")
+                    .messages(Collections.singletonList(new AiMessage("user", "Stream please")))
+                    .stream(true)
+                    .build();
+
+            System.out.println("Streams: " + streams + ", threads: "
+                    + (virtual ? "virtual" : platformThreads + " platform"));
+
+            final AtomicInteger inFlight = new AtomicInteger();
+            final AtomicInteger peakInFlight = new AtomicInteger();
+            final AtomicLong chunks = new AtomicLong();
+            final AtomicInteger errors = new AtomicInteger();
+
+            long start = System.nanoTime();
+            List<CompletableFuture<String>> futures = new ArrayList<>(streams);
+            for (int i = 0; i < streams; i++) {
+                futures.add(aiClient.streamChatAsync(aiRequest, new StreamingResponseHandler() {
+                    private boolean started;
+
+                    @Override
+                    public void onMessage(String chunk) {
+                        if (!started) {
+                            started = true;
+                            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        }
+                        chunks.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        errors.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onComplete(String accumulatedChunks) {
+                        inFlight.decrementAndGet();
+                    }
+                }));
+            }
+            for (CompletableFuture<String> future : futures) {
+                try {
+                    future.get(10, TimeUnit.MINUTES);
+                } catch (Exception e) {
+                    if (errors.getAndIncrement() == 0) e.printStackTrace();
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("Duration: %.2f s%n", seconds);
+            System.out.printf("Streams/s: %.0f, chunks/s: %.0f%n", streams / seconds, chunks.get() / seconds);
+            System.out.println("Peak streams in flight: " + peakInFlight.get());
+            System.out.println("Errors: " + errors.get());
+            System.out.println("Peak platform threads: " + ManagementFactory.getThreadMXBean().getPeakThreadCount());
+            System.out.println(transport.getStats());
+            transport.close();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package benchmarks;
+
+import it.nenno.basicaiclient.v1.AiClient;
+import it.nenno.basicaiclient.v1.AsyncExecutors;
+import it.nenno.basicaiclient.v1.MockAiServer;
+import it.nenno.basicaiclient.v1.http.Http2Transport;
+import it.nenno.basicaiclient.v1.http.HttpTransport;
+import it.nenno.basicaiclient.v1.http.PooledHttpTransport;
+import it.nenno.basicaiclient.v1.models.AiMessage;
+import it.nenno.basicaiclient.v1.models.AiRequest;
+import it.nenno.basicaiclient.v1.models.StreamingResponseHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Side-by-side comparison of the pooled HTTP/1.1 transport and the HTTP/2 transport
+ * with concurrent streaming chats against the same endpoint.
+ * <p>
+ * Usage: B2_Transport_Comparison [requests=500] [concurrency=50] [apiURL apiKey model]
+ * <p>
+ * Without an apiURL the local mock endpoint is used. It only speaks HTTP/1.1, so the HTTP/2
+ * transport falls back to HTTP/1.1 there; multiplexing shows against a real https provider.
+ * The HTTP/2 transport needs Java 11 and the multi-release jar on the class path.
+ */
+public class B2_Transport_Comparison {
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        String apiURL = args.length > 2 ? args[2] : null;
+        String apiKey = args.length > 3 ? args[3] : "";
+        String model = args.length > 4 ? args[4] : "mock";
+
+        MockAiServer server = apiURL == null ? new MockAiServer().chunks(10).chunkDelay(20) : null;
+        try {
+            String url = server != null ? server.getUrl() : apiURL;
+            System.out.println("Endpoint: " + url + ", requests: " + requests + ", concurrency: " + concurrency);
+
+            // warm up both transports before measuring
+            PooledHttpTransport pooled = new PooledHttpTransport.Builder().maxConnectionsPerHost(concurrency).build();
+            run("warm-up", pooled, url, apiKey, model, Math.min(requests, 50), concurrency, false);
+            run("HTTP/1.1 pooled", pooled, url, apiKey, model, requests, concurrency, true);
+            System.out.println(pooled.getStats());
+            pooled.close();
+
+            if (!Http2Transport.isSupported()) {
+                System.out.println("HTTP/2 transport is not supported, run on Java 11 with the multi-release jar.");
+                return;
+            }
+            Http2Transport http2 = new Http2Transport.Builder().connectTimeout(10, TimeUnit.SECONDS).build();
+            run("warm-up", http2, url, apiKey, model, Math.min(requests, 50), concurrency, false);
+            run("HTTP/2", http2, url, apiKey, model, requests, concurrency, true);
+            http2.close();
+        } finally {
+            if (server != null) server.close();
+        }
+    }
+
+    private static void run(String name, HttpTransport transport, String url, String apiKey, String model,
+                            int requests, int concurrency, boolean print) throws Exception {
+        ExecutorService executor = AsyncExecutors.newBoundedExecutor(concurrency, requests);
+        AiClient aiClient = new AiClient.Builder()
+                .apiURL(url)
+                .apiKey(apiKey)
+                .transport(transport)
+                .asyncExecutor(executor)
+                .build();
+        AiRequest aiRequest = new AiRequest.Builder()
+                .model(model)
+                .messages(Collections.singletonList(new AiMessage("user", "Count from 1 to 10")))
+                .stream(true)
+                .build();
+
+        final long[] firstChunkNanos = new long[requests];
+        final long[] totalNanos = new long[requests];
+        final AtomicInteger errors = new AtomicInteger();
+
+        long start = System.nanoTime();
+        List<CompletableFuture<String>> futures = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            final int index = i;
+            final long submitted = System.nanoTime();
+            futures.add(aiClient.streamChatAsync(aiRequest, new StreamingResponseHandler() {
+                @Override
+                public void onMessage(String chunk) {
+                    if (firstChunkNanos[index] == 0) firstChunkNanos[index] = System.nanoTime() - submitted;
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    if (errors.getAndIncrement() == 0) e.printStackTrace();
+                }
+
+                @Override
+                public void onComplete(String accumulatedChunks) {
+                    totalNanos[index] = System.nanoTime() - submitted;
+                }
+            }));
+        }
+        for (CompletableFuture<String> future : futures) {
+            try {
+                future.get(10, TimeUnit.MINUTES);
+            } catch (Exception e) {
+                if (errors.getAndIncrement() == 0) e.printStackTrace();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+        if (!print) return;
+
+        System.out.println("--- " + name + " ---");
+        System.out.printf("Duration: %.2f s, requests/s: %.0f, errors: %d%n", seconds, requests / seconds, errors.get());
+        System.out.println("First chunk ms " + percentiles(firstChunkNanos));
+        System.out.println("Complete ms    " + percentiles(totalNanos));
+    }
+
+    private static String percentiles(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("p50: %.1f, p90: %.1f, p99: %.1f, max: %.1f",
+                sorted[(int) (sorted.length * 0.50)] / 1e6,
+                sorted[(int) (sorted.length * 0.90)] / 1e6,
+                sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1e6,
+                sorted[sorted.length - 1] / 1e6);
+    }
+}
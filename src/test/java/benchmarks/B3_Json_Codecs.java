@@ -0,0 +1,126 @@
+package benchmarks;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.nenno.basicaiclient.v1.AiClient;
+import it.nenno.basicaiclient.v1.models.AiMessage;
+import it.nenno.basicaiclient.v1.models.AiRequest;
+import it.nenno.basicaiclient.v1.models.AiRequestBase;
+import it.nenno.basicaiclient.v1.models.AiResponseOpenai;
+import it.nenno.basicaiclient.v1.models.RequestConverter;
+import it.nenno.basicaiclient.v1.models.StreamDeltaParser;
+import it.nenno.basicaiclient.v1.utils.JsonCodecs;
+import it.nenno.basicaiclient.v1.utils.MapperWithCaseStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of a new ObjectMapper (as before the shared JsonCodecs) compared to the shared codecs,
+ * for a completion response, a streamed chunk and a request. The StreamDeltaParser reads only the delta of a chunk.
+ * <p>
+ * Usage: B3_Json_Codecs [JMH options], e.g. B3_Json_Codecs -f 1 -wi 3 -i 5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class B3_Json_Codecs {
+
+    private static final String RESPONSE = "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1735144382,"
+            + "\"model\":\"gpt-4o-mini\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\","
+            + "\"content\":\"The oceans are salty because rivers carry dissolved minerals into the sea.\"},"
+            + "\"finish_reason\":\"stop\"}],"
+            + "\"usage\":{\"prompt_tokens\":27,\"completion_tokens\":15,\"total_tokens\":42}}";
+
+    private static final String CHUNK = "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1735144382,"
+            + "\"model\":\"gpt-4o-mini\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\" salty\"},\"finish_reason\":null}]}";
+
+    private static final byte[] CHUNK_BYTES = CHUNK.getBytes(StandardCharsets.UTF_8);
+
+    private final StreamDeltaParser deltaParser = new StreamDeltaParser(AiClient.CLIENT_TYPE_OPENAI);
+    private AiRequestBase request;
+
+    @Setup
+    public void setUp() {
+        AiRequest aiRequest = new AiRequest.Builder()
+                .model("gpt-4o-mini")
+                .messages(new ArrayList<>(Arrays.asList(
+                        new AiMessage("system", "You are a helpful assistant."),
+                        new AiMessage("user", "Why is the sea salty?"))))
+                .build();
+        RequestConverter requestConverter = new RequestConverter();
+        requestConverter.convertForClient(aiRequest,
+                new AiClient.Builder().apiURL("https://api.openai.com/v1/chat/completions").build(), false);
+        request = requestConverter.getAiRequestBase();
+    }
+
+    // ------ completion response ------
+
+    @Benchmark
+    public AiResponseOpenai response_newMapper() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        MapperWithCaseStrategy.setSnakeCase(objectMapper);
+        return objectMapper.readValue(RESPONSE, AiResponseOpenai.class);
+    }
+
+    @Benchmark
+    public AiResponseOpenai response_sharedReader() throws Exception {
+        return JsonCodecs.reader(AiResponseOpenai.class, JsonCodecs.Naming.SNAKE_CASE).readValue(RESPONSE);
+    }
+
+    // ------ streamed chunk ------
+
+    @Benchmark
+    public AiResponseOpenai chunk_newMapper() throws Exception {
+        return new ObjectMapper().readValue(CHUNK, AiResponseOpenai.class);
+    }
+
+    @Benchmark
+    public AiResponseOpenai chunk_sharedReader() throws Exception {
+        return JsonCodecs.reader(AiResponseOpenai.class).readValue(CHUNK);
+    }
+
+    @Benchmark
+    public String chunk_deltaParser() throws Exception {
+        return deltaParser.parse(CHUNK_BYTES, 0, CHUNK_BYTES.length).getContent();
+    }
+
+    // ------ request ------
+
+    @Benchmark
+    public String request_newMapper() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        return objectMapper.writeValueAsString(request);
+    }
+
+    @Benchmark
+    public String request_sharedWriter() throws Exception {
+        return JsonCodecs.requestWriter().writeValueAsString(request);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(B3_Json_Codecs.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,135 @@
+package benchmarks;
+
+import it.nenno.basicaiclient.v1.http.SseFramer;
+import it.nenno.basicaiclient.v1.models.AiResponseOpenai;
+import it.nenno.basicaiclient.v1.models.ResponseConverter;
+import it.nenno.basicaiclient.v1.models.StreamDeltaParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static it.nenno.basicaiclient.v1.AiClient.CLIENT_TYPE_OPENAI;
+
+/**
+ * Events per second of a streamed completion, read line by line as Strings (as before the SseFramer)
+ * compared to the SseFramer, which passes the data of each event as bytes to Jackson, and to the
+ * StreamDeltaParser, which reads only the delta of the events with one JsonParser per stream.
+ * <p>
+ * Usage: B4_Sse_Framing [JMH options], e.g. B4_Sse_Framing -f 1 -wi 3 -i 5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class B4_Sse_Framing {
+
+    private static final int EVENTS = 1000;
+
+    private byte[] stream;
+
+    @Setup
+    public void setUp() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < EVENTS; i++) {
+            String line = "data: {\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1735144382,"
+                    + "\"model\":\"gpt-4o-mini\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\" token" + i + "\"},"
+                    + "\"finish_reason\":null}]}\n\n";
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, bytes.length);
+        }
+        byte[] done = "data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8);
+        out.write(done, 0, done.length);
+        stream = out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void readLine(Blackhole blackhole) throws Exception {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(stream), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                int positionOfDone = line.indexOf("[DONE]");
+                if (positionOfDone != -1 && positionOfDone < 10) break;
+                AiResponseOpenai response = ResponseConverter.getOpenAIResponseFromStreaming(line, CLIENT_TYPE_OPENAI);
+                blackhole.consume(response);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void sseFramer(Blackhole blackhole) throws Exception {
+        SseFramer framer = new SseFramer(new ByteArrayInputStream(stream));
+        SseFramer.Event event;
+        while ((event = framer.next()) != null) {
+            if (event.isDone()) break;
+            AiResponseOpenai response = ResponseConverter.getOpenAIResponseFromStreaming(event.getData(), 0,
+                    event.getDataLength(), CLIENT_TYPE_OPENAI);
+            blackhole.consume(response);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void sseFramer_deltaParser(Blackhole blackhole) throws Exception {
+        StreamDeltaParser parser = new StreamDeltaParser(CLIENT_TYPE_OPENAI, new SseFramer(new ByteArrayInputStream(stream)));
+        StreamDeltaParser.Delta delta;
+        while ((delta = parser.next()) != null) {
+            blackhole.consume(delta.getContent());
+        }
+    }
+
+    // ------ framing only, without JSON ------
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void readLine_framingOnly(Blackhole blackhole) throws Exception {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(stream), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) blackhole.consume(line.substring(5).trim());
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void sseFramer_framingOnly(Blackhole blackhole) throws Exception {
+        SseFramer framer = new SseFramer(new ByteArrayInputStream(stream));
+        SseFramer.Event event;
+        while ((event = framer.next()) != null) {
+            blackhole.consume(event.getDataLength());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(B4_Sse_Framing.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -3,6 +3,7 @@ package examples;
 import it.nenno.basicaiclient.v1.AiClient;
 import it.nenno.basicaiclient.v1.config.AiApi;
 import it.nenno.basicaiclient.v1.config.ConfigManager;
+import it.nenno.basicaiclient.v1.resilience.RateLimiter;
 import it.nenno.basicaiclient.v1.models.AiMessage;
 import it.nenno.basicaiclient.v1.models.AiRequest;
 import it.nenno.basicaiclient.v1.models.AiResponse;
@@ -37,6 +38,8 @@ public class E4_Groq {
             AiClient aiClient = new AiClient.Builder()
                     .apiURL(api.getApiUrl())
                     .apiKey(api.getApiKeyValue())
+                    // wait for the rate_limit of Groq in aiapis.json instead of getting HTTP 429
+                    .rateLimiter(RateLimiter.forApi(api))
                     .build();
 
             // Utility method to print a waiting message like: Calling ...
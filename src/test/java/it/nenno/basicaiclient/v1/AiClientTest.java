@@ -0,0 +1,731 @@
+package it.nenno.basicaiclient.v1;
+
+import it.nenno.basicaiclient.v1.cache.InMemoryResponseCache;
+import it.nenno.basicaiclient.v1.config.ProviderModel;
+import it.nenno.basicaiclient.v1.http.PooledHttpTransport;
+import it.nenno.basicaiclient.v1.models.AiMessage;
+import it.nenno.basicaiclient.v1.models.AiRequest;
+import it.nenno.basicaiclient.v1.models.AiResponse;
+import it.nenno.basicaiclient.v1.models.StreamingResponseHandler;
+import it.nenno.basicaiclient.v1.resilience.ConcurrencyLimiter;
+import it.nenno.basicaiclient.v1.resilience.HedgePolicy;
+import it.nenno.basicaiclient.v1.resilience.RateLimiter;
+import it.nenno.basicaiclient.v1.resilience.RetryPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class AiClientTest {
+
+    private MockAiServer server;
+    private PooledHttpTransport transport;
+    private AiClient aiClient;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockAiServer();
+        transport = new PooledHttpTransport.Builder().build();
+        aiClient = new AiClient.Builder()
+                .apiURL(server.getUrl())
+                .apiKey("test-key")
+                .transport(transport)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        transport.close();
+        server.close();
+    }
+
+    static AiRequest request(boolean stream) {
+        return new AiRequest.Builder()
+                .model("mock")
+                .messages(Collections.singletonList(new AiMessage("user", "Hello?")))
+                .stream(stream)
+                .build();
+    }
+
+    @Test
+    public void generate_OK() {
+        AiResponse aiResponse = aiClient.generate(request(false), false);
+        assertNotNull(aiResponse);
+        assertEquals(MockAiServer.ANSWER, aiResponse.getChoices().get(0).getMessage().getContent());
+        assertEquals(15, aiResponse.getUsage().getTotalTokens());
+
+        // the connection is reused after the response was parsed from the stream
+        aiClient.generate(request(false), false);
+        assertEquals(1, transport.getStats().getCreated());
+    }
+
+    @Test
+    public void generate_logDetails_OK() {
+        // parsed from the logged String instead of the stream
+        AiResponse aiResponse = aiClient.generate(request(false), true);
+        assertNotNull(aiResponse);
+        assertEquals(MockAiServer.ANSWER, aiResponse.getChoices().get(0).getMessage().getContent());
+        assertEquals(1, transport.getStats().getIdle());
+    }
+
+    @Test
+    public void generate_chunkedRequest_OK() {
+        AiClient chunkedClient = new AiClient.Builder()
+                .apiURL(server.getUrl())
+                .apiKey("test-key")
+                .transport(transport)
+                .chunkedRequests(true)
+                .build();
+        AiResponse aiResponse = chunkedClient.generate(request(false), false);
+        assertNotNull(aiResponse);
+        assertEquals(MockAiServer.ANSWER, aiResponse.getChoices().get(0).getMessage().getContent());
+    }
+
+    @Test
+    public void generateAsync_OK() throws Exception {
+        CompletableFuture<AiResponse> future = aiClient.generateAsync(request(false));
+        AiResponse aiResponse = future.get(10, TimeUnit.SECONDS);
+        assertEquals(MockAiServer.ANSWER, aiResponse.getChoices().get(0).getMessage().getContent());
+    }
+
+    @Test
+    public void generateAsync_cancelAbortsConnection() throws Exception {
+        server.responseDelay(5000);
+        CompletableFuture<AiResponse> future = aiClient.generateAsync(request(false));
+
+        // wait until the request is on the wire
+        long deadline = System.currentTimeMillis() + 5000;
+        while (transport.getStats().getLeased() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, transport.getStats().getLeased());
+
+        assertTrue(future.cancel(true));
+        // the worker thread returns from the closed socket and hands back the permit
+        deadline = System.currentTimeMillis() + 2000;
+        while (transport.getStats().getLeased() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, transport.getStats().getLeased());
+        assertEquals(1, transport.getStats().getDiscarded());
+    }
+
+    @Test
+    public void generate_retryAfterServerError() {
+        server.fail(1, 503, "0");
+        AiResponse aiResponse = aiClient.generate(request(false), false);
+        assertEquals(MockAiServer.ANSWER, aiResponse.getChoices().get(0).getMessage().getContent());
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, aiClient.getRetryPolicy().getStats().getRetries());
+        // the error response was read, so the connection is reused
+        assertEquals(1, transport.getStats().getCreated());
+    }
+
+    @Test
+    public void generate_rateLimitedWithoutRetries() {
+        server.fail(1, 429, "0");
+        AiClient noRetryClient = new AiClient.Builder()
+                .apiURL(server.getUrl())
+                .transport(transport)
+                .retryPolicy(RetryPolicy.none())
+                .build();
+        try {
+            noRetryClient.generate(request(false), false);
+            fail("AiHttpException expected");
+        } catch (AiHttpException e) {
+            assertTrue(e.isRateLimited());
+            assertEquals("0", e.getHeader("Retry-After"));
+            assertTrue(e.getResponseBody().contains("mock error 429"));
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void generate_clientErrorIsNotRetried() {
+        server.fail(1, 400, null);
+        try {
+            aiClient.generate(request(false), false);
+            fail("AiHttpException expected");
+        } catch (AiHttpException e) {
+            assertEquals(400, e.getStatusCode());
+        }
+        assertEquals(1, server.getRequestCount());
+        assertEquals(0, aiClient.getRetryPolicy().getStats().getRetries());
+    }
+
+    @Test
+    public void generate_rateLimited() {
+        RateLimiter rateLimiter = new RateLimiter("mock", 1, 1000);
+        AiClient limitedClient = new AiClient.Builder()
+                .apiURL(server.getUrl())
+                .transport(transport)
+                .rateLimiter(rateLimiter)
+                .build();
+        assertNotNull(limitedClient.generate(request(false), false));
+        // the estimate of 6 tokens is corrected with the 15 tokens of the usage
+        assertTrue(rateLimiter.getCorrection() > 1.0);
+        assertEquals(985, rateLimiter.getAvailableTokens(), 1.0);
+
+        // the next request would have to wait a minute
+        AiRequest aiRequest = new AiRequest.Builder()
+                .model("mock")
+                .messages(Collections.singletonList(new AiMessage("user", "Hello?")))
+                .timeouts(new Timeouts.Builder().deadline(300, TimeUnit.MILLISECONDS).build())
+                .build();
+        try {
+            limitedClient.generate(aiRequest, false);
+            fail("AiTimeoutException expected");
+        } catch (AiTimeoutException e) {
+            assertEquals(AiTimeoutException.Kind.DEADLINE, e.getKind());
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void generate_concurrencyLimited() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder()
+                .algorithm(ConcurrencyLimiter.Algorithm.AIMD)
+                .limits(4, 1, 8)
+                .backoffRatio(0.5)
+                .build();
+        AiClient limitedClient = new AiClient.Builder()
+                .apiURL(server.getUrl())
+                .transport(transport)
+                .retryPolicy(RetryPolicy.none())
+                .concurrencyLimiter(limiter)
+                .build();
+        assertNotNull(limitedClient.generate(request(false), false));
+        assertEquals(0, limiter.getInFlight());
+
+        // the overload signal halves the limit
+        server.fail(1, 503, null);
+        try {
+            limitedClient.generate(request(false), false);
+            fail("AiHttpException expected");
+        } catch (AiHttpException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void generate_failover() throws IOException {
+        try (MockAiServer backup = new MockAiServer()) {
+            server.fail(1, 503, null);
+            AiClient failoverClient = new AiClient.Builder()
+                    .apiURL(server.getUrl())
+                    .transport(transport)
+                    .retryPolicy(RetryPolicy.none())
+                    .fallback(new AiClient.Builder().apiURL(backup.getUrl()).transport(transport).build(), "backup")
+                    .build();
+            AiResponse aiResponse = failoverClient.generate(request(false), false);
+            assertEquals(MockAiServer.ANSWER, aiResponse.getChoices().get(0).getMessage().getContent());
+            assertEquals(1, aiResponse.getHop());
+            assertEquals(1, backup.getRequestCount());
+
+            // client errors are not failed over
+            server.fail(1, 400, null);
+            try {
+                failoverClient.generate(request(false), false);
+                fail("AiHttpException expected");
+            } catch (AiHttpException e) {
+                assertEquals(400, e.getStatusCode());
+            }
+            assertEquals(1, backup.getRequestCount());
+        }
+    }
+
+    @Test
+    public void streamChat_failoverBeforeFirstChunk() throws Exception {
+        try (MockAiServer backup = new MockAiServer()) {
+            server.fail(1, 429, null);
+            AiClient failoverClient = new AiClient.Builder()
+                    .apiURL(server.getUrl())
+                    .transport(transport)
+                    .retryPolicy(RetryPolicy.none())
+                    .fallback(new AiClient.Builder().apiURL(backup.getUrl()).transport(transport).build(), null)
+                    .build();
+            final int[] servedBy = {-1};
+            CompletableFuture<String> future = failoverClient.streamChatAsync(request(true), new StreamingResponseHandler() {
+                @Override
+                public void onMessage(String chunk) {
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    fail(e.getMessage());
+                }
+
+                @Override
+                public void onComplete(String accumulatedChunks) {
+                }
+
+                @Override
+                public void onServedBy(int hop, ProviderModel providerModel) {
+                    servedBy[0] = hop;
+                }
+            });
+            assertEquals(MockAiServer.ANSWER + " 1 2 3 4", future.get(10, TimeUnit.SECONDS));
+            assertEquals(1, servedBy[0]);
+        }
+    }
+
+    @Test
+    public void generate_failoverOnTimeout() throws IOException {
+        try (MockAiServer backup = new MockAiServer()) {
+            server.responseDelay(3000);
+            AiClient failoverClient = new AiClient.Builder()
+                    .apiURL(server.getUrl())
+                    .transport(transport)
+                    .retryPolicy(RetryPolicy.none())
+                    .timeouts(new Timeouts.Builder().firstByteTimeout(200, TimeUnit.MILLISECONDS).build())
+                    .fallback(new AiClient.Builder().apiURL(backup.getUrl()).transport(transport).build(), "backup")
+                    .build();
+            long start = System.currentTimeMillis();
+            AiResponse aiResponse = failoverClient.generate(request(false), false);
+            assertEquals(MockAiServer.ANSWER, aiResponse.getChoices().get(0).getMessage().getContent());
+            assertEquals(1, aiResponse.getHop());
+            assertEquals(1, backup.getRequestCount());
+            assertTrue(System.currentTimeMillis() - start < 2000);
+        }
+    }
+
+    @Test
+    public void streamChat_failoverOnTimeout() throws IOException {
+        try (MockAiServer backup = new MockAiServer()) {
+            server.responseDelay(3000);
+            AiClient failoverClient = new AiClient.Builder()
+                    .apiURL(server.getUrl())
+                    .transport(transport)
+                    .retryPolicy(RetryPolicy.none())
+                    .timeouts(new Timeouts.Builder().firstByteTimeout(200, TimeUnit.MILLISECONDS).build())
+                    .fallback(new AiClient.Builder().apiURL(backup.getUrl()).transport(transport).build(), null)
+                    .build();
+            final int[] servedBy = {-1};
+            final String[] completed = {null};
+            failoverClient.streamChat(request(true), false, new StreamingResponseHandler() {
+                @Override
+                public void onMessage(String chunk) {
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    fail(e.getMessage());
+                }
+
+                @Override
+                public void onComplete(String accumulatedChunks) {
+                    completed[0] = accumulatedChunks;
+                }
+
+                @Override
+                public void onServedBy(int hop, ProviderModel providerModel) {
+                    servedBy[0] = hop;
+                }
+            });
+            assertEquals(MockAiServer.ANSWER + " 1 2 3 4", completed[0]);
+            assertEquals(1, servedBy[0]);
+            assertEquals(1, backup.getRequestCount());
+        }
+    }
+
+    @Test
+    public void fallbackChain_fromConfig() {
+        AiClient chainClient = new AiClient.Builder().fallbackChain("llama3.3-70b").build();
+        assertEquals("https://api.groq.com/openai/v1/chat/completions", chainClient.getApiURL());
+        assertEquals("Togetherai", chainClient.getFallbacks().get(0).getProvider());
+        assertEquals(2, chainClient.getFallbacks().size());
+        assertNotNull(chainClient.getRateLimiter());
+    }
+
+    @Test
+    public void generate_hedgesSlowRequest() {
+        HedgePolicy hedgePolicy = new HedgePolicy.Builder()
+                .window(100, 1)
+                .budget(1.0)
+                .build();
+        AiClient hedgingClient = new AiClient.Builder()
+                .apiURL(server.getUrl())
+                .transport(transport)
+                .hedging(hedgePolicy)
+                .build();
+        // the first latency sample, no hedge before
+        assertNotNull(hedgingClient.generate(request(false), false));
+        assertEquals(0, hedgePolicy.getStats().getHedges());
+
+        server.slowRequests(1, 5000);
+        long start = System.currentTimeMillis();
+        AiResponse aiResponse = hedgingClient.generate(request(false), false);
+        assertEquals(MockAiServer.ANSWER, aiResponse.getChoices().get(0).getMessage().getContent());
+        assertTrue(System.currentTimeMillis() - start < 3000);
+        assertEquals(1, hedgePolicy.getStats().getHedges());
+        assertEquals(1.0, hedgePolicy.getStats().getWinRate(), 0.0);
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void generateAsync_hedgedRequestsDoNotExhaustExecutor() throws Exception {
+        ExecutorService executor = AsyncExecutors.newBoundedExecutor(2, 100);
+        try {
+            HedgePolicy hedgePolicy = new HedgePolicy.Builder()
+                    .window(100, 1)
+                    .budget(1.0)
+                    .build();
+            AiClient hedgingClient = new AiClient.Builder()
+                    .apiURL(server.getUrl())
+                    .transport(transport)
+                    .asyncExecutor(executor)
+                    .hedging(hedgePolicy)
+                    .build();
+            assertNotNull(hedgingClient.generate(request(false), false));
+
+            // more hedged requests than threads, all of them slow enough to be hedged
+            server.responseDelay(200);
+            List<CompletableFuture<AiResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(hedgingClient.generateAsync(request(false)));
+            }
+            for (CompletableFuture<AiResponse> future : futures) {
+                assertEquals(MockAiServer.ANSWER,
+                        future.get(5, TimeUnit.SECONDS).getChoices().get(0).getMessage().getContent());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void generate_firstByteTimeout() {
+        server.responseDelay(5000);
+        AiClient timeoutClient = new AiClient.Builder()
+                .apiURL(server.getUrl())
+                .transport(transport)
+                .timeouts(new Timeouts.Builder().firstByteTimeout(200, TimeUnit.MILLISECONDS).build())
+                .build();
+        long start = System.currentTimeMillis();
+        try {
+            timeoutClient.generate(request(false), false);
+            fail("AiTimeoutException expected");
+        } catch (AiTimeoutException e) {
+            assertEquals(AiTimeoutException.Kind.FIRST_BYTE, e.getKind());
+            assertEquals(200, e.getTimeoutMillis());
+        }
+        assertTrue(System.currentTimeMillis() - start < 3000);
+    }
+
+    @Test
+    public void generate_deadlineOfRequest() {
+        server.responseDelay(5000);
+        AiRequest aiRequest = new AiRequest.Builder()
+                .model("mock")
+                .messages(Collections.singletonList(new AiMessage("user", "Hello?")))
+                .timeouts(new Timeouts.Builder().deadline(300, TimeUnit.MILLISECONDS).build())
+                .build();
+        try {
+            aiClient.generate(aiRequest, false);
+            fail("AiTimeoutException expected");
+        } catch (AiTimeoutException e) {
+            assertEquals(AiTimeoutException.Kind.DEADLINE, e.getKind());
+        }
+    }
+
+    @Test
+    public void streamChatAsync_idleTimeout() throws Exception {
+        server.chunkDelay(5000);
+        AiRequest aiRequest = new AiRequest.Builder()
+                .model("mock")
+                .messages(Collections.singletonList(new AiMessage("user", "Hello?")))
+                .stream(true)
+                .timeouts(new Timeouts.Builder().idleTimeout(300, TimeUnit.MILLISECONDS).build())
+                .build();
+        final StringBuilder received = new StringBuilder();
+        final Exception[] error = new Exception[1];
+        CompletableFuture<String> future = aiClient.streamChatAsync(aiRequest, new StreamingResponseHandler() {
+            @Override
+            public void onMessage(String chunk) {
+                received.append(chunk);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                error[0] = e;
+            }
+
+            @Override
+            public void onComplete(String accumulatedChunks) {
+            }
+        });
+        try {
+            future.get(3, TimeUnit.SECONDS);
+            fail("AiTimeoutException expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AiTimeoutException);
+            assertEquals(AiTimeoutException.Kind.IDLE, ((AiTimeoutException) e.getCause()).getKind());
+        }
+        assertSame(error[0], future.handle((r, t) -> t).get());
+        // the first chunk arrived before the stream stalled
+        assertEquals(MockAiServer.ANSWER, received.toString());
+    }
+
+    @Test
+    public void streamChatAsync_OK() throws Exception {
+        final StringBuilder received = new StringBuilder();
+        CompletableFuture<String> future = aiClient.streamChatAsync(request(true), new StreamingResponseHandler() {
+            @Override
+            public void onMessage(String chunk) {
+                received.append(chunk);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                fail(e.getMessage());
+            }
+
+            @Override
+            public void onComplete(String accumulatedChunks) {
+            }
+        });
+        String accumulated = future.get(10, TimeUnit.SECONDS);
+        assertEquals(MockAiServer.ANSWER + " 1 2 3 4", accumulated);
+        assertEquals(accumulated, received.toString());
+    }
+
+    @Test
+    public void generate_answersDeterministicRequestsFromCache() {
+        InMemoryResponseCache cache = new InMemoryResponseCache.Builder().build();
+        AiClient cachingClient = new AiClient.Builder()
+                .apiURL(server.getUrl())
+                .transport(transport)
+                .responseCache(cache)
+                .build();
+        AiRequest deterministic = new AiRequest.Builder()
+                .model("mock")
+                .messages(Collections.singletonList(new AiMessage("user", "Hello?")))
+                .temperature(0.0)
+                .build();
+
+        AiResponse first = cachingClient.generate(deterministic, false);
+        first.getChoices().get(0).getMessage().setContent("changed by the caller");
+        AiResponse second = cachingClient.generate(deterministic, false);
+        assertNotSame(first, second);
+        assertEquals(MockAiServer.ANSWER, second.getChoices().get(0).getMessage().getContent());
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, cache.getStats().getHits());
+
+        // bypassed and non-deterministic requests go to the server
+        cachingClient.generate(new AiRequest.Builder()
+                .model("mock")
+                .messages(Collections.singletonList(new AiMessage("user", "Hello?")))
+                .temperature(0.0)
+                .bypassCache(true)
+                .build(), false);
+        cachingClient.generate(request(false), false);
+        cachingClient.generate(request(false), false);
+        assertEquals(4, server.getRequestCount());
+        assertEquals(1, cache.getStats().getSize());
+    }
+
+    @Test
+    public void streamChat_reportedUsage() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter("mock", 10, 1000);
+        AiClient limitedClient = new AiClient.Builder()
+                .apiURL(server.getUrl())
+                .transport(transport)
+                .rateLimiter(rateLimiter)
+                .build();
+        final AiResponse.Usage[] reported = {null};
+        StreamingResponseHandler handler = new StreamingResponseHandler() {
+            @Override
+            public void onMessage(String chunk) {
+            }
+
+            @Override
+            public void onError(Exception e) {
+                fail(e.getMessage());
+            }
+
+            @Override
+            public void onComplete(String accumulatedChunks) {
+            }
+
+            @Override
+            public void onUsage(AiResponse.Usage usage) {
+                reported[0] = usage;
+            }
+        };
+
+        // without usage in the stream the handle estimates it and the limiter keeps its estimate
+        StreamHandle handle = limitedClient.streamChat(request(true), false, handler);
+        assertNull(reported[0]);
+        assertFalse(handle.isUsageReported());
+        assertTrue(handle.getUsage().getCompletionTokens() > 0);
+        assertEquals(1.0, rateLimiter.getCorrection(), 0.0);
+
+        server.streamUsage(true);
+        handle = limitedClient.streamChat(request(true), false, handler);
+        assertEquals(15, reported[0].getTotalTokens());
+        assertTrue(handle.isUsageReported());
+        assertEquals(10, handle.getUsage().getPromptTokens());
+        assertEquals(15, handle.getUsage().getTotalTokens());
+        // the estimate is corrected with the 15 tokens of the usage
+        assertTrue(rateLimiter.getCorrection() > 1.0);
+
+        // the pull-based stream completes the permit with the usage too
+        double correction = rateLimiter.getCorrection();
+        try (Stream<StreamEvent> events = limitedClient.stream(request(true))) {
+            assertEquals(15, events.filter(StreamEvent::isComplete).findFirst().get().getUsage().getTotalTokens());
+        }
+        assertTrue(rateLimiter.getCorrection() > correction);
+    }
+
+    @Test
+    public void streamChat_cancelFromHandlerStopsAtOnce() {
+        server.chunks(100).chunkDelay(20);
+        final AtomicInteger received = new AtomicInteger();
+        final AtomicBoolean ended = new AtomicBoolean();
+        long start = System.nanoTime();
+        StreamHandle handle = aiClient.streamChat(request(true), false, new StreamingResponseHandler() {
+            private StreamHandle handle;
+
+            @Override
+            public void onStart(StreamHandle handle) {
+                this.handle = handle;
+            }
+
+            @Override
+            public void onMessage(String chunk) {
+                if (received.incrementAndGet() == 3) handle.cancel();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                ended.set(true);
+            }
+
+            @Override
+            public void onComplete(String accumulatedChunks) {
+                ended.set(true);
+            }
+        });
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertTrue(handle.isCancelled());
+        assertTrue(handle.isDone());
+        assertEquals(3, handle.getChunks());
+        assertEquals(3, received.get());
+        assertFalse(ended.get());
+        assertTrue(handle.getUsage().getCompletionTokens() > 0);
+        assertEquals(handle.getUsage().getPromptTokens() + handle.getUsage().getCompletionTokens(),
+                handle.getUsage().getTotalTokens());
+    }
+
+    @Test
+    public void streamChatAsync_cancelFromOtherThread() throws Exception {
+        server.chunks(100).chunkDelay(20);
+        final CompletableFuture<StreamHandle> started = new CompletableFuture<>();
+        final AtomicInteger received = new AtomicInteger();
+        CompletableFuture<String> future = aiClient.streamChatAsync(request(true), new StreamingResponseHandler() {
+            @Override
+            public void onStart(StreamHandle handle) {
+                started.complete(handle);
+            }
+
+            @Override
+            public void onMessage(String chunk) {
+                received.incrementAndGet();
+            }
+
+            @Override
+            public void onError(Exception e) {}
+
+            @Override
+            public void onComplete(String accumulatedChunks) {}
+        });
+        StreamHandle handle = started.get(5, TimeUnit.SECONDS);
+        Thread.sleep(150);
+        handle.cancel();
+        // the future completes with the chunks received until the cancel
+        String partial = future.get(5, TimeUnit.SECONDS);
+        assertTrue(partial.startsWith(MockAiServer.ANSWER));
+        assertTrue(received.get() < 100);
+        assertTrue(handle.isDone());
+    }
+
+    @Test
+    public void stream_pullsEventsUntilComplete() {
+        List<StreamEvent> events;
+        try (Stream<StreamEvent> stream = aiClient.stream(request(true))) {
+            events = stream.collect(Collectors.toList());
+        }
+        assertEquals(6, events.size());
+        assertEquals(MockAiServer.ANSWER, events.get(0).getContent());
+        StreamEvent last = events.get(5);
+        assertTrue(last.isComplete());
+        assertEquals("stop", last.getFinishReason());
+        assertEquals(MockAiServer.ANSWER + " 1 2 3 4", last.getContent());
+        // the connection is given back after the COMPLETE event
+        assertEquals(0, transport.getStats().getLeased());
+    }
+
+    @Test
+    public void streamIterator_readsOnlyAsPulled() throws Exception {
+        server.chunks(100).chunkDelay(20);
+        long start = System.nanoTime();
+        StreamEventIterator iterator = aiClient.streamIterator(request(true), false);
+        // nothing is sent before the first pull
+        assertEquals(0, server.getRequestCount());
+        assertEquals(MockAiServer.ANSWER, iterator.next().getContent());
+        assertEquals(" 1", iterator.next().getContent());
+        iterator.close();
+        assertTrue(iterator.isAborted());
+        assertFalse(iterator.hasNext());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertEquals(0, transport.getStats().getLeased());
+    }
+
+    @Test
+    public void streamIterator_closeFromOtherThread() throws Exception {
+        server.chunks(3).chunkDelay(5000);
+        final StreamEventIterator iterator = aiClient.streamIterator(request(true), false);
+        assertEquals(MockAiServer.ANSWER, iterator.next().getContent());
+        CompletableFuture.runAsync(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            iterator.close();
+        });
+        long start = System.nanoTime();
+        // blocked in the read of the second chunk until the close
+        assertFalse(iterator.hasNext());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+    }
+
+    @Test
+    public void streamIterator_throwsHttpError() {
+        server.fail(1, 400, null);
+        StreamEventIterator iterator = aiClient.streamIterator(request(true), false);
+        try {
+            iterator.hasNext();
+            fail("AiHttpException expected");
+        } catch (AiHttpException e) {
+            assertEquals(400, e.getStatusCode());
+        }
+        assertFalse(iterator.hasNext());
+    }
+}
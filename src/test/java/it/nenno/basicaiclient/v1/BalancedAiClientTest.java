@@ -0,0 +1,119 @@
+package it.nenno.basicaiclient.v1;
+
+import it.nenno.basicaiclient.v1.http.PooledHttpTransport;
+import it.nenno.basicaiclient.v1.models.AiRequest;
+import it.nenno.basicaiclient.v1.resilience.RetryPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static it.nenno.basicaiclient.v1.AiClientTest.request;
+import static org.junit.Assert.*;
+
+public class BalancedAiClientTest {
+
+    private MockAiServer server1;
+    private MockAiServer server2;
+    private PooledHttpTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        server1 = new MockAiServer();
+        server2 = new MockAiServer();
+        transport = new PooledHttpTransport.Builder().build();
+    }
+
+    @After
+    public void tearDown() {
+        transport.close();
+        server1.close();
+        server2.close();
+    }
+
+    private AiClient client(MockAiServer server) {
+        return new AiClient.Builder()
+                .apiURL(server.getUrl())
+                .transport(transport)
+                .retryPolicy(RetryPolicy.none())
+                .build();
+    }
+
+    @Test
+    public void generate_spreadsRequests() {
+        BalancedAiClient balanced = new BalancedAiClient.Builder()
+                .endpoint(client(server1))
+                .endpoint(client(server2), "mock-2")
+                .strategy(BalancedAiClient.Strategy.LEAST_OUTSTANDING)
+                .build();
+        for (int i = 0; i < 20; i++) {
+            assertNotNull(balanced.generate(request(false), false));
+        }
+        assertTrue(server1.getRequestCount() > 0);
+        assertTrue(server2.getRequestCount() > 0);
+        assertEquals(20, server1.getRequestCount() + server2.getRequestCount());
+        for (BalancedAiClient.Endpoint endpoint : balanced.getEndpoints()) {
+            assertEquals(0, endpoint.getOutstanding());
+            assertTrue(endpoint.getEwmaLatencyMillis() > 0);
+        }
+    }
+
+    @Test
+    public void generate_ejectsFailingEndpoint() {
+        server2.fail(1000, 503, null);
+        BalancedAiClient balanced = new BalancedAiClient.Builder()
+                .endpoint(client(server1))
+                .endpoint(client(server2))
+                .ejection(2, 10, TimeUnit.MINUTES)
+                .build();
+        BalancedAiClient.Endpoint failing = balanced.getEndpoints().get(1);
+        for (int i = 0; i < 50 && !failing.isEjected(); i++) {
+            try {
+                balanced.generate(request(false), false);
+            } catch (AiHttpException e) {
+                assertEquals(503, e.getStatusCode());
+            }
+        }
+        assertTrue(failing.isEjected());
+        assertEquals(2, failing.getFailures());
+
+        int before = server2.getRequestCount();
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(balanced.generate(request(false), false));
+        }
+        assertEquals(before, server2.getRequestCount());
+    }
+
+    @Test
+    public void slowStartAfterEjection() throws Exception {
+        server1.fail(1, 503, null);
+        BalancedAiClient balanced = new BalancedAiClient.Builder()
+                .endpoint(client(server1))
+                .ejection(1, 100, TimeUnit.MILLISECONDS)
+                .slowStart(10, TimeUnit.SECONDS)
+                .build();
+        BalancedAiClient.Endpoint endpoint = balanced.getEndpoints().get(0);
+        try {
+            balanced.generate(request(false), false);
+            fail("AiHttpException expected");
+        } catch (AiHttpException e) {
+            assertTrue(endpoint.isEjected());
+        }
+        Thread.sleep(200);
+        assertFalse(endpoint.isEjected());
+        assertTrue(endpoint.getWeight() < 0.5);
+        assertNotNull(balanced.generate(request(false), false));
+    }
+
+    @Test
+    public void withModel_rewritesOnlyTheModel() {
+        AiRequest aiRequest = request(true);
+        AiRequest rewritten = aiRequest.withModel("llama-3.3-70b-versatile");
+        assertEquals("llama-3.3-70b-versatile", rewritten.getModel());
+        assertEquals(aiRequest.getMessages(), rewritten.getMessages());
+        assertTrue(rewritten.isStream());
+        assertSame(aiRequest, aiRequest.withModel(null));
+    }
+}
@@ -0,0 +1,100 @@
+package it.nenno.basicaiclient.v1;
+
+import it.nenno.basicaiclient.v1.batch.BatchOptions;
+import it.nenno.basicaiclient.v1.batch.BatchResult;
+import it.nenno.basicaiclient.v1.batch.BatchStats;
+import it.nenno.basicaiclient.v1.http.PooledHttpTransport;
+import it.nenno.basicaiclient.v1.models.AiRequest;
+import it.nenno.basicaiclient.v1.resilience.RetryPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static it.nenno.basicaiclient.v1.AiClientTest.request;
+import static org.junit.Assert.*;
+
+public class GenerateAllTest {
+
+    private MockAiServer server;
+    private PooledHttpTransport transport;
+    private AiClient aiClient;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockAiServer();
+        transport = new PooledHttpTransport.Builder().build();
+        aiClient = new AiClient.Builder()
+                .apiURL(server.getUrl())
+                .transport(transport)
+                .retryPolicy(RetryPolicy.none())
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        transport.close();
+        server.close();
+    }
+
+    @Test
+    public void generateAll_keepsOrder() {
+        List<AiRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            requests.add(request(false));
+        }
+        // the first requests are the slowest
+        server.slowRequests(4, 200);
+        List<BatchResult> results = aiClient.generateAll(requests,
+                new BatchOptions.Builder().parallelism(4).build());
+        assertEquals(20, results.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, results.get(i).getIndex());
+            assertSame(requests.get(i), results.get(i).getRequest());
+            assertTrue(results.get(i).isSuccess());
+        }
+    }
+
+    @Test
+    public void generateAll_capturesFailures() {
+        server.fail(1, 400, null);
+        List<BatchResult> results = aiClient.generateAll(
+                IntStream.range(0, 5).mapToObj(i -> request(false)).collect(Collectors.toList()),
+                new BatchOptions.Builder().parallelism(1).build());
+        assertEquals(5, results.size());
+        assertFalse(results.get(0).isSuccess());
+        assertTrue(results.get(0).getError() instanceof AiHttpException);
+        for (int i = 1; i < 5; i++) {
+            assertTrue(results.get(i).isSuccess());
+        }
+    }
+
+    @Test
+    public void generateAll_streamReportsProgress() {
+        List<BatchStats> progress = new CopyOnWriteArrayList<>();
+        BatchOptions options = new BatchOptions.Builder()
+                .parallelism(3)
+                .progressListener(progress::add, 5)
+                .build();
+        long count;
+        try (Stream<BatchResult> results = aiClient.generateAll(
+                Stream.generate(() -> request(false)).limit(10), options)) {
+            count = results.filter(BatchResult::isSuccess).count();
+        }
+        assertEquals(10, count);
+        assertEquals(10, server.getRequestCount());
+        BatchStats last = progress.get(progress.size() - 1);
+        assertEquals(10, last.getCompleted());
+        assertEquals(10, last.getSucceeded());
+        assertEquals(0, last.getFailed());
+        assertTrue(last.getThroughputPerSecond() > 0);
+        assertTrue(progress.size() >= 2);
+    }
+}
@@ -0,0 +1,191 @@
+package it.nenno.basicaiclient.v1;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local OpenAI-compatible endpoint for tests and benchmarks.
+ * Answers chat completions with a fixed text, streamed as SSE if the request has "stream":true.
+ */
+public class MockAiServer implements AutoCloseable {
+
+    public static final String ANSWER = "Hello from the mock server";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    private volatile long responseDelayMillis;
+    private volatile long chunkDelayMillis;
+    private volatile int chunks = 5;
+    private volatile boolean streamUsage;
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile int failureStatus;
+    private volatile String retryAfter;
+    private final AtomicInteger slowRequests = new AtomicInteger();
+    private volatile long slowDelayMillis;
+
+    public MockAiServer() throws IOException {
+        this(Executors.newCachedThreadPool());
+    }
+
+    public MockAiServer(ExecutorService executor) throws IOException {
+        this.executor = executor;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.server.createContext("/v1/chat/completions", this::handle);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    /** URL of the chat completions endpoint */
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions";
+    }
+
+    public int getRequestCount() {return requestCount.get();}
+
+    /** delay before the response headers are sent */
+    public MockAiServer responseDelay(long millis) {
+        this.responseDelayMillis = millis;
+        return this;
+    }
+
+    /** delay between two streamed chunks */
+    public MockAiServer chunkDelay(long millis) {
+        this.chunkDelayMillis = millis;
+        return this;
+    }
+
+    /** number of streamed chunks */
+    public MockAiServer chunks(int chunks) {
+        this.chunks = chunks;
+        return this;
+    }
+
+    /** send the usage with the last streamed chunk */
+    public MockAiServer streamUsage(boolean streamUsage) {
+        this.streamUsage = streamUsage;
+        return this;
+    }
+
+    /** delay the response of the next requests */
+    public MockAiServer slowRequests(int requests, long millis) {
+        this.slowDelayMillis = millis;
+        this.slowRequests.set(requests);
+        return this;
+    }
+
+    /** answer the next requests with the status code, retryAfter (seconds) is sent if not null */
+    public MockAiServer fail(int requests, int statusCode, String retryAfter) {
+        this.failureStatus = statusCode;
+        this.retryAfter = retryAfter;
+        this.failures.set(requests);
+        return this;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try {
+            String request = new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8);
+            sleep(responseDelayMillis);
+            if (slowRequests.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                sleep(slowDelayMillis);
+            }
+            if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                error(exchange);
+            } else if (request.contains("\"stream\":true")) {
+                stream(exchange);
+            } else {
+                complete(exchange);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void complete(HttpExchange exchange) throws IOException {
+        byte[] body = ("{\"id\":\"mock-1\",\"object\":\"chat.completion\",\"created\":1735144382,\"model\":\"mock\","
+                + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"" + ANSWER + "\"},"
+                + "\"finish_reason\":\"stop\"}],"
+                + "\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":5,\"total_tokens\":15}}")
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private void error(HttpExchange exchange) throws IOException {
+        byte[] body = ("{\"error\":{\"message\":\"mock error " + failureStatus + "\"}}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        if (retryAfter != null) {
+            exchange.getResponseHeaders().add("Retry-After", retryAfter);
+        }
+        exchange.sendResponseHeaders(failureStatus, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private void stream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream os = exchange.getResponseBody()) {
+            for (int i = 0; i < chunks; i++) {
+                boolean last = i == chunks - 1;
+                String finish = last ? "\"stop\"" : "null";
+                String content = i == 0 ? ANSWER : " " + i;
+                String usage = last && streamUsage
+                        ? ",\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":5,\"total_tokens\":15}" : "";
+                os.write(("data: {\"id\":\"mock-1\",\"object\":\"chat.completion.chunk\",\"created\":1735144382,"
+                        + "\"model\":\"mock\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + content + "\"},"
+                        + "\"finish_reason\":" + finish + "}]" + usage + "}\n\n").getBytes(StandardCharsets.UTF_8));
+                os.flush();
+                sleep(chunkDelayMillis);
+            }
+            os.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
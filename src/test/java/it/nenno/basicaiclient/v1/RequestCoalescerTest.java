@@ -0,0 +1,182 @@
+package it.nenno.basicaiclient.v1;
+
+import it.nenno.basicaiclient.v1.http.PooledHttpTransport;
+import it.nenno.basicaiclient.v1.models.AiMessage;
+import it.nenno.basicaiclient.v1.models.AiRequest;
+import it.nenno.basicaiclient.v1.models.AiResponse;
+import it.nenno.basicaiclient.v1.models.StreamingResponseHandler;
+import it.nenno.basicaiclient.v1.resilience.RetryPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static it.nenno.basicaiclient.v1.AiClientTest.request;
+import static org.junit.Assert.*;
+
+public class RequestCoalescerTest {
+
+    private MockAiServer server;
+    private PooledHttpTransport transport;
+    private AiClient aiClient;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockAiServer();
+        transport = new PooledHttpTransport.Builder().build();
+        aiClient = new AiClient.Builder()
+                .apiURL(server.getUrl())
+                .transport(transport)
+                .retryPolicy(RetryPolicy.none())
+                .coalescing(true)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        transport.close();
+        server.close();
+    }
+
+    @Test
+    public void generate_sharesOneCall() throws Exception {
+        server.responseDelay(300);
+        List<CompletableFuture<AiResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(aiClient.generateAsync(request(false)));
+        }
+        AiResponse first = futures.get(0).get(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        for (CompletableFuture<AiResponse> future : futures) {
+            assertSame(first, future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, aiClient.getCoalescer().getCalls());
+        assertEquals(4, aiClient.getCoalescer().getCoalesced());
+        assertEquals(0, aiClient.getCoalescer().getInFlight());
+
+        // after the call a new one is sent
+        assertNotNull(aiClient.generate(request(false), false));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void generate_differentRequestsAreNotShared() throws Exception {
+        server.responseDelay(200);
+        AiRequest other = new AiRequest.Builder()
+                .model("mock")
+                .messages(Collections.singletonList(new AiMessage("user", "Something else?")))
+                .build();
+        CompletableFuture<AiResponse> first = aiClient.generateAsync(request(false));
+        CompletableFuture<AiResponse> second = aiClient.generateAsync(other);
+        assertNotNull(first.get(5, TimeUnit.SECONDS));
+        assertNotNull(second.get(5, TimeUnit.SECONDS));
+        assertEquals(2, server.getRequestCount());
+        assertEquals(0, aiClient.getCoalescer().getCoalesced());
+    }
+
+    @Test
+    public void generate_cancelledCallerDoesNotAbortOthers() throws Exception {
+        server.responseDelay(300);
+        CompletableFuture<AiResponse> first = aiClient.generateAsync(request(false));
+        Thread.sleep(50);
+        CompletableFuture<AiResponse> second = aiClient.generateAsync(request(false));
+        Thread.sleep(50);
+        first.cancel(true);
+        assertNotNull(second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void streamChat_lateJoinerGetsReplay() throws Exception {
+        server.chunks(5).chunkDelay(100);
+        List<String> early = new CopyOnWriteArrayList<>();
+        List<String> late = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> first = aiClient.streamChatAsync(request(true), handler(early));
+        Thread.sleep(250);
+        CompletableFuture<String> second = aiClient.streamChatAsync(request(true), handler(late));
+
+        String accumulated = first.get(5, TimeUnit.SECONDS);
+        assertEquals(accumulated, second.get(5, TimeUnit.SECONDS));
+        assertEquals(5, early.size());
+        assertEquals(early, late);
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, aiClient.getCoalescer().getCoalesced());
+    }
+
+    @Test
+    public void streamChat_slowJoinerDoesNotHoldUpStream() throws Exception {
+        server.chunks(5).chunkDelay(50);
+        List<String> fast = new CopyOnWriteArrayList<>();
+        final List<String> slow = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> first = aiClient.streamChatAsync(request(true), handler(fast));
+        Thread.sleep(80);
+        CompletableFuture<String> second = aiClient.streamChatAsync(request(true), new StreamingResponseHandler() {
+            @Override
+            public void onMessage(String chunk) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                slow.add(chunk);
+            }
+
+            @Override
+            public void onError(Exception e) {}
+
+            @Override
+            public void onComplete(String accumulatedChunks) {}
+        });
+
+        // the stream is read while the joiner still works on the first chunks
+        String accumulated = first.get(5, TimeUnit.SECONDS);
+        assertFalse(second.isDone());
+        assertTrue(slow.size() < 5);
+        assertEquals(accumulated, second.get(5, TimeUnit.SECONDS));
+        assertEquals(fast, slow);
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, aiClient.getCoalescer().getCoalesced());
+    }
+
+    @Test
+    public void streamChat_cancelledJoinerGetsNoMoreChunks() throws Exception {
+        server.chunks(10).chunkDelay(50);
+        List<String> chunks = new CopyOnWriteArrayList<>();
+        List<String> cancelled = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> first = aiClient.streamChatAsync(request(true), handler(chunks));
+        Thread.sleep(80);
+        CompletableFuture<String> second = aiClient.streamChatAsync(request(true), handler(cancelled));
+        Thread.sleep(100);
+        second.cancel(true);
+        int received = cancelled.size();
+
+        assertNotNull(first.get(5, TimeUnit.SECONDS));
+        assertEquals(10, chunks.size());
+        assertEquals(received, cancelled.size());
+        assertTrue(received < 10);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    private static StreamingResponseHandler handler(final List<String> chunks) {
+        return new StreamingResponseHandler() {
+            @Override
+            public void onMessage(String chunk) {
+                chunks.add(chunk);
+            }
+
+            @Override
+            public void onError(Exception e) {}
+
+            @Override
+            public void onComplete(String accumulatedChunks) {}
+        };
+    }
+}
@@ -0,0 +1,197 @@
+package it.nenno.basicaiclient.v1;
+
+import it.nenno.basicaiclient.v1.http.PooledHttpTransport;
+import it.nenno.basicaiclient.v1.models.StreamingResponseHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StreamDispatchTest {
+
+    private static final String FULL_ANSWER;
+
+    static {
+        StringBuilder answer = new StringBuilder(MockAiServer.ANSWER);
+        for (int i = 1; i < 20; i++) {
+            answer.append(' ').append(i);
+        }
+        FULL_ANSWER = answer.toString();
+    }
+
+    private MockAiServer server;
+    private PooledHttpTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockAiServer().chunks(20);
+        transport = new PooledHttpTransport.Builder().build();
+    }
+
+    @After
+    public void tearDown() {
+        transport.close();
+        server.close();
+    }
+
+    private AiClient client(StreamDispatch streamDispatch) {
+        return new AiClient.Builder()
+                .apiURL(server.getUrl())
+                .apiKey("test-key")
+                .transport(transport)
+                .streamDispatch(streamDispatch)
+                .build();
+    }
+
+    /** records the chunks, the first onMessage waits for the latch */
+    private static class RecordingHandler implements StreamingResponseHandler {
+        final List<String> chunks = new CopyOnWriteArrayList<>();
+        final CountDownLatch release;
+        volatile String completed;
+        volatile Thread thread;
+
+        RecordingHandler(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void onMessage(String chunk) {
+            thread = Thread.currentThread();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            chunks.add(chunk);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            fail(e.getMessage());
+        }
+
+        @Override
+        public void onComplete(String accumulatedChunks) {
+            completed = accumulatedChunks;
+        }
+    }
+
+    private static CountDownLatch releaseLater(long millis) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        CompletableFuture.runAsync(() -> {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            latch.countDown();
+        });
+        return latch;
+    }
+
+    @Test
+    public void streamChat_handlerRunsOnExecutorAfterSocketIsReleased() {
+        AiClient aiClient = client(new StreamDispatch.Builder().build());
+        RecordingHandler handler = new RecordingHandler(releaseLater(300));
+        StreamHandle handle = aiClient.streamChat(AiClientTest.request(true), false, handler);
+
+        // streamChat returns after the handler got everything
+        assertEquals(20, handler.chunks.size());
+        assertEquals(FULL_ANSWER, String.join("", handler.chunks));
+        assertEquals(FULL_ANSWER, handler.completed);
+        assertNotSame(Thread.currentThread(), handler.thread);
+        assertTrue(handle.isDone());
+        assertEquals(0, handle.getBuffered());
+        assertEquals(0, transport.getStats().getLeased());
+
+        StreamDispatchStats stats = aiClient.getStreamDispatch().getStats();
+        assertEquals(20, stats.getDispatched());
+        assertEquals(0, stats.getBuffered());
+        assertEquals(0, stats.getDropped());
+    }
+
+    @Test
+    public void streamChat_blockWaitsForFreeSlot() {
+        AiClient aiClient = client(new StreamDispatch.Builder().capacity(2).build());
+        RecordingHandler handler = new RecordingHandler(releaseLater(200));
+        aiClient.streamChat(AiClientTest.request(true), false, handler);
+
+        assertEquals(FULL_ANSWER, String.join("", handler.chunks));
+        assertEquals(FULL_ANSWER, handler.completed);
+        assertTrue(aiClient.getStreamDispatch().getStats().getBlocked() > 0);
+    }
+
+    @Test
+    public void streamChat_dropOldestKeepsNewestChunks() {
+        AiClient aiClient = client(new StreamDispatch.Builder().capacity(2)
+                .overflowPolicy(StreamDispatch.OverflowPolicy.DROP_OLDEST).build());
+        RecordingHandler handler = new RecordingHandler(releaseLater(300));
+        aiClient.streamChat(AiClientTest.request(true), false, handler);
+
+        StreamDispatchStats stats = aiClient.getStreamDispatch().getStats();
+        assertTrue(stats.getDropped() > 0);
+        assertEquals(20, handler.chunks.size() + stats.getDropped());
+        assertEquals(" 19", handler.chunks.get(handler.chunks.size() - 1));
+        // the final message is never dropped
+        assertEquals(FULL_ANSWER, handler.completed);
+    }
+
+    @Test
+    public void streamChatAsync_coalesceKeepsAllText() throws Exception {
+        AiClient aiClient = client(new StreamDispatch.Builder().capacity(2)
+                .overflowPolicy(StreamDispatch.OverflowPolicy.COALESCE).build());
+        RecordingHandler handler = new RecordingHandler(releaseLater(300));
+        CompletableFuture<String> future = aiClient.streamChatAsync(AiClientTest.request(true), handler);
+
+        assertEquals(FULL_ANSWER, future.get(5, TimeUnit.SECONDS));
+        // the future completes after the handler got all chunks
+        assertEquals(FULL_ANSWER, handler.completed);
+        assertEquals(FULL_ANSWER, String.join("", handler.chunks));
+        assertTrue(handler.chunks.size() < 20);
+        assertTrue(aiClient.getStreamDispatch().getStats().getCoalesced() > 0);
+    }
+
+    @Test
+    public void streamChatAsync_dispatchesWhileReadersUseAllAsyncThreads() throws Exception {
+        server.chunkDelay(50);
+        ExecutorService asyncExecutor = AsyncExecutors.newBoundedExecutor(1, 10);
+        try {
+            AiClient aiClient = new AiClient.Builder()
+                    .apiURL(server.getUrl())
+                    .apiKey("test-key")
+                    .transport(transport)
+                    .asyncExecutor(asyncExecutor)
+                    .streamDispatch(new StreamDispatch.Builder()
+                            .overflowPolicy(StreamDispatch.OverflowPolicy.DROP_OLDEST).build())
+                    .build();
+            RecordingHandler handler = new RecordingHandler(new CountDownLatch(0));
+            CompletableFuture<String> future = aiClient.streamChatAsync(AiClientTest.request(true), handler);
+
+            // the only async thread reads the stream, the handler gets the chunks meanwhile
+            long end = System.currentTimeMillis() + 5000;
+            while (handler.chunks.isEmpty() && System.currentTimeMillis() < end) {
+                Thread.sleep(5);
+            }
+            assertFalse(handler.chunks.isEmpty());
+            assertFalse(future.isDone());
+            assertEquals(FULL_ANSWER, future.get(5, TimeUnit.SECONDS));
+            assertNotSame(asyncExecutor, aiClient.getStreamDispatch().getExecutor());
+        } finally {
+            asyncExecutor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void builder_rejectsEmptyBuffer() {
+        new StreamDispatch.Builder().capacity(0).build();
+    }
+}
@@ -0,0 +1,261 @@
+package it.nenno.basicaiclient.v1;
+
+import it.nenno.basicaiclient.v1.http.AsyncBody;
+import it.nenno.basicaiclient.v1.http.HttpTransport;
+import it.nenno.basicaiclient.v1.http.PooledHttpTransport;
+import it.nenno.basicaiclient.v1.http.TransportRequest;
+import it.nenno.basicaiclient.v1.http.TransportResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class StreamEventPublisherTest {
+
+    private MockAiServer server;
+    private PooledHttpTransport transport;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockAiServer();
+        transport = new PooledHttpTransport.Builder().build();
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        transport.close();
+        server.close();
+    }
+
+    private AiClient client(HttpTransport httpTransport) {
+        return new AiClient.Builder()
+                .apiURL(server.getUrl())
+                .apiKey("test-key")
+                .transport(httpTransport)
+                .asyncExecutor(executor)
+                .build();
+    }
+
+    /** records the signals, requests nothing by itself */
+    private static class TestSubscriber implements Subscriber<StreamEvent> {
+        final List<StreamEvent> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch terminated = new CountDownLatch(1);
+        volatile Subscription subscription;
+        volatile Throwable error;
+        volatile boolean completed;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(StreamEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            terminated.countDown();
+        }
+
+        void awaitEvents(int count) throws InterruptedException {
+            long end = System.currentTimeMillis() + 5000;
+            while (events.size() < count && System.currentTimeMillis() < end) {
+                Thread.sleep(5);
+            }
+            assertEquals(count, events.size());
+        }
+    }
+
+    @Test
+    public void publisher_emitsOnlyRequestedEvents() throws Exception {
+        TestSubscriber subscriber = new TestSubscriber();
+        client(transport).publisher(AiClientTest.request(true)).subscribe(subscriber);
+        // nothing is sent before the first request
+        Thread.sleep(50);
+        assertEquals(0, server.getRequestCount());
+
+        subscriber.subscription.request(2);
+        subscriber.awaitEvents(2);
+        Thread.sleep(100);
+        assertEquals(2, subscriber.events.size());
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertTrue(subscriber.terminated.await(5, TimeUnit.SECONDS));
+        assertTrue(subscriber.completed);
+        assertNull(subscriber.error);
+        // 5 chunks and the COMPLETE event
+        assertEquals(6, subscriber.events.size());
+        StreamEvent complete = subscriber.events.get(5);
+        assertTrue(complete.isComplete());
+        assertEquals(MockAiServer.ANSWER + " 1 2 3 4", complete.getContent());
+        assertEquals("stop", complete.getFinishReason());
+        assertEquals(0, transport.getStats().getLeased());
+    }
+
+    @Test
+    public void publisher_cancelAbortsStream() throws Exception {
+        server.chunks(50).chunkDelay(50);
+        TestSubscriber subscriber = new TestSubscriber();
+        client(transport).publisher(AiClientTest.request(true)).subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.awaitEvents(1);
+        subscriber.subscription.cancel();
+
+        Thread.sleep(200);
+        int received = subscriber.events.size();
+        Thread.sleep(200);
+        assertEquals(received, subscriber.events.size());
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+        assertEquals(0, transport.getStats().getLeased());
+    }
+
+    @Test
+    public void publisher_signalsHttpErrorAndInvalidRequest() throws Exception {
+        server.fail(1, 400, null);
+        AiClient aiClient = client(transport);
+        TestSubscriber subscriber = new TestSubscriber();
+        aiClient.publisher(AiClientTest.request(true)).subscribe(subscriber);
+        subscriber.subscription.request(1);
+        assertTrue(subscriber.terminated.await(5, TimeUnit.SECONDS));
+        assertTrue(subscriber.error instanceof AiHttpException);
+        assertEquals(400, ((AiHttpException) subscriber.error).getStatusCode());
+
+        subscriber = new TestSubscriber();
+        aiClient.publisher(AiClientTest.request(true)).subscribe(subscriber);
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.terminated.await(5, TimeUnit.SECONDS));
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertTrue(subscriber.events.isEmpty());
+    }
+
+    @Test
+    public void publisher_readsAsyncBodyOnDemand() throws Exception {
+        AsyncTransport asyncTransport = new AsyncTransport(transport);
+        TestSubscriber subscriber = new TestSubscriber();
+        client(asyncTransport).publisher(AiClientTest.request(true)).subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        subscriber.awaitEvents(1);
+        assertEquals(MockAiServer.ANSWER, subscriber.events.get(0).getContent());
+        // the reads stop without demand
+        Thread.sleep(100);
+        int requests = asyncTransport.requests.get();
+        Thread.sleep(100);
+        assertEquals(requests, asyncTransport.requests.get());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertTrue(subscriber.terminated.await(5, TimeUnit.SECONDS));
+        assertTrue(subscriber.completed);
+        assertEquals(6, subscriber.events.size());
+        assertEquals(MockAiServer.ANSWER + " 1 2 3 4", subscriber.events.get(5).getContent());
+        assertEquals(0, transport.getStats().getLeased());
+    }
+
+    /** offers the body as async body, which reads a few bytes per request on its own thread */
+    private static class AsyncTransport implements HttpTransport {
+        final HttpTransport delegate;
+        final AtomicInteger requests = new AtomicInteger();
+        final ExecutorService reader = Executors.newSingleThreadExecutor();
+
+        AsyncTransport(HttpTransport delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public TransportResponse execute(TransportRequest request) throws IOException {
+            assertTrue(request.isAsyncBody());
+            final TransportResponse response = delegate.execute(request);
+            return new TransportResponse() {
+                @Override
+                public int getStatusCode() {return response.getStatusCode();}
+
+                @Override
+                public String getStatusMessage() {return response.getStatusMessage();}
+
+                @Override
+                public String getHeader(String name) {return response.getHeader(name);}
+
+                @Override
+                public Map<String, List<String>> getHeaders() {return response.getHeaders();}
+
+                @Override
+                public InputStream getBody() {return response.getBody();}
+
+                @Override
+                public AsyncBody getAsyncBody() {
+                    return new AsyncBody() {
+                        private Receiver receiver;
+
+                        @Override
+                        public void start(Receiver receiver) {
+                            this.receiver = receiver;
+                        }
+
+                        @Override
+                        public void request(long n) {
+                            requests.incrementAndGet();
+                            reader.execute(() -> {
+                                byte[] bytes = new byte[16];
+                                try {
+                                    int read = response.getBody().read(bytes);
+                                    if (read < 0) {
+                                        receiver.onEnd();
+                                    } else {
+                                        receiver.onData(ByteBuffer.wrap(bytes, 0, read));
+                                    }
+                                } catch (IOException e) {
+                                    receiver.onError(e);
+                                }
+                            });
+                        }
+
+                        @Override
+                        public void cancel() {
+                            response.abort();
+                        }
+                    };
+                }
+
+                @Override
+                public void close() {
+                    response.close();
+                    reader.shutdown();
+                }
+
+                @Override
+                public void abort() {
+                    response.abort();
+                }
+            };
+        }
+    }
+}
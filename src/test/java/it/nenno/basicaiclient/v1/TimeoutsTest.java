@@ -0,0 +1,32 @@
+package it.nenno.basicaiclient.v1;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TimeoutsTest {
+
+    @Test
+    public void withOverrides_onlySetValues() {
+        Timeouts overrides = new Timeouts.Builder()
+                .deadline(30, TimeUnit.SECONDS)
+                .idleTimeout(0, TimeUnit.SECONDS)
+                .build();
+        Timeouts timeouts = Timeouts.DEFAULT.withOverrides(overrides);
+
+        assertEquals(10_000, timeouts.getConnectTimeoutMillis());
+        assertEquals(0, timeouts.getFirstByteTimeoutMillis());
+        assertEquals(0, timeouts.getIdleTimeoutMillis());
+        assertEquals(30_000, timeouts.getDeadlineMillis());
+        assertTrue(timeouts.isWatched());
+        assertSame(Timeouts.DEFAULT, Timeouts.DEFAULT.withOverrides(null));
+    }
+
+    @Test
+    public void none_notWatched() {
+        assertFalse(Timeouts.NONE.isWatched());
+        assertEquals(0, Timeouts.NONE.getConnectTimeoutMillis());
+    }
+}
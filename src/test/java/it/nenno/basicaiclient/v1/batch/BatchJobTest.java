@@ -0,0 +1,182 @@
+package it.nenno.basicaiclient.v1.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import it.nenno.basicaiclient.v1.AiClient;
+import it.nenno.basicaiclient.v1.MockAiServer;
+import it.nenno.basicaiclient.v1.http.PooledHttpTransport;
+import it.nenno.basicaiclient.v1.resilience.RetryPolicy;
+import it.nenno.basicaiclient.v1.utils.JsonCodecs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class BatchJobTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockAiServer server;
+    private PooledHttpTransport transport;
+    private AiClient aiClient;
+    private Path input;
+    private Path output;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockAiServer();
+        transport = new PooledHttpTransport.Builder().build();
+        aiClient = new AiClient.Builder()
+                .apiURL(server.getUrl())
+                .transport(transport)
+                .retryPolicy(RetryPolicy.none())
+                .build();
+        input = folder.getRoot().toPath().resolve("requests.jsonl");
+        output = folder.getRoot().toPath().resolve("results.jsonl");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            lines.add("{\"id\":\"q" + i + "\",\"messages\":[{\"role\":\"user\",\"content\":\"Question " + i + "\"}]}");
+            if (i == 4) lines.add("");
+        }
+        Files.write(input, lines, StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void tearDown() {
+        transport.close();
+        server.close();
+    }
+
+    private BatchJob job() {
+        return new BatchJob.Builder()
+                .client(aiClient)
+                .input(input)
+                .output(output)
+                .model("mock")
+                .checkpointEvery(3)
+                .options(new BatchOptions.Builder().parallelism(4).build())
+                .build();
+    }
+
+    private List<JsonNode> results() throws IOException {
+        List<JsonNode> results = new ArrayList<>();
+        for (String line : Files.readAllLines(output, StandardCharsets.UTF_8)) {
+            results.add(JsonCodecs.readTree(line));
+        }
+        return results;
+    }
+
+    @Test
+    public void run_writesResultsInOrder() throws IOException {
+        server.fail(1, 400, null);
+        BatchStats stats = job().run();
+        assertEquals(10, stats.getCompleted());
+        assertEquals(1, stats.getFailed());
+
+        List<JsonNode> results = results();
+        assertEquals(10, results.size());
+        int failed = 0;
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, results.get(i).get("index").asInt());
+            assertEquals("q" + i, results.get(i).get("id").asText());
+            if (results.get(i).has("error")) failed++;
+            else assertEquals(MockAiServer.ANSWER,
+                    results.get(i).at("/response/choices/0/message/content").asText());
+        }
+        assertEquals(1, failed);
+
+        // the next run sends only the failed request again
+        stats = job().run();
+        assertEquals(1, stats.getCompleted());
+        assertEquals(0, stats.getFailed());
+        assertEquals(11, server.getRequestCount());
+        results = results();
+        assertEquals(11, results.size());
+        JsonNode retried = results.get(10);
+        for (int i = 0; i < 10; i++) {
+            if (results.get(i).has("error")) assertEquals(i, retried.get("index").asInt());
+        }
+        assertEquals(MockAiServer.ANSWER, retried.at("/response/choices/0/message/content").asText());
+
+        // a finished job sends nothing
+        assertEquals(0, job().run().getCompleted());
+        assertEquals(11, server.getRequestCount());
+    }
+
+    @Test
+    public void run_keepsFailedRequestsForTheNextRun() throws IOException {
+        server.fail(10, 503, null);
+        assertEquals(10, job().run().getFailed());
+
+        // provider back: all the requests are sent again
+        BatchStats stats = job().run();
+        assertEquals(10, stats.getCompleted());
+        assertEquals(0, stats.getFailed());
+        assertEquals(20, results().size());
+        assertEquals(0, job().run().getCompleted());
+    }
+
+    @Test
+    public void run_withoutRetryFailedKeepsErrors() throws IOException {
+        server.fail(1, 400, null);
+        job().run();
+        BatchJob job = new BatchJob.Builder()
+                .client(aiClient)
+                .input(input)
+                .output(output)
+                .model("mock")
+                .retryFailed(false)
+                .build();
+        assertEquals(0, job.run().getCompleted());
+        assertEquals(10, server.getRequestCount());
+    }
+
+    @Test
+    public void run_resumesAfterCheckpoint() throws IOException {
+        job().run();
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+
+        // simulate a crash after 4 requests: checkpoint at 3 and a partial line
+        String done = String.join("\n", lines.subList(0, 3)) + "\n";
+        Files.write(output, (done + lines.get(3) + "\n" + "{\"index\":4,").getBytes(StandardCharsets.UTF_8));
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("index", "3");
+        checkpoint.setProperty("outputBytes", Integer.toString(done.getBytes(StandardCharsets.UTF_8).length));
+        try (java.io.OutputStream out = Files.newOutputStream(output.resolveSibling("results.jsonl.checkpoint"))) {
+            checkpoint.store(out, null);
+        }
+
+        BatchStats stats = job().run();
+        assertEquals(7, stats.getCompleted());
+        assertEquals(17, server.getRequestCount());
+        List<JsonNode> results = results();
+        assertEquals(10, results.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, results.get(i).get("index").asInt());
+            assertEquals("q" + i, results.get(i).get("id").asText());
+        }
+    }
+
+    @Test
+    public void run_stopsAtInvalidLine() throws IOException {
+        Files.write(input, ("{\"messages\":[{\"role\":\"user\",\"content\":\"ok\"}]}\nnot json\n")
+                .getBytes(StandardCharsets.UTF_8));
+        try {
+            job().run();
+            fail("invalid line accepted");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("line 2"));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package it.nenno.basicaiclient.v1.cache;
+
+import it.nenno.basicaiclient.v1.models.AiResponse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DiskResponseCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static AiResponse response(String content) {
+        AiResponse.Message message = new AiResponse.Message();
+        message.setRole("assistant");
+        message.setContent(content);
+        AiResponse.Choice choice = new AiResponse.Choice();
+        choice.setMessage(message);
+        choice.setFinishReason("stop");
+        AiResponse.Usage usage = new AiResponse.Usage();
+        usage.setTotalTokens(15);
+        AiResponse response = new AiResponse();
+        response.setId("id-" + content);
+        response.setChoices(new ArrayList<>());
+        response.getChoices().add(choice);
+        response.setUsage(usage);
+        return response;
+    }
+
+    private static String content(AiResponse response) {
+        return response.getChoices().get(0).getMessage().getContent();
+    }
+
+    private DiskResponseCache.Builder builder() {
+        return new DiskResponseCache.Builder().directory(folder.getRoot().toPath());
+    }
+
+    @Test
+    public void get_returnsStoredResponse() throws IOException {
+        try (DiskResponseCache cache = builder().build()) {
+            cache.put("k", response("a"));
+            AiResponse cached = cache.get("k");
+            assertEquals("a", content(cached));
+            assertEquals("id-a", cached.getId());
+            assertEquals("stop", cached.getChoices().get(0).getFinishReason());
+            assertEquals(15, cached.getUsage().getTotalTokens());
+
+            cached.getChoices().get(0).getMessage().setContent("changed");
+            assertEquals("a", content(cache.get("k")));
+            assertNull(cache.get("other"));
+
+            cache.put("k", response("b"));
+            assertEquals("b", content(cache.get("k")));
+            cache.invalidate("k");
+            assertNull(cache.get("k"));
+
+            CacheStats stats = cache.getStats();
+            assertEquals(3, stats.getHits());
+            assertEquals(2, stats.getMisses());
+            assertEquals(0, stats.getSize());
+        }
+    }
+
+    @Test
+    public void get_survivesReopen() throws IOException {
+        try (DiskResponseCache cache = builder().build()) {
+            cache.put("k", response("a"));
+        }
+        try (DiskResponseCache cache = builder().build()) {
+            assertEquals("a", content(cache.get("k")));
+            assertEquals(1, cache.getStats().getSize());
+        }
+    }
+
+    @Test
+    public void get_seesWritesOfOtherInstance() throws IOException {
+        try (DiskResponseCache first = builder().build();
+             DiskResponseCache second = builder().build()) {
+            first.put("k", response("a"));
+            assertEquals("a", content(second.get("k")));
+
+            // the second one maps the index written by the compaction of the first
+            first.compact();
+            second.put("k2", response("b"));
+            assertEquals("a", content(second.get("k")));
+            assertEquals("b", content(first.get("k2")));
+        }
+    }
+
+    @Test
+    public void compact_evictsOldestEntries() throws Exception {
+        try (DiskResponseCache cache = builder().maxEntries(8).segmentSize(1024).build()) {
+            for (int i = 0; i < 20; i++) {
+                cache.put("k" + i, response("v" + i));
+                Thread.sleep(2);
+            }
+            cache.compact();
+            assertTrue(cache.getStats().getSize() <= 6);
+            assertEquals("v19", content(cache.get("k19")));
+            assertNull(cache.get("k0"));
+            assertTrue(cache.getStats().getEvictions() > 0);
+        }
+        assertEquals(1, count("index-*.idx"));
+        try (DiskResponseCache cache = builder().maxEntries(8).segmentSize(1024).build()) {
+            assertEquals("v19", content(cache.get("k19")));
+        }
+    }
+
+    @Test
+    public void get_expiresAfterTtl() throws Exception {
+        try (DiskResponseCache cache = builder().ttl(50, TimeUnit.MILLISECONDS).build()) {
+            cache.put("k", response("a"));
+            assertNotNull(cache.get("k"));
+            Thread.sleep(80);
+            assertNull(cache.get("k"));
+            assertEquals(1, cache.getStats().getExpirations());
+            cache.clear();
+            assertEquals(0, cache.getStats().getSize());
+        }
+    }
+
+    private long count(String glob) throws IOException {
+        long count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder.getRoot().toPath(), glob)) {
+            for (Path ignored : files) count++;
+        }
+        return count;
+    }
+}
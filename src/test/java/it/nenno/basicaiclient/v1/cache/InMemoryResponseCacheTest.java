@@ -0,0 +1,91 @@
+package it.nenno.basicaiclient.v1.cache;
+
+import it.nenno.basicaiclient.v1.models.AiResponse;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class InMemoryResponseCacheTest {
+
+    private static AiResponse response(String content) {
+        AiResponse.Message message = new AiResponse.Message();
+        message.setRole("assistant");
+        message.setContent(content);
+        AiResponse.Choice choice = new AiResponse.Choice();
+        choice.setMessage(message);
+        AiResponse response = new AiResponse();
+        response.setChoices(new ArrayList<>());
+        response.getChoices().add(choice);
+        return response;
+    }
+
+    private static String content(AiResponse response) {
+        return response.getChoices().get(0).getMessage().getContent();
+    }
+
+    @Test
+    public void get_returnsCopies() {
+        InMemoryResponseCache cache = new InMemoryResponseCache.Builder().build();
+        AiResponse stored = response("a");
+        cache.put("k", stored);
+        stored.getChoices().get(0).getMessage().setContent("changed");
+
+        AiResponse first = cache.get("k");
+        assertEquals("a", content(first));
+        first.getChoices().clear();
+        assertEquals("a", content(cache.get("k")));
+        assertNull(cache.get("other"));
+
+        CacheStats stats = cache.getStats();
+        assertEquals(2, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getSize());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() {
+        InMemoryResponseCache cache = new InMemoryResponseCache.Builder().maxEntries(2).build();
+        cache.put("a", response("a"));
+        cache.put("b", response("b"));
+        assertNotNull(cache.get("a"));
+        cache.put("c", response("c"));
+
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(1, cache.getStats().getEvictions());
+        assertEquals(2, cache.getStats().getSize());
+    }
+
+    @Test
+    public void get_expiresAfterTtl() throws InterruptedException {
+        InMemoryResponseCache cache = new InMemoryResponseCache.Builder().ttl(50, TimeUnit.MILLISECONDS).build();
+        cache.put("a", response("a"));
+        assertNotNull(cache.get("a"));
+        Thread.sleep(80);
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getStats().getExpirations());
+        assertEquals(0, cache.getStats().getSize());
+    }
+
+    @Test
+    public void put_countsExpiredEldestAsExpiration() throws InterruptedException {
+        InMemoryResponseCache cache = new InMemoryResponseCache.Builder()
+                .maxEntries(2)
+                .ttl(50, TimeUnit.MILLISECONDS)
+                .build();
+        cache.put("a", response("a"));
+        Thread.sleep(80);
+        cache.put("b", response("b"));
+        cache.put("c", response("c"));
+
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        assertEquals(1, cache.getStats().getExpirations());
+        assertEquals(0, cache.getStats().getEvictions());
+        assertEquals(2, cache.getStats().getSize());
+    }
+}
@@ -0,0 +1,162 @@
+package it.nenno.basicaiclient.v1.http;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PooledHttpTransportTest {
+
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // echo the request body with the number of received bytes
+        server.createContext("/echo", exchange -> {
+            byte[] body = readAll(exchange.getRequestBody());
+            byte[] answer = ("{\"length\":" + body.length + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, answer.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(answer);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/echo";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void keepAlive_connectionIsReused() throws IOException {
+        PooledHttpTransport transport = new PooledHttpTransport.Builder().build();
+        try {
+            assertEquals("{\"length\":5}", call(transport, TransportRequest.bodyOf("hello".getBytes(StandardCharsets.UTF_8))));
+            assertEquals("{\"length\":3}", call(transport, TransportRequest.bodyOf("abc".getBytes(StandardCharsets.UTF_8))));
+
+            PoolStats stats = transport.getStats();
+            assertEquals(1, stats.getCreated());
+            assertEquals(1, stats.getReused());
+            assertEquals(0, stats.getLeased());
+            assertEquals(1, stats.getIdle());
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void chunkedRequestBody_OK() throws IOException {
+        PooledHttpTransport transport = new PooledHttpTransport.Builder().build();
+        try {
+            final byte[] data = new byte[20_000];
+            TransportRequest.RequestBody chunked = new TransportRequest.RequestBody() {
+                @Override
+                public long getContentLength() {return -1;}
+
+                @Override
+                public void writeTo(OutputStream outputStream) throws IOException {
+                    outputStream.write(data);
+                    outputStream.close();
+                }
+            };
+            assertEquals("{\"length\":20000}", call(transport, chunked));
+            assertEquals(1, transport.getStats().getIdle());
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void perHostLimit_waitsForFreeConnection() throws IOException {
+        PooledHttpTransport transport = new PooledHttpTransport.Builder()
+                .maxConnectionsPerHost(1)
+                .leaseTimeout(200, TimeUnit.MILLISECONDS)
+                .build();
+        try {
+            TransportResponse first = transport.execute(request(TransportRequest.bodyOf(new byte[1])));
+            assertEquals(1, transport.getStats().getLeased());
+            try {
+                transport.execute(request(TransportRequest.bodyOf(new byte[1])));
+                fail("expected timeout waiting for a connection");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().startsWith("Timeout waiting for a connection"));
+            }
+            first.close();
+            assertEquals("{\"length\":1}", call(transport, TransportRequest.bodyOf(new byte[1])));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void idleConnection_isEvicted() throws Exception {
+        PooledHttpTransport transport = new PooledHttpTransport.Builder()
+                .idleTimeout(50, TimeUnit.MILLISECONDS)
+                .build();
+        try {
+            call(transport, TransportRequest.bodyOf(new byte[1]));
+            assertEquals(1, transport.getStats().getIdle());
+            Thread.sleep(100);
+            transport.evictExpired();
+            assertEquals(0, transport.getStats().getIdle());
+            assertEquals(1, transport.getStats().getEvicted());
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void abort_discardsConnection() throws IOException {
+        PooledHttpTransport transport = new PooledHttpTransport.Builder().build();
+        try {
+            TransportResponse response = transport.execute(request(TransportRequest.bodyOf(new byte[1])));
+            response.abort();
+            PoolStats stats = transport.getStats();
+            assertEquals(0, stats.getLeased());
+            assertEquals(0, stats.getIdle());
+            assertEquals(1, stats.getDiscarded());
+        } finally {
+            transport.close();
+        }
+    }
+
+    private TransportRequest request(TransportRequest.RequestBody body) {
+        return new TransportRequest.Builder()
+                .url(url)
+                .header("Content-Type", "application/json")
+                .body(body)
+                .build();
+    }
+
+    private String call(HttpTransport transport, TransportRequest.RequestBody body) throws IOException {
+        try (TransportResponse response = transport.execute(request(body))) {
+            assertEquals(200, response.getStatusCode());
+            return new String(readAll(response.getBody()), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,118 @@
+package it.nenno.basicaiclient.v1.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SseFramerTest {
+
+    private static SseFramer framer(String stream) {
+        return new SseFramer(new ByteArrayInputStream(stream.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static List<String> data(SseFramer framer) throws IOException {
+        List<String> data = new ArrayList<>();
+        SseFramer.Event event;
+        while ((event = framer.next()) != null) {
+            data.add(event.getDataAsString());
+        }
+        return data;
+    }
+
+    /** returns at most one byte per read, to split line endings and multi-byte characters */
+    private static InputStream oneByteAtATime(String stream) {
+        return new ByteArrayInputStream(stream.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(1, len));
+            }
+        };
+    }
+
+    @Test
+    public void next_joinsDataLinesAndSkipsComments() throws IOException {
+        SseFramer framer = framer(": keep-alive\n\nevent: content_block_delta\nid: 7\nretry: 1500\n"
+                + "data: {\"a\":\ndata:1}\n\ndata: [DONE]\n\n");
+
+        SseFramer.Event event = framer.next();
+        assertEquals("{\"a\":\n1}", event.getDataAsString());
+        assertEquals("content_block_delta", event.getType());
+        assertEquals("7", event.getLastEventId());
+        assertEquals(1500, event.getRetryMillis());
+        assertFalse(event.isDone());
+
+        event = framer.next();
+        assertNull(event.getType());
+        assertEquals("7", event.getLastEventId());
+        assertTrue(event.isDone());
+        assertNull(framer.next());
+    }
+
+    @Test
+    public void next_handlesAllLineEndingsAcrossReads() throws IOException {
+        String stream = "﻿data: eins\r\n\r\ndata: zwei\r\rdata: drei ä€\n\n";
+        assertEquals(Arrays.asList("eins", "zwei", "drei ä€"), data(framer(stream)));
+        assertEquals(Arrays.asList("eins", "zwei", "drei ä€"),
+                data(new SseFramer(oneByteAtATime(stream), false, 16, 1024)));
+    }
+
+    @Test
+    public void next_ignoresEventsWithoutDataAndUnterminatedEvents() throws IOException {
+        // a "data" field without value is an event with empty data
+        assertEquals(Arrays.asList("", "x"),
+                data(framer("event: ping\n\nunknown: 1\n\ndata\n\ndata: x\n\ndata: cut")));
+    }
+
+    @Test
+    public void next_growsBufferForLongLines() throws IOException {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 1000; i++) json.append("0123456789");
+        List<String> data = data(new SseFramer(oneByteAtATime("data: " + json + "\n\n"), false, 16, 1 << 20));
+        assertEquals(1, data.size());
+        assertEquals(json.toString(), data.get(0));
+
+        try {
+            data(new SseFramer(new ByteArrayInputStream(("data: " + json + "\n\n").getBytes(StandardCharsets.UTF_8)),
+                    false, 16, 1024));
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("1024"));
+        }
+    }
+
+    @Test
+    public void forLines_returnsEveryNonBlankLine() throws IOException {
+        SseFramer framer = SseFramer.forLines(new ByteArrayInputStream(
+                "{\"done\":false}\n\n{\"done\":true}".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(Arrays.asList("{\"done\":false}", "{\"done\":true}"), data(framer));
+    }
+
+    @Test
+    public void feed_keepsPartialEventsUntilComplete() throws IOException {
+        SseFramer framer = SseFramer.forPush(false);
+        List<String> data = new ArrayList<>();
+        byte[] stream = "data: one\r\ndata: two\r\n\r\ndata: [DONE]\n\n".getBytes(StandardCharsets.UTF_8);
+        for (byte b : stream) {
+            framer.feed(ByteBuffer.wrap(new byte[]{b}));
+            SseFramer.Event event;
+            while ((event = framer.next()) != null) {
+                data.add(event.getDataAsString());
+            }
+        }
+        assertEquals(Arrays.asList("one\ntwo", "[DONE]"), data);
+
+        framer.feed(ByteBuffer.wrap("data: last".getBytes(StandardCharsets.UTF_8)));
+        assertNull(framer.next());
+        framer.endOfInput();
+        assertNull(framer.next());
+    }
+}
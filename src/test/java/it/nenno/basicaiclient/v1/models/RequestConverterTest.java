@@ -0,0 +1,59 @@
+package it.nenno.basicaiclient.v1.models;
+
+import it.nenno.basicaiclient.v1.AiClient;
+import it.nenno.basicaiclient.v1.http.TransportRequest;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class RequestConverterTest {
+
+    private static RequestConverter convert(String apiURL) {
+        AiRequest aiRequest = new AiRequest.Builder()
+                .model("gpt-4o-mini")
+                .messages(new ArrayList<>(Arrays.asList(
+                        new AiMessage("system", "Answer in German"),
+                        new AiMessage("user", "Warum ist das Meer salzig? äöü"))))
+                .build();
+        AiClient aiClient = new AiClient.Builder().apiURL(apiURL).build();
+        RequestConverter requestConverter = new RequestConverter();
+        requestConverter.convertForClient(aiRequest, aiClient, false);
+        return requestConverter;
+    }
+
+    @Test
+    public void getRequestAsBody_sameAsJsonStr() throws IOException {
+        for (String apiURL : Arrays.asList("https://api.openai.com/v1/chat/completions",
+                "http://localhost:11434/api/chat", "https://api.anthropic.com/v1/messages")) {
+            RequestConverter requestConverter = convert(apiURL);
+            byte[] expected = requestConverter.getRequestAsJsonStr().getBytes(StandardCharsets.UTF_8);
+
+            TransportRequest.RequestBody body = requestConverter.getRequestAsBody(false);
+            assertEquals(expected.length, body.getContentLength());
+
+            // repeatable for a resend on a fresh connection
+            for (int i = 0; i < 2; i++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                body.writeTo(out);
+                assertArrayEquals(expected, out.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void getRequestAsBody_chunked() throws IOException {
+        RequestConverter requestConverter = convert("https://api.openai.com/v1/chat/completions");
+        TransportRequest.RequestBody body = requestConverter.getRequestAsBody(true);
+        assertEquals(-1, body.getContentLength());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        assertEquals(requestConverter.getRequestAsJsonStr(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
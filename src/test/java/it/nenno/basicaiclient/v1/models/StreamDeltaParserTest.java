@@ -0,0 +1,111 @@
+package it.nenno.basicaiclient.v1.models;
+
+import it.nenno.basicaiclient.v1.http.SseFramer;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static it.nenno.basicaiclient.v1.AiClient.CLIENT_TYPE_OLLAMA;
+import static it.nenno.basicaiclient.v1.AiClient.CLIENT_TYPE_OPENAI;
+import static org.junit.Assert.*;
+
+public class StreamDeltaParserTest {
+
+    private static StreamDeltaParser.Delta parse(StreamDeltaParser parser, String chunk) throws IOException {
+        // the chunk inside a larger buffer, as handed over by the SseFramer
+        byte[] bytes = ("xx" + chunk + "yy").getBytes(StandardCharsets.UTF_8);
+        return parser.parse(bytes, 2, bytes.length - 4);
+    }
+
+    @Test
+    public void parse_openaiContentAndFinishReason() throws IOException {
+        StreamDeltaParser parser = new StreamDeltaParser(CLIENT_TYPE_OPENAI);
+        StreamDeltaParser.Delta delta = parse(parser, "{\"id\":\"c1\",\"model\":\"gpt-4o-mini\",\"choices\":[{\"index\":0,"
+                + "\"delta\":{\"role\":\"assistant\",\"content\":\"Hi \\\"you\\\"\"},\"logprobs\":null,\"finish_reason\":null}]}");
+        assertEquals("Hi \"you\"", delta.getContent());
+        assertNull(delta.getFinishReason());
+        assertEquals("gpt-4o-mini", delta.getModel());
+
+        assertSame(delta, parse(parser, "{\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}],"
+                + "\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":5,\"total_tokens\":15,"
+                + "\"prompt_tokens_details\":{\"cached_tokens\":0}}}"));
+        assertNull(delta.getContent());
+        assertSame(AiResponseOpenai.FINISH_REASON_STOP, delta.getFinishReason());
+        assertTrue(delta.hasUsage());
+        assertEquals(10, delta.getPromptTokens());
+        assertEquals(5, delta.getCompletionTokens());
+        assertEquals(15, delta.getTotalTokens());
+    }
+
+    @Test
+    public void parse_openaiToolCallDeltas() throws IOException {
+        StreamDeltaParser parser = new StreamDeltaParser(CLIENT_TYPE_OPENAI);
+        parse(parser, "{\"choices\":[{\"index\":0,\"delta\":{\"content\":null,\"tool_calls\":[{\"index\":0,\"id\":\"call_1\","
+                + "\"type\":\"function\",\"function\":{\"name\":\"getWeather\",\"arguments\":\"\"}}]}}]}");
+        parse(parser, "{\"choices\":[{\"index\":0,\"delta\":{\"tool_calls\":[{\"index\":0,\"function\":{\"arguments\":\"{\\\"city\\\":\"}}]}}]}");
+        StreamDeltaParser.Delta delta = parse(parser,
+                "{\"choices\":[{\"index\":0,\"delta\":{\"tool_calls\":[{\"index\":0,\"function\":{\"arguments\":\"\\\"Rome\\\"}\"}}]}}]}");
+        assertTrue(delta.hasToolCallDelta());
+        assertNull(delta.getContent());
+        assertEquals(1, delta.getToolCalls().size());
+        StreamDeltaParser.ToolCall toolCall = delta.getToolCalls().get(0);
+        assertEquals("call_1", toolCall.getId());
+        assertEquals("getWeather", toolCall.getName());
+        assertEquals("{\"city\":\"Rome\"}", toolCall.getArguments());
+
+        delta = parse(parser, "{\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"tool_calls\"}]}");
+        assertFalse(delta.hasToolCallDelta());
+        assertEquals("tool_calls", delta.getFinishReason());
+    }
+
+    @Test
+    public void parse_ollamaChunks() throws IOException {
+        StreamDeltaParser parser = new StreamDeltaParser(CLIENT_TYPE_OLLAMA);
+        StreamDeltaParser.Delta delta = parse(parser, "{\"model\":\"llama3.1\",\"created_at\":\"2024-12-22T16:59:39Z\","
+                + "\"message\":{\"role\":\"assistant\",\"content\":\"The\"},\"done\":false}");
+        assertEquals("The", delta.getContent());
+        assertNull(delta.getFinishReason());
+
+        delta = parse(parser, "{\"model\":\"llama3.1\",\"message\":{\"role\":\"assistant\",\"content\":\"\","
+                + "\"tool_calls\":[{\"function\":{\"name\":\"getWeather\",\"arguments\":{\"city\":\"Rome\"}}}]},"
+                + "\"done_reason\":\"stop\",\"done\":true,\"prompt_eval_count\":27,\"eval_count\":315}");
+        assertEquals("", delta.getContent());
+        assertEquals("stop", delta.getFinishReason());
+        assertEquals("{\"city\":\"Rome\"}", delta.getToolCalls().get(0).getArguments());
+        assertEquals(342, delta.getTotalTokens());
+    }
+
+    @Test
+    public void next_readsTheEventsOfTheFramerUntilDone() throws IOException {
+        String stream = ": keep-alive\n\n"
+                + "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"Hello\"}}]}\n\n"
+                + "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\" world\"}}]}\n\n"
+                + "data: [DONE]\n\n"
+                + "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"ignored\"}}]}\n\n";
+        StreamDeltaParser parser = new StreamDeltaParser(CLIENT_TYPE_OPENAI,
+                new SseFramer(new ByteArrayInputStream(stream.getBytes(StandardCharsets.UTF_8))));
+        assertEquals("Hello", parser.next().getContent());
+        assertEquals(" world", parser.next().getContent());
+        assertNull(parser.next());
+        assertTrue(parser.isDoneReceived());
+    }
+
+    @Test
+    public void next_failsOnErrorChunk() throws IOException {
+        StreamDeltaParser parser = new StreamDeltaParser(CLIENT_TYPE_OPENAI, new SseFramer(new ByteArrayInputStream(
+                "data: {\"error\":{\"message\":\"overloaded\"}}\n\n".getBytes(StandardCharsets.UTF_8))));
+        try {
+            parser.next();
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("overloaded"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_rejectsNonObject() throws IOException {
+        parse(new StreamDeltaParser(CLIENT_TYPE_OPENAI), "[DONE]");
+    }
+}
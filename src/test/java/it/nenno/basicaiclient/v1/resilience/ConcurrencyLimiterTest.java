@@ -0,0 +1,101 @@
+package it.nenno.basicaiclient.v1.resilience;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void acquire_boundedQueue() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder()
+                .limits(2, 1, 2)
+                .maxQueue(0)
+                .build();
+        ConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(limiter.acquire(100, null));
+        assertNull(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+        try {
+            limiter.acquire(100, null);
+            fail("ConcurrencyLimitExceededException expected");
+        } catch (ConcurrencyLimitExceededException e) {
+            assertEquals(1, limiter.getRejected());
+        }
+
+        first.release();
+        first.release();
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    public void acquire_waitsForRelease() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder().limits(1, 1, 1).build();
+        final ConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        assertNull(limiter.acquire(50, null));
+
+        new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            permit.release();
+        }).start();
+        assertNotNull(limiter.acquire(5000, null));
+        assertEquals(0, limiter.getQueued());
+    }
+
+    @Test
+    public void aimd_increaseAndBackoff() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder()
+                .algorithm(ConcurrencyLimiter.Algorithm.AIMD)
+                .limits(2, 1, 10)
+                .backoffRatio(0.5)
+                .build();
+        ConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        first.onSuccess();
+        assertEquals(3, limiter.getLimit());
+
+        ConcurrencyLimiter.Permit second = limiter.tryAcquire();
+        second.onDropped();
+        // only one outcome per permit
+        second.onDropped();
+        assertEquals(1, limiter.getLimit());
+        assertEquals(1, limiter.getDropped());
+    }
+
+    @Test
+    public void gradient_shrinksWhenLatencyRises() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder().limits(4, 1, 64).build();
+        for (int i = 0; i < 10; i++) {
+            round(limiter, 10);
+        }
+        int grown = limiter.getLimit();
+        assertTrue(grown > 4);
+
+        // the server queues the requests, the latency rises by 20 times
+        for (int i = 0; i < 3; i++) {
+            round(limiter, 200);
+        }
+        assertTrue(limiter.getLimit() < grown);
+    }
+
+    /** run as many requests as the limit allows, all with the given latency */
+    private static void round(ConcurrencyLimiter limiter, long latencyMillis) throws InterruptedException {
+        List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        ConcurrencyLimiter.Permit permit;
+        while ((permit = limiter.tryAcquire()) != null) {
+            permits.add(permit);
+        }
+        TimeUnit.MILLISECONDS.sleep(latencyMillis);
+        for (ConcurrencyLimiter.Permit p : permits) {
+            p.onSuccess();
+            p.release();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package it.nenno.basicaiclient.v1.resilience;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HedgePolicyTest {
+
+    @Test
+    public void hedgeDelay_percentileOfWindow() {
+        HedgePolicy policy = new HedgePolicy.Builder()
+                .percentile(0.9)
+                .minDelay(0, TimeUnit.MILLISECONDS)
+                .window(100, 10)
+                .build();
+        for (int i = 1; i <= 9; i++) {
+            policy.recordLatency(i * 100);
+        }
+        assertEquals(-1, policy.getHedgeDelayMillis());
+        policy.recordLatency(1000);
+        assertEquals(900, policy.getHedgeDelayMillis());
+    }
+
+    @Test
+    public void hedgeDelay_atLeastMinDelay() {
+        HedgePolicy policy = new HedgePolicy.Builder()
+                .minDelay(50, TimeUnit.MILLISECONDS)
+                .window(10, 1)
+                .build();
+        policy.recordLatency(3);
+        assertEquals(50, policy.getHedgeDelayMillis());
+    }
+
+    @Test
+    public void budget_limitsHedges() {
+        HedgePolicy policy = new HedgePolicy.Builder().build();
+        for (int i = 0; i < 20; i++) {
+            policy.onRequest();
+        }
+        // 5 % of 20 requests
+        assertTrue(policy.tryHedge());
+        assertFalse(policy.tryHedge());
+        policy.onHedgeWin();
+
+        HedgeStats stats = policy.getStats();
+        assertEquals(20, stats.getRequests());
+        assertEquals(1, stats.getHedges());
+        assertEquals(1, stats.getBudgetExhausted());
+        assertEquals(1.0, stats.getWinRate(), 0.0);
+    }
+}
@@ -0,0 +1,66 @@
+package it.nenno.basicaiclient.v1.resilience;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+
+    @Test
+    public void tryAcquire_requestsPerMinute() {
+        RateLimiter limiter = new RateLimiter("test", 2, 0);
+        assertNotNull(limiter.tryAcquire(100));
+        assertNotNull(limiter.tryAcquire(100));
+        assertNull(limiter.tryAcquire(100));
+        assertEquals(1, limiter.getRejected());
+        // one request every 30 s
+        long waitMillis = limiter.getWaitMillis(100);
+        assertTrue(waitMillis > 29_000 && waitMillis <= 30_000);
+    }
+
+    @Test
+    public void tryAcquire_tokensPerMinute() {
+        RateLimiter limiter = new RateLimiter("test", 0, 1000);
+        assertNotNull(limiter.tryAcquire(600));
+        assertNull(limiter.tryAcquire(600));
+        // larger than the limit: waits for a full bucket instead of forever
+        assertNotNull(new RateLimiter("test", 0, 1000).tryAcquire(5000));
+    }
+
+    @Test
+    public void permit_correctedFromUsage() {
+        RateLimiter limiter = new RateLimiter("test", 0, 1000);
+        RateLimiter.Permit permit = limiter.tryAcquire(100);
+        permit.complete(300);
+        // 200 tokens more than estimated are taken and the next estimates grow
+        assertEquals(700, limiter.getAvailableTokens(), 1.0);
+        assertEquals(1.4, limiter.getCorrection(), 0.001);
+        assertEquals(140, limiter.tryAcquire(100).getChargedTokens());
+
+        // completed only once
+        permit.complete(1000);
+        assertEquals(1.4, limiter.getCorrection(), 0.001);
+    }
+
+    @Test
+    public void permit_cancelGivesBack() {
+        RateLimiter limiter = new RateLimiter("test", 1, 0);
+        limiter.tryAcquire(10).cancel();
+        assertNotNull(limiter.tryAcquire(10));
+    }
+
+    @Test
+    public void acquireAsync_completesWhenRefilled() throws Exception {
+        // one request every 100 ms
+        RateLimiter limiter = new RateLimiter("test", 600, 0);
+        for (int i = 0; i < 600; i++) {
+            assertNotNull(limiter.tryAcquire(1));
+        }
+        CompletableFuture<RateLimiter.Permit> future = limiter.acquireAsync(1);
+        assertFalse(future.isDone());
+        assertNotNull(future.get(2, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,51 @@
+package it.nenno.basicaiclient.v1.resilience;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class RetryBudgetTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.SECONDS.toNanos(1000));
+    private final RetryBudget budget = new RetryBudget(0.5, 0, now::get);
+
+    private void advanceSeconds(long seconds) {
+        now.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    @Test
+    public void requestsOfEarlierWindowsAllowNoRetries() {
+        for (int i = 0; i < 100; i++) {
+            budget.onRequest();
+        }
+        assertTrue(budget.tryRetry());
+
+        // after an idle time the old burst does not count, although its bucket was not reused
+        advanceSeconds(25);
+        assertFalse(budget.tryRetry());
+        budget.onRequest();
+        budget.onRequest();
+        assertTrue(budget.tryRetry());
+        assertFalse(budget.tryRetry());
+    }
+
+    @Test
+    public void retriesOfEarlierWindowsDoNotBlock() {
+        RetryBudget minimum = new RetryBudget(0, 1, now::get);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(minimum.tryRetry());
+        }
+        assertFalse(minimum.tryRetry());
+
+        // still within the window of 10 seconds
+        advanceSeconds(9);
+        assertFalse(minimum.tryRetry());
+
+        // the retries have left the window, their bucket was not reused
+        advanceSeconds(6);
+        assertTrue(minimum.tryRetry());
+    }
+}
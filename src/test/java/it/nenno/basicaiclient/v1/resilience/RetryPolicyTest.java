@@ -0,0 +1,81 @@
+package it.nenno.basicaiclient.v1.resilience;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void retryAfter_headers() {
+        Map<String, String> headers = new HashMap<>();
+        assertEquals(-1, RetryAfter.parseMillis(headers::get));
+
+        headers.put("retry-after", "2");
+        assertEquals(2000, RetryAfter.parseMillis(headers::get));
+        headers.put("retry-after-ms", "150");
+        assertEquals(150, RetryAfter.parseMillis(headers::get));
+
+        headers.clear();
+        headers.put("x-ratelimit-remaining-requests", "0");
+        headers.put("x-ratelimit-reset-requests", "6m0s");
+        headers.put("x-ratelimit-remaining-tokens", "1000");
+        headers.put("x-ratelimit-reset-tokens", "20ms");
+        assertEquals(360_000, RetryAfter.parseMillis(headers::get));
+    }
+
+    @Test
+    public void parseDuration() {
+        assertEquals(1000, RetryAfter.parseDuration("1s"));
+        assertEquals(3_723_500, RetryAfter.parseDuration("1h2m3.5s"));
+        assertEquals(20, RetryAfter.parseDuration("20ms"));
+        assertEquals(-1, RetryAfter.parseDuration("soon"));
+    }
+
+    @Test
+    public void attempts_maxRetriesAndDelays() {
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .retry(RetryReason.SERVER_ERROR, 2, 100, 1000, TimeUnit.MILLISECONDS)
+                .budget(new RetryBudget(1.0, 10))
+                .build();
+        RetryPolicy.Attempts attempts = policy.newAttempts();
+        for (int i = 0; i < 2; i++) {
+            long delay = attempts.nextDelayMillis(RetryReason.SERVER_ERROR, null, -1);
+            assertTrue(delay >= 100 && delay <= 1000);
+        }
+        assertEquals(-1, attempts.nextDelayMillis(RetryReason.SERVER_ERROR, null, -1));
+
+        RetryStats stats = policy.getStats();
+        assertEquals(1, stats.getRequests());
+        assertEquals(2, stats.getRetries());
+        assertEquals(1, stats.getExhausted());
+    }
+
+    @Test
+    public void attempts_retryAfterBeyondDeadline() {
+        RetryPolicy policy = new RetryPolicy.Builder().build();
+        Map<String, String> headers = new HashMap<>();
+        headers.put("retry-after", "5");
+        // the provider asks for 5 s, only 2 s are left
+        assertEquals(-1, policy.newAttempts().nextDelayMillis(RetryReason.RATE_LIMITED, headers::get, 2000));
+        assertEquals(5000, policy.newAttempts().nextDelayMillis(RetryReason.RATE_LIMITED, headers::get, -1));
+    }
+
+    @Test
+    public void budget_limitsRetries() {
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .budget(new RetryBudget(0.5, 0))
+                .build();
+        // one retry for two requests
+        RetryPolicy.Attempts first = policy.newAttempts();
+        assertEquals(-1, first.nextDelayMillis(RetryReason.CONNECT_FAILURE, null, -1));
+        RetryPolicy.Attempts second = policy.newAttempts();
+        assertTrue(second.nextDelayMillis(RetryReason.CONNECT_FAILURE, null, -1) >= 0);
+        assertEquals(-1, second.nextDelayMillis(RetryReason.CONNECT_FAILURE, null, -1));
+        assertEquals(2, policy.getStats().getBudgetExhausted());
+    }
+}
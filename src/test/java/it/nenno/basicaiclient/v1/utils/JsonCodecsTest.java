@@ -0,0 +1,40 @@
+package it.nenno.basicaiclient.v1.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import it.nenno.basicaiclient.v1.models.AiResponseOllama;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class JsonCodecsTest {
+
+    @Test
+    public void reader_cachedPerTypeAndNaming() {
+        assertSame(JsonCodecs.reader(AiResponseOllama.class), JsonCodecs.reader(AiResponseOllama.class));
+        assertSame(JsonCodecs.reader(AiResponseOllama.class, JsonCodecs.Naming.SNAKE_CASE),
+                JsonCodecs.reader(AiResponseOllama.class, JsonCodecs.Naming.SNAKE_CASE));
+        assertNotSame(JsonCodecs.reader(AiResponseOllama.class),
+                JsonCodecs.reader(AiResponseOllama.class, JsonCodecs.Naming.SNAKE_CASE));
+    }
+
+    @Test
+    public void reader_snakeCase() throws IOException {
+        AiResponseOllama response = JsonCodecs.reader(AiResponseOllama.class, JsonCodecs.Naming.SNAKE_CASE)
+                .readValue("{\"model\":\"llama3.1\",\"done_reason\":\"stop\",\"done\":true,\"eval_count\":315}");
+        assertEquals("stop", response.getDoneReason());
+        assertEquals(315, response.getEvalCount());
+    }
+
+    @Test
+    public void treeHelpers() throws IOException {
+        ObjectNode node = JsonCodecs.createObjectNode();
+        node.put("model", "llama3.1");
+        JsonNode tree = JsonCodecs.readTree(JsonCodecs.writer().writeValueAsString(node));
+        assertEquals(node, tree);
+        assertEquals("llama3.1", JsonCodecs.convertValue(tree, Map.class).get("model"));
+    }
+}